@@ -5,6 +5,8 @@ import com.tinkerpop.blueprints.Graph;
 import com.tinkerpop.blueprints.KeyIndexableGraph;
 import com.tinkerpop.blueprints.ThreadedTransactionalGraph;
 
+import java.util.List;
+
 /**
  * Titan graph database implementation of the Blueprint's interface.
  * Use {@link TitanFactory} to open and configure TitanGraph instances.
@@ -52,5 +54,17 @@ public interface TitanGraph extends Graph, KeyIndexableGraph, ThreadedTransactio
      */
     public boolean isOpen();
 
+    /**
+     * Partitions the vertices of this graph into disjoint splits which can be processed in parallel, e.g. by
+     * assigning each split to a separate thread which iterates over its vertices in its own transaction.
+     * The splits are derived from how the storage backend partitions its data, hence the number of splits returned
+     * may differ from the requested number.
+     *
+     * @param numSplits Desired number of splits
+     * @return Disjoint splits which together contain all vertices of this graph
+     * @throws UnsupportedOperationException if the storage backend does not support scans
+     */
+    public List<VertexSplit> getVertexSplits(int numSplits);
+
 	
 }
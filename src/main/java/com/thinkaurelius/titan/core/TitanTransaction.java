@@ -120,6 +120,21 @@ public interface TitanTransaction extends TransactionalGraph, KeyIndexableGraph
 	 * @see TitanQuery
 	 */
 	public TitanQuery query(long vertexid);
+
+	/**
+	 * Loads the relations matching the given query for all of the given vertices into this transaction.
+	 * 
+	 * The query only defines the shape of the relations to retrieve (i.e. types, direction, constraints),
+	 * the vertex the query was constructed for is ignored. Relations are retrieved from the storage backend
+	 * in batches so that subsequently accessing the matching relations of any of the given vertices
+	 * does not require additional backend calls. This should be used when traversing from many vertices
+	 * at once.
+	 * 
+	 * @param vertices Vertices for which to load the matching relations
+	 * @param query Query defining the relations to load
+	 * @see TitanQuery
+	 */
+	public void prefetch(Iterable<TitanVertex> vertices, TitanQuery query);
 	
 	/**
 	 * Retrieves the vertex whose attribute value for the specified property key matches the given value.
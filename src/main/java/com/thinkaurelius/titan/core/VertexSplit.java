@@ -0,0 +1,23 @@
+package com.thinkaurelius.titan.core;
+
+/**
+ * A subset of the vertices of a graph which can be processed independently of all other splits.
+ * This allows global graph operations to run in parallel with one thread and transaction per split.
+ *
+ * @see TitanGraph#getVertexSplits(int)
+ *
+ * @author	Matthias Br&ouml;cheler (http://www.matthiasb.com)
+ *
+ */
+public interface VertexSplit {
+
+    /**
+     * Returns all persisted vertices in this split retrieved in the given transaction.
+     * Vertices which have been added in the given transaction are not returned.
+     *
+     * @param tx Transaction of the graph which returned this split
+     * @return All persisted vertices in this split
+     */
+    public Iterable<TitanVertex> getVertices(TitanTransaction tx);
+
+}
@@ -1,8 +1,10 @@
 package com.thinkaurelius.titan.diskstorage;
 
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.thinkaurelius.titan.core.TitanException;
 import com.thinkaurelius.titan.diskstorage.berkeleyje.BerkeleyJEStoreManager;
+import com.thinkaurelius.titan.diskstorage.berkeleyje.ShardedBerkeleyJEStoreManager;
 import com.thinkaurelius.titan.diskstorage.cassandra.embedded.CassandraEmbeddedStoreManager;
 import com.thinkaurelius.titan.diskstorage.cassandra.thrift.CassandraThriftStoreManager;
 import com.thinkaurelius.titan.diskstorage.cassandra.astyanax.AstyanaxStoreManager;
@@ -10,24 +12,36 @@ import com.thinkaurelius.titan.diskstorage.hbase.HBaseStoreManager;
 import com.thinkaurelius.titan.diskstorage.idmanagement.ConsistentKeyIDManager;
 import com.thinkaurelius.titan.diskstorage.idmanagement.TransactionalIDManager;
 import com.thinkaurelius.titan.diskstorage.indexing.HashPrefixKeyColumnValueStore;
+import com.thinkaurelius.titan.diskstorage.inmemory.InMemoryStoreManager;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.*;
-import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.KeyValueStore;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.KeyValueStoreManager;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.KeyValueStoreManagerAdapter;
 import com.thinkaurelius.titan.diskstorage.locking.consistentkey.ConsistentKeyLockConfiguration;
 import com.thinkaurelius.titan.diskstorage.locking.consistentkey.ConsistentKeyLockStore;
 import com.thinkaurelius.titan.diskstorage.locking.consistentkey.ConsistentKeyLockTransaction;
 import com.thinkaurelius.titan.diskstorage.locking.transactional.TransactionalLockStore;
+import com.thinkaurelius.titan.diskstorage.lsm.LSMStoreManager;
+import com.thinkaurelius.titan.diskstorage.util.CircuitBreaker;
+import com.thinkaurelius.titan.diskstorage.util.ExponentialBackoffRetryPolicy;
+import com.thinkaurelius.titan.diskstorage.util.FixedRetryPolicy;
+import com.thinkaurelius.titan.diskstorage.util.RetryBudget;
+import com.thinkaurelius.titan.diskstorage.util.RetryPolicy;
 import com.thinkaurelius.titan.graphdb.configuration.GraphDatabaseConfiguration;
 import static com.thinkaurelius.titan.graphdb.configuration.GraphDatabaseConfiguration.*;
 import org.apache.commons.configuration.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * (c) Matthias Broecheler (me@matthiasb.com)
@@ -50,25 +64,36 @@ public class Backend {
 
     public static final String ID_STORE_NAME = "titan_ids";
 
+    /**
+     * Records the value format of compressed stores
+     */
+    public static final String STORE_PROPERTIES_NAME = "titan_storeproperties";
+
 
     public static final String LOCK_STORE_SUFFIX = "_lock_";
 
     public static final String STORE_LOCAL = "local";
     public static final String STORE_BERKELEYDB = "berkeleyje";
+    public static final String STORE_BERKELEYDB_SHARDED = "berkeleyje-sharded";
     public static final String STORE_CASSANDRA = "cassandra";
     public static final String STORE_CASSANDRATHRIFT = "cassandrathrift";
     public static final String STORE_ASTYANAX = "astyanax";
     public static final String STORE_EMBEDDEDCASSANDRA = "embeddedcassandra";
     public static final String STORE_HBASE = "hbase";
+    public static final String STORE_INMEMORY = "inmemory";
+    public static final String STORE_LSM = "lsm";
     private static final Map<String,Class<? extends StoreManager>> preregisteredStorageManagers =
             new HashMap<String,Class<? extends StoreManager>>() {{
         put(STORE_LOCAL, BerkeleyJEStoreManager.class);
         put(STORE_BERKELEYDB, BerkeleyJEStoreManager.class);
+        put(STORE_BERKELEYDB_SHARDED, ShardedBerkeleyJEStoreManager.class);
         put(STORE_CASSANDRA, AstyanaxStoreManager.class);
         put(STORE_CASSANDRATHRIFT, CassandraThriftStoreManager.class);
         put(STORE_ASTYANAX, AstyanaxStoreManager.class);
         put(STORE_HBASE, HBaseStoreManager.class);
         put(STORE_EMBEDDEDCASSANDRA, CassandraEmbeddedStoreManager.class);
+        put(STORE_INMEMORY, InMemoryStoreManager.class);
+        put(STORE_LSM, LSMStoreManager.class);
     }};
     
     public static final Map<String,Integer> STATIC_KEY_LENGTHS = new HashMap<String,Integer>() {{
@@ -79,25 +104,66 @@ public class Backend {
 
     private final StoreManager storeManager;
     private final boolean isKeyColumnValueStore;
+    private final KeyValueStoreManagerAdapter kvStoreManagerAdapter;
     private final StoreFeatures storeFeatures;
     
     private KeyColumnValueStore edgeStore;
+    private KeyColumnValueStore edgeStoreScan;
+    private CachedKeyColumnValueStore edgeStoreCache;
     private KeyColumnValueStore vertexIndexStore;
+    private KeyColumnValueStore vertexIndexStoreScan;
+    private KeyColumnValueStore storeProperties;
     private IDAuthority idAuthority;
 
     private final ConsistentKeyLockConfiguration lockConfiguration;
     private final int bufferSize;
     private final boolean hashPrefixIndex;
+    private final long edgeStoreCacheSize;
+    private final long edgeStoreCacheTTL;
 
     private final int writeAttempts;
     private final int readAttempts;
-    private final int persistAttemptWaittime;
+    private final RetryPolicy retryPolicy;
+    private final int retryBudget;
+    private final int circuitBreakerFailures;
+    private final long circuitBreakerReset;
+    private final boolean compressValues;
+    private final int compressionThreshold;
+    private final int compressionLevel;
+
+    private final boolean metricsEnabled;
+    private final int metricsInstance;
+    private final BufferMutationKeyColumnValueStore bufferMutationStore;
+    private final AsyncMutationStore asyncMutationStore;
+
+    private final ExecutorService bufferFlushExecutor;
+    private final int maxPendingBuffers;
+    private final ExecutorService lockVerifyExecutor;
     
     public Backend(Configuration storageConfig) {
         storeManager = getStorageManager(storageConfig);
         isKeyColumnValueStore = storeManager instanceof KeyColumnValueStoreManager;
+        if (isKeyColumnValueStore) {
+            kvStoreManagerAdapter = null;
+        } else {
+            //Stores are opened through the adapter so that it can apply buffered mutations against them
+            kvStoreManagerAdapter = new KeyValueStoreManagerAdapter((KeyValueStoreManager)storeManager, STATIC_KEY_LENGTHS);
+        }
         storeFeatures = storeManager.getFeatures();
 
+        metricsEnabled = storageConfig.getBoolean(STORAGE_METRICS_KEY,STORAGE_METRICS_DEFAULT);
+        metricsInstance = MetricInstrumentedStore.nextInstanceID();
+
+        circuitBreakerFailures = storageConfig.getInt(CIRCUIT_BREAKER_FAILURES_KEY,CIRCUIT_BREAKER_FAILURES_DEFAULT);
+        Preconditions.checkArgument(circuitBreakerFailures>=0,"Circuit breaker failures must be non-negative (use 0 to disable)");
+        circuitBreakerReset = storageConfig.getLong(CIRCUIT_BREAKER_RESET_KEY,CIRCUIT_BREAKER_RESET_DEFAULT);
+        Preconditions.checkArgument(circuitBreakerReset>0,"Circuit breaker reset time must be positive");
+
+        compressValues = storageConfig.getBoolean(COMPRESS_VALUES_KEY,COMPRESS_VALUES_DEFAULT);
+        compressionThreshold = storageConfig.getInt(COMPRESSION_THRESHOLD_KEY,COMPRESSION_THRESHOLD_DEFAULT);
+        Preconditions.checkArgument(compressionThreshold>=0,"Compression threshold must be non-negative");
+        compressionLevel = storageConfig.getInt(COMPRESSION_LEVEL_KEY,COMPRESSION_LEVEL_DEFAULT);
+
         int bufferSizeTmp = storageConfig.getInt(BUFFER_SIZE_KEY,BUFFER_SIZE_DEFAULT);
         Preconditions.checkArgument(bufferSizeTmp >= 0, "Buffer size must be non-negative (use 0 to disable)");
         if (!storeFeatures.supportsBatchMutation()) {
@@ -105,18 +171,79 @@ public class Backend {
             log.debug("Buffering disabled because backend does not support batch mutations");
         } else bufferSize=bufferSizeTmp;
 
+        retryPolicy = getRetryPolicy(storageConfig);
+
+        boolean asyncCommit = storageConfig.getBoolean(ASYNC_COMMIT_KEY,ASYNC_COMMIT_DEFAULT);
+        if (asyncCommit) {
+            Preconditions.checkArgument(bufferSize>1,"Asynchronous commits require buffering");
+            Preconditions.checkArgument(!storeFeatures.supportsTransactions(),"Asynchronous commits are not supported by transactional storage backends");
+            Preconditions.checkArgument(storeFeatures.supportsLocking() || !storeFeatures.supportsConsistentKeyOperations(),
+                    "Asynchronous commits are not supported by storage backends which verify locks against the stored values");
+            Preconditions.checkArgument(storageConfig.containsKey(ASYNC_COMMIT_DIRECTORY_KEY),
+                    "Need to configure the directory of the write-ahead log for asynchronous commits");
+        }
+
+        if (bufferSize>1) {
+            BufferMutationKeyColumnValueStore mutationStore = isKeyColumnValueStore?
+                    (KeyColumnValueStoreManager)storeManager:kvStoreManagerAdapter;
+            if (circuitBreakerFailures>0) mutationStore = new CircuitBreakerBufferMutationStore(mutationStore,
+                    new CircuitBreaker(storeManager.toString(),circuitBreakerFailures,circuitBreakerReset));
+            if (asyncCommit) {
+                long segmentSize = storageConfig.getLong(ASYNC_COMMIT_SEGMENT_SIZE_KEY,ASYNC_COMMIT_SEGMENT_SIZE_DEFAULT);
+                int maxPendingBatches = storageConfig.getInt(ASYNC_COMMIT_QUEUE_KEY,ASYNC_COMMIT_QUEUE_DEFAULT);
+                MutationLog wal = new MutationLog(new File(storageConfig.getString(ASYNC_COMMIT_DIRECTORY_KEY)),segmentSize);
+                asyncMutationStore = new AsyncMutationStore(mutationStore,storeManager,wal,retryPolicy,maxPendingBatches);
+                mutationStore = asyncMutationStore;
+            } else {
+                asyncMutationStore = null;
+            }
+            if (metricsEnabled) mutationStore = new MetricInstrumentedBufferMutationStore(mutationStore,storeManager.toString(),metricsInstance);
+            bufferMutationStore = mutationStore;
+        } else {
+            bufferMutationStore = null;
+            asyncMutationStore = null;
+        }
+
+        int flushThreads = storageConfig.getInt(BUFFER_FLUSH_THREADS_KEY,BUFFER_FLUSH_THREADS_DEFAULT);
+        Preconditions.checkArgument(flushThreads>=0,"Number of buffer flush threads must be non-negative (use 0 to disable)");
+        maxPendingBuffers = storageConfig.getInt(BUFFER_FLUSH_QUEUE_KEY,BUFFER_FLUSH_QUEUE_DEFAULT);
+        Preconditions.checkArgument(maxPendingBuffers>0,"Buffer flush queue size must be positive");
+        if (flushThreads>0 && bufferSize>1 && !storeFeatures.supportsTransactions()) {
+            bufferFlushExecutor = Executors.newFixedThreadPool(flushThreads,
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("titan-buffer-flush-%d").build());
+        } else {
+            if (flushThreads>0) log.debug("Asynchronous buffer flushing disabled because buffering is disabled or backend is transactional");
+            bufferFlushExecutor = null;
+        }
+
         if (!storeFeatures.supportsLocking() && storeFeatures.supportsConsistentKeyOperations()) {
             lockConfiguration = new ConsistentKeyLockConfiguration(storageConfig,storeManager.toString());
+            int lockVerifyThreads = storageConfig.getInt(LOCK_VERIFY_THREADS,LOCK_VERIFY_THREADS_DEFAULT);
+            Preconditions.checkArgument(lockVerifyThreads>=0,"Number of lock verification threads must be non-negative (use 0 to disable)");
+            if (lockVerifyThreads>0) {
+                lockVerifyExecutor = Executors.newFixedThreadPool(lockVerifyThreads,
+                        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("titan-lock-verify-%d").build());
+            } else {
+                lockVerifyExecutor = null;
+            }
         } else {
             lockConfiguration = null;
+            lockVerifyExecutor = null;
         }
 
         writeAttempts = storageConfig.getInt(WRITE_ATTEMPTS_KEY, WRITE_ATTEMPTS_DEFAULT);
         Preconditions.checkArgument(writeAttempts>0,"Write attempts must be positive");
         readAttempts = storageConfig.getInt(READ_ATTEMPTS_KEY, READ_ATTEMPTS_DEFAULT);
         Preconditions.checkArgument(readAttempts>0,"Read attempts must be positive");
-        persistAttemptWaittime = storageConfig.getInt(STORAGE_ATTEMPT_WAITTIME_KEY, STORAGE_ATTEMPT_WAITTIME_DEFAULT);
+        int persistAttemptWaittime = storageConfig.getInt(STORAGE_ATTEMPT_WAITTIME_KEY, STORAGE_ATTEMPT_WAITTIME_DEFAULT);
         Preconditions.checkArgument(persistAttemptWaittime>0,"Persistence attempt retry wait time must be non-negative");
+        retryBudget = storageConfig.getInt(STORAGE_RETRY_BUDGET_KEY,STORAGE_RETRY_BUDGET_DEFAULT);
+        Preconditions.checkArgument(retryBudget>=0,"Retry budget must be non-negative (use 0 to disable)");
+
+        edgeStoreCacheSize = storageConfig.getLong(EDGESTORE_CACHE_SIZE_KEY, EDGESTORE_CACHE_SIZE_DEFAULT);
+        Preconditions.checkArgument(edgeStoreCacheSize>=0,"Edge store cache size must be non-negative (use 0 to disable)");
+        edgeStoreCacheTTL = storageConfig.getLong(EDGESTORE_CACHE_TTL_KEY, EDGESTORE_CACHE_TTL_DEFAULT);
+        Preconditions.checkArgument(edgeStoreCacheTTL>=0,"Edge store cache expiration time must be non-negative (use 0 to disable)");
 
         if (storeFeatures.isDistributed() && storeFeatures.isKeyOrdered()) {
             log.debug("Wrapping index store with HashPrefix");
@@ -141,31 +268,33 @@ public class Backend {
     
     private KeyColumnValueStore getBufferStore(String name) throws StorageException {
         Preconditions.checkArgument(bufferSize<=1 || storeManager.getFeatures().supportsBatchMutation());
-        KeyColumnValueStore store = null;
-        if (isKeyColumnValueStore) {
-            assert storeManager instanceof KeyColumnValueStoreManager;
-            store = ((KeyColumnValueStoreManager)storeManager).openDatabase(name);
-            if (bufferSize>1) {
-                store = new BufferedKeyColumnValueStore(store,true);
-            }
-        } else {
-            assert storeManager instanceof KeyValueStoreManager;
-            KeyValueStore kvstore = ((KeyValueStoreManager)storeManager).openDatabase(name);
-            if (bufferSize>1) {
-                //TODO: support buffer mutations for KeyValueStores
-            }
-            store = KeyValueStoreManagerAdapter.wrapKeyValueStore(kvstore, STATIC_KEY_LENGTHS);
+        KeyColumnValueStore store = getStore(name);
+        if (bufferSize>1) {
+            store = new BufferedKeyColumnValueStore(store,true);
+        }
+        //Compress outside the buffer since buffered mutations bypass the wrapped store
+        if (compressValues) {
+            if (storeProperties==null) storeProperties = getStore(STORE_PROPERTIES_NAME);
+            store = CompressedKeyColumnValueStore.wrap(store,storeProperties,storeManager,
+                    compressionThreshold,compressionLevel);
         }
         return store;
     }
 
     private KeyColumnValueStore getStore(String name) throws StorageException {
+        KeyColumnValueStore store;
         if (isKeyColumnValueStore) {
-            return ((KeyColumnValueStoreManager)storeManager).openDatabase(name);
+            store = ((KeyColumnValueStoreManager)storeManager).openDatabase(name);
         } else {
-            return KeyValueStoreManagerAdapter.wrapKeyValueStore(
-                    ((KeyValueStoreManager) storeManager).openDatabase(name), STATIC_KEY_LENGTHS);
+            store = kvStoreManagerAdapter.openDatabase(name);
         }
+        //Scans access the edge store and vertex index directly since they neither mutate nor lock
+        if (name.equals(EDGESTORE_NAME)) edgeStoreScan = store;
+        else if (name.equals(VERTEXINDEX_STORE_NAME)) vertexIndexStoreScan = store;
+        if (circuitBreakerFailures>0) store = new CircuitBreakerKeyColumnValueStore(store,
+                new CircuitBreaker(storeManager.toString()+"/"+name,circuitBreakerFailures,circuitBreakerReset));
+        if (metricsEnabled) store = new MetricInstrumentedStore(store,storeManager.toString(),metricsInstance);
+        return store;
     }
 
 
@@ -183,9 +312,27 @@ public class Backend {
                 throw new IllegalStateException("Store needs to support consistent key or transactional operations for ID manager to guarantee proper id allocations");
             }
             edgeStore = getLockStore(getBufferStore(EDGESTORE_NAME));
+            if (edgeStoreCacheSize>0) {
+                log.debug("Caching edge store slices up to {} bytes",edgeStoreCacheSize);
+                edgeStoreCache = new CachedKeyColumnValueStore(edgeStore,edgeStoreCacheSize,edgeStoreCacheTTL);
+                edgeStore = edgeStoreCache;
+                //Committed mutations only become visible once they have been applied from the log
+                if (asyncMutationStore!=null) asyncMutationStore.addCache(edgeStoreCache);
+            }
             vertexIndexStore = getLockStore(getBufferStore(VERTEXINDEX_STORE_NAME));
 
-            if (hashPrefixIndex) vertexIndexStore = new HashPrefixKeyColumnValueStore(vertexIndexStore,4);
+            if (hashPrefixIndex) {
+                vertexIndexStore = new HashPrefixKeyColumnValueStore(vertexIndexStore,4);
+                vertexIndexStoreScan = new HashPrefixKeyColumnValueStore(vertexIndexStoreScan,4);
+            }
+            //Store properties are only read while opening the stores
+            if (storeProperties!=null) {
+                storeProperties.close();
+                storeProperties = null;
+            }
+
+            //Apply mutations left in the write-ahead log once all stores are open
+            if (asyncMutationStore!=null) asyncMutationStore.start();
         } catch (StorageException e) {
             throw new TitanException("Could not initialize backend",e);
         }
@@ -218,6 +365,30 @@ public class Backend {
         }
     }
 
+    public final static RetryPolicy getRetryPolicy(Configuration storageConfig) {
+        String policy = storageConfig.getString(STORAGE_RETRY_POLICY_KEY,STORAGE_RETRY_POLICY_DEFAULT);
+        if (policy.equalsIgnoreCase("exponential")) return new ExponentialBackoffRetryPolicy(storageConfig);
+        else if (policy.equalsIgnoreCase("fixed")) return new FixedRetryPolicy(storageConfig);
+
+        try {
+            Class clazz = Class.forName(policy);
+            Constructor constructor = clazz.getConstructor(Configuration.class);
+            return (RetryPolicy)constructor.newInstance(storageConfig);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Could not find retry policy class " + policy);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Configured retry policy does not have required constructor: " + policy);
+        } catch (InstantiationException e) {
+            throw new IllegalArgumentException("Could not instantiate retry policy class " + policy,e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Could not instantiate retry policy class " + policy,e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException("Could not instantiate retry policy class " + policy,e);
+        } catch (ClassCastException e) {
+            throw new IllegalArgumentException("Could not instantiate retry policy class " + policy,e);
+        }
+    }
+
     //1. Store
 
     public KeyColumnValueStore getEdgeStore() {
@@ -230,6 +401,116 @@ public class Backend {
         return vertexIndexStore;
     }
 
+    /**
+     * Returns the cache in front of the edge store or null if caching is disabled
+     *
+     * @return
+     */
+    public CachedKeyColumnValueStore getEdgeStoreCache() {
+        return edgeStoreCache;
+    }
+
+    /**
+     * Whether the keys of the edge store can be scanned
+     *
+     * @return
+     */
+    public boolean supportsEdgeStoreScan() {
+        Preconditions.checkNotNull(edgeStoreScan,"Backend has not yet been initialized");
+        return storeFeatures.supportsScan() || edgeStoreScan instanceof SplitScanStore;
+    }
+
+    /**
+     * Partitions the keys of the edge store into splits which can be scanned in parallel by {@link #getEdgeStoreKeys(ScanSplit)}.
+     * If the storage backend cannot partition its keys, a single split covering all keys is returned.
+     *
+     * @param numSplits Desired number of splits
+     * @return
+     * @throws StorageException
+     */
+    public List<ScanSplit> getEdgeStoreScanSplits(int numSplits) throws StorageException {
+        Preconditions.checkArgument(numSplits>0,"Number of splits must be positive");
+        Preconditions.checkArgument(supportsEdgeStoreScan(),"Storage backend does not support scans");
+        if (!(edgeStoreScan instanceof SplitScanStore)) return Collections.singletonList(ScanSplit.ALL);
+        BackendTransaction tx = beginTransaction(true);
+        try {
+            return ((SplitScanStore)edgeStoreScan).getScanSplits(numSplits,tx.getStoreTransactionHandle());
+        } finally {
+            tx.commit();
+        }
+    }
+
+    /**
+     * Returns an iterator over the keys of the edge store in the given split. The keys are read in a separate
+     * read-only transaction which is committed when the iterator is closed.
+     *
+     * @param split Split returned by {@link #getEdgeStoreScanSplits(int)}
+     * @return
+     * @throws StorageException
+     */
+    public RecordIterator<ByteBuffer> getEdgeStoreKeys(ScanSplit split) throws StorageException {
+        Preconditions.checkArgument(supportsEdgeStoreScan(),"Storage backend does not support scans");
+        final BackendTransaction tx = beginTransaction(true);
+        final RecordIterator<ByteBuffer> keys;
+        try {
+            if (edgeStoreScan instanceof SplitScanStore) {
+                keys = ((SplitScanStore)edgeStoreScan).getKeys(split,tx.getStoreTransactionHandle());
+            } else {
+                Preconditions.checkArgument(split.isAll(),"Storage backend does not support splits");
+                keys = edgeStoreScan.getKeys(tx.getStoreTransactionHandle());
+            }
+        } catch (StorageException e) {
+            tx.abort();
+            throw e;
+        }
+        return commitOnClose(keys,tx);
+    }
+
+    /**
+     * Returns an iterator over the keys of the vertex index. As for {@link #getEdgeStoreKeys(ScanSplit)}, the keys are
+     * read in a separate read-only transaction which is committed when the iterator is closed.
+     *
+     * @return
+     * @throws StorageException
+     */
+    public RecordIterator<ByteBuffer> getVertexIndexKeys() throws StorageException {
+        Preconditions.checkNotNull(vertexIndexStoreScan,"Backend has not yet been initialized");
+        Preconditions.checkArgument(storeFeatures.supportsScan(),"Storage backend does not support scans");
+        final BackendTransaction tx = beginTransaction(true);
+        final RecordIterator<ByteBuffer> keys;
+        try {
+            keys = vertexIndexStoreScan.getKeys(tx.getStoreTransactionHandle());
+        } catch (StorageException e) {
+            tx.abort();
+            throw e;
+        }
+        return commitOnClose(keys,tx);
+    }
+
+    private static RecordIterator<ByteBuffer> commitOnClose(final RecordIterator<ByteBuffer> keys, final BackendTransaction tx) {
+        return new RecordIterator<ByteBuffer>() {
+
+            @Override
+            public boolean hasNext() throws StorageException {
+                return keys.hasNext();
+            }
+
+            @Override
+            public ByteBuffer next() throws StorageException {
+                return keys.next();
+            }
+
+            @Override
+            public void close() throws StorageException {
+                try {
+                    keys.close();
+                } finally {
+                    tx.commit();
+                }
+            }
+        };
+    }
+
     public IDAuthority getIDAuthority() {
         Preconditions.checkNotNull(idAuthority,"Backend has not yet been initialized");
         return idAuthority;
@@ -239,40 +520,82 @@ public class Backend {
         return storeManager.getFeatures();
     }
 
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
     //2. Entity Index
 
     //3. Messaging queues
 
     public BackendTransaction beginTransaction() throws StorageException {
-        StoreTransaction tx = storeManager.beginTransaction(ConsistencyLevel.DEFAULT);
+        return beginTransaction(false);
+    }
+
+    public BackendTransaction beginTransaction(boolean readOnly) throws StorageException {
+        return beginTransaction(readOnly,null,null);
+    }
+
+    /**
+     * Starts a new backend transaction. A read-only transaction is opened via
+     * {@link StoreManager#beginReadOnlyTransaction(ConsistencyLevel)} and neither buffers mutations nor acquires locks.
+     *
+     * The consistency levels only apply if the storage backend is a {@link TunableConsistencyStoreManager}
+     * and are ignored otherwise. Locks are always acquired with the consistency required for locking.
+     *
+     * @param readOnly whether the transaction only reads
+     * @param readConsistency Backend specific consistency level for reads or null to use the configured default
+     * @param writeConsistency Backend specific consistency level for writes or null to use the configured default
+     * @return New backend transaction
+     * @throws StorageException
+     */
+    public BackendTransaction beginTransaction(boolean readOnly, String readConsistency, String writeConsistency) throws StorageException {
+        RetryBudget budget = new RetryBudget(retryBudget);
+        boolean tunable = storeManager instanceof TunableConsistencyStoreManager
+                && (readConsistency!=null || writeConsistency!=null);
+        if (readOnly) {
+            //Neither buffered nor wrapped for locking, the buffering and locking stores accept the unwrapped handle
+            StoreTransaction tx = tunable?
+                    ((TunableConsistencyStoreManager)storeManager).beginReadOnlyTransaction(ConsistencyLevel.DEFAULT,readConsistency):
+                    storeManager.beginReadOnlyTransaction(ConsistencyLevel.DEFAULT);
+            return new BackendTransaction(tx,edgeStoreCache,budget);
+        }
+        StoreTransaction tx = tunable?
+                ((TunableConsistencyStoreManager)storeManager).beginTransaction(ConsistencyLevel.DEFAULT,readConsistency,writeConsistency):
+                storeManager.beginTransaction(ConsistencyLevel.DEFAULT);
         if (bufferSize>1) {
             assert storeManager.getFeatures().supportsBatchMutation();
-            if (isKeyColumnValueStore) {
-                assert storeManager instanceof KeyColumnValueStoreManager;
-                tx = new BufferTransaction(tx,(KeyColumnValueStoreManager)storeManager,bufferSize,writeAttempts,persistAttemptWaittime);
-            } else {
-                assert storeManager instanceof KeyValueStoreManager;
-                //TODO: support buffer mutations
-            }
+            tx = new BufferTransaction(tx,bufferMutationStore,bufferSize,writeAttempts,retryPolicy,budget,
+                    bufferFlushExecutor,maxPendingBuffers);
         }
         if (!storeFeatures.supportsLocking()) {
             if (storeFeatures.supportsTransactions()) {
                 //No transaction wrapping needed
             } else if (storeFeatures.supportsConsistentKeyOperations()) {
-                tx = new ConsistentKeyLockTransaction(tx,storeManager.beginTransaction(ConsistencyLevel.KEY_CONSISTENT));
+                //Lock claims are written in one batch if the backend supports it
+                BufferMutationKeyColumnValueStore lockMutationStore = isKeyColumnValueStore && storeFeatures.supportsBatchMutation()?
+                        (KeyColumnValueStoreManager)storeManager:null;
+                tx = new ConsistentKeyLockTransaction(tx,storeManager.beginTransaction(ConsistencyLevel.KEY_CONSISTENT),
+                        lockMutationStore,lockVerifyExecutor);
             }
         }
-        return new BackendTransaction(tx);
+        return new BackendTransaction(tx,edgeStoreCache,budget);
     }
 
     public void close() throws StorageException {
+        if (asyncMutationStore!=null) asyncMutationStore.close();
         edgeStore.close();
         vertexIndexStore.close();
         idAuthority.close();
         storeManager.close();
+        if (bufferFlushExecutor!=null) bufferFlushExecutor.shutdown();
+        if (lockVerifyExecutor!=null) lockVerifyExecutor.shutdown();
+        if (bufferMutationStore instanceof MetricInstrumentedBufferMutationStore)
+            ((MetricInstrumentedBufferMutationStore)bufferMutationStore).close();
     }
 
     public void clearStorage() throws StorageException {
+        if (asyncMutationStore!=null) asyncMutationStore.close();
         edgeStore.close();
         vertexIndexStore.close();
         idAuthority.close();
@@ -1,7 +1,9 @@
 package com.thinkaurelius.titan.diskstorage;
 
 import com.google.common.base.Preconditions;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.CachedKeyColumnValueStore;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreTransaction;
+import com.thinkaurelius.titan.diskstorage.util.RetryBudget;
 
 /**
  * (c) Matthias Broecheler (me@matthiasb.com)
@@ -10,24 +12,55 @@ import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreTransaction;
 public class BackendTransaction implements TransactionHandle {
 
     private final StoreTransaction storeTx;
+    private final CachedKeyColumnValueStore edgeStoreCache;
+    private final RetryBudget retryBudget;
     
     public BackendTransaction(final StoreTransaction storeTx) {
+        this(storeTx,null);
+    }
+
+    public BackendTransaction(final StoreTransaction storeTx, final CachedKeyColumnValueStore edgeStoreCache) {
+        this(storeTx,edgeStoreCache,RetryBudget.UNLIMITED);
+    }
+
+    public BackendTransaction(final StoreTransaction storeTx, final CachedKeyColumnValueStore edgeStoreCache,
+                              final RetryBudget retryBudget) {
         Preconditions.checkNotNull(storeTx);
+        Preconditions.checkNotNull(retryBudget);
         this.storeTx=storeTx;
+        this.edgeStoreCache=edgeStoreCache;
+        this.retryBudget=retryBudget;
     }
 
     public StoreTransaction getStoreTransactionHandle() {
         return storeTx;
     }
 
+    /**
+     * Returns the budget for retries of failed storage operations shared by all operations of this transaction
+     *
+     * @return
+     */
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
     @Override
     public void commit() throws StorageException {
-        storeTx.commit();
+        try {
+            storeTx.commit();
+        } finally {
+            if (edgeStoreCache!=null) edgeStoreCache.committed(storeTx);
+        }
     }
 
     @Override
     public void abort() throws StorageException {
-        storeTx.abort();
+        try {
+            storeTx.abort();
+        } finally {
+            if (edgeStoreCache!=null) edgeStoreCache.aborted(storeTx);
+        }
     }
 
     @Override
@@ -3,6 +3,7 @@ package com.thinkaurelius.titan.diskstorage;
 import com.thinkaurelius.titan.graphdb.database.idassigner.IDBlockSizer;
 
 import java.nio.ByteBuffer;
+import java.util.Map;
 
 /**
  * (c) Matthias Broecheler (me@matthiasb.com)
@@ -23,6 +24,18 @@ public interface IDAuthority {
      */
     public long[] getIDBlock(int partition) throws StorageException;
 
+    /**
+     * Returns the given number of id blocks for each of the given partitions. Each returned block is uniquely assigned
+     * in the same way as a block returned by {@link #getIDBlock(int)}.
+     *
+     * Implementations should acquire all blocks in as few interactions with the storage backend as possible.
+     *
+     * @param numBlocks Map from the partitions for which to request id blocks to the number of blocks to request
+     * @return Map from the requested partitions to their blocks, each specified as by {@link #getIDBlock(int)}
+     * @throws StorageException
+     */
+    public Map<Integer,long[][]> getIDBlocks(Map<Integer,Integer> numBlocks) throws StorageException;
+
     /**
      * Returns the smallest not yet allocated id for the given partition
      *
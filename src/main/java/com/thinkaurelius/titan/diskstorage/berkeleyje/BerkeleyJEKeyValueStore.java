@@ -16,6 +16,7 @@ import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -49,6 +50,16 @@ public class BerkeleyJEKeyValueStore implements KeyValueStore {
 	private static final Transaction getTransaction(StoreTransaction txh) {
 		return (txh==null?null:((BerkeleyJETx)txh).getTransaction());
 	}
+
+    private static final LockMode getLockMode(StoreTransaction txh) {
+        return (txh==null?LockMode.DEFAULT:((BerkeleyJETx)txh).getLockMode());
+    }
+
+    private static final Transaction getWriteTransaction(StoreTransaction txh) throws StorageException {
+        if (txh!=null && ((BerkeleyJETx)txh).isReadOnly())
+            throw new PermanentStorageException("Cannot write in a read-only transaction");
+        return getTransaction(txh);
+    }
 	
 	@Override
 	public boolean containsKey(ByteBuffer key, StoreTransaction txh) throws StorageException {
@@ -58,7 +69,7 @@ public class BerkeleyJEKeyValueStore implements KeyValueStore {
 			DatabaseEntry dbkey = getDataEntry(key);
 			DatabaseEntry data = new DatabaseEntry();
 			
-			OperationStatus status = db.get(tx, dbkey, data, LockMode.DEFAULT);
+			OperationStatus status = db.get(tx, dbkey, data, getLockMode(txh));
 			return status==OperationStatus.SUCCESS;
 
 		} catch (DatabaseException e) {
@@ -85,7 +96,7 @@ public class BerkeleyJEKeyValueStore implements KeyValueStore {
 			DatabaseEntry dbkey = getDataEntry(key);
 			DatabaseEntry data = new DatabaseEntry();
 			
-			OperationStatus status = db.get(tx, dbkey, data, LockMode.DEFAULT);
+			OperationStatus status = db.get(tx, dbkey, data, getLockMode(txh));
 			if (status==OperationStatus.SUCCESS) {
 				return getByteBuffer(data);
 			} else {
@@ -127,42 +138,35 @@ public class BerkeleyJEKeyValueStore implements KeyValueStore {
 		log.trace("Get slice query");
 		Transaction tx =getTransaction(txh);
 		Cursor cursor = null;
-		List<KeyValueEntry> result;
 		try {
-			//log.debug("Sta: {}",ByteBufferUtil.toBitString(keyStart, " "));
-			//log.debug("Head: {}",ByteBufferUtil.toBitString(keyEnd, " "));
-			
-			DatabaseEntry foundKey = getDataEntry(keyStart);
-			DatabaseEntry foundData = new DatabaseEntry();
-			
+			//The cursor reads each record into the same pair of reusable entries. The search key is copied so that
+			//the caller's buffer is never overwritten by the cursor.
+			byte[] start = new byte[Math.max(keyStart.remaining(),INITIAL_ENTRY_SIZE)];
+			keyStart.duplicate().get(start,0,keyStart.remaining());
+			DatabaseEntry foundKey = new DatabaseEntry(start,0,keyStart.remaining());
+			foundKey.setReuseBuffer(true);
+			DatabaseEntry foundData = new DatabaseEntry(new byte[INITIAL_ENTRY_SIZE]);
+			foundData.setReuseBuffer(true);
+
 			cursor = db.openCursor(tx, null);
-			OperationStatus status = cursor.getSearchKeyRange(foundKey, foundData, LockMode.DEFAULT);
-			result = new ArrayList<KeyValueEntry>();
+			OperationStatus status = cursor.getSearchKeyRange(foundKey, foundData, getLockMode(txh));
+			SliceBuffer result = new SliceBuffer();
 			//Iterate until given condition is satisfied or end of records
 			while (status == OperationStatus.SUCCESS) {
 				
 				ByteBuffer key = getByteBuffer(foundKey);
-				//log.debug("Fou: {}",ByteBufferUtil.toBitString(nextKey, " "));
-				//keyEnd.rewind();
 				if (!ByteBufferUtil.isSmallerThanWithEqual(key, keyEnd, false)) break;
-				//nextKey.rewind();
 				
-				boolean skip = false;
-
-				if (!skip) {
-					skip = !selector.include(key);
-					
-					if (!skip) {
-						result.add(new KeyValueEntry(key,getByteBuffer(foundData)));
-					}
+				if (selector.include(key)) {
+					result.add(foundKey,foundData);
 				}
 				if (selector.reachedLimit()) {
 					break;
 				}
-		        status = cursor.getNext(foundKey, foundData, LockMode.DEFAULT);
+		        status = cursor.getNext(foundKey, foundData, getLockMode(txh));
 			}
 			log.trace("Retrieved: {}",result.size());
-            return result;
+            return result.getEntries();
 		} catch (Exception e) {
 			throw new PermanentStorageException(e);
 		} finally {
@@ -174,6 +178,58 @@ public class BerkeleyJEKeyValueStore implements KeyValueStore {
 		}
 	}
 
+    private static final int INITIAL_ENTRY_SIZE = 64;
+
+    /**
+     * Accumulates the keys and values of the records in a slice in one backing array. The returned entries
+     * are views into that array which avoids allocating two arrays per retrieved record.
+     */
+    private static class SliceBuffer {
+
+        private byte[] data = new byte[1024];
+        private int length = 0;
+        //Alternating end offsets of the key and value of each record in data
+        private int[] ends = new int[32];
+        private int size = 0;
+
+        void add(DatabaseEntry key, DatabaseEntry value) {
+            if (2*size+2>ends.length) ends = Arrays.copyOf(ends,2*ends.length);
+            ensureCapacity(length+key.getSize()+value.getSize());
+            System.arraycopy(key.getData(),key.getOffset(),data,length,key.getSize());
+            length+=key.getSize();
+            ends[2*size]=length;
+            System.arraycopy(value.getData(),value.getOffset(),data,length,value.getSize());
+            length+=value.getSize();
+            ends[2*size+1]=length;
+            size++;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity>data.length) data = Arrays.copyOf(data,Math.max(capacity,2*data.length));
+        }
+
+        int size() {
+            return size;
+        }
+
+        List<KeyValueEntry> getEntries() {
+            List<KeyValueEntry> entries = new ArrayList<KeyValueEntry>(size);
+            int offset = 0;
+            for (int i=0;i<size;i++) {
+                int keyEnd = ends[2*i], valueEnd = ends[2*i+1];
+                entries.add(new KeyValueEntry(view(offset,keyEnd),view(keyEnd,valueEnd)));
+                offset = valueEnd;
+            }
+            return entries;
+        }
+
+        private ByteBuffer view(int from, int to) {
+            ByteBuffer b = ByteBuffer.wrap(data,from,to-from);
+            return b.slice();
+        }
+
+    }
+
     private static class KeysIterator implements RecordIterator<ByteBuffer> {
 
         final StoreTransaction txh;
@@ -197,7 +253,7 @@ public class BerkeleyJEKeyValueStore implements KeyValueStore {
 
             try {
                 cursor = db.openCursor(getTransaction(txh), null);
-                OperationStatus status = cursor.getFirst(foundKey,foundValue,LockMode.DEFAULT);
+                OperationStatus status = cursor.getFirst(foundKey,foundValue,getLockMode(txh));
                 if (status==OperationStatus.SUCCESS) {
                     nextKey = getByteBuffer(foundKey);
                 } else {
@@ -225,7 +281,7 @@ public class BerkeleyJEKeyValueStore implements KeyValueStore {
 
         private void getNextKey() throws StorageException {
             try {
-                OperationStatus status = cursor.getNext(foundKey,foundValue,LockMode.DEFAULT);
+                OperationStatus status = cursor.getNext(foundKey,foundValue,getLockMode(txh));
                 if (status==OperationStatus.SUCCESS) {
                     nextKey = getByteBuffer(foundKey);
                 } else {
@@ -262,7 +318,7 @@ public class BerkeleyJEKeyValueStore implements KeyValueStore {
 
     @Override
     public void insert(ByteBuffer key, ByteBuffer value, StoreTransaction txh) throws StorageException {
-        Transaction tx = getTransaction(txh);
+        Transaction tx = getWriteTransaction(txh);
         insert(key,value,tx,true);
     }
     
@@ -292,7 +348,7 @@ public class BerkeleyJEKeyValueStore implements KeyValueStore {
 	@Override
 	public void delete(ByteBuffer key, StoreTransaction txh) throws StorageException {
 		log.trace("Deletion");
-		Transaction tx = getTransaction(txh);
+		Transaction tx = getWriteTransaction(txh);
 		try {
             OperationStatus status = db.delete(tx, getDataEntry(key));
             if (status!=OperationStatus.SUCCESS) {
@@ -304,9 +360,53 @@ public class BerkeleyJEKeyValueStore implements KeyValueStore {
 	}
 	
 
+    @Override
+    public void mutate(List<KeyValueEntry> additions, List<ByteBuffer> deletions, StoreTransaction txh) throws StorageException {
+        log.trace("Batch mutation");
+        Transaction tx = getWriteTransaction(txh);
+        Cursor cursor = null;
+        boolean success = false;
+        try {
+            //Reuse one cursor for the entire (sorted) batch so that consecutive operations hit neighboring btree nodes
+            cursor = db.openCursor(tx, null);
+            if (deletions!=null && !deletions.isEmpty()) {
+                DatabaseEntry foundData = new DatabaseEntry();
+                foundData.setPartial(0,0,true);
+                for (ByteBuffer key : deletions) {
+                    OperationStatus status = cursor.getSearchKey(getDataEntry(key), foundData, LockMode.RMW);
+                    if (status==OperationStatus.SUCCESS) {
+                        status = cursor.delete();
+                        if (status!=OperationStatus.SUCCESS) {
+                            throw new PermanentStorageException("Could not remove: " + status);
+                        }
+                    }
+                }
+            }
+            if (additions!=null && !additions.isEmpty()) {
+                for (KeyValueEntry entry : additions) {
+                    OperationStatus status = cursor.put(getDataEntry(entry.getKey()), getDataEntry(entry.getValue()));
+                    if (status!=OperationStatus.SUCCESS) {
+                        throw new PermanentStorageException("Could not write entity, return status: "+ status);
+                    }
+                }
+            }
+            success = true;
+        } catch (DatabaseException e) {
+            throw new PermanentStorageException(e);
+        } finally {
+            try {
+                if (cursor!=null) cursor.close();
+            } catch (Exception e) {
+                //Do not mask the exception which caused the mutation to fail
+                if (success) throw new PermanentStorageException(e);
+                else log.warn("Could not close cursor after failed batch mutation",e);
+            }
+        }
+    }
+
 	private final static DatabaseEntry getDataEntry(ByteBuffer key) {
 		assert key.position()==0;
-		DatabaseEntry dbkey = new DatabaseEntry(key.array(),key.arrayOffset(),key.arrayOffset()+key.remaining());
+		DatabaseEntry dbkey = new DatabaseEntry(key.array(),key.arrayOffset(),key.remaining());
 		return dbkey;
 	}
 	
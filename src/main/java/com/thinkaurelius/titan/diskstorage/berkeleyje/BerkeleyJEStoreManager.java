@@ -27,6 +27,14 @@ public class BerkeleyJEStoreManager implements KeyValueStoreManager {
     public static final String CACHE_KEY = "cache-percentage";
     public static final int CACHE_DEFAULT = 65;
 
+    /**
+     * Isolation of read-only transactions which read without a JE transaction. One of "read-committed",
+     * which reads committed data without holding read locks, or "read-uncommitted", which also reads uncommitted
+     * data and never blocks behind writers.
+     */
+    public static final String READ_ONLY_ISOLATION_KEY = "read-only-isolation";
+    public static final String READ_ONLY_ISOLATION_DEFAULT = "read-committed";
+
 	private final Map<String,BerkeleyJEKeyValueStore> stores;
 	
 
@@ -35,6 +43,7 @@ public class BerkeleyJEStoreManager implements KeyValueStoreManager {
 	private final boolean transactional;
 	private final boolean isReadOnly;
 	private final boolean batchLoading;
+    private final LockMode readOnlyLockMode;
     private final StoreFeatures features;
 
 	public BerkeleyJEStoreManager(Configuration configuration) throws StorageException {
@@ -53,11 +62,12 @@ public class BerkeleyJEStoreManager implements KeyValueStoreManager {
         this.transactional=transactional;
         if (!transactional) log.warn("Transactions are disabled. Ensure that there is at most one Titan instance interacting with this BerkeleyDB instance, otherwise your database may corrupt.");
         int cachePercentage = configuration.getInt(CACHE_KEY,CACHE_DEFAULT);
+        readOnlyLockMode = getReadOnlyLockMode(configuration.getString(READ_ONLY_ISOLATION_KEY,READ_ONLY_ISOLATION_DEFAULT));
 
         initialize(cachePercentage);
 
         features = new StoreFeatures();
-        features.supportsScan=true; features.supportsBatchMutation=false; features.supportsTransactions=true;
+        features.supportsScan=true; features.supportsBatchMutation=true; features.supportsMultiQuery=false; features.supportsTransactions=true;
         features.supportsConsistentKeyOperations=false; features.supportsLocking=true; features.isKeyOrdered=true;
         features.isDistributed=false; features.hasLocalKeyPartition=false;
 	}
@@ -102,6 +112,21 @@ public class BerkeleyJEStoreManager implements KeyValueStoreManager {
 	}
 
 
+    private static LockMode getReadOnlyLockMode(String isolation) {
+        if (isolation.equalsIgnoreCase("read-committed")) return LockMode.READ_COMMITTED;
+        else if (isolation.equalsIgnoreCase("read-uncommitted")) return LockMode.READ_UNCOMMITTED;
+        else throw new IllegalArgumentException("Unknown read-only isolation: " + isolation);
+    }
+
+    /**
+     * Returns a transaction handle which reads without a JE transaction using the configured
+     * read-only isolation and rejects writes.
+     */
+    @Override
+    public BerkeleyJETx beginReadOnlyTransaction(ConsistencyLevel level) throws StorageException {
+        return new BerkeleyJETx(null,level,readOnlyLockMode,true);
+    }
+
 	@Override
 	public BerkeleyJEKeyValueStore openDatabase(String name) throws StorageException {
 		Preconditions.checkNotNull(name);
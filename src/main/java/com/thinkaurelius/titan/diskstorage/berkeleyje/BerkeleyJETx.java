@@ -2,6 +2,7 @@ package com.thinkaurelius.titan.diskstorage.berkeleyje;
 
 import com.google.common.collect.Lists;
 import com.sleepycat.je.DatabaseException;
+import com.sleepycat.je.LockMode;
 import com.sleepycat.je.Transaction;
 import com.thinkaurelius.titan.diskstorage.PermanentStorageException;
 import com.thinkaurelius.titan.diskstorage.StorageException;
@@ -19,17 +20,39 @@ public class BerkeleyJETx extends AbstractStoreTransaction {
 	private static final Logger log = LoggerFactory.getLogger(BerkeleyJETx.class);
 	
 	private Transaction tx;
+    private final LockMode lockMode;
+    private final boolean readOnly;
     private Set<RecordIterator> openIterators = null;
 	
 	public BerkeleyJETx(Transaction t, ConsistencyLevel level) {
-        super(level);
-		tx = t;
+        this(t,level,LockMode.DEFAULT,false);
 	}
 
+    /**
+     * @param t JE transaction or null to execute each operation on its own
+     * @param level
+     * @param lockMode lock mode used for all reads in this transaction
+     * @param readOnly whether writes are rejected
+     */
+    public BerkeleyJETx(Transaction t, ConsistencyLevel level, LockMode lockMode, boolean readOnly) {
+        super(level);
+        tx = t;
+        this.lockMode = lockMode;
+        this.readOnly = readOnly;
+    }
+
 	public Transaction getTransaction() {
 		return tx;
 	}
 
+    public LockMode getLockMode() {
+        return lockMode;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
     synchronized void registerIterator(RecordIterator<?> iterator) {
         if (openIterators==null) openIterators = new HashSet<RecordIterator>();
         openIterators.add(iterator);
@@ -0,0 +1,334 @@
+package com.thinkaurelius.titan.diskstorage.berkeleyje;
+
+import com.google.common.base.Preconditions;
+import com.thinkaurelius.titan.diskstorage.PermanentStorageException;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.TemporaryStorageException;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.RecordIterator;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreTransaction;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.KeySelector;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.KeyValueEntry;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.KeyValueStore;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.LimitedSelector;
+import com.thinkaurelius.titan.diskstorage.util.ByteBufferUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * {@link KeyValueStore} which hash-partitions its keys across the shards of a {@link ShardedBerkeleyJEStoreManager}.
+ *
+ * Keys are assigned to a shard by the hash of their first prefixLength bytes. Since the adapter prefixes each
+ * key-value key with the row key, a prefix length equal to the row key length keeps all columns of a row on the
+ * same shard so that column slices are answered by a single shard. Ranges which span multiple prefixes are read
+ * from all shards and merged. A store with prefix length 0 is not partitioned and kept entirely on one shard.
+ *
+ * Batch mutations which touch multiple shards are applied to the shards in parallel.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class ShardedBerkeleyJEKeyValueStore implements KeyValueStore {
+
+    private final String name;
+    private final ShardedBerkeleyJEStoreManager manager;
+    //Null for the shards this store does not use if it is not partitioned
+    private final BerkeleyJEKeyValueStore[] shards;
+    private final int prefixLength;
+    private final int homeShard;
+
+    ShardedBerkeleyJEKeyValueStore(String name, ShardedBerkeleyJEStoreManager manager, int prefixLength) throws StorageException {
+        Preconditions.checkArgument(prefixLength>=0);
+        this.name = name;
+        this.manager = manager;
+        this.prefixLength = prefixLength;
+        this.shards = new BerkeleyJEKeyValueStore[manager.getNumShards()];
+        if (isPartitioned()) {
+            homeShard = -1;
+            for (int i=0;i<shards.length;i++) shards[i]=manager.getShard(i).openDatabase(name);
+        } else {
+            homeShard = (name.hashCode() & Integer.MAX_VALUE) % shards.length;
+            shards[homeShard]=manager.getShard(homeShard).openDatabase(name);
+        }
+    }
+
+    private boolean isPartitioned() {
+        return prefixLength>0;
+    }
+
+    private static BerkeleyJETx getTransaction(StoreTransaction txh, int shard) throws StorageException {
+        return txh==null?null:((ShardedBerkeleyJETx)txh).getShardTransaction(shard);
+    }
+
+    /**
+     * Returns the shard of the given key
+     */
+    int getShard(ByteBuffer key) {
+        if (!isPartitioned()) return homeShard;
+        Preconditions.checkArgument(key.remaining()>=prefixLength,
+                "Key is shorter than the prefix length %s of store %s",prefixLength,name);
+        int h = 1;
+        for (int i=key.position();i<key.position()+prefixLength;i++) h = 31*h + key.get(i);
+        //Spread the bits since prefixes are often sequential ids
+        h ^= h>>>16;
+        h *= 0x85ebca6b;
+        h ^= h>>>13;
+        h *= 0xc2b2ae35;
+        h ^= h>>>16;
+        return (h & Integer.MAX_VALUE) % shards.length;
+    }
+
+    /**
+     * Returns the shard which contains all keys in the given range or -1 if the range spans multiple prefixes
+     */
+    private int getShard(ByteBuffer keyStart, ByteBuffer keyEnd) {
+        if (!isPartitioned()) return homeShard;
+        if (keyStart.remaining()<prefixLength) return -1;
+        ByteBuffer prefix = keyStart.duplicate();
+        prefix.limit(prefix.position()+prefixLength);
+        prefix = prefix.slice();
+        ByteBuffer prefixEnd;
+        try {
+            prefixEnd = ByteBufferUtil.nextBiggerBuffer(prefix);
+        } catch (IllegalArgumentException e) {
+            //Prefix consists of 0xFF bytes only
+            return -1;
+        }
+        if (ByteBufferUtil.compare(keyEnd,prefixEnd)<=0) return getShard(keyStart);
+        else return -1;
+    }
+
+    @Override
+    public RecordIterator<ByteBuffer> getKeys(StoreTransaction txh) throws StorageException {
+        if (!isPartitioned()) return shards[homeShard].getKeys(getTransaction(txh,homeShard));
+        List<RecordIterator<ByteBuffer>> iterators = new ArrayList<RecordIterator<ByteBuffer>>(shards.length);
+        for (int i=0;i<shards.length;i++) iterators.add(shards[i].getKeys(getTransaction(txh,i)));
+        return new MergedKeyIterator(iterators);
+    }
+
+    @Override
+    public List<KeyValueEntry> getSlice(ByteBuffer keyStart, ByteBuffer keyEnd, KeySelector selector, StoreTransaction txh) throws StorageException {
+        int shard = getShard(keyStart,keyEnd);
+        if (shard>=0) return shards[shard].getSlice(keyStart,keyEnd,selector,getTransaction(txh,shard));
+        //Retrieve the entire range from all shards since the selector has to see the keys in order
+        return mergeSlices(keyStart,keyEnd,selector,Integer.MAX_VALUE,txh);
+    }
+
+    /**
+     * Merges the slices of all shards in key order and applies the selector to the merged keys.
+     *
+     * @param shardLimit Maximum number of entries to retrieve from each shard. Must not be smaller than the
+     *                   number of keys the selector includes.
+     */
+    private List<KeyValueEntry> mergeSlices(ByteBuffer keyStart, ByteBuffer keyEnd, KeySelector selector, int shardLimit, StoreTransaction txh) throws StorageException {
+        List<List<KeyValueEntry>> slices = new ArrayList<List<KeyValueEntry>>(shards.length);
+        for (int i=0;i<shards.length;i++) {
+            KeySelector shardSelector = shardLimit==Integer.MAX_VALUE?KeySelector.SelectAll:new LimitedSelector(shardLimit);
+            slices.add(shards[i].getSlice(keyStart,keyEnd,shardSelector,getTransaction(txh,i)));
+        }
+        int[] positions = new int[slices.size()];
+        List<KeyValueEntry> result = new ArrayList<KeyValueEntry>();
+        while (true) {
+            int next = -1;
+            for (int i=0;i<slices.size();i++) {
+                if (positions[i]<slices.get(i).size() && (next<0 ||
+                        ByteBufferUtil.compare(slices.get(i).get(positions[i]).getKey(),slices.get(next).get(positions[next]).getKey())<0))
+                    next = i;
+            }
+            if (next<0) break;
+            KeyValueEntry entry = slices.get(next).get(positions[next]++);
+            if (selector.include(entry.getKey())) result.add(entry);
+            if (selector.reachedLimit()) break;
+        }
+        return result;
+    }
+
+    @Override
+    public List<KeyValueEntry> getSlice(ByteBuffer keyStart, ByteBuffer keyEnd, int limit, StoreTransaction txh) throws StorageException {
+        int shard = getShard(keyStart,keyEnd);
+        if (shard>=0) return shards[shard].getSlice(keyStart,keyEnd,new LimitedSelector(limit),getTransaction(txh,shard));
+        //The first limit keys of the merged range are among the first limit keys of each shard
+        return mergeSlices(keyStart,keyEnd,new LimitedSelector(limit),limit,txh);
+    }
+
+    @Override
+    public List<KeyValueEntry> getSlice(ByteBuffer keyStart, ByteBuffer keyEnd, StoreTransaction txh) throws StorageException {
+        return getSlice(keyStart,keyEnd,Integer.MAX_VALUE,txh);
+    }
+
+    @Override
+    public void insert(ByteBuffer key, ByteBuffer value, StoreTransaction txh) throws StorageException {
+        int shard = getShard(key);
+        shards[shard].insert(key,value,getTransaction(txh,shard));
+    }
+
+    @Override
+    public void delete(ByteBuffer key, StoreTransaction txh) throws StorageException {
+        int shard = getShard(key);
+        shards[shard].delete(key,getTransaction(txh,shard));
+    }
+
+    @Override
+    public void mutate(List<KeyValueEntry> additions, List<ByteBuffer> deletions, StoreTransaction txh) throws StorageException {
+        if (!isPartitioned()) {
+            shards[homeShard].mutate(additions,deletions,getTransaction(txh,homeShard));
+            return;
+        }
+        //Splitting the sorted lists by shard keeps each part sorted
+        final List<KeyValueEntry>[] shardAdditions = new List[shards.length];
+        final List<ByteBuffer>[] shardDeletions = new List[shards.length];
+        if (additions!=null) {
+            for (KeyValueEntry entry : additions) {
+                int shard = getShard(entry.getKey());
+                if (shardAdditions[shard]==null) shardAdditions[shard]=new ArrayList<KeyValueEntry>();
+                shardAdditions[shard].add(entry);
+            }
+        }
+        if (deletions!=null) {
+            for (ByteBuffer key : deletions) {
+                int shard = getShard(key);
+                if (shardDeletions[shard]==null) shardDeletions[shard]=new ArrayList<ByteBuffer>();
+                shardDeletions[shard].add(key);
+            }
+        }
+
+        List<Integer> touched = new ArrayList<Integer>(shards.length);
+        for (int i=0;i<shards.length;i++) {
+            if (shardAdditions[i]!=null || shardDeletions[i]!=null) touched.add(i);
+        }
+        if (touched.isEmpty()) return;
+
+        //Start the shard transactions on this thread, the mutations are run by the manager's writer threads
+        final BerkeleyJETx[] txs = new BerkeleyJETx[shards.length];
+        for (int shard : touched) txs[shard]=getTransaction(txh,shard);
+        List<Future<?>> futures = new ArrayList<Future<?>>(touched.size()-1);
+        for (int i=1;i<touched.size();i++) {
+            final int shard = touched.get(i);
+            futures.add(manager.submitWrite(new Callable<Void>() {
+                @Override
+                public Void call() throws StorageException {
+                    shards[shard].mutate(shardAdditions[shard],shardDeletions[shard],txs[shard]);
+                    return null;
+                }
+            }));
+        }
+        int first = touched.get(0);
+        StorageException failure = null;
+        try {
+            shards[first].mutate(shardAdditions[first],shardDeletions[first],txs[first]);
+        } catch (StorageException e) {
+            failure = e;
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure==null) failure = new TemporaryStorageException("Interrupted while waiting for shard mutations",e);
+            } catch (ExecutionException e) {
+                if (failure==null) {
+                    if (e.getCause() instanceof StorageException) failure = (StorageException)e.getCause();
+                    else failure = new PermanentStorageException(e.getCause());
+                }
+            }
+        }
+        if (failure!=null) throw failure;
+    }
+
+    @Override
+    public ByteBuffer get(ByteBuffer key, StoreTransaction txh) throws StorageException {
+        int shard = getShard(key);
+        return shards[shard].get(key,getTransaction(txh,shard));
+    }
+
+    @Override
+    public boolean containsKey(ByteBuffer key, StoreTransaction txh) throws StorageException {
+        int shard = getShard(key);
+        return shards[shard].containsKey(key,getTransaction(txh,shard));
+    }
+
+    @Override
+    public void acquireLock(ByteBuffer key, ByteBuffer expectedValue, StoreTransaction txh) throws StorageException {
+        int shard = getShard(key);
+        shards[shard].acquireLock(key,expectedValue,getTransaction(txh,shard));
+    }
+
+    @Override
+    public ByteBuffer[] getLocalKeyPartition() throws StorageException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void close() throws StorageException {
+        try {
+            for (BerkeleyJEKeyValueStore shard : shards) {
+                if (shard!=null) shard.close();
+            }
+        } finally {
+            manager.removeDatabase(this);
+        }
+    }
+
+    /**
+     * Merges the sorted key iterators of all shards into one sorted iterator
+     */
+    private static class MergedKeyIterator implements RecordIterator<ByteBuffer> {
+
+        private final List<RecordIterator<ByteBuffer>> iterators;
+        private final ByteBuffer[] heads;
+
+        private MergedKeyIterator(List<RecordIterator<ByteBuffer>> iterators) throws StorageException {
+            this.iterators = iterators;
+            this.heads = new ByteBuffer[iterators.size()];
+            for (int i=0;i<heads.length;i++) advance(i);
+        }
+
+        private void advance(int i) throws StorageException {
+            heads[i] = iterators.get(i).hasNext()?iterators.get(i).next():null;
+        }
+
+        @Override
+        public boolean hasNext() throws StorageException {
+            for (ByteBuffer head : heads) {
+                if (head!=null) return true;
+            }
+            return false;
+        }
+
+        @Override
+        public ByteBuffer next() throws StorageException {
+            int next = -1;
+            for (int i=0;i<heads.length;i++) {
+                if (heads[i]!=null && (next<0 || ByteBufferUtil.compare(heads[i],heads[next])<0)) next = i;
+            }
+            if (next<0) throw new NoSuchElementException();
+            ByteBuffer key = heads[next];
+            advance(next);
+            return key;
+        }
+
+        @Override
+        public void close() throws StorageException {
+            StorageException failure = null;
+            for (RecordIterator<ByteBuffer> iterator : iterators) {
+                try {
+                    iterator.close();
+                } catch (StorageException e) {
+                    if (failure==null) failure = e;
+                }
+            }
+            if (failure!=null) throw failure;
+        }
+    }
+
+}
@@ -0,0 +1,199 @@
+package com.thinkaurelius.titan.diskstorage.berkeleyje;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.thinkaurelius.titan.diskstorage.Backend;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.ConsistencyLevel;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreFeatures;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.KeyValueStoreManager;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.thinkaurelius.titan.graphdb.configuration.GraphDatabaseConfiguration.STORAGE_DIRECTORY_KEY;
+
+/**
+ * Storage manager which hash-partitions the keys of each database across multiple independent
+ * {@link BerkeleyJEStoreManager} environments, called shards. Since each environment has its own log writer and
+ * cache, spreading the shards over multiple disks allows writes to scale beyond a single core and disk.
+ *
+ * The shards are either placed into the directories listed under {@link #SHARD_DIRECTORIES_KEY} or into
+ * the subdirectories shard-0, shard-1, ... of the storage directory. All other settings are passed on to
+ * each shard, except for the cache percentage which is divided evenly among the shards.
+ *
+ * The databases listed in the key prefix lengths are partitioned by the hash of their key prefix of the given length,
+ * all other databases are kept entirely on one shard. The number of shards and the prefix lengths must not be
+ * changed once data has been written.
+ *
+ * Since the transactions of the shards are committed independently, a transaction is not atomic across shards and
+ * this manager does not advertise transaction support. Titan therefore buffers and retries mutations as it does for
+ * other non-transactional backends.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ * @see ShardedBerkeleyJEKeyValueStore
+ */
+
+public class ShardedBerkeleyJEStoreManager implements KeyValueStoreManager {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedBerkeleyJEStoreManager.class);
+
+    /**
+     * Number of shards when no shard directories are given
+     */
+    public static final String SHARDS_KEY = "shards";
+    public static final int SHARDS_DEFAULT = 4;
+
+    /**
+     * Directories of the shards, one per shard
+     */
+    public static final String SHARD_DIRECTORIES_KEY = "shard-directories";
+
+    private final BerkeleyJEStoreManager[] shards;
+    private final Map<String,Integer> keyPrefixLengths;
+    private final Map<String,ShardedBerkeleyJEKeyValueStore> stores;
+    private final ExecutorService writers;
+    private final StoreFeatures features;
+
+    public ShardedBerkeleyJEStoreManager(Configuration configuration) throws StorageException {
+        this(configuration, Backend.STATIC_KEY_LENGTHS);
+    }
+
+    /**
+     * @param configuration
+     * @param keyPrefixLengths length of the key prefix by which each partitioned database is sharded
+     */
+    public ShardedBerkeleyJEStoreManager(Configuration configuration, Map<String,Integer> keyPrefixLengths) throws StorageException {
+        Preconditions.checkNotNull(keyPrefixLengths);
+        this.keyPrefixLengths = keyPrefixLengths;
+        stores = new HashMap<String, ShardedBerkeleyJEKeyValueStore>();
+
+        String[] shardDirs = configuration.getStringArray(SHARD_DIRECTORIES_KEY);
+        File[] directories;
+        if (shardDirs!=null && shardDirs.length>0) {
+            directories = new File[shardDirs.length];
+            for (int i=0;i<shardDirs.length;i++) directories[i]=new File(shardDirs[i].trim());
+        } else {
+            String storageDir = configuration.getString(STORAGE_DIRECTORY_KEY);
+            Preconditions.checkArgument(storageDir!=null,"Need to specify storage directory");
+            int numShards = configuration.getInt(SHARDS_KEY,SHARDS_DEFAULT);
+            Preconditions.checkArgument(numShards>0,"Invalid number of shards: %s",numShards);
+            directories = new File[numShards];
+            for (int i=0;i<numShards;i++) directories[i]=new File(storageDir,"shard-"+i);
+        }
+
+        int cachePercentage = configuration.getInt(BerkeleyJEStoreManager.CACHE_KEY,BerkeleyJEStoreManager.CACHE_DEFAULT);
+        shards = new BerkeleyJEStoreManager[directories.length];
+        try {
+            for (int i=0;i<directories.length;i++) {
+                if (!directories[i].exists()) directories[i].mkdirs();
+                BaseConfiguration shardConfig = new BaseConfiguration();
+                for (Iterator<?> keys = configuration.getKeys(); keys.hasNext(); ) {
+                    String key = (String)keys.next();
+                    shardConfig.setProperty(key,configuration.getProperty(key));
+                }
+                shardConfig.setProperty(STORAGE_DIRECTORY_KEY,directories[i].getAbsolutePath());
+                shardConfig.setProperty(BerkeleyJEStoreManager.CACHE_KEY,Math.max(1,cachePercentage/directories.length));
+                shards[i] = new BerkeleyJEStoreManager(shardConfig);
+            }
+        } catch (StorageException e) {
+            closeShards();
+            throw e;
+        } catch (RuntimeException e) {
+            closeShards();
+            throw e;
+        }
+        log.debug("Opened {} BerkeleyJE shards",shards.length);
+
+        writers = shards.length>1 ? Executors.newFixedThreadPool(shards.length-1,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("titan-bdb-shard-writer-%d").build()) : null;
+
+        StoreFeatures shardFeatures = shards[0].getFeatures();
+        features = new StoreFeatures();
+        features.supportsScan=shardFeatures.supportsScan; features.supportsBatchMutation=shardFeatures.supportsBatchMutation;
+        features.supportsMultiQuery=shardFeatures.supportsMultiQuery; features.supportsTransactions=false;
+        features.supportsConsistentKeyOperations=shardFeatures.supportsConsistentKeyOperations;
+        features.supportsLocking=shardFeatures.supportsLocking; features.isKeyOrdered=shardFeatures.isKeyOrdered;
+        features.isDistributed=false; features.hasLocalKeyPartition=false;
+    }
+
+    private void closeShards() throws StorageException {
+        for (BerkeleyJEStoreManager shard : shards) {
+            if (shard!=null) shard.close();
+        }
+    }
+
+    int getNumShards() {
+        return shards.length;
+    }
+
+    BerkeleyJEStoreManager getShard(int shard) {
+        return shards[shard];
+    }
+
+    /**
+     * Runs a mutation of one shard on a writer thread
+     */
+    Future<?> submitWrite(Callable<Void> write) {
+        return writers.submit(write);
+    }
+
+    @Override
+    public StoreFeatures getFeatures() {
+        return features;
+    }
+
+    @Override
+    public ShardedBerkeleyJETx beginTransaction(ConsistencyLevel level) throws StorageException {
+        return new ShardedBerkeleyJETx(this,level,false);
+    }
+
+    @Override
+    public ShardedBerkeleyJETx beginReadOnlyTransaction(ConsistencyLevel level) throws StorageException {
+        return new ShardedBerkeleyJETx(this,level,true);
+    }
+
+    @Override
+    public synchronized ShardedBerkeleyJEKeyValueStore openDatabase(String name) throws StorageException {
+        Preconditions.checkNotNull(name);
+        ShardedBerkeleyJEKeyValueStore store = stores.get(name);
+        if (store==null) {
+            Integer prefixLength = keyPrefixLengths.get(name);
+            store = new ShardedBerkeleyJEKeyValueStore(name,this,prefixLength==null?0:prefixLength);
+            stores.put(name,store);
+        }
+        return store;
+    }
+
+    synchronized void removeDatabase(ShardedBerkeleyJEKeyValueStore store) {
+        if (!stores.containsKey(store.getName())) {
+            throw new IllegalArgumentException("Tried to remove an unkown database from the storage manager");
+        }
+        stores.remove(store.getName());
+    }
+
+    @Override
+    public synchronized void close() throws StorageException {
+        if (!stores.isEmpty()) throw new IllegalStateException("Cannot shutdown manager since some databases are still open");
+        if (writers!=null) writers.shutdown();
+        closeShards();
+    }
+
+    @Override
+    public synchronized void clearStorage() throws StorageException {
+        if (!stores.isEmpty()) throw new IllegalStateException("Cannot delete store, since database is open: " + stores.keySet().toString());
+        if (writers!=null) writers.shutdown();
+        for (BerkeleyJEStoreManager shard : shards) shard.clearStorage();
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.thinkaurelius.titan.diskstorage.berkeleyje;
+
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.common.AbstractStoreTransaction;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.ConsistencyLevel;
+
+/**
+ * Transaction handle for {@link ShardedBerkeleyJEStoreManager} which starts one {@link BerkeleyJETx} per shard
+ * upon first access of that shard. Commit and abort are applied to all started shard transactions. Since the
+ * shard transactions are committed one after the other, a failure during commit may leave the transaction
+ * committed on some shards only. Hence, {@link ShardedBerkeleyJEStoreManager} does not advertise transaction support.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class ShardedBerkeleyJETx extends AbstractStoreTransaction {
+
+    private final ShardedBerkeleyJEStoreManager manager;
+    private final boolean readOnly;
+    private final BerkeleyJETx[] shardTxs;
+
+    /**
+     * @param manager
+     * @param level
+     * @param readOnly whether the shard transactions are started as read-only transactions
+     */
+    public ShardedBerkeleyJETx(ShardedBerkeleyJEStoreManager manager, ConsistencyLevel level, boolean readOnly) {
+        super(level);
+        this.manager = manager;
+        this.readOnly = readOnly;
+        this.shardTxs = new BerkeleyJETx[manager.getNumShards()];
+    }
+
+    /**
+     * Returns the transaction on the given shard, starting it if necessary
+     */
+    synchronized BerkeleyJETx getShardTransaction(int shard) throws StorageException {
+        if (shardTxs[shard]==null) {
+            BerkeleyJEStoreManager shardManager = manager.getShard(shard);
+            shardTxs[shard] = readOnly ? shardManager.beginReadOnlyTransaction(getConsistencyLevel())
+                    : shardManager.beginTransaction(getConsistencyLevel());
+        }
+        return shardTxs[shard];
+    }
+
+    @Override
+    public synchronized void commit() throws StorageException {
+        StorageException failure = null;
+        for (BerkeleyJETx tx : shardTxs) {
+            if (tx==null) continue;
+            try {
+                if (failure==null) tx.commit();
+                else tx.abort();
+            } catch (StorageException e) {
+                if (failure==null) failure = e;
+            }
+        }
+        if (failure!=null) throw failure;
+    }
+
+    @Override
+    public synchronized void abort() throws StorageException {
+        StorageException failure = null;
+        for (BerkeleyJETx tx : shardTxs) {
+            if (tx==null) continue;
+            try {
+                tx.abort();
+            } catch (StorageException e) {
+                if (failure==null) failure = e;
+            }
+        }
+        if (failure!=null) throw failure;
+    }
+
+}
@@ -7,13 +7,14 @@ import com.thinkaurelius.titan.diskstorage.keycolumnvalue.ConsistencyLevel;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.KeyColumnValueStoreManager;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreFeatures;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreTransaction;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.TunableConsistencyStoreManager;
 import org.apache.commons.configuration.Configuration;
 
 /**
  * (c) Matthias Broecheler (me@matthiasb.com)
  */
 
-public abstract class AbstractCassandraStoreManager extends DistributedStoreManager implements KeyColumnValueStoreManager {
+public abstract class AbstractCassandraStoreManager extends DistributedStoreManager implements KeyColumnValueStoreManager, TunableConsistencyStoreManager {
 
     public enum Partitioner { 
         
@@ -60,6 +61,40 @@ public abstract class AbstractCassandraStoreManager extends DistributedStoreMana
     public static final String REPLICATION_FACTOR_KEY = "replication-factor";
     public static final int REPLICATION_FACTOR_DEFAULT  = 1;
 
+    /**
+     * Whether reads which take longer than usual are hedged by a duplicate read
+     * which goes out over another connection. Only supported by the Thrift and Astyanax backends.
+     * <p>
+     * Value = {@value}
+     */
+    public static final String HEDGED_READS_KEY = "hedged-reads";
+    public static final boolean HEDGED_READS_DEFAULT = false;
+
+    /**
+     * Percentile of the recently observed read latencies after which a read is hedged.
+     * <p>
+     * Value = {@value}
+     */
+    public static final String HEDGED_READ_PERCENTILE_KEY = "hedged-read-percentile";
+    public static final double HEDGED_READ_PERCENTILE_DEFAULT = 95.0;
+
+    /**
+     * Minimum delay in milliseconds before a read is hedged.
+     * <p>
+     * Value = {@value}
+     */
+    public static final String HEDGED_READ_MIN_DELAY_KEY = "hedged-read-min-delay";
+    public static final long HEDGED_READ_MIN_DELAY_DEFAULT = 10;
+
+    /**
+     * Maximum number of threads executing hedged reads. Reads are executed directly on the calling thread
+     * and are not hedged while all threads are busy.
+     * <p>
+     * Value = {@value}
+     */
+    public static final String HEDGED_READ_THREADS_KEY = "hedged-read-threads";
+    public static final int HEDGED_READ_THREADS_DEFAULT = 64;
+
 
     protected final String keySpaceName;
     protected final int replicationFactor;
@@ -87,11 +122,36 @@ public abstract class AbstractCassandraStoreManager extends DistributedStoreMana
     
     public abstract Partitioner getPartitioner() throws StorageException;
 
+    protected static HedgedReadExecutor getHedgedReadExecutor(Configuration storageConfig) {
+        if (!storageConfig.getBoolean(HEDGED_READS_KEY,HEDGED_READS_DEFAULT)) return new HedgedReadExecutor();
+        return new HedgedReadExecutor(
+                storageConfig.getDouble(HEDGED_READ_PERCENTILE_KEY,HEDGED_READ_PERCENTILE_DEFAULT),
+                storageConfig.getLong(HEDGED_READ_MIN_DELAY_KEY,HEDGED_READ_MIN_DELAY_DEFAULT),
+                storageConfig.getInt(HEDGED_READ_THREADS_KEY,HEDGED_READ_THREADS_DEFAULT));
+    }
+
     @Override
     public StoreTransaction beginTransaction(ConsistencyLevel level) {
         return new CassandraTransaction(level,readConsistencyLevel,writeConsistencyLevel);
     }
 
+    @Override
+    public StoreTransaction beginReadOnlyTransaction(ConsistencyLevel level) {
+        return beginTransaction(level);
+    }
+
+    @Override
+    public StoreTransaction beginTransaction(ConsistencyLevel level, String readConsistency, String writeConsistency) {
+        return new CassandraTransaction(level,
+                readConsistency==null?readConsistencyLevel:CassandraTransaction.Consistency.parse(readConsistency),
+                writeConsistency==null?writeConsistencyLevel:CassandraTransaction.Consistency.parse(writeConsistency));
+    }
+
+    @Override
+    public StoreTransaction beginReadOnlyTransaction(ConsistencyLevel level, String readConsistency) {
+        return beginTransaction(level,readConsistency,null);
+    }
+
     @Override
     public String toString() {
         return "["+keySpaceName+"@"+super.toString()+"]";
@@ -101,7 +161,7 @@ public abstract class AbstractCassandraStoreManager extends DistributedStoreMana
     public StoreFeatures getFeatures() {
         if (features==null) {
             features = new StoreFeatures();
-            features.supportsScan=false; features.supportsBatchMutation=true; features.supportsTransactions=false;
+            features.supportsScan=false; features.supportsBatchMutation=true; features.supportsMultiQuery=true; features.supportsTransactions=false;
             features.supportsConsistentKeyOperations=true; features.supportsLocking=false;
             features.isDistributed=true;
 
@@ -0,0 +1,210 @@
+package com.thinkaurelius.titan.diskstorage.cassandra;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.thinkaurelius.titan.diskstorage.PermanentStorageException;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.TemporaryStorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Executes reads against Cassandra with hedging: if a read has not returned within the configured percentile
+ * of the recently observed read latencies, an identical read is issued which the connection pool sends over
+ * another connection, possibly to another replica. Whichever read returns first provides the result.
+ * This bounds the tail latency caused by a single slow node, e.g. during compaction or garbage collection.
+ *
+ * Reads are executed by a bounded pool of daemon threads. When all threads are busy or hedging is disabled,
+ * reads are executed directly on the calling thread.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class HedgedReadExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(HedgedReadExecutor.class);
+
+    /**
+     * Number of latency samples from which the hedging delay is computed
+     */
+    private static final int WINDOW_SIZE = 1024;
+    /**
+     * Number of samples after which the hedging delay is recomputed
+     */
+    private static final int UPDATE_INTERVAL = 128;
+    /**
+     * Time in seconds after which idle threads are terminated
+     */
+    private static final long THREAD_KEEP_ALIVE = 60;
+
+    /**
+     * A read which may be executed multiple times concurrently and hence must not modify its arguments
+     */
+    public interface Read<T> {
+        public T call() throws StorageException;
+    }
+
+    private final boolean enabled;
+    private final double percentile;
+    private final long minDelayNS;
+    private final ExecutorService executor;
+
+    private final AtomicLongArray latencies;
+    private final AtomicInteger numSamples;
+    private volatile long delayNS;
+    private final AtomicLong hedgedReads;
+
+    /**
+     * Creates an executor which executes all reads directly
+     */
+    public HedgedReadExecutor() {
+        enabled = false;
+        percentile = 0;
+        minDelayNS = 0;
+        executor = null;
+        latencies = null;
+        numSamples = null;
+        hedgedReads = null;
+    }
+
+    /**
+     * @param percentile percentile of the read latencies after which a read is hedged, in (0,100)
+     * @param minDelayMS minimum delay in milliseconds before a read is hedged, also used until enough latencies
+     *                   have been observed
+     * @param maxThreads maximum number of threads executing reads
+     */
+    public HedgedReadExecutor(double percentile, long minDelayMS, int maxThreads) {
+        Preconditions.checkArgument(percentile>0 && percentile<100,"Invalid percentile: %s",percentile);
+        Preconditions.checkArgument(minDelayMS>=0,"Invalid delay: %s",minDelayMS);
+        Preconditions.checkArgument(maxThreads>0,"Invalid number of threads: %s",maxThreads);
+        enabled = true;
+        this.percentile = percentile;
+        this.minDelayNS = TimeUnit.MILLISECONDS.toNanos(minDelayMS);
+        delayNS = minDelayNS;
+        latencies = new AtomicLongArray(WINDOW_SIZE);
+        numSamples = new AtomicInteger(0);
+        hedgedReads = new AtomicLong(0);
+        //Reads are rejected rather than queued behind slow reads when all threads are busy
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads,maxThreads,THREAD_KEEP_ALIVE,TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("titan-hedged-read-%d").build());
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return current delay in nanoseconds after which a read is hedged
+     */
+    public long getDelayNS() {
+        return delayNS;
+    }
+
+    /**
+     * @return number of reads that have been hedged
+     */
+    public long getNumHedgedReads() {
+        return enabled ? hedgedReads.get() : 0;
+    }
+
+    public <T> T execute(final Read<T> read) throws StorageException {
+        if (!enabled) return read.call();
+
+        Callable<T> timed = new Callable<T>() {
+            @Override
+            public T call() throws StorageException {
+                long start = System.nanoTime();
+                try {
+                    return read.call();
+                } finally {
+                    //Failed reads, e.g. timeouts, are as indicative of the backend's latency as successful ones
+                    recordLatency(System.nanoTime()-start);
+                }
+            }
+        };
+
+        CompletionService<T> completion = new ExecutorCompletionService<T>(executor);
+        Future<T> first;
+        try {
+            first = completion.submit(timed);
+        } catch (RejectedExecutionException e) {
+            return read.call();
+        }
+        Future<T> hedge = null;
+        try {
+            Future<T> done = completion.poll(delayNS,TimeUnit.NANOSECONDS);
+            if (done==null) {
+                try {
+                    hedge = completion.submit(timed);
+                    hedgedReads.incrementAndGet();
+                } catch (RejectedExecutionException e) {
+                    log.debug("Not hedging read since all threads are busy");
+                }
+                done = completion.take();
+            }
+            try {
+                return done.get();
+            } catch (ExecutionException e) {
+                if (hedge==null) throw unwrap(e);
+                log.debug("Hedged read failed, waiting for the other read",e.getCause());
+                try {
+                    return completion.take().get();
+                } catch (ExecutionException e2) {
+                    throw unwrap(e2);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PermanentStorageException("Interrupted while waiting for read",e);
+        } finally {
+            //Cancel the losing read. Reads blocked on socket IO are not interruptible and complete in the background
+            first.cancel(true);
+            if (hedge!=null) hedge.cancel(true);
+        }
+    }
+
+    private static StorageException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof StorageException) return (StorageException)cause;
+        else if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+        else if (cause instanceof Error) throw (Error)cause;
+        else return new TemporaryStorageException(cause);
+    }
+
+    private void recordLatency(long latencyNS) {
+        int sample = numSamples.getAndIncrement();
+        latencies.set((sample & Integer.MAX_VALUE) % WINDOW_SIZE,latencyNS);
+        if (sample>0 && sample%UPDATE_INTERVAL==0) updateDelay(Math.min(sample,WINDOW_SIZE));
+    }
+
+    private void updateDelay(int samples) {
+        long[] window = new long[samples];
+        for (int i=0;i<samples;i++) window[i]=latencies.get(i);
+        Arrays.sort(window);
+        int index = (int)Math.min(samples-1,Math.ceil(samples*percentile/100.0)-1);
+        delayNS = Math.max(minDelayNS,window[Math.max(0,index)]);
+    }
+
+    public void close() {
+        if (executor!=null) executor.shutdown();
+    }
+
+}
@@ -8,16 +8,21 @@ import com.netflix.astyanax.connectionpool.exceptions.NotFoundException;
 import com.netflix.astyanax.model.Column;
 import com.netflix.astyanax.model.ColumnFamily;
 import com.netflix.astyanax.model.ColumnList;
+import com.netflix.astyanax.model.Row;
+import com.netflix.astyanax.model.Rows;
 import com.netflix.astyanax.query.RowQuery;
+import com.netflix.astyanax.query.RowSliceQuery;
 import com.netflix.astyanax.retry.RetryPolicy;
 import com.netflix.astyanax.serializers.ByteBufferSerializer;
 import com.thinkaurelius.titan.diskstorage.StorageException;
 import com.thinkaurelius.titan.diskstorage.TemporaryStorageException;
+import com.thinkaurelius.titan.diskstorage.cassandra.HedgedReadExecutor;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.*;
 import static com.thinkaurelius.titan.diskstorage.cassandra.CassandraTransaction.*;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -32,14 +37,16 @@ public class AstyanaxOrderedKeyColumnValueStore implements
 	private final ColumnFamily<ByteBuffer, ByteBuffer> columnFamily;
 	private final RetryPolicy retryPolicy;
     private final AstyanaxStoreManager storeManager;
+    private final HedgedReadExecutor hedgedReads;
 	
 
 	AstyanaxOrderedKeyColumnValueStore(String columnFamilyName, Keyspace keyspace,
-                      AstyanaxStoreManager storeManager, RetryPolicy retryPolicy) {
+                      AstyanaxStoreManager storeManager, RetryPolicy retryPolicy, HedgedReadExecutor hedgedReads) {
 		this.keyspace = keyspace;
 		this.columnFamilyName = columnFamilyName;
 		this.retryPolicy = retryPolicy;
         this.storeManager=storeManager;
+        this.hedgedReads=hedgedReads;
 
 		columnFamily = new ColumnFamily<ByteBuffer, ByteBuffer>(
 				this.columnFamilyName,
@@ -59,20 +66,26 @@ public class AstyanaxOrderedKeyColumnValueStore implements
 	}
 
 	@Override
-	public ByteBuffer get(ByteBuffer key, ByteBuffer column,
+	public ByteBuffer get(final ByteBuffer key, final ByteBuffer column,
 			StoreTransaction txh) throws StorageException {
-		try {
-			OperationResult<Column<ByteBuffer>> result = 
-				keyspace.prepareQuery(columnFamily)
-					.setConsistencyLevel(getTx(txh).getReadConsistencyLevel().getAstyanaxConsistency())
-					.withRetryPolicy(retryPolicy.duplicate())
-					.getKey(key).getColumn(column).execute();
-			return result.getResult().getByteBufferValue();
-		} catch (NotFoundException e) {
-			return null;
-		} catch (ConnectionException e) {
-			throw new TemporaryStorageException(e);
-		}
+		final com.netflix.astyanax.model.ConsistencyLevel consistency = getTx(txh).getReadConsistencyLevel().getAstyanaxConsistency();
+		return hedgedReads.execute(new HedgedReadExecutor.Read<ByteBuffer>() {
+			@Override
+			public ByteBuffer call() throws StorageException {
+				try {
+					OperationResult<Column<ByteBuffer>> result =
+						keyspace.prepareQuery(columnFamily)
+							.setConsistencyLevel(consistency)
+							.withRetryPolicy(retryPolicy.duplicate())
+							.getKey(key).getColumn(column).execute();
+					return result.getResult().getByteBufferValue();
+				} catch (NotFoundException e) {
+					return null;
+				} catch (ConnectionException e) {
+					throw new TemporaryStorageException(e);
+				}
+			}
+		});
 	}
 
 	@Override
@@ -82,25 +95,42 @@ public class AstyanaxOrderedKeyColumnValueStore implements
 	}
 
 	@Override
-	public boolean containsKey(ByteBuffer key, StoreTransaction txh) throws StorageException {
-		try {
-			// See getSlice() below for a warning suppression justification
-			@SuppressWarnings("rawtypes")
-			RowQuery rq = (RowQuery)keyspace.prepareQuery(columnFamily)
-								.withRetryPolicy(retryPolicy.duplicate())
-								.setConsistencyLevel(getTx(txh).getReadConsistencyLevel().getAstyanaxConsistency())
-								.getKey(key);
-			@SuppressWarnings("unchecked")
-			OperationResult<ColumnList<ByteBuffer>> r = rq.withColumnRange(EMPTY, EMPTY, false, 1).execute();
-			return 0 < r.getResult().size();
-		} catch (ConnectionException e) {
-			throw new TemporaryStorageException(e);
-		}
+	public boolean containsKey(final ByteBuffer key, StoreTransaction txh) throws StorageException {
+		final com.netflix.astyanax.model.ConsistencyLevel consistency = getTx(txh).getReadConsistencyLevel().getAstyanaxConsistency();
+		return hedgedReads.execute(new HedgedReadExecutor.Read<Boolean>() {
+			@Override
+			public Boolean call() throws StorageException {
+				try {
+					// See getSlice() below for a warning suppression justification
+					@SuppressWarnings("rawtypes")
+					RowQuery rq = (RowQuery)keyspace.prepareQuery(columnFamily)
+										.withRetryPolicy(retryPolicy.duplicate())
+										.setConsistencyLevel(consistency)
+										.getKey(key);
+					@SuppressWarnings("unchecked")
+					OperationResult<ColumnList<ByteBuffer>> r = rq.withColumnRange(EMPTY, EMPTY, false, 1).execute();
+					return 0 < r.getResult().size();
+				} catch (ConnectionException e) {
+					throw new TemporaryStorageException(e);
+				}
+			}
+		});
 	}
 
 	@Override
-	public List<Entry> getSlice(ByteBuffer key, ByteBuffer columnStart,
-			ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+	public List<Entry> getSlice(final ByteBuffer key, final ByteBuffer columnStart,
+			final ByteBuffer columnEnd, final int limit, StoreTransaction txh) throws StorageException {
+		final com.netflix.astyanax.model.ConsistencyLevel consistency = getTx(txh).getReadConsistencyLevel().getAstyanaxConsistency();
+		return hedgedReads.execute(new HedgedReadExecutor.Read<List<Entry>>() {
+			@Override
+			public List<Entry> call() throws StorageException {
+				return getSliceInternal(key, columnStart, columnEnd, limit, consistency);
+			}
+		});
+	}
+
+	private List<Entry> getSliceInternal(ByteBuffer key, ByteBuffer columnStart, ByteBuffer columnEnd, int limit,
+			com.netflix.astyanax.model.ConsistencyLevel consistency) throws StorageException {
 		
 		/*
 		 * The following hideous cast dance avoids a type-erasure error in the
@@ -133,7 +163,7 @@ public class AstyanaxOrderedKeyColumnValueStore implements
 		 */
 		@SuppressWarnings("rawtypes")
 		RowQuery rq = (RowQuery)keyspace.prepareQuery(columnFamily)
-						.setConsistencyLevel(getTx(txh).getReadConsistencyLevel().getAstyanaxConsistency())
+						.setConsistencyLevel(consistency)
 						.withRetryPolicy(retryPolicy.duplicate())
 						.getKey(key);
 //		RowQuery<ByteBuffer, ByteBuffer> rq = keyspace.prepareQuery(columnFamily).getKey(key);
@@ -148,11 +178,15 @@ public class AstyanaxOrderedKeyColumnValueStore implements
 			throw new TemporaryStorageException(e);
 		}
 		
-		List<Entry> result = new ArrayList<Entry>(r.getResult().size());
+		return toEntries(r.getResult(), columnEnd, limit);
+	}
+
+	private static List<Entry> toEntries(ColumnList<ByteBuffer> columns, ByteBuffer columnEnd, int limit) {
+		List<Entry> result = new ArrayList<Entry>(columns.size());
 		
 		int i = 0;
 		
-		for (Column<ByteBuffer> c : r.getResult()) {
+		for (Column<ByteBuffer> c : columns) {
 			ByteBuffer colName = c.getName();
 			
 			if (colName.equals(columnEnd)) {
@@ -169,6 +203,50 @@ public class AstyanaxOrderedKeyColumnValueStore implements
 		return result;
 	}
 
+	@Override
+	public Map<ByteBuffer, List<Entry>> getSlice(final List<ByteBuffer> keys, final ByteBuffer columnStart,
+			final ByteBuffer columnEnd, final int limit, StoreTransaction txh) throws StorageException {
+		final com.netflix.astyanax.model.ConsistencyLevel consistency = getTx(txh).getReadConsistencyLevel().getAstyanaxConsistency();
+		return hedgedReads.execute(new HedgedReadExecutor.Read<Map<ByteBuffer, List<Entry>>>() {
+			@Override
+			public Map<ByteBuffer, List<Entry>> call() throws StorageException {
+				return getSliceInternal(keys, columnStart, columnEnd, limit, consistency);
+			}
+		});
+	}
+
+	private Map<ByteBuffer, List<Entry>> getSliceInternal(List<ByteBuffer> keys, ByteBuffer columnStart,
+			ByteBuffer columnEnd, int limit, com.netflix.astyanax.model.ConsistencyLevel consistency) throws StorageException {
+		/*
+		 * See getSlice() above for the reason behind the raw type. RowSliceQuery
+		 * has the same ambiguous withColumnRange overloads as RowQuery.
+		 */
+		@SuppressWarnings("rawtypes")
+		RowSliceQuery rq = (RowSliceQuery)keyspace.prepareQuery(columnFamily)
+						.setConsistencyLevel(consistency)
+						.withRetryPolicy(retryPolicy.duplicate())
+						.getKeySlice(keys);
+		rq.withColumnRange(columnStart, columnEnd, false, limit < Integer.MAX_VALUE ? limit + 1 : limit);
+
+		OperationResult<Rows<ByteBuffer, ByteBuffer>> r;
+		try {
+			@SuppressWarnings("unchecked")
+			OperationResult<Rows<ByteBuffer, ByteBuffer>> tmp = (OperationResult<Rows<ByteBuffer, ByteBuffer>>)rq.execute();
+			r = tmp;
+		} catch (ConnectionException e) {
+			throw new TemporaryStorageException(e);
+		}
+
+		Map<ByteBuffer, List<Entry>> result = new HashMap<ByteBuffer, List<Entry>>(keys.size());
+		for (Row<ByteBuffer, ByteBuffer> row : r.getResult()) {
+			result.put(row.getKey(), toEntries(row.getColumns(), columnEnd, limit));
+		}
+		for (ByteBuffer key : keys) {
+			if (!result.containsKey(key)) result.put(key, new ArrayList<Entry>(0));
+		}
+		return result;
+	}
+
 	@Override
 	public List<Entry> getSlice(ByteBuffer key, ByteBuffer columnStart,
 			ByteBuffer columnEnd, StoreTransaction txh) throws StorageException {
@@ -18,6 +18,7 @@ import com.thinkaurelius.titan.diskstorage.PermanentStorageException;
 import com.thinkaurelius.titan.diskstorage.StorageException;
 import com.thinkaurelius.titan.diskstorage.TemporaryStorageException;
 import com.thinkaurelius.titan.diskstorage.cassandra.AbstractCassandraStoreManager;
+import com.thinkaurelius.titan.diskstorage.cassandra.HedgedReadExecutor;
 import static com.thinkaurelius.titan.diskstorage.cassandra.CassandraTransaction.*;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.Entry;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.Mutation;
@@ -106,6 +107,8 @@ public class AstyanaxStoreManager extends AbstractCassandraStoreManager {
     private final AstyanaxContext<Cluster> clusterContext;
 
     private final RetryPolicy retryPolicy;
+
+    private final HedgedReadExecutor hedgedReads;
     
     private final Map<String,AstyanaxOrderedKeyColumnValueStore> openStores;
 
@@ -116,6 +119,8 @@ public class AstyanaxStoreManager extends AbstractCassandraStoreManager {
 		
 		this.retryPolicy = getRetryPolicy(config.getString(RETRY_POLICY_KEY, RETRY_POLICY_DEFAULT));
 
+		this.hedgedReads = getHedgedReadExecutor(config);
+
 		final int maxConnsPerHost =
 				config.getInt(
 						MAX_CONNECTIONS_PER_HOST_KEY,
@@ -161,6 +166,7 @@ public class AstyanaxStoreManager extends AbstractCassandraStoreManager {
 	public void close() {
 		// Shutdown the Astyanax contexts
         openStores.clear();
+        hedgedReads.close();
         keyspaceContext.shutdown();
 		clusterContext.shutdown();
 	}
@@ -170,7 +176,7 @@ public class AstyanaxStoreManager extends AbstractCassandraStoreManager {
         if (openStores.containsKey(name)) return openStores.get(name);
         else {
             ensureColumnFamilyExists(name);
-            AstyanaxOrderedKeyColumnValueStore store = new AstyanaxOrderedKeyColumnValueStore(name, keyspaceContext.getEntity(), this, retryPolicy);
+            AstyanaxOrderedKeyColumnValueStore store = new AstyanaxOrderedKeyColumnValueStore(name, keyspaceContext.getEntity(), this, retryPolicy, hedgedReads);
             openStores.put(name,store);
             return store;
         }
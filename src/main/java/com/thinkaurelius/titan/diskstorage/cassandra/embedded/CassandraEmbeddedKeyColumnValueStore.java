@@ -18,6 +18,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeoutException;
@@ -219,6 +220,41 @@ public class CassandraEmbeddedKeyColumnValueStore
 		return getSlice(key, columnStart, columnEnd, Integer.MAX_VALUE, txh);
 	}
 
+	@Override
+	public Map<ByteBuffer, List<Entry>> getSlice(List<ByteBuffer> keys, ByteBuffer columnStart,
+			ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+
+		QueryPath slicePath = new QueryPath(columnFamily);
+		List<ReadCommand> sliceCmds = new ArrayList<ReadCommand>(keys.size());
+		for (ByteBuffer key : keys) {
+			sliceCmds.add(new SliceFromReadCommand(keyspace, key.duplicate(), slicePath,
+					columnStart.duplicate(), columnEnd.duplicate(), false, limit));
+		}
+
+		ConsistencyLevel clvl = getTx(txh).getReadConsistencyLevel().getThriftConsistency();
+
+		List<Row> slices = read(sliceCmds, clvl);
+
+		Map<ByteBuffer, List<Entry>> result = new HashMap<ByteBuffer, List<Entry>>(keys.size());
+		if (null != slices) {
+			for (Row r : slices) {
+				if (null == r) {
+					log.warn("Null Row object retrieved from Cassandra StorageProxy");
+					continue;
+				}
+				ColumnFamily cf = r.cf;
+				if (null == cf || cf.isMarkedForDelete())
+					continue;
+				result.put(r.key.key, cfToEntries(cf, columnStart, columnEnd));
+			}
+		}
+		for (ByteBuffer key : keys) {
+			if (!result.containsKey(key))
+				result.put(key, new ArrayList<Entry>(0));
+		}
+		return result;
+	}
+
     @Override
     public void mutate(ByteBuffer key, List<Entry> additions,
                        List<ByteBuffer> deletions, StoreTransaction txh) throws StorageException {
@@ -6,22 +6,31 @@ import com.google.common.collect.ImmutableMap;
 import com.thinkaurelius.titan.diskstorage.PermanentStorageException;
 import com.thinkaurelius.titan.diskstorage.StorageException;
 import com.thinkaurelius.titan.diskstorage.TemporaryStorageException;
+import com.thinkaurelius.titan.diskstorage.cassandra.AbstractCassandraStoreManager;
+import com.thinkaurelius.titan.diskstorage.cassandra.HedgedReadExecutor;
 import com.thinkaurelius.titan.diskstorage.cassandra.thrift.thriftpool.CTConnection;
 import com.thinkaurelius.titan.diskstorage.cassandra.thrift.thriftpool.UncheckedGenericKeyedObjectPool;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.*;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.Mutation;
 import com.thinkaurelius.titan.diskstorage.util.ByteBufferUtil;
+import org.apache.cassandra.dht.ByteOrderedPartitioner;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.RandomPartitioner;
 import org.apache.cassandra.thrift.*;
 import org.apache.cassandra.thrift.ConsistencyLevel;
 import org.apache.thrift.TException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import static com.thinkaurelius.titan.diskstorage.cassandra.CassandraTransaction.getTx;
 
@@ -33,15 +42,28 @@ import static com.thinkaurelius.titan.diskstorage.cassandra.CassandraTransaction
  * @author Dan LaRocque <dalaro@hopcount.org>
  * 
  */
-public class CassandraThriftKeyColumnValueStore implements KeyColumnValueStore {
+public class CassandraThriftKeyColumnValueStore implements KeyColumnValueStore, SplitScanStore {
 
     private static final Logger logger =
             LoggerFactory.getLogger(CassandraThriftKeyColumnValueStore.class);
 
+    /**
+     * Number of rows retrieved per call when scanning the keys of a split
+     */
+    private static final int KEY_SCAN_PAGE_SIZE = 1000;
+
+    /**
+     * Size of the token space of the random partitioner
+     */
+    private static final BigInteger RANDOM_TOKEN_SPACE = BigInteger.valueOf(2).pow(127);
+
+    private static final Charset TOKEN_CHARSET = Charset.forName("UTF-8");
+
     private final CassandraThriftStoreManager storeManager;
 	private final String keyspace;
 	private final String columnFamily;
 	private final UncheckedGenericKeyedObjectPool<String, CTConnection> pool;
+	private final HedgedReadExecutor hedgedReads;
 
 	public CassandraThriftKeyColumnValueStore(String keyspace,String columnFamily, CassandraThriftStoreManager storeManager,
             UncheckedGenericKeyedObjectPool<String, CTConnection> pool) {
@@ -49,6 +71,7 @@ public class CassandraThriftKeyColumnValueStore implements KeyColumnValueStore {
 		this.keyspace = keyspace;
 		this.columnFamily = columnFamily;
 		this.pool = pool;
+		this.hedgedReads = storeManager.getHedgedReads();
 	}
 
 	/**
@@ -75,17 +98,91 @@ public class CassandraThriftKeyColumnValueStore implements KeyColumnValueStore {
 	 * 
 	 */
 	@Override
-	public List<Entry> getSlice(ByteBuffer key, ByteBuffer columnStart,
-			ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+	public List<Entry> getSlice(final ByteBuffer key, ByteBuffer columnStart,
+			final ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
         Preconditions.checkArgument(limit>=0);
 		if (0 == limit)	return ImmutableList.<Entry>of();
 		
-		ColumnParent parent = new ColumnParent(columnFamily);
-		/* 
-		 * Cassandra cannot handle columnStart = columnEnd.
-		 * Cassandra's Thrift getSlice() throws InvalidRequestException
-		 * if columnStart = columnEnd.
-		 */
+		if (isEmptySlice(columnStart, columnEnd)) return ImmutableList.<Entry>of();
+		
+		// true: columnStart < columnEnd
+		final ColumnParent parent = new ColumnParent(columnFamily);
+		final ConsistencyLevel consistency = getTx(txh).getReadConsistencyLevel().getThriftConsistency();
+		final SlicePredicate predicate = getSlicePredicate(columnStart, columnEnd, limit);
+		
+		return hedgedReads.execute(new HedgedReadExecutor.Read<List<Entry>>() {
+			@Override
+			public List<Entry> call() throws StorageException {
+				CTConnection conn = null;
+				try {
+					conn = pool.genericBorrowObject(keyspace);
+					Cassandra.Client client = conn.getClient();
+					List<ColumnOrSuperColumn> rows = client.get_slice(key, parent, predicate, consistency);
+					return toEntries(rows, columnEnd);
+				} catch (Exception e) {
+					throw convertException(e);
+				} finally {
+					if (null != conn)
+						pool.genericReturnObject(keyspace, conn);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Call Cassandra's Thrift multiget_slice() method to retrieve the slices
+	 * for all given keys in a single round trip.
+	 * 
+	 * The column range is handled exactly as in
+	 * {@link #getSlice(java.nio.ByteBuffer, java.nio.ByteBuffer, java.nio.ByteBuffer, int, com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreTransaction)}.
+	 * 
+	 * @throws com.thinkaurelius.titan.diskstorage.StorageException when columnEnd < columnStart
+	 */
+	@Override
+	public Map<ByteBuffer, List<Entry>> getSlice(final List<ByteBuffer> keys, ByteBuffer columnStart,
+			final ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+		Preconditions.checkArgument(limit>=0);
+		if (0 == limit || keys.isEmpty() || isEmptySlice(columnStart, columnEnd)) {
+			Map<ByteBuffer, List<Entry>> result = new HashMap<ByteBuffer, List<Entry>>(keys.size());
+			for (ByteBuffer key : keys) result.put(key, ImmutableList.<Entry>of());
+			return result;
+		}
+		
+		final ColumnParent parent = new ColumnParent(columnFamily);
+		final ConsistencyLevel consistency = getTx(txh).getReadConsistencyLevel().getThriftConsistency();
+		final SlicePredicate predicate = getSlicePredicate(columnStart, columnEnd, limit);
+		
+		return hedgedReads.execute(new HedgedReadExecutor.Read<Map<ByteBuffer, List<Entry>>>() {
+			@Override
+			public Map<ByteBuffer, List<Entry>> call() throws StorageException {
+				CTConnection conn = null;
+				try {
+					conn = pool.genericBorrowObject(keyspace);
+					Cassandra.Client client = conn.getClient();
+					Map<ByteBuffer, List<ColumnOrSuperColumn>> rows = client.multiget_slice(keys, parent, predicate, consistency);
+					Map<ByteBuffer, List<Entry>> result = new HashMap<ByteBuffer, List<Entry>>(keys.size());
+					for (ByteBuffer key : keys) {
+						List<ColumnOrSuperColumn> columns = rows.get(key);
+						if (null == columns) result.put(key, ImmutableList.<Entry>of());
+						else result.put(key, toEntries(columns, columnEnd));
+					}
+					return result;
+				} catch (Exception e) {
+					throw convertException(e);
+				} finally {
+					if (null != conn)
+						pool.genericReturnObject(keyspace, conn);
+				}
+			}
+		});
+	}
+
+	/*
+	 * Cassandra cannot handle columnStart = columnEnd.
+	 * Cassandra's Thrift getSlice() throws InvalidRequestException
+	 * if columnStart = columnEnd.
+	 */
+	private static boolean isEmptySlice(ByteBuffer columnStart, ByteBuffer columnEnd) throws StorageException {
 		if (!ByteBufferUtil.isSmallerThan(columnStart, columnEnd)) {
 			// Check for invalid arguments where columnEnd < columnStart
 			if (ByteBufferUtil.isSmallerThan(columnEnd, columnStart)) {
@@ -93,48 +190,40 @@ public class CassandraThriftKeyColumnValueStore implements KeyColumnValueStore {
 						" is greater than columnEnd=" + columnEnd + ". " +
 						"columnStart must be less than or equal to columnEnd");
 			}
-                        if (0 != columnStart.remaining() && 0 != columnEnd.remaining()) {
-                                logger.debug("Return empty list due to columnEnd==columnStart and neither empty");
-                                return ImmutableList.<Entry>of();
-                        }
+			if (0 != columnStart.remaining() && 0 != columnEnd.remaining()) {
+				logger.debug("Return empty list due to columnEnd==columnStart and neither empty");
+				return true;
+			}
 		}
-		
-		// true: columnStart < columnEnd
-		ConsistencyLevel consistency = getTx(txh).getReadConsistencyLevel().getThriftConsistency();
+		return false;
+	}
+
+	private static SlicePredicate getSlicePredicate(ByteBuffer columnStart, ByteBuffer columnEnd, int limit) {
 		SlicePredicate predicate = new SlicePredicate();
 		SliceRange range = new SliceRange();
 		range.setCount(limit);
 		range.setStart(columnStart);
 		range.setFinish(columnEnd);
 		predicate.setSlice_range(range);
-		
-		
-		CTConnection conn = null;
-		try {
-			conn = pool.genericBorrowObject(keyspace);
-			Cassandra.Client client = conn.getClient();
-			List<ColumnOrSuperColumn> rows = client.get_slice(key, parent, predicate, consistency);
-			/*
-			 * The final size of the "result" List may be at most rows.size().
-			 * However, "result" could also be up to two elements smaller than
-			 * rows.size(), depending on startInclusive and endInclusive
-			 */
-			List<Entry> result = new ArrayList<Entry>(rows.size());
-			for (ColumnOrSuperColumn r : rows) {
-				Column c = r.getColumn();
-
-				// Skip column if it is equal to columnEnd because columnEnd is exclusive
-				if (columnEnd.equals(c.bufferForName())) continue;
-
-				result.add(new Entry(c.bufferForName(), c.bufferForValue()));
-			}
-			return result;
-		} catch (Exception e) {
-			throw convertException(e);
-		} finally {
-			if (null != conn)
-				pool.genericReturnObject(keyspace, conn);
+		return predicate;
+	}
+
+	private static List<Entry> toEntries(List<ColumnOrSuperColumn> rows, ByteBuffer columnEnd) {
+		/*
+		 * The final size of the "result" List may be at most rows.size().
+		 * However, "result" could also be up to two elements smaller than
+		 * rows.size(), depending on startInclusive and endInclusive
+		 */
+		List<Entry> result = new ArrayList<Entry>(rows.size());
+		for (ColumnOrSuperColumn r : rows) {
+			Column c = r.getColumn();
+
+			// Skip column if it is equal to columnEnd because columnEnd is exclusive
+			if (columnEnd.equals(c.bufferForName())) continue;
+
+			result.add(new Entry(c.bufferForName(), c.bufferForValue()));
 		}
+		return result;
 	}
 
 	@Override
@@ -152,48 +241,63 @@ public class CassandraThriftKeyColumnValueStore implements KeyColumnValueStore {
 	public boolean containsKey(ByteBuffer key, StoreTransaction txh) throws StorageException {
 		ColumnParent parent = new ColumnParent(columnFamily);
 		ConsistencyLevel consistency = getTx(txh).getReadConsistencyLevel().getThriftConsistency();
-		SlicePredicate predicate = new SlicePredicate();
+		final SlicePredicate predicate = new SlicePredicate();
 		SliceRange range = new SliceRange();
 		range.setCount(1);
 		byte[] empty = new byte[0];
 		range.setStart(empty);
 		range.setFinish(empty);
 		predicate.setSlice_range(range);
-		CTConnection conn = null;
-		try {
-			conn = pool.genericBorrowObject(keyspace);
-			Cassandra.Client client = conn.getClient();
-			List<?> result = client.get_slice(key, parent, predicate, consistency);
-			return 0 < result.size();
-		} catch (Exception e) {
-			throw convertException(e);
-		} finally {
-			if (null != conn)
-				pool.genericReturnObject(keyspace, conn);
-		}
+		return containsColumns(key, parent, predicate, consistency);
+	}
+
+	private boolean containsColumns(final ByteBuffer key, final ColumnParent parent, final SlicePredicate predicate,
+			final ConsistencyLevel consistency) throws StorageException {
+		return hedgedReads.execute(new HedgedReadExecutor.Read<Boolean>() {
+			@Override
+			public Boolean call() throws StorageException {
+				CTConnection conn = null;
+				try {
+					conn = pool.genericBorrowObject(keyspace);
+					Cassandra.Client client = conn.getClient();
+					List<?> result = client.get_slice(key, parent, predicate, consistency);
+					return 0 < result.size();
+				} catch (Exception e) {
+					throw convertException(e);
+				} finally {
+					if (null != conn)
+						pool.genericReturnObject(keyspace, conn);
+				}
+			}
+		});
 	}
 
 
 	@Override
-	public ByteBuffer get(ByteBuffer key, ByteBuffer column,
+	public ByteBuffer get(final ByteBuffer key, ByteBuffer column,
 			StoreTransaction txh) throws StorageException {
-		ColumnPath path = new ColumnPath(columnFamily);
+		final ColumnPath path = new ColumnPath(columnFamily);
 		path.setColumn(column);
-		CTConnection conn = null;
-		try {
-			conn = pool.genericBorrowObject(keyspace);
-			Cassandra.Client client = conn.getClient();
-			ColumnOrSuperColumn result =
-				client.get(key, path, getTx(txh).getReadConsistencyLevel().getThriftConsistency());
-			return result.getColumn().bufferForValue();
-		} catch (NotFoundException e) {
-			return null;
-		} catch (Exception e) {
-            throw convertException(e);
-        } finally {
-			if (null != conn)
-				pool.genericReturnObject(keyspace, conn);
-		}
+		final ConsistencyLevel consistency = getTx(txh).getReadConsistencyLevel().getThriftConsistency();
+		return hedgedReads.execute(new HedgedReadExecutor.Read<ByteBuffer>() {
+			@Override
+			public ByteBuffer call() throws StorageException {
+				CTConnection conn = null;
+				try {
+					conn = pool.genericBorrowObject(keyspace);
+					Cassandra.Client client = conn.getClient();
+					ColumnOrSuperColumn result = client.get(key, path, consistency);
+					return result.getColumn().bufferForValue();
+				} catch (NotFoundException e) {
+					return null;
+				} catch (Exception e) {
+					throw convertException(e);
+				} finally {
+					if (null != conn)
+						pool.genericReturnObject(keyspace, conn);
+				}
+			}
+		});
 	}
 
 
@@ -204,18 +308,7 @@ public class CassandraThriftKeyColumnValueStore implements KeyColumnValueStore {
 		ConsistencyLevel consistency = getTx(txh).getReadConsistencyLevel().getThriftConsistency();
 		SlicePredicate predicate = new SlicePredicate();
 		predicate.setColumn_names(Arrays.asList(column.duplicate()));
-		CTConnection conn = null;
-		try {
-			conn = pool.genericBorrowObject(keyspace);
-			Cassandra.Client client = conn.getClient();
-			List<?> result = client.get_slice(key, parent, predicate, consistency);
-			return 0 < result.size();
-		} catch (Exception ex) {
-			throw convertException(ex);
-		} finally {
-			if (null != conn)
-				pool.genericReturnObject(keyspace, conn);
-		}
+		return containsColumns(key, parent, predicate, consistency);
 	}
 
 	@Override
@@ -229,6 +322,160 @@ public class CassandraThriftKeyColumnValueStore implements KeyColumnValueStore {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Splits the keys along the token ranges of the cluster. With the random partitioner, each token range is divided
+     * further into equally sized token ranges to yield approximately the requested number of splits.
+     * The bounds of the returned splits are tokens (start exclusive, end inclusive).
+     *
+     * @param numSplits Desired number of splits
+     * @param txh Transaction
+     * @return
+     * @throws StorageException
+     */
+    @Override
+    public List<ScanSplit> getScanSplits(int numSplits, StoreTransaction txh) throws StorageException {
+        Preconditions.checkArgument(numSplits>0,"Number of splits must be positive");
+        List<TokenRange> ring;
+        CTConnection conn = null;
+        try {
+            conn = pool.genericBorrowObject(keyspace);
+            ring = conn.getClient().describe_ring(keyspace);
+        } catch (Exception e) {
+            throw convertException(e);
+        } finally {
+            if (null != conn)
+                pool.genericReturnObject(keyspace, conn);
+        }
+
+        boolean random = storeManager.getPartitioner()==AbstractCassandraStoreManager.Partitioner.RANDOM;
+        int perRange = random?Math.max(1,(numSplits+ring.size()-1)/ring.size()):1;
+        List<ScanSplit> splits = new ArrayList<ScanSplit>(ring.size()*perRange);
+        for (TokenRange range : ring) {
+            String previous = range.getStart_token();
+            if (perRange>1) {
+                BigInteger start = new BigInteger(range.getStart_token());
+                BigInteger length = new BigInteger(range.getEnd_token()).subtract(start);
+                if (length.signum()<=0) length = length.add(RANDOM_TOKEN_SPACE); //range wraps around
+                for (int i=1;i<perRange;i++) {
+                    String bound = start.add(length.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(perRange)))
+                            .mod(RANDOM_TOKEN_SPACE).toString();
+                    if (bound.equals(previous)) continue;
+                    splits.add(getTokenSplit(previous,bound));
+                    previous = bound;
+                }
+            }
+            splits.add(getTokenSplit(previous,range.getEnd_token()));
+        }
+        return splits;
+    }
+
+    private static ScanSplit getTokenSplit(String startToken, String endToken) {
+        return new ScanSplit(ByteBuffer.wrap(startToken.getBytes(TOKEN_CHARSET)),ByteBuffer.wrap(endToken.getBytes(TOKEN_CHARSET)));
+    }
+
+    private static String getToken(ByteBuffer bound) {
+        byte[] bytes = new byte[bound.remaining()];
+        bound.get(bytes);
+        return new String(bytes,TOKEN_CHARSET);
+    }
+
+    @Override
+    public RecordIterator<ByteBuffer> getKeys(ScanSplit split, StoreTransaction txh) throws StorageException {
+        Preconditions.checkArgument(split.getStart()!=null && split.getEnd()!=null,"Split must be bounded by tokens: %s",split);
+        IPartitioner partitioner = storeManager.getPartitioner()==AbstractCassandraStoreManager.Partitioner.RANDOM?
+                new RandomPartitioner():new ByteOrderedPartitioner();
+        return new TokenRangeKeyIterator(getToken(split.getStart()),getToken(split.getEnd()),partitioner,
+                getTx(txh).getReadConsistencyLevel().getThriftConsistency());
+    }
+
+    /**
+     * Pages through the rows of a token range with get_range_slices(), retrieving a single column per row to
+     * skip rows which only contain tombstones.
+     */
+    private class TokenRangeKeyIterator implements RecordIterator<ByteBuffer> {
+
+        private final String endToken;
+        private final IPartitioner partitioner;
+        private final ConsistencyLevel consistency;
+        private final ColumnParent parent;
+        private final SlicePredicate predicate;
+
+        private String startToken;
+        private boolean exhausted;
+        private final List<ByteBuffer> page;
+        private int position;
+
+        private TokenRangeKeyIterator(String startToken, String endToken, IPartitioner partitioner, ConsistencyLevel consistency) throws StorageException {
+            this.startToken = startToken;
+            this.endToken = endToken;
+            this.partitioner = partitioner;
+            this.consistency = consistency;
+            this.parent = new ColumnParent(columnFamily);
+            this.predicate = new SlicePredicate();
+            SliceRange range = new SliceRange();
+            range.setCount(1);
+            range.setStart(new byte[0]);
+            range.setFinish(new byte[0]);
+            predicate.setSlice_range(range);
+            this.exhausted = false;
+            this.page = new ArrayList<ByteBuffer>(KEY_SCAN_PAGE_SIZE);
+            this.position = 0;
+            fetch();
+        }
+
+        private void fetch() throws StorageException {
+            page.clear();
+            position = 0;
+            while (page.isEmpty() && !exhausted) {
+                KeyRange range = new KeyRange(KEY_SCAN_PAGE_SIZE);
+                range.setStart_token(startToken);
+                range.setEnd_token(endToken);
+                List<KeySlice> slices;
+                CTConnection conn = null;
+                try {
+                    conn = pool.genericBorrowObject(keyspace);
+                    slices = conn.getClient().get_range_slices(parent, predicate, range, consistency);
+                } catch (Exception e) {
+                    throw convertException(e);
+                } finally {
+                    if (null != conn)
+                        pool.genericReturnObject(keyspace, conn);
+                }
+                for (KeySlice slice : slices) {
+                    if (!slice.getColumns().isEmpty()) page.add(slice.bufferForKey());
+                }
+                if (slices.size()<KEY_SCAN_PAGE_SIZE) {
+                    exhausted = true;
+                } else {
+                    //Token ranges exclude their start, hence the last row is not retrieved again
+                    ByteBuffer lastKey = slices.get(slices.size()-1).bufferForKey();
+                    startToken = partitioner.getTokenFactory().toString(partitioner.getToken(lastKey));
+                    if (startToken.equals(endToken)) exhausted = true;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() throws StorageException {
+            return position<page.size();
+        }
+
+        @Override
+        public ByteBuffer next() throws StorageException {
+            if (!hasNext()) throw new NoSuchElementException();
+            ByteBuffer key = page.get(position++);
+            if (position>=page.size()) fetch();
+            return key;
+        }
+
+        @Override
+        public void close() throws StorageException {
+            page.clear();
+            position = 0;
+            exhausted = true;
+        }
+    }
+
     @Override
     public ByteBuffer[] getLocalKeyPartition() throws StorageException {
         throw new UnsupportedOperationException();
@@ -6,6 +6,7 @@ import com.thinkaurelius.titan.diskstorage.PermanentStorageException;
 import com.thinkaurelius.titan.diskstorage.StorageException;
 import com.thinkaurelius.titan.diskstorage.TemporaryStorageException;
 import com.thinkaurelius.titan.diskstorage.cassandra.AbstractCassandraStoreManager;
+import com.thinkaurelius.titan.diskstorage.cassandra.HedgedReadExecutor;
 import com.thinkaurelius.titan.diskstorage.cassandra.thrift.thriftpool.CTConnection;
 import com.thinkaurelius.titan.diskstorage.cassandra.thrift.thriftpool.CTConnectionFactory;
 import com.thinkaurelius.titan.diskstorage.cassandra.thrift.thriftpool.CTConnectionPool;
@@ -44,6 +45,8 @@ public class CassandraThriftStoreManager extends AbstractCassandraStoreManager {
 	private final UncheckedGenericKeyedObjectPool
 			<String, CTConnection> pool;
 
+    private final HedgedReadExecutor hedgedReads;
+
 
 	public CassandraThriftStoreManager(Configuration config) throws StorageException {
 		super(config);
@@ -54,6 +57,7 @@ public class CassandraThriftStoreManager extends AbstractCassandraStoreManager {
 				config.getInt(GraphDatabaseConfiguration.CONNECTION_TIMEOUT_KEY, GraphDatabaseConfiguration.CONNECTION_TIMEOUT_DEFAULT));
 		
         this.openStores = new HashMap<String,CassandraThriftKeyColumnValueStore>();
+        this.hedgedReads = getHedgedReadExecutor(config);
 
 
 	}
@@ -78,6 +82,10 @@ public class CassandraThriftStoreManager extends AbstractCassandraStoreManager {
     }
 
 
+    HedgedReadExecutor getHedgedReads() {
+        return hedgedReads;
+    }
+
     @Override
     public String toString() {
         return "thriftCassandra"+super.toString();
@@ -86,6 +94,7 @@ public class CassandraThriftStoreManager extends AbstractCassandraStoreManager {
     @Override
     public void close() throws StorageException {
         openStores.clear();
+        hedgedReads.close();
         //Do NOT close pool as this may cause subsequent pool operations to fail!
     }
 
@@ -1,24 +1,38 @@
 package com.thinkaurelius.titan.diskstorage.hbase;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
+import com.thinkaurelius.titan.diskstorage.PermanentStorageException;
 import com.thinkaurelius.titan.diskstorage.StorageException;
 import com.thinkaurelius.titan.diskstorage.TemporaryStorageException;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.*;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.Mutation;
+import com.thinkaurelius.titan.diskstorage.util.ByteBufferUtil;
 import org.apache.commons.codec.binary.Hex;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.ServerName;
 import org.apache.hadoop.hbase.client.*;
 import org.apache.hadoop.hbase.filter.ColumnPaginationFilter;
 import org.apache.hadoop.hbase.filter.ColumnRangeFilter;
 import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * Experimental HBase store.
@@ -38,7 +52,7 @@ import java.util.Map;
  * 
  * There may be other problem areas.  These are just the ones of which I'm aware.
  */
-public class HBaseKeyColumnValueStore implements KeyColumnValueStore {
+public class HBaseKeyColumnValueStore implements KeyColumnValueStore, SplitScanStore {
 	
 	private static final Logger log = LoggerFactory.getLogger(HBaseKeyColumnValueStore.class);
 	
@@ -147,17 +161,59 @@ public class HBaseKeyColumnValueStore implements KeyColumnValueStore {
 	@Override
 	public List<Entry> getSlice(ByteBuffer key, ByteBuffer columnStart,
 			ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+		return getHelper(key, getLimitedRangeFilter(columnStart, columnEnd, limit));
+	}
+
+	/**
+	 * Retrieves the slices for all keys with a single batched {@link HTableInterface#get(List)}
+	 * which groups the {@link Get}s by region server.
+	 */
+	@Override
+	public Map<ByteBuffer, List<Entry>> getSlice(List<ByteBuffer> keys, ByteBuffer columnStart,
+			ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+
+		Filter getFilter = getLimitedRangeFilter(columnStart, columnEnd, limit);
+
+		List<Get> gets = new ArrayList<Get>(keys.size());
+		for (ByteBuffer key : keys) {
+			Get g = new Get(toArray(key));
+			g.addFamily(columnFamilyBytes);
+			g.setFilter(getFilter);
+			gets.add(g);
+		}
+
+		try {
+			HTableInterface table = null;
+			Result[] results = null;
 
+			try {
+				table = pool.getTable(tableName);
+				results = table.get(gets);
+			} finally {
+				if (null != table)
+					table.close();
+			}
+
+			Map<ByteBuffer, List<Entry>> ret = new HashMap<ByteBuffer, List<Entry>>(keys.size());
+			for (int i = 0; i < keys.size(); i++) {
+				Result r = (null == results) ? null : results[i];
+				ret.put(keys.get(i), resultToEntries(r));
+			}
+			return ret;
+		} catch (IOException e) {
+			throw new TemporaryStorageException(e);
+		}
+	}
+
+	private static Filter getLimitedRangeFilter(ByteBuffer columnStart, ByteBuffer columnEnd, int limit) {
 		byte[] colStartBytes = columnEnd.hasRemaining() ? toArray(columnStart) : null;
 		byte[] colEndBytes = columnEnd.hasRemaining() ? toArray(columnEnd) : null;
 		
 		Filter colRangeFilter = new ColumnRangeFilter(colStartBytes, true, colEndBytes, false);
 		Filter limitFilter = new ColumnPaginationFilter(limit, 0);
 		
-		FilterList bothFilters = new FilterList(FilterList.Operator.MUST_PASS_ALL, colRangeFilter,
+		return new FilterList(FilterList.Operator.MUST_PASS_ALL, colRangeFilter,
 			limitFilter);
-		
-		return getHelper(key, bothFilters);
 	}
 
 	@Override
@@ -181,8 +237,6 @@ public class HBaseKeyColumnValueStore implements KeyColumnValueStore {
 		g.addFamily(columnFamilyBytes);
 		g.setFilter(getFilter);
 		
-		List<Entry> ret = null;
-		
 		try {
 			HTableInterface table = null;
 			Result r = null;
@@ -195,27 +249,131 @@ public class HBaseKeyColumnValueStore implements KeyColumnValueStore {
 					table.close();
 			}
 			
-			if (null == r)
-				return new ArrayList<Entry>(0);
-			
-			int resultCount = r.size();
-			
-			ret = new ArrayList<Entry>(resultCount);
-			
-			Map<byte[], byte[]> fmap = r.getFamilyMap(columnFamilyBytes);
-			
-			if (null != fmap) {
-				for (Map.Entry<byte[], byte[]> ent : fmap.entrySet()) {
-					ret.add(new Entry(ByteBuffer.wrap(ent.getKey()), ByteBuffer.wrap(ent.getValue())));
-				}
-			}
-			
-			return ret;
+			return resultToEntries(r);
 		} catch (IOException e) {
 			throw new TemporaryStorageException(e);
 		}
 	}
+
+	private List<Entry> resultToEntries(Result r) {
+		if (null == r || r.isEmpty())
+			return new ArrayList<Entry>(0);
+		
+		int resultCount = r.size();
+		
+		List<Entry> ret = new ArrayList<Entry>(resultCount);
+		
+		Map<byte[], byte[]> fmap = r.getFamilyMap(columnFamilyBytes);
+		
+		if (null != fmap) {
+			for (Map.Entry<byte[], byte[]> ent : fmap.entrySet()) {
+				ret.add(new Entry(ByteBuffer.wrap(ent.getKey()), ByteBuffer.wrap(ent.getValue())));
+			}
+		}
+		
+		return ret;
+	}
 	
+	/**
+	 * Iterates over the row keys which have at least one column in this store's column family. Only the first
+	 * column of each row is transferred (via {@link FirstKeyOnlyFilter}) and rows are fetched in batches of
+	 * {@link HBaseStoreManager#getScannerCaching()}.
+	 *
+	 * If the scanner fails, for instance because the region it was reading split or moved, it is reopened once
+	 * directly after the last key that was returned.
+	 */
+	private class KeyIterator implements RecordIterator<ByteBuffer> {
+
+		private HTableInterface table;
+		private ResultScanner scanner;
+		private Result next;
+		private byte[] lastKey;
+		private final byte[] stopRow;
+
+		private KeyIterator(byte[] startRow) throws StorageException {
+			this(startRow,HConstants.EMPTY_END_ROW);
+		}
+
+		private KeyIterator(byte[] startRow, byte[] stopRow) throws StorageException {
+			this.stopRow = stopRow;
+			table = pool.getTable(tableName);
+			try {
+				open(startRow);
+				next = nextResult();
+			} catch (StorageException e) {
+				close();
+				throw e;
+			}
+		}
+
+		private void open(byte[] startRow) throws StorageException {
+			Scan scan = new Scan(startRow,stopRow);
+			scan.addFamily(columnFamilyBytes);
+			scan.setFilter(new FirstKeyOnlyFilter());
+			scan.setCaching(storeManager.getScannerCaching());
+			//A full scan should not evict the working set of regular reads from the block cache
+			scan.setCacheBlocks(false);
+			try {
+				scanner = table.getScanner(scan);
+			} catch (IOException e) {
+				throw new TemporaryStorageException(e);
+			}
+		}
+
+		private Result nextResult() throws StorageException {
+			try {
+				return scanner.next();
+			} catch (IOException e) {
+				log.debug("Scanner on table [{}] failed, reopening after last key",tableName,e);
+				scanner.close();
+				open(null == lastKey ? HConstants.EMPTY_START_ROW : successor(lastKey));
+				try {
+					return scanner.next();
+				} catch (IOException e2) {
+					throw new TemporaryStorageException(e2);
+				}
+			}
+		}
+
+		private byte[] successor(byte[] key) {
+			byte[] result = new byte[key.length+1];
+			System.arraycopy(key,0,result,0,key.length);
+			return result;
+		}
+
+		@Override
+		public boolean hasNext() throws StorageException {
+			return null != next;
+		}
+
+		@Override
+		public ByteBuffer next() throws StorageException {
+			if (null == next) throw new NoSuchElementException();
+			lastKey = next.getRow();
+			next = nextResult();
+			if (null == next) close();
+			return ByteBuffer.wrap(lastKey);
+		}
+
+		@Override
+		public void close() throws StorageException {
+			next = null;
+			if (null != scanner) {
+				scanner.close();
+				scanner = null;
+			}
+			if (null != table) {
+				try {
+					table.close();
+				} catch (IOException e) {
+					throw new TemporaryStorageException(e);
+				} finally {
+					table = null;
+				}
+			}
+		}
+	}
+
 	/*
 	 * This method exists because HBase's API generally deals in
 	 * whole byte[] arrays.  That is, data are always assumed to
@@ -321,12 +479,86 @@ public class HBaseKeyColumnValueStore implements KeyColumnValueStore {
 
     @Override
     public RecordIterator<ByteBuffer> getKeys(StoreTransaction txh) throws StorageException {
-        throw new UnsupportedOperationException();
+        return new KeyIterator(HConstants.EMPTY_START_ROW);
     }
 
+    /**
+     * Groups adjacent regions of the table into splits with approximately the same number of regions.
+     *
+     * @param numSplits Desired number of splits
+     * @param txh Transaction
+     * @return
+     * @throws StorageException
+     */
+    @Override
+    public List<ScanSplit> getScanSplits(int numSplits, StoreTransaction txh) throws StorageException {
+        Preconditions.checkArgument(numSplits>0,"Number of splits must be positive");
+        List<HRegionInfo> regions = new ArrayList<HRegionInfo>(storeManager.getRegionLocations().keySet());
+        if (regions.isEmpty()) return Collections.singletonList(ScanSplit.ALL);
+        int groups = Math.min(numSplits,regions.size());
+        List<ScanSplit> splits = new ArrayList<ScanSplit>(groups);
+        for (int i=0;i<groups;i++) {
+            byte[] start = regions.get(regions.size()*i/groups).getStartKey();
+            byte[] end = regions.get(regions.size()*(i+1)/groups-1).getEndKey();
+            splits.add(new ScanSplit(start.length==0?null:ByteBuffer.wrap(start),end.length==0?null:ByteBuffer.wrap(end)));
+        }
+        return splits;
+    }
+
+    @Override
+    public RecordIterator<ByteBuffer> getKeys(ScanSplit split, StoreTransaction txh) throws StorageException {
+        return new KeyIterator(toArray(split.getStart(),HConstants.EMPTY_START_ROW),toArray(split.getEnd(),HConstants.EMPTY_END_ROW));
+    }
+
+    private static byte[] toArray(ByteBuffer bound, byte[] open) {
+        if (null == bound) return open;
+        byte[] bytes = new byte[bound.remaining()];
+        bound.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the key range of the longest run of adjacent regions hosted by a region server on this machine.
+     * An open start or end of the table is represented by a bound of 4 zero or 0xFF bytes respectively.
+     *
+     * @return
+     * @throws StorageException
+     */
     @Override
     public ByteBuffer[] getLocalKeyPartition() throws StorageException {
-        throw new UnsupportedOperationException();
+        Set<String> localHosts = new HashSet<String>();
+        try {
+            InetAddress local = InetAddress.getLocalHost();
+            localHosts.add(local.getHostName());
+            localHosts.add(local.getCanonicalHostName());
+            localHosts.add(local.getHostAddress());
+        } catch (UnknownHostException e) {
+            throw new PermanentStorageException(e);
+        }
+
+        byte[] bestStart = null, bestEnd = null;
+        int bestLength = 0;
+        byte[] runStart = null;
+        int runLength = 0;
+        for (Map.Entry<HRegionInfo,ServerName> region : storeManager.getRegionLocations().entrySet()) {
+            if (null != region.getValue() && localHosts.contains(region.getValue().getHostname())) {
+                if (0 == runLength) runStart = region.getKey().getStartKey();
+                runLength++;
+                if (runLength > bestLength) {
+                    bestLength = runLength;
+                    bestStart = runStart;
+                    bestEnd = region.getKey().getEndKey();
+                }
+            } else {
+                runLength = 0;
+            }
+        }
+        if (0 == bestLength)
+            throw new UnsupportedOperationException("No region of table ["+tableName+"] is hosted on this machine");
+
+        return new ByteBuffer[]{
+                bestStart.length==0?ByteBufferUtil.zeroByteBuffer(4):ByteBuffer.wrap(bestStart),
+                bestEnd.length==0?ByteBufferUtil.oneByteBuffer(4):ByteBuffer.wrap(bestEnd)};
     }
 
     @Override
@@ -1,5 +1,6 @@
 package com.thinkaurelius.titan.diskstorage.hbase;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 import com.thinkaurelius.titan.core.TitanException;
 import com.thinkaurelius.titan.diskstorage.PermanentStorageException;
@@ -35,6 +36,12 @@ public class HBaseStoreManager extends DistributedStoreManager implements KeyCol
 
     public static final int PORT_DEFAULT = 9160;
 
+    /**
+     * Number of rows fetched per round trip by the scanners used to iterate over all keys of a store.
+     */
+    public static final String SCANNER_CACHING_KEY = "scanner-caching";
+    public static final int SCANNER_CACHING_DEFAULT = 1000;
+
     public static final String HBASE_CONFIGURATION_NAMESPACE = "hbase-config";
 
     public static final Map<String,String> HBASE_CONFIGURATION_MAP = new ImmutableMap.Builder<String,String>().
@@ -48,10 +55,13 @@ public class HBaseStoreManager extends DistributedStoreManager implements KeyCol
     private final Map<String,HBaseKeyColumnValueStore> openStores;
     private final StoreFeatures features;
     private final HTablePool connectionPool;
+    private final int scannerCaching;
 	
     public HBaseStoreManager(org.apache.commons.configuration.Configuration config) throws StorageException {
         super(config,PORT_DEFAULT);
         this.tableName = config.getString(TABLE_NAME_KEY,TABLE_NAME_DEFAULT);
+        this.scannerCaching = config.getInt(SCANNER_CACHING_KEY,SCANNER_CACHING_DEFAULT);
+        Preconditions.checkArgument(scannerCaching>0,"Scanner caching must be positive: %s",scannerCaching);
 		
 		this.hconf = HBaseConfiguration.create();
         for (Map.Entry<String,String> confEntry : HBASE_CONFIGURATION_MAP.entrySet()) {
@@ -82,7 +92,7 @@ public class HBaseStoreManager extends DistributedStoreManager implements KeyCol
         openStores = new HashMap<String, HBaseKeyColumnValueStore>();
 
         features = new StoreFeatures();
-        features.supportsScan=false; features.supportsBatchMutation=true; features.supportsTransactions=false;
+        features.supportsScan=true; features.supportsBatchMutation=true; features.supportsMultiQuery=true; features.supportsTransactions=false;
         features.supportsConsistentKeyOperations=true; features.supportsLocking=false; features.isKeyOrdered=false;
         features.isDistributed=true; features.hasLocalKeyPartition=false;
     }
@@ -104,6 +114,32 @@ public class HBaseStoreManager extends DistributedStoreManager implements KeyCol
         return features;
     }
 
+    int getScannerCaching() {
+        return scannerCaching;
+    }
+
+    /**
+     * Returns the regions of the table sorted by start key together with the server currently hosting each region
+     *
+     * @return
+     * @throws StorageException
+     */
+    NavigableMap<HRegionInfo,ServerName> getRegionLocations() throws StorageException {
+        HTable table = null;
+        try {
+            table = new HTable(hconf, tableName);
+            return table.getRegionLocations();
+        } catch (IOException e) {
+            throw new TemporaryStorageException(e);
+        } finally {
+            try {
+                if (null != table) table.close();
+            } catch (IOException e) {
+                log.warn("Could not close table",e);
+            }
+        }
+    }
+
     @Override
     public void mutateMany(Map<String, Map<ByteBuffer, Mutation>> mutations, StoreTransaction txh) throws StorageException {
 
@@ -246,6 +282,11 @@ public class HBaseStoreManager extends DistributedStoreManager implements KeyCol
 		return new HBaseTransaction(level);
 	}
 
+    @Override
+    public StoreTransaction beginReadOnlyTransaction(ConsistencyLevel level) throws StorageException {
+        return beginTransaction(level);
+    }
+
 
     /**
      * Deletes the specified table with all its columns.
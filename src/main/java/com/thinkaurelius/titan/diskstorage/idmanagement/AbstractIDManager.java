@@ -2,6 +2,7 @@ package com.thinkaurelius.titan.diskstorage.idmanagement;
 
 import com.google.common.base.Preconditions;
 import com.thinkaurelius.titan.diskstorage.IDAuthority;
+import com.thinkaurelius.titan.diskstorage.StorageException;
 import com.thinkaurelius.titan.diskstorage.common.DistributedStoreManager;
 import com.thinkaurelius.titan.diskstorage.util.ByteBufferUtil;
 import com.thinkaurelius.titan.graphdb.configuration.GraphDatabaseConfiguration;
@@ -9,6 +10,8 @@ import com.thinkaurelius.titan.graphdb.database.idassigner.IDBlockSizer;
 import org.apache.commons.configuration.Configuration;
 
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * (c) Matthias Broecheler (me@matthiasb.com)
@@ -54,6 +57,21 @@ public abstract class AbstractIDManager implements IDAuthority {
         this.blockSizer=sizer;
     }
 
+    /**
+     * Acquires each requested block individually through {@link #getIDBlock(int)}.
+     */
+    @Override
+    public Map<Integer,long[][]> getIDBlocks(Map<Integer,Integer> numBlocks) throws StorageException {
+        Map<Integer,long[][]> result = new HashMap<Integer,long[][]>(numBlocks.size());
+        for (Map.Entry<Integer,Integer> entry : numBlocks.entrySet()) {
+            Preconditions.checkArgument(entry.getValue()>0,"Need to request at least one block for partition: " + entry.getKey());
+            long[][] blocks = new long[entry.getValue()][];
+            for (int i=0;i<blocks.length;i++) blocks[i]=getIDBlock(entry.getKey());
+            result.put(entry.getKey(),blocks);
+        }
+        return result;
+    }
+
     protected ByteBuffer getPartitionKey(int partition) {
         return ByteBufferUtil.getIntByteBuffer(partition);
     }
@@ -1,13 +1,14 @@
 package com.thinkaurelius.titan.diskstorage.idmanagement;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 import com.thinkaurelius.titan.diskstorage.*;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.*;
 import com.thinkaurelius.titan.diskstorage.locking.TemporaryLockingException;
+import com.thinkaurelius.titan.diskstorage.util.ByteBufferUtil;
 import com.thinkaurelius.titan.diskstorage.util.TimeUtility;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.configuration.Configuration;
@@ -26,6 +27,11 @@ public class ConsistentKeyIDManager extends AbstractIDManager {
     private final int rollbackAttempts = 5;
     private final int rollbackWaitTime = 200;
 
+    /**
+     * Number of most recent claims read per partition when checking the outcome of a claim round
+     */
+    private static final int CLAIM_READ_LIMIT = 16;
+
 	public ConsistentKeyIDManager(KeyColumnValueStore idStore, StoreManager manager, Configuration config) throws StorageException {
         super(config);
         Preconditions.checkArgument(manager.getFeatures().supportsConsistentKeyOperations());
@@ -62,7 +68,10 @@ public class ConsistentKeyIDManager extends AbstractIDManager {
     }
 
     private long getCurrentID(ByteBuffer partitionKey, StoreTransaction txh) throws StorageException {
-        List<Entry> blocks = idStore.getSlice(partitionKey, EMPTY_BUFFER, EMPTY_BUFFER, 5, txh);
+        return getCurrentID(idStore.getSlice(partitionKey, EMPTY_BUFFER, getAllClaimsSliceEnd(), 5, txh));
+    }
+
+    private long getCurrentID(List<Entry> blocks) throws StorageException {
         if (blocks==null) throw new TemporaryStorageException("Could not read from storage");
 
         long latest = BASE_ID;
@@ -80,106 +89,218 @@ public class ConsistentKeyIDManager extends AbstractIDManager {
 
     @Override
 	public long[] getIDBlock(int partition) throws StorageException {
-		long blockSize = getBlockSize(partition);
+        return getIDBlocks(Collections.singletonMap(partition,1)).get(partition)[0];
+    }
 
-		for (int retry = 0; retry < idApplicationRetryCount; retry++) {
+    /**
+     * Claims the id blocks for all requested partitions in rounds. In each round, the claims for all partitions
+     * which have not yet been acquired are written in one batch and, after waiting for the id application time,
+     * read back with a single multi-key read. The consecutive blocks requested for one partition are claimed
+     * as one range. Since the claimed ranges of contending instances may differ in length, a claim is only
+     * acquired if it is the most senior claim among all claims that may overlap with it.
+     */
+    @Override
+    public Map<Integer,long[][]> getIDBlocks(Map<Integer,Integer> numBlocks) throws StorageException {
+        Map<Integer,long[][]> result = new HashMap<Integer,long[][]>(numBlocks.size());
+        Map<Integer,Integer> remaining = new HashMap<Integer,Integer>(numBlocks);
+        for (Map.Entry<Integer,Integer> entry : remaining.entrySet()) {
+            Preconditions.checkArgument(entry.getValue()>0,"Need to request at least one block for partition: " + entry.getKey());
+        }
+
+		for (int retry = 0; retry < idApplicationRetryCount && !remaining.isEmpty(); retry++) {
             StoreTransaction txh = null;
+            Map<ByteBuffer,BlockClaim> claims = null;
             try {
                 txh = manager.beginTransaction(ConsistencyLevel.KEY_CONSISTENT);
                 // Read the latest counter values from the idStore
-                ByteBuffer partitionKey = getPartitionKey(partition);
-                // calculate the start (inclusive) and end (exclusive) of the allocation we're about to attempt
-                long nextStart = getCurrentID(partitionKey,txh);
-                Preconditions.checkArgument(Long.MAX_VALUE-blockSize>nextStart,"ID overflow detected");
-                long nextEnd = nextStart + blockSize;
-
-                ByteBuffer target = getBlockApplication(nextEnd);
-
+                List<ByteBuffer> partitionKeys = new ArrayList<ByteBuffer>(remaining.size());
+                for (Integer partition : remaining.keySet()) partitionKeys.add(getPartitionKey(partition));
+                Map<ByteBuffer,List<Entry>> current = idStore.getSlice(partitionKeys, EMPTY_BUFFER, getAllClaimsSliceEnd(), 5, txh);
+
+                // calculate the start (inclusive) and end (exclusive) of the allocations we're about to attempt
+                claims = new HashMap<ByteBuffer,BlockClaim>(remaining.size());
+                for (Map.Entry<Integer,Integer> entry : remaining.entrySet()) {
+                    ByteBuffer partitionKey = getPartitionKey(entry.getKey());
+                    long nextStart = getCurrentID(current.get(partitionKey));
+                    long blockSize = getBlockSize(entry.getKey());
+                    int count = entry.getValue();
+                    Preconditions.checkArgument((Long.MAX_VALUE-nextStart)/count>blockSize,"ID overflow detected");
+                    long nextEnd = nextStart + blockSize*count;
+                    claims.put(partitionKey,new BlockClaim(entry.getKey(),nextStart,nextEnd,blockSize,getBlockApplication(nextEnd)));
+                }
 
-                // attempt to write our claim on the next id block
-                boolean success = false;
-                try {
-                    long before = System.currentTimeMillis();
-                    idStore.mutate(partitionKey, Arrays.asList(new Entry(target, EMPTY_BUFFER)), null, txh);
-                    long after = System.currentTimeMillis();
+                // attempt to write our claims on the next id blocks
+                long before = System.currentTimeMillis();
+                writeClaims(claims,true,txh);
+                long after = System.currentTimeMillis();
 
-                    if (idApplicationWaitMS < after - before) {
-                        throw new TemporaryStorageException("Wrote claim for id block ["+nextStart+", "+nextEnd+") in "+(after-before)+" ms => too slow, threshold is: "+ idApplicationWaitMS);
-                    } else {
+                if (idApplicationWaitMS < after - before) {
+                    throw new TemporaryStorageException("Wrote claims for "+claims.size()+" id blocks in "+(after-before)+" ms => too slow, threshold is: "+ idApplicationWaitMS);
+                }
 
-                        assert 0 != target.remaining();
-                        ByteBuffer[] slice = getBlockSlice(nextEnd);
-
-                        /* At this point we've written our claim on [nextStart, nextEnd),
-                         * but we haven't yet guaranteed the absence of a contending claim on
-                         * the same id block from another machine
-                         */
-
-                        TimeUtility.sleepUntil(after+idApplicationWaitMS,log);
-
-                        // Read all id allocation claims on this partition, for the counter value we're claiming
-                        List<Entry> blocks = idStore.getSlice(partitionKey, slice[0], slice[1], txh);
-                        if (blocks==null) throw new TemporaryStorageException("Could not read from storage");
-                        if (blocks.isEmpty()) throw new PermanentStorageException("It seems there is a race-condition in the block application. " +
-                                "If you have multiple Titan instances running on one physical machine, ensure that they have unique machine idAuthorities");
-
-                        /* If our claim is the lexicographically first one, then our claim
-                         * is the most senior one and we own this id block
-                         */
-                        if (target.equals(blocks.get(0).getColumn())) {
-
-                            long result[] = new long[2];
-                            result[0] = nextStart;
-                            result[1] = nextEnd;
-
-                            if (log.isDebugEnabled()) {
-                                log.debug("Acquired ID block [{},{}) on partition {} (my rid is {})",
-                                        new Object[] { nextStart, nextEnd, partition, new String(Hex.encodeHex(rid)) });
-                            }
-
-                            success = true;
-                            return result;
-                        } else {
-                            // Another claimant beat us to this id block -- try again.
-                            log.debug("Failed to acquire ID block [{},{}) (another host claimed it first)", nextStart, nextEnd);
+                /* At this point we've written our claims, but we haven't yet guaranteed
+                 * the absence of contending claims on the same id blocks from another machine
+                 */
+
+                TimeUtility.sleepUntil(after+idApplicationWaitMS,log);
+
+                // Read the most recent id allocation claims on all partitions. Claims sort by descending counter value.
+                Map<ByteBuffer,List<Entry>> applications = idStore.getSlice(new ArrayList<ByteBuffer>(claims.keySet()),
+                        EMPTY_BUFFER, getAllClaimsSliceEnd(), CLAIM_READ_LIMIT, txh);
+                Iterator<Map.Entry<ByteBuffer,BlockClaim>> iter = claims.entrySet().iterator();
+                while (iter.hasNext()) {
+                    Map.Entry<ByteBuffer,BlockClaim> entry = iter.next();
+                    BlockClaim claim = entry.getValue();
+                    /* If our claim is the lexicographically first one among the overlapping
+                     * claims, then our claim is the most senior one and we own this id range
+                     */
+                    if (isSeniorClaim(entry.getKey(),claim,applications.get(entry.getKey()),txh)) {
+                        long[][] blocks = new long[remaining.get(claim.partition)][];
+                        for (int i=0;i<blocks.length;i++) {
+                            blocks[i] = new long[]{claim.start+i*claim.blockSize,claim.start+(i+1)*claim.blockSize};
                         }
-                    }
-                } finally {
-                    if (!success) {
-                        //Delete claim to not pollute id space
-                        try {
-                            for (int attempt=0;attempt<rollbackAttempts;attempt++) {
-                                idStore.mutate(partitionKey, null, Arrays.asList(target), txh);
-                                break;
-                            }
-                        } catch (StorageException e) {
-                            log.warn("Storage exception while deleting old block application - retrying in {} ms: {}",rollbackWaitTime,e);
-                            if (rollbackWaitTime>0) TimeUtility.sleepUntil(System.currentTimeMillis()+rollbackWaitTime,log);
+                        result.put(claim.partition,blocks);
+                        remaining.remove(claim.partition);
+                        iter.remove();
+
+                        if (log.isDebugEnabled()) {
+                            log.debug("Acquired ID block [{},{}) on partition {} (my rid is {})",
+                                    new Object[] { claim.start, claim.end, claim.partition, new String(Hex.encodeHex(rid)) });
                         }
+                    } else {
+                        // Another claimant beat us to this id block -- try again.
+                        log.debug("Failed to acquire ID block [{},{}) (another host claimed it first)", claim.start, claim.end);
                     }
                 }
             } catch (TemporaryStorageException e) {
                 log.warn("Temporary storage exception while acquiring id block - retrying in {} ms: {}", idApplicationWaitMS,e);
+                deleteClaims(claims,txh);
+                claims = null;
                 if (txh!=null) txh.abort();
                 txh=null;
                 if (idApplicationWaitMS>0) TimeUtility.sleepUntil(System.currentTimeMillis()+idApplicationWaitMS,log);
             } finally {
+                //Delete unsuccessful claims to not pollute id space
+                deleteClaims(claims,txh);
                 if (txh!=null) txh.commit();
             }
 		}
-		
-		throw new TemporaryLockingException("Exceeded timeout count ["+ idApplicationRetryCount +"] when attempting to allocate id block");
+
+        if (!remaining.isEmpty())
+		    throw new TemporaryLockingException("Exceeded timeout count ["+ idApplicationRetryCount +"] when attempting to allocate id block");
+        return result;
+    }
+
+    /**
+     * Checks whether the given claim is the most senior one among all claims which overlap with its id range,
+     * regardless of how many blocks or which block size they claimed. Claims store the start of their range as
+     * value and sort by the end of their range. Claims without a start are considered to overlap with any claim
+     * that starts before their end.
+     * Falls back to reading all claims which end after the start of the given claim if they are not contained in
+     * the given most recent claims.
+     */
+    private boolean isSeniorClaim(ByteBuffer partitionKey, BlockClaim claim, List<Entry> recent, StoreTransaction txh) throws StorageException {
+        if (recent==null) throw new TemporaryStorageException("Could not read from storage");
+        List<Entry> overlapping = recent;
+        if (recent.size()>=CLAIM_READ_LIMIT && getBlockValue(recent.get(recent.size()-1).getColumn())>claim.start) {
+            overlapping = idStore.getSlice(partitionKey, EMPTY_BUFFER, getBlockSliceEnd(claim.start), txh);
+            if (overlapping==null) throw new TemporaryStorageException("Could not read from storage");
+        }
+        ByteBuffer senior = null;
+        boolean found = false;
+        for (Entry e : overlapping) {
+            ByteBuffer column = e.getColumn();
+            //Claims sort by descending counter value
+            if (getBlockValue(column)<=claim.start) break;
+            if (getClaimStart(e.getValue())>=claim.end) continue;
+            if (claim.target.equals(column)) found = true;
+            if (senior==null || compareSeniority(column,senior)<0) senior = column;
+        }
+        if (!found) throw new PermanentStorageException("It seems there is a race-condition in the block application. " +
+                "If you have multiple Titan instances running on one physical machine, ensure that they have unique machine idAuthorities");
+        return claim.target.equals(senior);
     }
 
+    /**
+     * Orders claims by their time of application and breaks ties by rid
+     */
+    private static int compareSeniority(ByteBuffer claim1, ByteBuffer claim2) {
+        ByteBuffer c1 = claim1.duplicate(), c2 = claim2.duplicate();
+        c1.position(c1.position()+8);
+        c2.position(c2.position()+8);
+        return ByteBufferUtil.compare(c1,c2);
+    }
 
+    private void writeClaims(Map<ByteBuffer,BlockClaim> claims, boolean add, StoreTransaction txh) throws StorageException {
+        if (claims.size()>1 && manager instanceof KeyColumnValueStoreManager && manager.getFeatures().supportsBatchMutation()) {
+            Map<ByteBuffer,Mutation> mutations = new HashMap<ByteBuffer,Mutation>(claims.size());
+            for (Map.Entry<ByteBuffer,BlockClaim> claim : claims.entrySet()) {
+                ByteBuffer target = claim.getValue().target;
+                mutations.put(claim.getKey(),add?new Mutation(Arrays.asList(new Entry(target, claim.getValue().getStartValue())),null)
+                                                :new Mutation(null,Arrays.asList(target)));
+            }
+            ((KeyColumnValueStoreManager)manager).mutateMany(ImmutableMap.of(idStore.getName(),mutations),txh);
+        } else {
+            for (Map.Entry<ByteBuffer,BlockClaim> claim : claims.entrySet()) {
+                ByteBuffer target = claim.getValue().target;
+                if (add) idStore.mutate(claim.getKey(), Arrays.asList(new Entry(target, claim.getValue().getStartValue())), null, txh);
+                else idStore.mutate(claim.getKey(), null, Arrays.asList(target), txh);
+            }
+        }
+    }
 
-    private final ByteBuffer[] getBlockSlice(long blockValue) {
-        ByteBuffer[] slice = new ByteBuffer[2];
-        slice[0] = ByteBuffer.allocate(16);
-        slice[1] = ByteBuffer.allocate(16);
-        slice[0].putLong(-blockValue).putLong(0).rewind();
-        slice[1].putLong(-blockValue).putLong(-1).rewind();
-        return slice;
+    private void deleteClaims(Map<ByteBuffer,BlockClaim> claims, StoreTransaction txh) throws StorageException {
+        if (claims==null || claims.isEmpty() || txh==null) return;
+        for (int attempt=0;attempt<rollbackAttempts;attempt++) {
+            try {
+                writeClaims(claims,false,txh);
+                claims.clear();
+                return;
+            } catch (StorageException e) {
+                log.warn("Storage exception while deleting old block application - retrying in {} ms: {}",rollbackWaitTime,e);
+                if (rollbackWaitTime>0) TimeUtility.sleepUntil(System.currentTimeMillis()+rollbackWaitTime,log);
+            }
+        }
+    }
+
+    private static class BlockClaim {
+
+        private final int partition;
+        private final long start;
+        private final long end;
+        private final long blockSize;
+        private final ByteBuffer target;
+
+        private BlockClaim(int partition, long start, long end, long blockSize, ByteBuffer target) {
+            this.partition = partition;
+            this.start = start;
+            this.end = end;
+            this.blockSize = blockSize;
+            this.target = target;
+        }
+
+        private ByteBuffer getStartValue() {
+            ByteBuffer value = ByteBuffer.allocate(8);
+            value.putLong(start).rewind();
+            return value;
+        }
+    }
+
+    /**
+     * Returns the column before which all claims on ids beyond the given block value sort
+     */
+    private final ByteBuffer getBlockSliceEnd(long blockValue) {
+        ByteBuffer end = ByteBuffer.allocate(16);
+        end.putLong(-blockValue).putLong(0).rewind();
+        return end;
+    }
+
+    /**
+     * Returns an explicit end column for slices over all claims, since not all stores interpret an empty
+     * end column as unbounded. All claims end beyond the base id.
+     */
+    private final ByteBuffer getAllClaimsSliceEnd() {
+        return getBlockSliceEnd(BASE_ID);
     }
     
 	private final ByteBuffer getBlockApplication(long blockValue) {
@@ -194,7 +315,15 @@ public class ConsistentKeyIDManager extends AbstractIDManager {
 	}
     
     private final long getBlockValue(ByteBuffer column) {
-        return -column.getLong();
+        return -column.getLong(column.position());
+    }
+
+    /**
+     * Returns the start of the id range of a claim or {@link Long#MIN_VALUE} if the claim does not store its start
+     */
+    private final long getClaimStart(ByteBuffer value) {
+        if (value==null || value.remaining()<8) return Long.MIN_VALUE;
+        return value.getLong(value.position());
     }
     
 }
@@ -10,7 +10,10 @@ import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreTransaction;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * (c) Matthias Broecheler (me@matthiasb.com)
@@ -72,6 +75,25 @@ public class HashPrefixKeyColumnValueStore implements KeyColumnValueStore {
         return store.getSlice(prefixKey(key),columnStart,columnEnd,txh);
     }
 
+    @Override
+    public Map<ByteBuffer,List<Entry>> getSlice(List<ByteBuffer> keys, ByteBuffer columnStart, ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+        List<ByteBuffer> prefixedKeys = new ArrayList<ByteBuffer>(keys.size());
+        Map<ByteBuffer,ByteBuffer> originalKeys = new HashMap<ByteBuffer,ByteBuffer>(keys.size());
+        for (ByteBuffer key : keys) {
+            ByteBuffer prefixed = prefixKey(key);
+            prefixedKeys.add(prefixed);
+            originalKeys.put(prefixed,key);
+        }
+        Map<ByteBuffer,List<Entry>> prefixedResult = store.getSlice(prefixedKeys,columnStart,columnEnd,limit,txh);
+        Map<ByteBuffer,List<Entry>> result = new HashMap<ByteBuffer,List<Entry>>(prefixedResult.size());
+        for (Map.Entry<ByteBuffer,List<Entry>> entry : prefixedResult.entrySet()) {
+            ByteBuffer key = originalKeys.get(entry.getKey());
+            assert key!=null;
+            result.put(key,entry.getValue());
+        }
+        return result;
+    }
+
     @Override
     public ByteBuffer get(ByteBuffer key, ByteBuffer column, StoreTransaction txh) throws StorageException {
         return store.get(prefixKey(key),column,txh);
@@ -0,0 +1,288 @@
+package com.thinkaurelius.titan.diskstorage.inmemory;
+
+import com.google.common.base.Preconditions;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.Entry;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.KeyColumnValueStore;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.RecordIterator;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.ScanSplit;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.SplitScanStore;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreTransaction;
+import com.thinkaurelius.titan.diskstorage.locking.PermanentLockingException;
+import com.thinkaurelius.titan.diskstorage.locking.TemporaryLockingException;
+import com.thinkaurelius.titan.diskstorage.util.ByteBufferUtil;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * {@link KeyColumnValueStore} which keeps all rows in a {@link ConcurrentSkipListMap} from key to a
+ * {@link ConcurrentSkipListMap} of columns. Keys and columns are ordered by unsigned byte order.
+ *
+ * All written buffers are copied and all returned buffers are duplicates, hence callers may freely modify the
+ * position of buffers they pass in or receive.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class InMemoryKeyColumnValueStore implements KeyColumnValueStore, SplitScanStore {
+
+    private static final Comparator<ByteBuffer> BYTE_ORDER = new Comparator<ByteBuffer>() {
+        @Override
+        public int compare(ByteBuffer b1, ByteBuffer b2) {
+            return ByteBufferUtil.compare(b1,b2);
+        }
+    };
+
+    private final String name;
+    private final ConcurrentNavigableMap<ByteBuffer,ConcurrentNavigableMap<ByteBuffer,ByteBuffer>> rows;
+    private final ConcurrentMap<KeyColumn,InMemoryTransaction> locks;
+
+    public InMemoryKeyColumnValueStore(String name) {
+        Preconditions.checkNotNull(name);
+        this.name = name;
+        this.rows = new ConcurrentSkipListMap<ByteBuffer, ConcurrentNavigableMap<ByteBuffer, ByteBuffer>>(BYTE_ORDER);
+        this.locks = new ConcurrentHashMap<KeyColumn, InMemoryTransaction>();
+    }
+
+    private static ByteBuffer copy(ByteBuffer b) {
+        ByteBuffer c = ByteBuffer.allocate(b.remaining());
+        c.put(b.duplicate());
+        c.flip();
+        return c;
+    }
+
+    private ConcurrentNavigableMap<ByteBuffer,ByteBuffer> getOrCreateRow(ByteBuffer key) {
+        ConcurrentNavigableMap<ByteBuffer,ByteBuffer> row = rows.get(key);
+        if (row==null) {
+            ConcurrentNavigableMap<ByteBuffer,ByteBuffer> newRow = new ConcurrentSkipListMap<ByteBuffer, ByteBuffer>(BYTE_ORDER);
+            row = rows.putIfAbsent(copy(key),newRow);
+            if (row==null) row=newRow;
+        }
+        return row;
+    }
+
+    @Override
+    public boolean containsKey(ByteBuffer key, StoreTransaction txh) throws StorageException {
+        ConcurrentNavigableMap<ByteBuffer,ByteBuffer> row = rows.get(key);
+        return row!=null && !row.isEmpty();
+    }
+
+    @Override
+    public List<Entry> getSlice(ByteBuffer key, ByteBuffer columnStart, ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+        Preconditions.checkArgument(limit>=0,"Limit must be non-negative: %s",limit);
+        ConcurrentNavigableMap<ByteBuffer,ByteBuffer> row = rows.get(key);
+        if (row==null) return new ArrayList<Entry>(0);
+        NavigableMap<ByteBuffer,ByteBuffer> slice;
+        if (!columnEnd.hasRemaining()) {
+            //An empty end column denotes an unbounded slice
+            slice = row.tailMap(columnStart,true);
+        } else if (BYTE_ORDER.compare(columnStart,columnEnd)>=0) {
+            return new ArrayList<Entry>(0);
+        } else {
+            slice = row.subMap(columnStart,true,columnEnd,false);
+        }
+        List<Entry> result = new ArrayList<Entry>(Math.min(limit,16));
+        for (Map.Entry<ByteBuffer,ByteBuffer> column : slice.entrySet()) {
+            if (result.size()>=limit) break;
+            result.add(new Entry(column.getKey().duplicate(),column.getValue().duplicate()));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Entry> getSlice(ByteBuffer key, ByteBuffer columnStart, ByteBuffer columnEnd, StoreTransaction txh) throws StorageException {
+        return getSlice(key,columnStart,columnEnd,Integer.MAX_VALUE,txh);
+    }
+
+    @Override
+    public Map<ByteBuffer, List<Entry>> getSlice(List<ByteBuffer> keys, ByteBuffer columnStart, ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+        Map<ByteBuffer,List<Entry>> result = new HashMap<ByteBuffer,List<Entry>>(keys.size());
+        for (ByteBuffer key : keys) {
+            result.put(key,getSlice(key,columnStart,columnEnd,limit,txh));
+        }
+        return result;
+    }
+
+    @Override
+    public ByteBuffer get(ByteBuffer key, ByteBuffer column, StoreTransaction txh) throws StorageException {
+        ConcurrentNavigableMap<ByteBuffer,ByteBuffer> row = rows.get(key);
+        if (row==null) return null;
+        ByteBuffer value = row.get(column);
+        return value==null?null:value.duplicate();
+    }
+
+    @Override
+    public boolean containsKeyColumn(ByteBuffer key, ByteBuffer column, StoreTransaction txh) throws StorageException {
+        ConcurrentNavigableMap<ByteBuffer,ByteBuffer> row = rows.get(key);
+        return row!=null && row.containsKey(column);
+    }
+
+    @Override
+    public void mutate(ByteBuffer key, List<Entry> additions, List<ByteBuffer> deletions, StoreTransaction txh) throws StorageException {
+        if (deletions!=null && !deletions.isEmpty()) {
+            ConcurrentNavigableMap<ByteBuffer,ByteBuffer> row = rows.get(key);
+            if (row!=null) {
+                for (ByteBuffer column : deletions) row.remove(column);
+            }
+        }
+        if (additions!=null && !additions.isEmpty()) {
+            ConcurrentNavigableMap<ByteBuffer,ByteBuffer> row = getOrCreateRow(key);
+            for (Entry entry : additions) {
+                row.put(copy(entry.getColumn()),copy(entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Acquires an exclusive lock on the given key-column pair for the given transaction, which must have been
+     * started by {@link InMemoryStoreManager}, and verifies that the column currently holds the expected value.
+     * The lock is held until the transaction commits or aborts.
+     *
+     * @throws TemporaryLockingException if another transaction holds the lock
+     * @throws PermanentLockingException if the current value does not match the expected value
+     */
+    @Override
+    public void acquireLock(ByteBuffer key, ByteBuffer column, ByteBuffer expectedValue, StoreTransaction txh) throws StorageException {
+        Preconditions.checkArgument(txh instanceof InMemoryTransaction,"Unexpected transaction handle: %s",txh);
+        InMemoryTransaction tx = (InMemoryTransaction)txh;
+        KeyColumn lock = new KeyColumn(copy(key),copy(column));
+        InMemoryTransaction holder = locks.putIfAbsent(lock,tx);
+        if (holder==null) {
+            tx.registerLock(this,lock);
+        } else if (holder!=tx) {
+            throw new TemporaryLockingException("Lock on key-column pair is held by another transaction");
+        }
+        ByteBuffer current = get(key,column,txh);
+        if (expectedValue==null ? current!=null : !expectedValue.equals(current)) {
+            throw new PermanentLockingException("Expected value mismatch on locked key-column pair");
+        }
+    }
+
+    void releaseLock(KeyColumn lock, InMemoryTransaction tx) {
+        locks.remove(lock,tx);
+    }
+
+    @Override
+    public RecordIterator<ByteBuffer> getKeys(StoreTransaction txh) throws StorageException {
+        return getKeys(rows);
+    }
+
+    /**
+     * Splits the rows into ranges with approximately the same number of rows
+     *
+     * @param numSplits Desired number of splits
+     * @param txh Transaction
+     * @return
+     * @throws StorageException
+     */
+    @Override
+    public List<ScanSplit> getScanSplits(int numSplits, StoreTransaction txh) throws StorageException {
+        Preconditions.checkArgument(numSplits>0,"Number of splits must be positive");
+        List<ByteBuffer> keys = new ArrayList<ByteBuffer>(rows.keySet());
+        List<ScanSplit> splits = new ArrayList<ScanSplit>(numSplits);
+        ByteBuffer start = null;
+        for (int i=1;i<numSplits;i++) {
+            int index = (int)(((long)keys.size())*i/numSplits);
+            if (index==0 || (start!=null && keys.get(index).equals(start))) continue;
+            ByteBuffer end = keys.get(index).duplicate();
+            splits.add(new ScanSplit(start,end));
+            start = end;
+        }
+        splits.add(new ScanSplit(start,null));
+        return splits;
+    }
+
+    @Override
+    public RecordIterator<ByteBuffer> getKeys(ScanSplit split, StoreTransaction txh) throws StorageException {
+        ByteBuffer start = split.getStart(), end = split.getEnd();
+        ConcurrentNavigableMap<ByteBuffer,ConcurrentNavigableMap<ByteBuffer,ByteBuffer>> range = rows;
+        if (start!=null) range = range.tailMap(start,true);
+        if (end!=null) range = range.headMap(end,false);
+        return getKeys(range);
+    }
+
+    private static RecordIterator<ByteBuffer> getKeys(ConcurrentNavigableMap<ByteBuffer,ConcurrentNavigableMap<ByteBuffer,ByteBuffer>> range) {
+        final Iterator<Map.Entry<ByteBuffer,ConcurrentNavigableMap<ByteBuffer,ByteBuffer>>> iterator = range.entrySet().iterator();
+        return new RecordIterator<ByteBuffer>() {
+
+            private ByteBuffer next = nextKey();
+
+            private ByteBuffer nextKey() {
+                while (iterator.hasNext()) {
+                    Map.Entry<ByteBuffer,ConcurrentNavigableMap<ByteBuffer,ByteBuffer>> row = iterator.next();
+                    //Rows are not removed when their last column is deleted
+                    if (!row.getValue().isEmpty()) return row.getKey().duplicate();
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() throws StorageException {
+                return next!=null;
+            }
+
+            @Override
+            public ByteBuffer next() throws StorageException {
+                if (next==null) throw new NoSuchElementException();
+                ByteBuffer current = next;
+                next = nextKey();
+                return current;
+            }
+
+            @Override
+            public void close() throws StorageException {
+                next = null;
+            }
+        };
+    }
+
+    @Override
+    public ByteBuffer[] getLocalKeyPartition() throws StorageException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void close() throws StorageException {
+        //Data is retained by the manager
+    }
+
+    void clear() {
+        rows.clear();
+        locks.clear();
+    }
+
+    static class KeyColumn {
+
+        private final ByteBuffer key;
+        private final ByteBuffer column;
+
+        KeyColumn(ByteBuffer key, ByteBuffer column) {
+            this.key = key;
+            this.column = column;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31*key.hashCode()+column.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this==other) return true;
+            if (!(other instanceof KeyColumn)) return false;
+            KeyColumn kc = (KeyColumn)other;
+            return key.equals(kc.key) && column.equals(kc.column);
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.thinkaurelius.titan.diskstorage.inmemory;
+
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.*;
+import org.apache.commons.configuration.Configuration;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Storage manager which keeps all data in concurrent sorted maps on the heap.
+ *
+ * Data is retained for the lifetime of the manager instance, i.e. closing and reopening stores through the same
+ * instance preserves their contents while a new instance starts out empty. Mutations become visible immediately
+ * and are not isolated between transactions. Locks are held locally by the transaction which acquired them
+ * until it commits or aborts.
+ *
+ * Intended for tests and small graphs which fit into memory and need not be persisted.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class InMemoryStoreManager implements KeyColumnValueStoreManager {
+
+    private final ConcurrentMap<String,InMemoryKeyColumnValueStore> stores;
+    private final StoreFeatures features;
+
+    public InMemoryStoreManager() {
+        stores = new ConcurrentHashMap<String, InMemoryKeyColumnValueStore>();
+
+        features = new StoreFeatures();
+        features.supportsScan=true; features.supportsBatchMutation=true; features.supportsMultiQuery=false; features.supportsTransactions=false;
+        features.supportsConsistentKeyOperations=true; features.supportsLocking=true; features.isKeyOrdered=true;
+        features.isDistributed=false; features.hasLocalKeyPartition=false;
+    }
+
+    public InMemoryStoreManager(Configuration configuration) {
+        this();
+    }
+
+    @Override
+    public StoreTransaction beginTransaction(ConsistencyLevel consistencyLevel) throws StorageException {
+        return new InMemoryTransaction(consistencyLevel);
+    }
+
+    @Override
+    public StoreTransaction beginReadOnlyTransaction(ConsistencyLevel consistencyLevel) throws StorageException {
+        return beginTransaction(consistencyLevel);
+    }
+
+    @Override
+    public KeyColumnValueStore openDatabase(String name) throws StorageException {
+        InMemoryKeyColumnValueStore store = stores.get(name);
+        if (store==null) {
+            InMemoryKeyColumnValueStore newStore = new InMemoryKeyColumnValueStore(name);
+            store = stores.putIfAbsent(name,newStore);
+            if (store==null) store=newStore;
+        }
+        return store;
+    }
+
+    @Override
+    public void mutateMany(Map<String, Map<ByteBuffer, Mutation>> mutations, StoreTransaction txh) throws StorageException {
+        for (Map.Entry<String,Map<ByteBuffer,Mutation>> storeMutation : mutations.entrySet()) {
+            KeyColumnValueStore store = openDatabase(storeMutation.getKey());
+            for (Map.Entry<ByteBuffer,Mutation> keyMutation : storeMutation.getValue().entrySet()) {
+                Mutation m = keyMutation.getValue();
+                store.mutate(keyMutation.getKey(),m.getAdditions(),m.getDeletions(),txh);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws StorageException {
+        //Data is retained until the manager is garbage collected
+    }
+
+    @Override
+    public void clearStorage() throws StorageException {
+        for (InMemoryKeyColumnValueStore store : stores.values()) {
+            store.clear();
+        }
+    }
+
+    @Override
+    public StoreFeatures getFeatures() {
+        return features;
+    }
+
+    @Override
+    public String toString() {
+        return "inmemory";
+    }
+}
@@ -0,0 +1,54 @@
+package com.thinkaurelius.titan.diskstorage.inmemory;
+
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.common.AbstractStoreTransaction;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.ConsistencyLevel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transaction handle for {@link InMemoryStoreManager}. Mutations are applied immediately, the transaction only
+ * keeps track of the locks it holds so that they can be released on commit or abort.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class InMemoryTransaction extends AbstractStoreTransaction {
+
+    private List<InMemoryKeyColumnValueStore.KeyColumn> heldLocks = null;
+    private List<InMemoryKeyColumnValueStore> lockStores = null;
+
+    public InMemoryTransaction(ConsistencyLevel level) {
+        super(level);
+    }
+
+    synchronized void registerLock(InMemoryKeyColumnValueStore store, InMemoryKeyColumnValueStore.KeyColumn lock) {
+        if (heldLocks==null) {
+            heldLocks = new ArrayList<InMemoryKeyColumnValueStore.KeyColumn>();
+            lockStores = new ArrayList<InMemoryKeyColumnValueStore>();
+        }
+        heldLocks.add(lock);
+        lockStores.add(store);
+    }
+
+    private synchronized void releaseLocks() {
+        if (heldLocks==null) return;
+        for (int i=0;i<heldLocks.size();i++) {
+            lockStores.get(i).releaseLock(heldLocks.get(i),this);
+        }
+        heldLocks = null;
+        lockStores = null;
+    }
+
+    @Override
+    public void commit() throws StorageException {
+        releaseLocks();
+    }
+
+    @Override
+    public void abort() throws StorageException {
+        releaseLocks();
+    }
+
+}
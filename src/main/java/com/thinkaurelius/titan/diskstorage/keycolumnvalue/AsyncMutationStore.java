@@ -0,0 +1,259 @@
+package com.thinkaurelius.titan.diskstorage.keycolumnvalue;
+
+import com.google.common.base.Preconditions;
+import com.thinkaurelius.titan.diskstorage.PermanentStorageException;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.util.RetryPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists batch mutations asynchronously. {@link #mutateMany(java.util.Map, StoreTransaction)} returns as soon as
+ * the mutations have been appended to the {@link MutationLog} and synced to local disk. A single background
+ * thread applies the logged mutations to the wrapped store in the order they were logged and retries temporary
+ * failures until they succeed. A permanent failure stops the background thread and subsequent calls to
+ * {@link #mutateMany(java.util.Map, StoreTransaction)} fail. Records which have not been applied when the store
+ * is closed, fails or the process crashes are replayed by {@link #start()}.
+ *
+ * Mutations are therefore not visible to readers until they have been applied, and locks are released before
+ * the mutations they protect have been applied. Hence, this store must not be used with locking that verifies
+ * expected values against the stored data, such as consistent key locking, since those checks would read stale values.
+ * Slice caches registered via
+ * {@link #addCache(CachedKeyColumnValueStore)} are invalidated for the mutated keys once the mutations have been applied.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class AsyncMutationStore implements BufferMutationKeyColumnValueStore {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncMutationStore.class);
+
+    private static final long MAX_RETRY_WAIT_TIME = 10000;
+    private static final long ENQUEUE_WAIT_TIME = 100;
+
+    private final BufferMutationKeyColumnValueStore store;
+    private final StoreManager manager;
+    private final MutationLog wal;
+    private final RetryPolicy retryPolicy;
+
+    private final Map<String,CachedKeyColumnValueStore> caches;
+    private final BlockingQueue<Batch> pending;
+    private final Object appendLock = new Object();
+    private final Thread applier;
+
+    private volatile boolean isOpen = false;
+    private volatile boolean isClosing = false;
+
+    /**
+     * @param store Store to apply the mutations to
+     * @param manager Manager to start the transactions in which mutations are applied
+     * @param wal Log to persist the mutations to
+     * @param retryPolicy Policy determining the wait time between attempts to apply mutations
+     * @param maxPendingBatches Maximum number of logged batches which have not yet been applied.
+     *                          Further calls to {@link #mutateMany} block until a batch has been applied.
+     */
+    public AsyncMutationStore(BufferMutationKeyColumnValueStore store, StoreManager manager,
+                                      MutationLog wal, RetryPolicy retryPolicy, int maxPendingBatches) {
+        Preconditions.checkNotNull(store);
+        Preconditions.checkNotNull(manager);
+        Preconditions.checkNotNull(wal);
+        Preconditions.checkNotNull(retryPolicy);
+        Preconditions.checkArgument(maxPendingBatches>0,"Need to allow at least one pending batch");
+        this.store = store;
+        this.manager = manager;
+        this.wal = wal;
+        this.retryPolicy = retryPolicy;
+        this.caches = new ConcurrentHashMap<String,CachedKeyColumnValueStore>();
+        this.pending = new ArrayBlockingQueue<Batch>(maxPendingBatches);
+        this.applier = new Thread(new Applier(),"titan-wal-applier");
+        this.applier.setDaemon(true);
+    }
+
+    /**
+     * Registers a cache of slices of the store with the same name which is invalidated for all keys
+     * of a logged batch once the batch has been applied. Must be invoked before {@link #start()}.
+     *
+     * @param cache
+     */
+    public void addCache(CachedKeyColumnValueStore cache) {
+        Preconditions.checkNotNull(cache);
+        Preconditions.checkState(!isOpen && !isClosing,"Store has already been started");
+        caches.put(cache.getName(),cache);
+    }
+
+    /**
+     * Starts applying mutations, beginning with those left in the log by a previous instance.
+     * Must be invoked once the stores the mutations apply to have been opened.
+     *
+     * @throws StorageException
+     */
+    public void start() throws StorageException {
+        synchronized (appendLock) {
+            Preconditions.checkState(!isOpen && !isClosing,"Store has already been started");
+            applier.start();
+            wal.replay(new MutationLog.RecordHandler() {
+                @Override
+                public void handle(long seq, Map<String, Map<ByteBuffer, Mutation>> mutations) throws StorageException {
+                    enqueue(new Batch(seq,mutations));
+                }
+            });
+            isOpen = true;
+        }
+    }
+
+    @Override
+    public void mutateMany(Map<String, Map<ByteBuffer, Mutation>> mutations, StoreTransaction txh) throws StorageException {
+        //The caller may reuse the maps once this method returns
+        Map<String, Map<ByteBuffer, Mutation>> copy = new HashMap<String, Map<ByteBuffer, Mutation>>(mutations.size());
+        for (Map.Entry<String, Map<ByteBuffer, Mutation>> storeMutations : mutations.entrySet()) {
+            if (storeMutations.getValue().isEmpty()) continue;
+            copy.put(storeMutations.getKey(),new HashMap<ByteBuffer, Mutation>(storeMutations.getValue()));
+        }
+        if (copy.isEmpty()) return;
+
+        long seq;
+        synchronized (appendLock) {
+            Preconditions.checkState(isOpen,"Store is not open");
+            checkApplier();
+            //Batches are enqueued in log order so that they are applied in the same order as on replay
+            seq = wal.append(copy);
+            enqueue(new Batch(seq,copy));
+        }
+        wal.sync(seq);
+    }
+
+    private void enqueue(Batch batch) throws StorageException {
+        try {
+            while (!pending.offer(batch,ENQUEUE_WAIT_TIME,TimeUnit.MILLISECONDS)) {
+                checkApplier();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PermanentStorageException("Interrupted while waiting to log mutations",e);
+        }
+    }
+
+    private void checkApplier() throws StorageException {
+        if (!applier.isAlive()) throw new PermanentStorageException("Logged mutations are no longer being applied");
+    }
+
+    /**
+     * Stops accepting mutations, waits until the logged mutations have been applied and closes the log.
+     * If mutations fail to apply while closing, they are retained in the log and applied once the store is restarted.
+     *
+     * @throws StorageException
+     */
+    public void close() throws StorageException {
+        synchronized (appendLock) {
+            if (isClosing) return;
+            isOpen = false;
+            isClosing = true;
+        }
+        if (applier.isAlive()) {
+            try {
+                enqueue(Batch.STOP);
+            } catch (PermanentStorageException e) {
+                //Applier has stopped in the meantime
+            }
+            try {
+                applier.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PermanentStorageException("Interrupted while waiting for logged mutations to be applied",e);
+            }
+        }
+        wal.close();
+    }
+
+    private boolean apply(Batch batch) {
+        for (int attempt=1;;attempt++) {
+            try {
+                StoreTransaction tx = manager.beginTransaction(ConsistencyLevel.DEFAULT);
+                try {
+                    store.mutateMany(batch.mutations,tx);
+                } catch (StorageException e) {
+                    tx.abort();
+                    throw e;
+                }
+                tx.commit();
+                invalidateCaches(batch);
+                return true;
+            } catch (PermanentStorageException e) {
+                log.error("Could not apply logged mutations. Stopped applying logged mutations, they will be applied on restart",e);
+                return false;
+            } catch (StorageException e) {
+                if (isClosing) {
+                    log.error("Could not apply logged mutations while closing. Mutations will be applied on restart",e);
+                    return false;
+                }
+                long waitTime = Math.min(MAX_RETRY_WAIT_TIME,retryPolicy.getWaitTime(attempt));
+                log.warn("Applying logged mutations failed {} times. Retrying in {} ms. {}",new Object[]{attempt,waitTime,e});
+                try {
+                    Thread.sleep(waitTime);
+                } catch (InterruptedException ie) {
+                    log.error("Interrupted while applying logged mutations. Mutations will be applied on restart");
+                    return false;
+                }
+            } catch (RuntimeException e) {
+                log.error("Could not apply logged mutations. Mutations will be applied on restart",e);
+                return false;
+            }
+        }
+    }
+
+    private void invalidateCaches(Batch batch) {
+        if (caches.isEmpty()) return;
+        for (Map.Entry<String, Map<ByteBuffer, Mutation>> storeMutations : batch.mutations.entrySet()) {
+            CachedKeyColumnValueStore cache = caches.get(storeMutations.getKey());
+            if (cache==null) continue;
+            for (ByteBuffer key : storeMutations.getValue().keySet()) cache.invalidate(key);
+        }
+    }
+
+    private class Applier implements Runnable {
+
+        @Override
+        public void run() {
+            while (true) {
+                Batch batch;
+                try {
+                    batch = pending.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (batch==Batch.STOP) return;
+                try {
+                    //Only apply mutations which are durable in the log
+                    wal.sync(batch.seq);
+                } catch (StorageException e) {
+                    log.error("Could not sync write-ahead log. Stopped applying logged mutations",e);
+                    return;
+                }
+                if (!apply(batch)) return;
+                wal.applied(batch.seq);
+            }
+        }
+    }
+
+    private static class Batch {
+
+        private static final Batch STOP = new Batch(-1,null);
+
+        private final long seq;
+        private final Map<String, Map<ByteBuffer, Mutation>> mutations;
+
+        private Batch(long seq, Map<String, Map<ByteBuffer, Mutation>> mutations) {
+            this.seq = seq;
+            this.mutations = mutations;
+        }
+    }
+
+}
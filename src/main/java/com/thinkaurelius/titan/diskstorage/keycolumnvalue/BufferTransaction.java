@@ -4,6 +4,9 @@ import com.google.common.base.Preconditions;
 import com.thinkaurelius.titan.diskstorage.PermanentStorageException;
 import com.thinkaurelius.titan.diskstorage.StorageException;
 import com.thinkaurelius.titan.diskstorage.TemporaryStorageException;
+import com.thinkaurelius.titan.diskstorage.util.FixedRetryPolicy;
+import com.thinkaurelius.titan.diskstorage.util.RetryBudget;
+import com.thinkaurelius.titan.diskstorage.util.RetryPolicy;
 import com.thinkaurelius.titan.diskstorage.util.TimeUtility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,8 +15,23 @@ import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
+ * Buffers mutations and persists them in batches via {@link BufferMutationKeyColumnValueStore#mutateMany(java.util.Map, StoreTransaction)}.
+ *
+ * If a flush {@link Executor} is given, full buffers are persisted asynchronously while the transaction continues to
+ * fill a new buffer. At most the given number of full buffers are pending at any time and the calling thread blocks
+ * when it fills another one. Pending buffers of a transaction are persisted one at a time in the order
+ * they were filled. A failure to persist a buffer is raised on the next call to {@link #mutate}, {@link #flush()}
+ * or {@link #commit()}, the latter two wait for all pending buffers to be persisted.
+ *
+ * Temporary failures are retried according to the given {@link RetryPolicy} as long as the {@link RetryBudget}
+ * of the transaction permits.
+ *
  * (c) Matthias Broecheler (me@matthiasb.com)
  */
 
@@ -27,37 +45,82 @@ public class BufferTransaction implements StoreTransaction {
     private final BufferMutationKeyColumnValueStore store;
     private final int bufferSize;
     private final int mutationAttempts;
-    private final int attemptWaitTime;
-    
+    private final RetryPolicy retryPolicy;
+    private final RetryBudget retryBudget;
+    private final int expectedNumStores;
+
     private int numMutations;
-    private final Map<String,Map<ByteBuffer, Mutation>> mutations;
+    private Map<String,Map<ByteBuffer, Mutation>> mutations;
+
+    private final Executor flushExecutor;
+    private final BlockingQueue<Batch> pendingBatches;
+    private final Object flushLock = new Object();
+    private boolean flusherActive = false;
+    private volatile StorageException flushFailure = null;
 
     public BufferTransaction(StoreTransaction tx, BufferMutationKeyColumnValueStore store,
                              int bufferSize, int attempts, int waitTime) {
         this(tx,store,bufferSize,attempts,waitTime,8);
     }
-    
+
     public BufferTransaction(StoreTransaction tx, BufferMutationKeyColumnValueStore store,
                              int bufferSize, int attempts, int waitTime, int expectedNumStores) {
+        this(tx,store,bufferSize,attempts,waitTime,expectedNumStores,null,0);
+    }
+
+    public BufferTransaction(StoreTransaction tx, BufferMutationKeyColumnValueStore store,
+                             int bufferSize, int attempts, int waitTime,
+                             Executor flushExecutor, int maxPendingBuffers) {
+        this(tx,store,bufferSize,attempts,waitTime,8,flushExecutor,maxPendingBuffers);
+    }
+
+    public BufferTransaction(StoreTransaction tx, BufferMutationKeyColumnValueStore store,
+                             int bufferSize, int attempts, int waitTime, int expectedNumStores,
+                             Executor flushExecutor, int maxPendingBuffers) {
+        this(tx,store,bufferSize,attempts,new FixedRetryPolicy(waitTime),RetryBudget.UNLIMITED,expectedNumStores,
+                flushExecutor,maxPendingBuffers);
+    }
+
+    public BufferTransaction(StoreTransaction tx, BufferMutationKeyColumnValueStore store,
+                             int bufferSize, int attempts, RetryPolicy retryPolicy, RetryBudget retryBudget,
+                             Executor flushExecutor, int maxPendingBuffers) {
+        this(tx,store,bufferSize,attempts,retryPolicy,retryBudget,8,flushExecutor,maxPendingBuffers);
+    }
+
+    public BufferTransaction(StoreTransaction tx, BufferMutationKeyColumnValueStore store,
+                             int bufferSize, int attempts, RetryPolicy retryPolicy, RetryBudget retryBudget,
+                             int expectedNumStores, Executor flushExecutor, int maxPendingBuffers) {
         Preconditions.checkNotNull(tx);
         Preconditions.checkNotNull(store);
+        Preconditions.checkNotNull(retryPolicy);
+        Preconditions.checkNotNull(retryBudget);
         Preconditions.checkArgument(bufferSize > 1, "Buffering only makes sense when bufferSize>1");
+        Preconditions.checkArgument(flushExecutor==null || maxPendingBuffers>0, "Need to allow at least one pending buffer");
         this.tx=tx;
         this.store=store;
         this.numMutations = 0;
         this.bufferSize=bufferSize;
         this.mutationAttempts=attempts;
-        this.attemptWaitTime=waitTime;
+        this.retryPolicy=retryPolicy;
+        this.retryBudget=retryBudget;
+        this.expectedNumStores=expectedNumStores;
         this.mutations = new HashMap<String,Map<ByteBuffer,Mutation>>(expectedNumStores);
+        this.flushExecutor=flushExecutor;
+        this.pendingBatches = flushExecutor==null?null:new ArrayBlockingQueue<Batch>(maxPendingBuffers);
     }
 
     public StoreTransaction getWrappedTransactionHandle() {
         return tx;
     }
 
+    private boolean isAsynchronous() {
+        return flushExecutor!=null;
+    }
+
     public void mutate(String store, ByteBuffer key, List<Entry> additions, List<ByteBuffer> deletions) throws StorageException {
         Preconditions.checkNotNull(store);
         if ((additions==null || additions.isEmpty()) && (deletions==null || deletions.isEmpty())) return;
+        checkFlushFailure();
 
         Mutation m = new Mutation(additions,deletions);
         Map<ByteBuffer, Mutation> storeMutation = mutations.get(store);
@@ -76,36 +139,101 @@ public class BufferTransaction implements StoreTransaction {
         if (deletions!=null) numMutations+= deletions.size();
 
         if (numMutations >= bufferSize) {
-            flushInternal();
+            if (isAsynchronous()) handOff();
+            else flushInternal();
         }
     }
 
     @Override
     public void flush()  throws StorageException{
-        flushInternal();
+        flushAll();
         tx.flush();
     }
 
+    private void flushAll() throws StorageException {
+        if (isAsynchronous()) {
+            if (numMutations>0) handOff();
+            awaitPendingBatches();
+            checkFlushFailure();
+        } else {
+            flushInternal();
+        }
+    }
+
     private void flushInternal() throws StorageException {
         if (numMutations>0) {
-            for (int attempt=0;attempt<mutationAttempts;attempt++) {
+            persist(mutations,numMutations);
+            clear();
+        }
+    }
+
+    private void persist(Map<String,Map<ByteBuffer,Mutation>> batch, int batchSize) throws StorageException {
+        for (int attempt=0;attempt<mutationAttempts;attempt++) {
+            try {
+                store.mutateMany(batch, tx);
+                break;
+            } catch (TemporaryStorageException e) {
+                if (attempt+1>=mutationAttempts) {
+                    throw new PermanentStorageException("Persisting "+batchSize+" failed "+mutationAttempts+" times. Giving up",e);
+                } else if (!retryBudget.acquire()) {
+                    throw new PermanentStorageException("Persisting "+batchSize+" failed and the retry budget of the transaction is exhausted. Giving up",e);
+                } else {
+                    long waitTime = retryPolicy.getWaitTime(attempt+1);
+                    log.debug("Batch mutation failed. Retrying in {} ms. {}",waitTime,e);
+                    if (waitTime>0)
+                        TimeUtility.sleepUntil(System.currentTimeMillis()+waitTime,null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands the current buffer off to be persisted in the background and starts a new one.
+     * Blocks while the maximum number of buffers are pending.
+     *
+     * @throws StorageException
+     */
+    private void handOff() throws StorageException {
+        Batch batch = new Batch(mutations,numMutations);
+        mutations = new HashMap<String,Map<ByteBuffer,Mutation>>(expectedNumStores);
+        numMutations = 0;
+        try {
+            pendingBatches.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PermanentStorageException("Interrupted while waiting to persist mutations",e);
+        }
+        synchronized (flushLock) {
+            if (!flusherActive) {
+                flusherActive=true;
                 try {
-                    store.mutateMany(mutations, tx);
-                    clear();
-                    break;
-                } catch (TemporaryStorageException e) {
-                    if (attempt+1>=mutationAttempts) {
-                        throw new PermanentStorageException("Persisting "+numMutations+" failed "+mutationAttempts+" times. Giving up",e);
-                    } else {
-                        log.debug("Batch mutation failed. Retrying in {} ms. {}",attemptWaitTime,e);
-                        if (attemptWaitTime>0)
-                            TimeUtility.sleepUntil(System.currentTimeMillis()+attemptWaitTime,null);
-                    }
+                    flushExecutor.execute(new Flusher());
+                } catch (RejectedExecutionException e) {
+                    flusherActive=false;
+                    throw new PermanentStorageException("Could not schedule persistence of buffered mutations",e);
                 }
             }
         }
     }
-    
+
+    private void awaitPendingBatches() throws StorageException {
+        synchronized (flushLock) {
+            while (flusherActive) {
+                try {
+                    flushLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new PermanentStorageException("Interrupted while waiting for mutations to be persisted",e);
+                }
+            }
+        }
+    }
+
+    private void checkFlushFailure() throws StorageException {
+        StorageException failure = flushFailure;
+        if (failure!=null) throw new PermanentStorageException("Persisting buffered mutations failed",failure);
+    }
+
     private void clear() {
         for (Map.Entry<String,Map<ByteBuffer,Mutation>> entry : mutations.entrySet()) {
             entry.getValue().clear();
@@ -115,13 +243,18 @@ public class BufferTransaction implements StoreTransaction {
 
     @Override
     public void commit() throws StorageException {
-        flushInternal();
-        tx.flush();
+        flushAll();
+        tx.commit();
     }
 
     @Override
     public void abort() throws StorageException {
         clear();
+        if (isAsynchronous()) {
+            pendingBatches.clear();
+            //Batches which are currently being persisted cannot be revoked
+            awaitPendingBatches();
+        }
         tx.abort();
     }
 
@@ -129,4 +262,47 @@ public class BufferTransaction implements StoreTransaction {
     public ConsistencyLevel getConsistencyLevel() {
         return tx.getConsistencyLevel();
     }
+
+    private static class Batch {
+
+        private final Map<String,Map<ByteBuffer,Mutation>> mutations;
+        private final int size;
+
+        private Batch(Map<String,Map<ByteBuffer,Mutation>> mutations, int size) {
+            this.mutations = mutations;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Persists the pending batches of this transaction one after the other until none are left.
+     * Only one flusher is active per transaction at any time which preserves the order of the batches.
+     */
+    private class Flusher implements Runnable {
+
+        @Override
+        public void run() {
+            while (true) {
+                Batch batch;
+                synchronized (flushLock) {
+                    batch = pendingBatches.poll();
+                    if (batch==null || flushFailure!=null) {
+                        pendingBatches.clear();
+                        flusherActive=false;
+                        flushLock.notifyAll();
+                        return;
+                    }
+                }
+                try {
+                    persist(batch.mutations,batch.size);
+                } catch (StorageException e) {
+                    log.error("Could not persist buffered mutations",e);
+                    flushFailure = e;
+                } catch (RuntimeException e) {
+                    log.error("Could not persist buffered mutations",e);
+                    flushFailure = new PermanentStorageException(e);
+                }
+            }
+        }
+    }
 }
@@ -5,6 +5,7 @@ import com.thinkaurelius.titan.diskstorage.StorageException;
 
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
 
 /**
  * (c) Matthias Broecheler (me@matthiasb.com)
@@ -22,8 +23,9 @@ public class BufferedKeyColumnValueStore implements KeyColumnValueStore {
     }
 
     private final StoreTransaction getTx(StoreTransaction txh) {
-        assert txh instanceof BufferTransaction;
-        return ((BufferTransaction)txh).getWrappedTransactionHandle();
+        //Read-only transactions are not buffered and hence not wrapped
+        if (txh instanceof BufferTransaction) return ((BufferTransaction)txh).getWrappedTransactionHandle();
+        return txh;
     }
 
     @Override
@@ -41,6 +43,11 @@ public class BufferedKeyColumnValueStore implements KeyColumnValueStore {
         return store.getSlice(key,columnStart,columnEnd,getTx(txh));
     }
 
+    @Override
+    public Map<ByteBuffer,List<Entry>> getSlice(List<ByteBuffer> keys, ByteBuffer columnStart, ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+        return store.getSlice(keys,columnStart,columnEnd,limit,getTx(txh));
+    }
+
     @Override
     public ByteBuffer get(ByteBuffer key, ByteBuffer column, StoreTransaction txh) throws StorageException {
         return store.get(key,column,getTx(txh));
@@ -53,8 +60,7 @@ public class BufferedKeyColumnValueStore implements KeyColumnValueStore {
 
     @Override
     public void mutate(ByteBuffer key, List<Entry> additions, List<ByteBuffer> deletions, StoreTransaction txh) throws StorageException {
-        if (bufferEnabled) {
-            assert txh instanceof BufferTransaction;
+        if (bufferEnabled && txh instanceof BufferTransaction) {
             ((BufferTransaction)txh).mutate(store.getName(), key, additions, deletions);
         } else {
             store.mutate(key,additions,deletions,getTx(txh));
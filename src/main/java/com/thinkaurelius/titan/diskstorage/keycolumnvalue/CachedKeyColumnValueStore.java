@@ -0,0 +1,362 @@
+package com.thinkaurelius.titan.diskstorage.keycolumnvalue;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Caches the results of slice queries against the wrapped store across transactions.
+ *
+ * Results are cached by key, column range and limit. The cache is bounded by the approximate size
+ * in bytes of the cached entries and entries optionally expire a configured time after they have been written.
+ *
+ * Cached slices of a key are invalidated when the key is mutated through this store as well as when the
+ * mutating transaction commits or aborts (see {@link #committed(StoreTransaction)}). Reads of keys which the
+ * reading transaction has mutated bypass the cache, since they may observe uncommitted mutations. Mutations applied to the
+ * storage backend by other instances are not observed, hence cached slices may be stale for up to the configured
+ * expiration time.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class CachedKeyColumnValueStore implements KeyColumnValueStore {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(CachedKeyColumnValueStore.class);
+
+    /**
+     * Approximate memory overhead in bytes for each cached entry in addition to the size of its column and value
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private static final int NUM_INVALIDATION_STRIPES = 1024;
+
+    private final KeyColumnValueStore store;
+    private final Cache<SliceQuery,List<Entry>> cache;
+
+    /**
+     * Cached slice queries by key so that all slices of a key can be invalidated.
+     * Each set is only accessed while holding its monitor.
+     */
+    private final ConcurrentMap<ByteBuffer,Set<SliceQuery>> sliceIndex;
+    /**
+     * Counts invalidations per key stripe to prevent caching results of reads that overlap with an invalidation
+     */
+    private final AtomicLongArray invalidations;
+    private final ConcurrentMap<StoreTransaction,Set<ByteBuffer>> mutatedKeys;
+
+    public CachedKeyColumnValueStore(KeyColumnValueStore store, long maxWeightBytes, long expirationMS) {
+        Preconditions.checkNotNull(store);
+        Preconditions.checkArgument(maxWeightBytes>0,"Cache size must be positive: %s",maxWeightBytes);
+        Preconditions.checkArgument(expirationMS>=0,"Cache expiration time must be non-negative: %s",expirationMS);
+        this.store=store;
+        this.sliceIndex = new ConcurrentHashMap<ByteBuffer,Set<SliceQuery>>();
+        this.invalidations = new AtomicLongArray(NUM_INVALIDATION_STRIPES);
+        this.mutatedKeys = new ConcurrentHashMap<StoreTransaction,Set<ByteBuffer>>();
+
+        CacheBuilder<SliceQuery,List<Entry>> builder = CacheBuilder.newBuilder()
+                .maximumWeight(maxWeightBytes)
+                .weigher(new Weigher<SliceQuery,List<Entry>>() {
+                    @Override
+                    public int weigh(SliceQuery query, List<Entry> entries) {
+                        long weight = query.getWeight();
+                        for (Entry entry : entries) {
+                            weight += ENTRY_OVERHEAD + entry.getColumn().remaining() + entry.getValue().remaining();
+                        }
+                        return (int)Math.min(Integer.MAX_VALUE,weight);
+                    }
+                })
+                .removalListener(new RemovalListener<SliceQuery,List<Entry>>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<SliceQuery,List<Entry>> notification) {
+                        if (notification.getCause()==RemovalCause.REPLACED) return;
+                        removeFromIndex(notification.getKey());
+                    }
+                })
+                .recordStats();
+        if (expirationMS>0) builder.expireAfterWrite(expirationMS,TimeUnit.MILLISECONDS);
+        this.cache = builder.build();
+    }
+
+    /**
+     * Returns the hit, miss and eviction statistics of this cache
+     *
+     * @return
+     */
+    public CacheStats getCacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Removes all cached slices for the given key
+     *
+     * @param key
+     */
+    public void invalidate(ByteBuffer key) {
+        invalidations.incrementAndGet(getStripe(key));
+        Set<SliceQuery> slices = sliceIndex.get(key);
+        if (slices==null) return;
+        List<SliceQuery> toInvalidate;
+        synchronized (slices) {
+            toInvalidate = new ArrayList<SliceQuery>(slices);
+        }
+        cache.invalidateAll(toInvalidate);
+    }
+
+    /**
+     * Must be called after the given transaction has been committed to invalidate all keys it mutated
+     * in this store, since concurrent reads may have cached the previous state before the mutations became visible.
+     *
+     * @param txh
+     */
+    public void committed(StoreTransaction txh) {
+        Set<ByteBuffer> keys = mutatedKeys.remove(txh);
+        if (keys==null) return;
+        for (ByteBuffer key : keys) invalidate(key);
+    }
+
+    /**
+     * Must be called after the given transaction has been aborted.
+     *
+     * @param txh
+     * @see #committed(StoreTransaction)
+     */
+    public void aborted(StoreTransaction txh) {
+        committed(txh);
+    }
+
+    private static int getStripe(ByteBuffer key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % NUM_INVALIDATION_STRIPES;
+    }
+
+    private void addToIndex(SliceQuery query) {
+        while (true) {
+            Set<SliceQuery> slices = sliceIndex.get(query.key);
+            if (slices==null) {
+                slices = new HashSet<SliceQuery>();
+                Set<SliceQuery> existing = sliceIndex.putIfAbsent(query.key,slices);
+                if (existing!=null) slices=existing;
+            }
+            synchronized (slices) {
+                //Check that the set has not been removed from the index concurrently
+                if (sliceIndex.get(query.key)==slices) {
+                    slices.add(query);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void removeFromIndex(SliceQuery query) {
+        Set<SliceQuery> slices = sliceIndex.get(query.key);
+        if (slices==null) return;
+        synchronized (slices) {
+            slices.remove(query);
+            if (slices.isEmpty()) sliceIndex.remove(query.key,slices);
+        }
+    }
+
+    private List<Entry> getCached(SliceQuery query) {
+        List<Entry> entries = cache.getIfPresent(query);
+        if (entries==null) return null;
+        return copy(entries);
+    }
+
+    private void putCached(SliceQuery query, List<Entry> entries, long invalidationCount) {
+        if (invalidations.get(getStripe(query.key))!=invalidationCount) return; //Key may have been invalidated while reading
+        addToIndex(query);
+        cache.put(query,copy(entries));
+    }
+
+    /**
+     * Entries are read destructively by callers, hence we only hand out and store copies with independent positions
+     *
+     * @param entries
+     * @return
+     */
+    private static List<Entry> copy(List<Entry> entries) {
+        List<Entry> result = new ArrayList<Entry>(entries.size());
+        for (Entry entry : entries) {
+            result.add(new Entry(entry.getColumn().duplicate(),entry.getValue().duplicate()));
+        }
+        return result;
+    }
+
+    /**
+     * Transactional backends return the uncommitted mutations of a transaction to its own reads. Such reads must
+     * neither be answered from nor populate the cache.
+     *
+     * @param key
+     * @param txh
+     * @return
+     */
+    private boolean hasPendingMutations(ByteBuffer key, StoreTransaction txh) {
+        Set<ByteBuffer> keys = mutatedKeys.get(txh);
+        return keys!=null && keys.contains(key);
+    }
+
+    @Override
+    public List<Entry> getSlice(ByteBuffer key, ByteBuffer columnStart, ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+        if (hasPendingMutations(key,txh)) return store.getSlice(key,columnStart,columnEnd,limit,txh);
+        SliceQuery query = new SliceQuery(key,columnStart,columnEnd,limit);
+        List<Entry> entries = getCached(query);
+        if (entries!=null) return entries;
+
+        long invalidationCount = invalidations.get(getStripe(query.key));
+        entries = store.getSlice(key,columnStart,columnEnd,limit,txh);
+        putCached(query,entries,invalidationCount);
+        return entries;
+    }
+
+    @Override
+    public List<Entry> getSlice(ByteBuffer key, ByteBuffer columnStart, ByteBuffer columnEnd, StoreTransaction txh) throws StorageException {
+        if (hasPendingMutations(key,txh)) return store.getSlice(key,columnStart,columnEnd,txh);
+        SliceQuery query = new SliceQuery(key,columnStart,columnEnd,Integer.MAX_VALUE);
+        List<Entry> entries = getCached(query);
+        if (entries!=null) return entries;
+
+        long invalidationCount = invalidations.get(getStripe(query.key));
+        entries = store.getSlice(key,columnStart,columnEnd,txh);
+        putCached(query,entries,invalidationCount);
+        return entries;
+    }
+
+    @Override
+    public Map<ByteBuffer,List<Entry>> getSlice(List<ByteBuffer> keys, ByteBuffer columnStart, ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+        Map<ByteBuffer,List<Entry>> result = new HashMap<ByteBuffer,List<Entry>>(keys.size());
+        List<ByteBuffer> misses = new ArrayList<ByteBuffer>(keys.size());
+        long[] invalidationCounts = new long[keys.size()];
+        boolean[] pending = new boolean[keys.size()];
+        for (ByteBuffer key : keys) {
+            List<Entry> entries = null;
+            boolean isPending = hasPendingMutations(key,txh);
+            if (!isPending) entries = getCached(new SliceQuery(key,columnStart,columnEnd,limit));
+            if (entries!=null) result.put(key,entries);
+            else {
+                invalidationCounts[misses.size()]=invalidations.get(getStripe(key));
+                pending[misses.size()]=isPending;
+                misses.add(key);
+            }
+        }
+        if (misses.isEmpty()) return result;
+
+        Map<ByteBuffer,List<Entry>> retrieved = store.getSlice(misses,columnStart,columnEnd,limit,txh);
+        for (int i=0;i<misses.size();i++) {
+            ByteBuffer key = misses.get(i);
+            List<Entry> entries = retrieved.get(key);
+            if (entries==null) entries = new ArrayList<Entry>(0);
+            if (!pending[i]) putCached(new SliceQuery(key,columnStart,columnEnd,limit),entries,invalidationCounts[i]);
+            result.put(key,entries);
+        }
+        return result;
+    }
+
+    @Override
+    public void mutate(ByteBuffer key, List<Entry> additions, List<ByteBuffer> deletions, StoreTransaction txh) throws StorageException {
+        Set<ByteBuffer> keys = mutatedKeys.get(txh);
+        if (keys==null) {
+            keys = Collections.newSetFromMap(new ConcurrentHashMap<ByteBuffer,Boolean>());
+            Set<ByteBuffer> existing = mutatedKeys.putIfAbsent(txh,keys);
+            if (existing!=null) keys=existing;
+        }
+        keys.add(key.duplicate());
+        invalidate(key);
+        store.mutate(key,additions,deletions,txh);
+    }
+
+    @Override
+    public boolean containsKey(ByteBuffer key, StoreTransaction txh) throws StorageException {
+        return store.containsKey(key,txh);
+    }
+
+    @Override
+    public ByteBuffer get(ByteBuffer key, ByteBuffer column, StoreTransaction txh) throws StorageException {
+        return store.get(key,column,txh);
+    }
+
+    @Override
+    public boolean containsKeyColumn(ByteBuffer key, ByteBuffer column, StoreTransaction txh) throws StorageException {
+        return store.containsKeyColumn(key,column,txh);
+    }
+
+    @Override
+    public void acquireLock(ByteBuffer key, ByteBuffer column, ByteBuffer expectedValue, StoreTransaction txh) throws StorageException {
+        store.acquireLock(key,column,expectedValue,txh);
+    }
+
+    @Override
+    public RecordIterator<ByteBuffer> getKeys(StoreTransaction txh) throws StorageException {
+        return store.getKeys(txh);
+    }
+
+    @Override
+    public ByteBuffer[] getLocalKeyPartition() throws StorageException {
+        return store.getLocalKeyPartition();
+    }
+
+    @Override
+    public String getName() {
+        return store.getName();
+    }
+
+    @Override
+    public void close() throws StorageException {
+        log.debug("Closing slice cache for store {}: {}",getName(),cache.stats());
+        cache.invalidateAll();
+        store.close();
+    }
+
+    private static class SliceQuery {
+
+        private final ByteBuffer key;
+        private final ByteBuffer columnStart;
+        private final ByteBuffer columnEnd;
+        private final int limit;
+
+        private SliceQuery(ByteBuffer key, ByteBuffer columnStart, ByteBuffer columnEnd, int limit) {
+            this.key=key.duplicate();
+            this.columnStart=columnStart.duplicate();
+            this.columnEnd=columnEnd.duplicate();
+            this.limit=limit;
+        }
+
+        private int getWeight() {
+            return ENTRY_OVERHEAD + key.remaining() + columnStart.remaining() + columnEnd.remaining();
+        }
+
+        @Override
+        public int hashCode() {
+            int result = key.hashCode();
+            result = 31 * result + columnStart.hashCode();
+            result = 31 * result + columnEnd.hashCode();
+            result = 31 * result + limit;
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this==other) return true;
+            else if (other==null || !getClass().isInstance(other)) return false;
+            SliceQuery oth = (SliceQuery)other;
+            return limit==oth.limit && key.equals(oth.key) &&
+                    columnStart.equals(oth.columnStart) && columnEnd.equals(oth.columnEnd);
+        }
+
+    }
+
+}
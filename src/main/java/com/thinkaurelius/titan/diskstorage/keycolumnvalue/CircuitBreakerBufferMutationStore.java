@@ -0,0 +1,42 @@
+package com.thinkaurelius.titan.diskstorage.keycolumnvalue;
+
+import com.google.common.base.Preconditions;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.TemporaryStorageException;
+import com.thinkaurelius.titan.diskstorage.util.CircuitBreaker;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Guards the batch mutations persisted through a {@link BufferMutationKeyColumnValueStore} with a {@link CircuitBreaker}.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ * @see CircuitBreakerKeyColumnValueStore
+ */
+
+public class CircuitBreakerBufferMutationStore implements BufferMutationKeyColumnValueStore {
+
+    private final BufferMutationKeyColumnValueStore store;
+    private final CircuitBreaker breaker;
+
+    public CircuitBreakerBufferMutationStore(BufferMutationKeyColumnValueStore store, CircuitBreaker breaker) {
+        Preconditions.checkNotNull(store);
+        Preconditions.checkNotNull(breaker);
+        this.store = store;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public void mutateMany(Map<String, Map<ByteBuffer, Mutation>> mutations, StoreTransaction txh) throws StorageException {
+        breaker.before();
+        try {
+            store.mutateMany(mutations, txh);
+            breaker.success();
+        } catch (TemporaryStorageException e) {
+            breaker.failure();
+            throw e;
+        }
+    }
+
+}
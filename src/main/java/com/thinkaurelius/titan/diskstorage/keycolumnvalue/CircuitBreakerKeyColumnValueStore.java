@@ -0,0 +1,177 @@
+package com.thinkaurelius.titan.diskstorage.keycolumnvalue;
+
+import com.google.common.base.Preconditions;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.TemporaryStorageException;
+import com.thinkaurelius.titan.diskstorage.locking.LockingException;
+import com.thinkaurelius.titan.diskstorage.util.CircuitBreaker;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Guards all operations against the wrapped store with a {@link CircuitBreaker} so that operations fail fast
+ * once the store has failed temporarily a number of consecutive times. Temporary locking failures are caused by
+ * contention rather than an unavailable store and hence do not count as failures.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class CircuitBreakerKeyColumnValueStore implements KeyColumnValueStore {
+
+    private final KeyColumnValueStore store;
+    private final CircuitBreaker breaker;
+
+    public CircuitBreakerKeyColumnValueStore(KeyColumnValueStore store, CircuitBreaker breaker) {
+        Preconditions.checkNotNull(store);
+        Preconditions.checkNotNull(breaker);
+        this.store = store;
+        this.breaker = breaker;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    /**
+     * Lock contention is reported by a responsive store and hence counts as success
+     *
+     * @param e
+     */
+    private void failed(TemporaryStorageException e) {
+        if (e instanceof LockingException) breaker.success();
+        else breaker.failure();
+    }
+
+    @Override
+    public boolean containsKey(ByteBuffer key, StoreTransaction txh) throws StorageException {
+        breaker.before();
+        try {
+            boolean result = store.containsKey(key, txh);
+            breaker.success();
+            return result;
+        } catch (TemporaryStorageException e) {
+            failed(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public List<Entry> getSlice(ByteBuffer key, ByteBuffer columnStart, ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+        breaker.before();
+        try {
+            List<Entry> result = store.getSlice(key, columnStart, columnEnd, limit, txh);
+            breaker.success();
+            return result;
+        } catch (TemporaryStorageException e) {
+            failed(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public List<Entry> getSlice(ByteBuffer key, ByteBuffer columnStart, ByteBuffer columnEnd, StoreTransaction txh) throws StorageException {
+        breaker.before();
+        try {
+            List<Entry> result = store.getSlice(key, columnStart, columnEnd, txh);
+            breaker.success();
+            return result;
+        } catch (TemporaryStorageException e) {
+            failed(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public Map<ByteBuffer, List<Entry>> getSlice(List<ByteBuffer> keys, ByteBuffer columnStart, ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+        breaker.before();
+        try {
+            Map<ByteBuffer, List<Entry>> result = store.getSlice(keys, columnStart, columnEnd, limit, txh);
+            breaker.success();
+            return result;
+        } catch (TemporaryStorageException e) {
+            failed(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public ByteBuffer get(ByteBuffer key, ByteBuffer column, StoreTransaction txh) throws StorageException {
+        breaker.before();
+        try {
+            ByteBuffer result = store.get(key, column, txh);
+            breaker.success();
+            return result;
+        } catch (TemporaryStorageException e) {
+            failed(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean containsKeyColumn(ByteBuffer key, ByteBuffer column, StoreTransaction txh) throws StorageException {
+        breaker.before();
+        try {
+            boolean result = store.containsKeyColumn(key, column, txh);
+            breaker.success();
+            return result;
+        } catch (TemporaryStorageException e) {
+            failed(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void mutate(ByteBuffer key, List<Entry> additions, List<ByteBuffer> deletions, StoreTransaction txh) throws StorageException {
+        breaker.before();
+        try {
+            store.mutate(key, additions, deletions, txh);
+            breaker.success();
+        } catch (TemporaryStorageException e) {
+            failed(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void acquireLock(ByteBuffer key, ByteBuffer column, ByteBuffer expectedValue, StoreTransaction txh) throws StorageException {
+        breaker.before();
+        try {
+            store.acquireLock(key, column, expectedValue, txh);
+            breaker.success();
+        } catch (TemporaryStorageException e) {
+            failed(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public RecordIterator<ByteBuffer> getKeys(StoreTransaction txh) throws StorageException {
+        breaker.before();
+        try {
+            RecordIterator<ByteBuffer> result = store.getKeys(txh);
+            breaker.success();
+            return result;
+        } catch (TemporaryStorageException e) {
+            failed(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public ByteBuffer[] getLocalKeyPartition() throws StorageException {
+        return store.getLocalKeyPartition();
+    }
+
+    @Override
+    public String getName() {
+        return store.getName();
+    }
+
+    @Override
+    public void close() throws StorageException {
+        store.close();
+    }
+
+}
@@ -0,0 +1,278 @@
+package com.thinkaurelius.titan.diskstorage.keycolumnvalue;
+
+import com.google.common.base.Preconditions;
+import com.thinkaurelius.titan.diskstorage.PermanentStorageException;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Transparently compresses the values of the wrapped store which are at least as large as the given threshold.
+ *
+ * Each value is prefixed with a one byte header which identifies the codec it was written with, so that values
+ * remain readable when the threshold or compression level change. Values are only stored compressed if that
+ * makes them smaller. Since every value carries the header, a store must either always or never be wrapped
+ * in this decorator. {@link #wrap} records this per store so that stores which already contain values written
+ * without this decorator are left uncompressed.
+ *
+ * Columns and keys are not modified. Expected values passed to {@link #acquireLock} are uncompressed.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class CompressedKeyColumnValueStore implements KeyColumnValueStore {
+
+    private static final Logger log = LoggerFactory.getLogger(CompressedKeyColumnValueStore.class);
+
+    /**
+     * Header of values stored as is
+     */
+    public static final byte CODEC_NONE = 0;
+    /**
+     * Header of values compressed with {@link Deflater}, followed by the length of the uncompressed value
+     */
+    public static final byte CODEC_DEFLATE = 1;
+
+    private static final int DEFLATE_HEADER_LENGTH = 1 + 4;
+
+    private static final Charset NAME_CHARSET = Charset.forName("UTF-8");
+    private static final ByteBuffer FORMAT_COLUMN = ByteBuffer.wrap("value-format".getBytes(NAME_CHARSET));
+    private static final byte FORMAT_RAW = 0;
+    private static final byte FORMAT_CODEC = 1;
+
+    private final KeyColumnValueStore store;
+    private final int threshold;
+    private final int level;
+
+    /**
+     * @param store
+     * @param threshold minimum length in bytes of a value to be compressed
+     * @param level compression level between 1 (fastest) and 9 (best compression)
+     */
+    public CompressedKeyColumnValueStore(KeyColumnValueStore store, int threshold, int level) {
+        Preconditions.checkNotNull(store);
+        Preconditions.checkArgument(threshold>=0,"Compression threshold must be non-negative");
+        Preconditions.checkArgument(level>=Deflater.BEST_SPEED && level<=Deflater.BEST_COMPRESSION,"Invalid compression level: %s",level);
+        this.store = store;
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    /**
+     * Wraps the given store in this decorator unless it contains values which have been written without it.
+     *
+     * The value format of each store is recorded in the given properties store the first time this method is invoked
+     * for it. A store is considered to hold values written without this decorator unless it is empty at that time.
+     * If the storage backend does not support scans, the store is assumed to be new, since compression is only
+     * configured when a graph is created.
+     *
+     * @param store store to wrap
+     * @param properties store which records the value format of each store by its name
+     * @param manager manager of both stores
+     * @param threshold minimum length in bytes of a value to be compressed
+     * @param level compression level between 1 (fastest) and 9 (best compression)
+     * @return the wrapped store or the given store if it contains values written without this decorator
+     * @throws StorageException
+     */
+    public static KeyColumnValueStore wrap(KeyColumnValueStore store, KeyColumnValueStore properties, StoreManager manager,
+                                           int threshold, int level) throws StorageException {
+        ByteBuffer key = ByteBuffer.wrap(store.getName().getBytes(NAME_CHARSET));
+        boolean encoded;
+        StoreTransaction tx = manager.beginTransaction(ConsistencyLevel.DEFAULT);
+        try {
+            ByteBuffer format = properties.get(key,FORMAT_COLUMN,tx);
+            if (format!=null && format.hasRemaining()) {
+                encoded = format.get(format.position())==FORMAT_CODEC;
+            } else {
+                encoded = !manager.getFeatures().supportsScan() || isEmpty(store,tx);
+                ByteBuffer value = ByteBuffer.wrap(new byte[]{encoded?FORMAT_CODEC:FORMAT_RAW});
+                properties.mutate(key,Arrays.asList(new Entry(FORMAT_COLUMN,value)),null,tx);
+            }
+            tx.commit();
+        } catch (StorageException e) {
+            tx.abort();
+            throw e;
+        }
+        if (encoded) return new CompressedKeyColumnValueStore(store,threshold,level);
+        log.warn("Values of store [{}] are not compressed since it contains values written without compression",store.getName());
+        return store;
+    }
+
+    private static boolean isEmpty(KeyColumnValueStore store, StoreTransaction tx) throws StorageException {
+        RecordIterator<ByteBuffer> keys = store.getKeys(tx);
+        try {
+            return !keys.hasNext();
+        } finally {
+            keys.close();
+        }
+    }
+
+    ByteBuffer encode(ByteBuffer value) {
+        if (value==null) return null;
+        int length = value.remaining();
+        if (length>=threshold && length>DEFLATE_HEADER_LENGTH) {
+            byte[] raw = toArray(value);
+            Deflater deflater = new Deflater(level,true);
+            try {
+                deflater.setInput(raw);
+                deflater.finish();
+                byte[] compressed = new byte[length-DEFLATE_HEADER_LENGTH];
+                int compressedLength = 0;
+                while (!deflater.finished() && compressedLength<compressed.length) {
+                    compressedLength+=deflater.deflate(compressed,compressedLength,compressed.length-compressedLength);
+                }
+                if (deflater.finished()) {
+                    ByteBuffer result = ByteBuffer.allocate(DEFLATE_HEADER_LENGTH+compressedLength);
+                    result.put(CODEC_DEFLATE).putInt(length).put(compressed,0,compressedLength);
+                    result.flip();
+                    return result;
+                } //else: compression does not pay off
+            } finally {
+                deflater.end();
+            }
+        }
+        ByteBuffer result = ByteBuffer.allocate(1+length);
+        result.put(CODEC_NONE).put(value.duplicate());
+        result.flip();
+        return result;
+    }
+
+    ByteBuffer decode(ByteBuffer value) throws StorageException {
+        if (value==null || !value.hasRemaining()) return value;
+        byte codec = value.get(value.position());
+        switch (codec) {
+            case CODEC_NONE:
+                ByteBuffer result = value.duplicate();
+                result.position(result.position()+1);
+                return result.slice();
+            case CODEC_DEFLATE:
+                if (value.remaining()<DEFLATE_HEADER_LENGTH) throw new PermanentStorageException("Corrupted compressed value");
+                int length = value.getInt(value.position()+1);
+                ByteBuffer compressed = value.duplicate();
+                compressed.position(compressed.position()+DEFLATE_HEADER_LENGTH);
+                Inflater inflater = new Inflater(true);
+                try {
+                    inflater.setInput(toArray(compressed));
+                    byte[] raw = new byte[length];
+                    int rawLength = 0;
+                    while (rawLength<length && !inflater.finished()) {
+                        int inflated = inflater.inflate(raw,rawLength,length-rawLength);
+                        if (inflated==0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                        rawLength+=inflated;
+                    }
+                    if (rawLength!=length) throw new PermanentStorageException("Corrupted compressed value");
+                    return ByteBuffer.wrap(raw);
+                } catch (DataFormatException e) {
+                    throw new PermanentStorageException("Corrupted compressed value",e);
+                } finally {
+                    inflater.end();
+                }
+            default:
+                throw new PermanentStorageException("Unknown value codec: " + codec);
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer b) {
+        if (b.hasArray() && b.arrayOffset()==0 && b.position()==0 && b.remaining()==b.array().length) return b.array();
+        byte[] bytes = new byte[b.remaining()];
+        b.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private List<Entry> encode(List<Entry> entries) {
+        if (entries==null || entries.isEmpty()) return entries;
+        List<Entry> result = new ArrayList<Entry>(entries.size());
+        for (Entry entry : entries) result.add(new Entry(entry.getColumn(),encode(entry.getValue())));
+        return result;
+    }
+
+    private List<Entry> decode(List<Entry> entries) throws StorageException {
+        if (entries==null || entries.isEmpty()) return entries;
+        List<Entry> result = new ArrayList<Entry>(entries.size());
+        for (Entry entry : entries) result.add(new Entry(entry.getColumn(),decode(entry.getValue())));
+        return result;
+    }
+
+    @Override
+    public boolean containsKey(ByteBuffer key, StoreTransaction txh) throws StorageException {
+        return store.containsKey(key,txh);
+    }
+
+    @Override
+    public List<Entry> getSlice(ByteBuffer key, ByteBuffer columnStart, ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+        return decode(store.getSlice(key,columnStart,columnEnd,limit,txh));
+    }
+
+    @Override
+    public List<Entry> getSlice(ByteBuffer key, ByteBuffer columnStart, ByteBuffer columnEnd, StoreTransaction txh) throws StorageException {
+        return decode(store.getSlice(key,columnStart,columnEnd,txh));
+    }
+
+    @Override
+    public Map<ByteBuffer, List<Entry>> getSlice(List<ByteBuffer> keys, ByteBuffer columnStart, ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+        Map<ByteBuffer, List<Entry>> slices = store.getSlice(keys,columnStart,columnEnd,limit,txh);
+        Map<ByteBuffer, List<Entry>> result = new HashMap<ByteBuffer, List<Entry>>(slices.size());
+        for (Map.Entry<ByteBuffer, List<Entry>> slice : slices.entrySet()) {
+            result.put(slice.getKey(),decode(slice.getValue()));
+        }
+        return result;
+    }
+
+    @Override
+    public ByteBuffer get(ByteBuffer key, ByteBuffer column, StoreTransaction txh) throws StorageException {
+        return decode(store.get(key,column,txh));
+    }
+
+    @Override
+    public boolean containsKeyColumn(ByteBuffer key, ByteBuffer column, StoreTransaction txh) throws StorageException {
+        return store.containsKeyColumn(key,column,txh);
+    }
+
+    @Override
+    public void mutate(ByteBuffer key, List<Entry> additions, List<ByteBuffer> deletions, StoreTransaction txh) throws StorageException {
+        store.mutate(key,encode(additions),deletions,txh);
+    }
+
+    @Override
+    public void acquireLock(ByteBuffer key, ByteBuffer column, ByteBuffer expectedValue, StoreTransaction txh) throws StorageException {
+        if (expectedValue!=null) {
+            //Compare after decoding, since the stored value may have been encoded with a different threshold or level
+            ByteBuffer stored = store.get(key,column,txh);
+            if (stored!=null && expectedValue.equals(decode(stored))) expectedValue = stored;
+            else expectedValue = encode(expectedValue);
+        }
+        store.acquireLock(key,column,expectedValue,txh);
+    }
+
+    @Override
+    public RecordIterator<ByteBuffer> getKeys(StoreTransaction txh) throws StorageException {
+        return store.getKeys(txh);
+    }
+
+    @Override
+    public ByteBuffer[] getLocalKeyPartition() throws StorageException {
+        return store.getLocalKeyPartition();
+    }
+
+    @Override
+    public String getName() {
+        return store.getName();
+    }
+
+    @Override
+    public void close() throws StorageException {
+        store.close();
+    }
+
+}
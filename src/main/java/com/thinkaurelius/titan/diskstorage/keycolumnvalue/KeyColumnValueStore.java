@@ -4,6 +4,7 @@ import com.thinkaurelius.titan.diskstorage.StorageException;
 
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
 
 public interface KeyColumnValueStore {
 
@@ -53,6 +54,26 @@ public interface KeyColumnValueStore {
      */
     public List<Entry> getSlice(ByteBuffer key, ByteBuffer columnStart, ByteBuffer columnEnd, StoreTransaction txh) throws StorageException;
 
+    /**
+     * Retrieves the list of entries (i.e. column-value pairs) for each of the specified keys which
+     * lie between the specified start and end columns.
+     * The start and end columns are considered to be inclusive and exclusive, respectively.
+     *
+     * Only retrieves a maximum number of entries per key as specified by the limit.
+     * Stores that advertise {@link StoreFeatures#supportsMultiQuery()} retrieve all keys in a
+     * single (or few) round trips against the storage backend, other stores retrieve the keys one at a time.
+     *
+     * @param keys List of keys
+     * @param columnStart Tail Column (inclusive)
+     * @param columnEnd Head Column (exclusive)
+     * @param limit Maximum number of entries to retrieve per key
+     * @param txh Transaction
+     * @throws StorageException when columnEnd < columnStart as determined in
+     *         {@link com.thinkaurelius.titan.diskstorage.util.ByteBufferUtil#isSmallerThan(ByteBuffer,ByteBuffer)}
+     * @return Map from each of the given keys to its list of entries up to a maximum of "limit" entries. Keys without matching entries map to an empty list.
+     */
+    public Map<ByteBuffer,List<Entry>> getSlice(List<ByteBuffer> keys, ByteBuffer columnStart, ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException;
+
     /**
      * Retrieves the value for the specified column and key under the given transaction
      * from the store if such exists, otherwise NULL
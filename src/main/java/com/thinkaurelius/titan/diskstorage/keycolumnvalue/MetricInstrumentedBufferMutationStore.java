@@ -0,0 +1,69 @@
+package com.thinkaurelius.titan.diskstorage.keycolumnvalue;
+
+import com.google.common.base.Preconditions;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+
+import javax.management.ObjectName;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records {@link OperationMetrics} for the batch mutations persisted through a {@link BufferMutationKeyColumnValueStore}.
+ * Since a batch spans multiple stores, the metrics are published over JMX with store name "*".
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ * @see MetricInstrumentedStore
+ */
+
+public class MetricInstrumentedBufferMutationStore implements BufferMutationKeyColumnValueStore {
+
+    public static final String M_MUTATE_MANY = "mutateMany";
+
+    private final BufferMutationKeyColumnValueStore store;
+    private final OperationMetrics mutateManyMetrics = new OperationMetrics();
+    private ObjectName registeredName;
+
+    public MetricInstrumentedBufferMutationStore(BufferMutationKeyColumnValueStore store, String backend) {
+        this(store, backend, MetricInstrumentedStore.nextInstanceID());
+    }
+
+    public MetricInstrumentedBufferMutationStore(BufferMutationKeyColumnValueStore store, String backend, int instance) {
+        Preconditions.checkNotNull(store);
+        this.store = store;
+        this.registeredName = MetricInstrumentedStore.registerMBean(backend, instance, "*", M_MUTATE_MANY, mutateManyMetrics);
+    }
+
+    @Override
+    public void mutateMany(Map<String, Map<ByteBuffer, Mutation>> mutations, StoreTransaction txh) throws StorageException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            store.mutateMany(mutations, txh);
+            success = true;
+        } finally {
+            long sent = 0;
+            for (Map<ByteBuffer, Mutation> storeMutations : mutations.values()) {
+                for (Map.Entry<ByteBuffer, Mutation> m : storeMutations.entrySet()) {
+                    sent+=m.getKey().remaining();
+                    if (m.getValue().hasAdditions()) {
+                        for (Entry e : m.getValue().getAdditions()) sent+=e.getColumn().remaining()+e.getValue().remaining();
+                    }
+                    if (m.getValue().hasDeletions()) {
+                        for (ByteBuffer del : m.getValue().getDeletions()) sent+=del.remaining();
+                    }
+                }
+            }
+            mutateManyMetrics.record(start,success,sent,0,0);
+        }
+    }
+
+    /**
+     * Unregisters the metrics from JMX
+     */
+    public void close() {
+        if (registeredName!=null) MetricInstrumentedStore.unregisterMBean(registeredName);
+        registeredName = null;
+    }
+
+}
@@ -0,0 +1,270 @@
+package com.thinkaurelius.titan.diskstorage.keycolumnvalue;
+
+import com.google.common.base.Preconditions;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Wraps a {@link KeyColumnValueStore} and records {@link OperationMetrics} for each of its data operations.
+ * The metrics are published over JMX under the domain {@link #JMX_DOMAIN} with one MBean per
+ * store and operation. The MBeans are unregistered when the store is closed.
+ *
+ * Multiple graphs in one JVM may open stores of the same name on the same backend, hence the MBean names
+ * also contain an instance number which all decorators of one graph share (see {@link #nextInstanceID()}).
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class MetricInstrumentedStore implements KeyColumnValueStore {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricInstrumentedStore.class);
+
+    public static final String JMX_DOMAIN = "com.thinkaurelius.titan";
+
+    public static final String M_CONTAINS_KEY = "containsKey";
+    public static final String M_GET_SLICE = "getSlice";
+    public static final String M_GET = "get";
+    public static final String M_CONTAINS_KEY_COLUMN = "containsKeyColumn";
+    public static final String M_MUTATE = "mutate";
+    public static final String M_ACQUIRE_LOCK = "acquireLock";
+
+    private static final AtomicInteger instanceCounter = new AtomicInteger(0);
+
+    private final KeyColumnValueStore store;
+
+    private final OperationMetrics containsKeyMetrics = new OperationMetrics();
+    private final OperationMetrics getSliceMetrics = new OperationMetrics();
+    private final OperationMetrics getMetrics = new OperationMetrics();
+    private final OperationMetrics containsKeyColumnMetrics = new OperationMetrics();
+    private final OperationMetrics mutateMetrics = new OperationMetrics();
+    private final OperationMetrics acquireLockMetrics = new OperationMetrics();
+
+    private final List<ObjectName> registeredNames;
+
+    /**
+     * @param store the store to instrument
+     * @param backend name of the storage backend
+     */
+    public MetricInstrumentedStore(KeyColumnValueStore store, String backend) {
+        this(store, backend, nextInstanceID());
+    }
+
+    /**
+     * @param store the store to instrument
+     * @param backend name of the storage backend
+     * @param instance number distinguishing the metrics of multiple graphs on the same backend in one JVM
+     */
+    public MetricInstrumentedStore(KeyColumnValueStore store, String backend, int instance) {
+        Preconditions.checkNotNull(store);
+        this.store = store;
+        registeredNames = new ArrayList<ObjectName>(6);
+        register(backend, instance, M_CONTAINS_KEY, containsKeyMetrics);
+        register(backend, instance, M_GET_SLICE, getSliceMetrics);
+        register(backend, instance, M_GET, getMetrics);
+        register(backend, instance, M_CONTAINS_KEY_COLUMN, containsKeyColumnMetrics);
+        register(backend, instance, M_MUTATE, mutateMetrics);
+        register(backend, instance, M_ACQUIRE_LOCK, acquireLockMetrics);
+    }
+
+    /**
+     * @return a new instance number to register the metrics of one graph under
+     */
+    public static int nextInstanceID() {
+        return instanceCounter.incrementAndGet();
+    }
+
+    private void register(String backend, int instance, String operation, OperationMetrics metrics) {
+        ObjectName name = registerMBean(backend, instance, store.getName(), operation, metrics);
+        if (name!=null) registeredNames.add(name);
+    }
+
+    static ObjectName getObjectName(String backend, int instance, String storeName, String operation) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=StoreMetrics" +
+                ",backend=" + ObjectName.quote(backend) +
+                ",instance=" + instance +
+                ",store=" + ObjectName.quote(storeName) +
+                ",operation=" + operation);
+    }
+
+    /**
+     * Registers the metrics of the given store operation with the platform MBean server.
+     * Metrics registered under the same name by another instance are left in place.
+     *
+     * @return the name under which the metrics were registered or null if registration failed
+     */
+    static ObjectName registerMBean(String backend, int instance, String storeName, String operation, OperationMetrics metrics) {
+        try {
+            ObjectName name = getObjectName(backend, instance, storeName, operation);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            return name;
+        } catch (JMException e) {
+            log.warn("Could not register metrics for operation {} on store {}",operation,storeName,e);
+            return null;
+        }
+    }
+
+    static void unregisterMBean(ObjectName name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+        } catch (JMException e) {
+            log.warn("Could not unregister metrics {}",name,e);
+        }
+    }
+
+    private static long size(ByteBuffer b) {
+        return b==null?0:b.remaining();
+    }
+
+    private static long size(List<Entry> entries) {
+        if (entries==null) return 0;
+        long size = 0;
+        for (Entry e : entries) size+=size(e.getColumn())+size(e.getValue());
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(ByteBuffer key, StoreTransaction txh) throws StorageException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            boolean result = store.containsKey(key, txh);
+            success = true;
+            return result;
+        } finally {
+            containsKeyMetrics.record(start,success,size(key),0,0);
+        }
+    }
+
+    @Override
+    public List<Entry> getSlice(ByteBuffer key, ByteBuffer columnStart, ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+        long start = System.nanoTime();
+        List<Entry> result = null;
+        try {
+            result = store.getSlice(key, columnStart, columnEnd, limit, txh);
+            return result;
+        } finally {
+            getSliceMetrics.record(start,result!=null,size(key)+size(columnStart)+size(columnEnd),
+                    size(result),result==null?0:result.size());
+        }
+    }
+
+    @Override
+    public List<Entry> getSlice(ByteBuffer key, ByteBuffer columnStart, ByteBuffer columnEnd, StoreTransaction txh) throws StorageException {
+        long start = System.nanoTime();
+        List<Entry> result = null;
+        try {
+            result = store.getSlice(key, columnStart, columnEnd, txh);
+            return result;
+        } finally {
+            getSliceMetrics.record(start,result!=null,size(key)+size(columnStart)+size(columnEnd),
+                    size(result),result==null?0:result.size());
+        }
+    }
+
+    @Override
+    public Map<ByteBuffer, List<Entry>> getSlice(List<ByteBuffer> keys, ByteBuffer columnStart, ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+        long start = System.nanoTime();
+        Map<ByteBuffer, List<Entry>> result = null;
+        try {
+            result = store.getSlice(keys, columnStart, columnEnd, limit, txh);
+            return result;
+        } finally {
+            long sent = size(columnStart)+size(columnEnd), received = 0, entries = 0;
+            for (ByteBuffer key : keys) sent+=size(key);
+            if (result!=null) {
+                for (List<Entry> slice : result.values()) {
+                    received+=size(slice);
+                    entries+=slice.size();
+                }
+            }
+            getSliceMetrics.record(start,result!=null,sent,received,entries);
+        }
+    }
+
+    @Override
+    public ByteBuffer get(ByteBuffer key, ByteBuffer column, StoreTransaction txh) throws StorageException {
+        long start = System.nanoTime();
+        boolean success = false;
+        ByteBuffer result = null;
+        try {
+            result = store.get(key, column, txh);
+            success = true;
+            return result;
+        } finally {
+            getMetrics.record(start,success,size(key)+size(column),size(result),result==null?0:1);
+        }
+    }
+
+    @Override
+    public boolean containsKeyColumn(ByteBuffer key, ByteBuffer column, StoreTransaction txh) throws StorageException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            boolean result = store.containsKeyColumn(key, column, txh);
+            success = true;
+            return result;
+        } finally {
+            containsKeyColumnMetrics.record(start,success,size(key)+size(column),0,0);
+        }
+    }
+
+    @Override
+    public void mutate(ByteBuffer key, List<Entry> additions, List<ByteBuffer> deletions, StoreTransaction txh) throws StorageException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            store.mutate(key, additions, deletions, txh);
+            success = true;
+        } finally {
+            long sent = size(key)+size(additions);
+            if (deletions!=null) for (ByteBuffer del : deletions) sent+=size(del);
+            mutateMetrics.record(start,success,sent,0,0);
+        }
+    }
+
+    @Override
+    public void acquireLock(ByteBuffer key, ByteBuffer column, ByteBuffer expectedValue, StoreTransaction txh) throws StorageException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            store.acquireLock(key, column, expectedValue, txh);
+            success = true;
+        } finally {
+            acquireLockMetrics.record(start,success,size(key)+size(column)+size(expectedValue),0,0);
+        }
+    }
+
+    @Override
+    public RecordIterator<ByteBuffer> getKeys(StoreTransaction txh) throws StorageException {
+        return store.getKeys(txh);
+    }
+
+    @Override
+    public ByteBuffer[] getLocalKeyPartition() throws StorageException {
+        return store.getLocalKeyPartition();
+    }
+
+    @Override
+    public String getName() {
+        return store.getName();
+    }
+
+    @Override
+    public void close() throws StorageException {
+        for (ObjectName name : registeredNames) unregisterMBean(name);
+        registeredNames.clear();
+        store.close();
+    }
+}
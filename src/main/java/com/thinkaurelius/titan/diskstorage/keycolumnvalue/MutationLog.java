@@ -0,0 +1,196 @@
+package com.thinkaurelius.titan.diskstorage.keycolumnvalue;
+
+import com.thinkaurelius.titan.diskstorage.PermanentStorageException;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.util.RecordLog;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local append-only log of batch mutations as passed to
+ * {@link BufferMutationKeyColumnValueStore#mutateMany(java.util.Map, StoreTransaction)}.
+ *
+ * Each batch is serialized into one record of a {@link RecordLog} in a dedicated directory, which defines
+ * the durability, replay and segment deletion guarantees.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class MutationLog {
+
+    private static final String SEGMENT_PREFIX = "titan-wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final RecordLog log;
+
+    /**
+     * @param directory Directory which holds the segments of the log and nothing else
+     * @param segmentSize Size in bytes after which a new segment is started
+     */
+    public MutationLog(File directory, long segmentSize) {
+        log = new RecordLog(directory,SEGMENT_PREFIX,SEGMENT_SUFFIX,segmentSize);
+    }
+
+    public interface RecordHandler {
+
+        public void handle(long seq, Map<String,Map<ByteBuffer,Mutation>> mutations) throws StorageException;
+
+    }
+
+    /**
+     * Passes all records left in the log by a previous instance to the given handler in the order they were
+     * appended and opens the log for appending.
+     *
+     * @param handler
+     * @throws StorageException
+     * @see RecordLog#replay(com.thinkaurelius.titan.diskstorage.util.RecordLog.RecordHandler)
+     */
+    public void replay(final RecordHandler handler) throws StorageException {
+        log.replay(new RecordLog.RecordHandler() {
+            @Override
+            public void handle(long seq, ByteBuffer record) throws StorageException {
+                Map<String,Map<ByteBuffer,Mutation>> mutations;
+                try {
+                    mutations = read(new DataInputStream(new ByteArrayInputStream(record.array(),
+                            record.arrayOffset()+record.position(),record.remaining())));
+                } catch (IOException e) {
+                    throw new PermanentStorageException("Could not deserialize logged mutations",e);
+                }
+                handler.handle(seq,mutations);
+            }
+        });
+    }
+
+    /**
+     * Appends the given mutations to the log. The record is not durable until {@link #sync(long)} returns.
+     *
+     * @param mutations
+     * @return Sequence number of the appended record
+     * @throws StorageException
+     */
+    public long append(Map<String,Map<ByteBuffer,Mutation>> mutations) throws StorageException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            write(out,mutations);
+            out.flush();
+        } catch (IOException e) {
+            throw new PermanentStorageException("Could not serialize mutations",e);
+        }
+        return log.append(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    /**
+     * Blocks until all records up to the given sequence number are durable.
+     *
+     * @param seq
+     * @throws StorageException
+     */
+    public void sync(long seq) throws StorageException {
+        log.sync(seq);
+    }
+
+    /**
+     * Marks all records up to the given sequence number as applied.
+     *
+     * @param seq
+     */
+    public void applied(long seq) {
+        log.applied(seq);
+    }
+
+    public long getLastSequenceNumber() {
+        return log.getLastSequenceNumber();
+    }
+
+    /**
+     * Closes the log. Records which have not been applied are retained for replay.
+     *
+     * @throws StorageException
+     */
+    public void close() throws StorageException {
+        log.close();
+    }
+
+    // ################### SERIALIZATION #########################
+
+    private static void write(DataOutputStream out, Map<String,Map<ByteBuffer,Mutation>> mutations) throws IOException {
+        out.writeInt(mutations.size());
+        for (Map.Entry<String,Map<ByteBuffer,Mutation>> storeMutations : mutations.entrySet()) {
+            out.writeUTF(storeMutations.getKey());
+            out.writeInt(storeMutations.getValue().size());
+            for (Map.Entry<ByteBuffer,Mutation> keyMutation : storeMutations.getValue().entrySet()) {
+                write(out,keyMutation.getKey());
+                Mutation m = keyMutation.getValue();
+                if (m.hasAdditions()) {
+                    out.writeInt(m.getAdditions().size());
+                    for (Entry entry : m.getAdditions()) {
+                        write(out,entry.getColumn());
+                        write(out,entry.getValue());
+                    }
+                } else out.writeInt(0);
+                if (m.hasDeletions()) {
+                    out.writeInt(m.getDeletions().size());
+                    for (ByteBuffer column : m.getDeletions()) write(out,column);
+                } else out.writeInt(0);
+            }
+        }
+    }
+
+    private static void write(DataOutputStream out, ByteBuffer b) throws IOException {
+        if (b==null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(b.remaining());
+        if (b.hasArray()) {
+            out.write(b.array(),b.arrayOffset()+b.position(),b.remaining());
+        } else {
+            byte[] bytes = new byte[b.remaining()];
+            b.duplicate().get(bytes);
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String,Map<ByteBuffer,Mutation>> read(DataInputStream in) throws IOException {
+        int numStores = in.readInt();
+        Map<String,Map<ByteBuffer,Mutation>> mutations = new HashMap<String,Map<ByteBuffer,Mutation>>(numStores);
+        for (int i=0;i<numStores;i++) {
+            String store = in.readUTF();
+            int numKeys = in.readInt();
+            Map<ByteBuffer,Mutation> storeMutations = new HashMap<ByteBuffer,Mutation>(numKeys);
+            for (int k=0;k<numKeys;k++) {
+                ByteBuffer key = readBuffer(in);
+                int numAdditions = in.readInt();
+                List<Entry> additions = null;
+                if (numAdditions>0) {
+                    additions = new ArrayList<Entry>(numAdditions);
+                    for (int a=0;a<numAdditions;a++) additions.add(new Entry(readBuffer(in),readBuffer(in)));
+                }
+                int numDeletions = in.readInt();
+                List<ByteBuffer> deletions = null;
+                if (numDeletions>0) {
+                    deletions = new ArrayList<ByteBuffer>(numDeletions);
+                    for (int d=0;d<numDeletions;d++) deletions.add(readBuffer(in));
+                }
+                storeMutations.put(key,new Mutation(additions,deletions));
+            }
+            mutations.put(store,storeMutations);
+        }
+        return mutations;
+    }
+
+    private static ByteBuffer readBuffer(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length<0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.thinkaurelius.titan.diskstorage.keycolumnvalue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe counters for one operation on a store: number of calls and failures, a latency histogram,
+ * bytes sent to and received from the store and the number of entries returned.
+ *
+ * The latency histogram has one bucket per power of two microseconds which keeps recording cheap and
+ * lock-free at the expense of exact percentiles.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class OperationMetrics implements OperationMetricsMBean {
+
+    private static final int NUM_BUCKETS = 40;
+
+    private final AtomicLong calls = new AtomicLong(0);
+    private final AtomicLong failures = new AtomicLong(0);
+    private final AtomicLong totalLatency = new AtomicLong(0);
+    private final AtomicLong maxLatency = new AtomicLong(0);
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong bytesSent = new AtomicLong(0);
+    private final AtomicLong bytesReceived = new AtomicLong(0);
+    private final AtomicLong entriesReturned = new AtomicLong(0);
+
+    /**
+     * Records one call of the operation
+     *
+     * @param startTimeNanos value of {@link System#nanoTime()} when the call started
+     * @param success whether the call completed without an exception
+     * @param sent number of bytes sent to the store
+     * @param received number of bytes received from the store
+     * @param entries number of entries returned
+     */
+    public void record(long startTimeNanos, boolean success, long sent, long received, long entries) {
+        long latency = Math.max(0,(System.nanoTime()-startTimeNanos)/1000);
+        calls.incrementAndGet();
+        if (!success) failures.incrementAndGet();
+        totalLatency.addAndGet(latency);
+        latencyBuckets.incrementAndGet(getBucket(latency));
+        long max = maxLatency.get();
+        while (latency>max && !maxLatency.compareAndSet(max,latency)) max = maxLatency.get();
+        if (sent>0) bytesSent.addAndGet(sent);
+        if (received>0) bytesReceived.addAndGet(received);
+        if (entries>0) entriesReturned.addAndGet(entries);
+    }
+
+    private static int getBucket(long latency) {
+        int bucket = 64-Long.numberOfLeadingZeros(latency);
+        return Math.min(bucket,NUM_BUCKETS-1);
+    }
+
+    private long getPercentile(double percentile) {
+        long total = 0;
+        long[] counts = new long[NUM_BUCKETS];
+        for (int i=0;i<NUM_BUCKETS;i++) {
+            counts[i]=latencyBuckets.get(i);
+            total+=counts[i];
+        }
+        if (total==0) return 0;
+        long threshold = (long)Math.ceil(total*percentile);
+        long sum = 0;
+        for (int i=0;i<NUM_BUCKETS;i++) {
+            sum+=counts[i];
+            if (sum>=threshold) return i==0?0:(1L<<i)-1;
+        }
+        return getMaxLatency();
+    }
+
+    @Override
+    public long getCalls() {
+        return calls.get();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public double getMeanLatency() {
+        long c = calls.get();
+        return c==0?0.0:((double)totalLatency.get())/c;
+    }
+
+    @Override
+    public long getMedianLatency() {
+        return getPercentile(0.5);
+    }
+
+    @Override
+    public long get99thPercentileLatency() {
+        return getPercentile(0.99);
+    }
+
+    @Override
+    public long getMaxLatency() {
+        return maxLatency.get();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    @Override
+    public long getEntriesReturned() {
+        return entriesReturned.get();
+    }
+
+    @Override
+    public double getMeanEntriesReturned() {
+        long c = calls.get();
+        return c==0?0.0:((double)entriesReturned.get())/c;
+    }
+
+    @Override
+    public void reset() {
+        calls.set(0);
+        failures.set(0);
+        totalLatency.set(0);
+        maxLatency.set(0);
+        for (int i=0;i<NUM_BUCKETS;i++) latencyBuckets.set(i,0);
+        bytesSent.set(0);
+        bytesReceived.set(0);
+        entriesReturned.set(0);
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.thinkaurelius.titan.diskstorage.keycolumnvalue;
+
+/**
+ * JMX view of the metrics recorded by {@link OperationMetrics} for one operation on one store.
+ *
+ * Latencies are in microseconds. Percentiles are approximated by the upper bound of the power-of-two
+ * histogram bucket they fall into.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public interface OperationMetricsMBean {
+
+    public long getCalls();
+
+    public long getFailures();
+
+    public double getMeanLatency();
+
+    public long getMedianLatency();
+
+    public long get99thPercentileLatency();
+
+    public long getMaxLatency();
+
+    public long getBytesSent();
+
+    public long getBytesReceived();
+
+    public long getEntriesReturned();
+
+    public double getMeanEntriesReturned();
+
+    public void reset();
+
+}
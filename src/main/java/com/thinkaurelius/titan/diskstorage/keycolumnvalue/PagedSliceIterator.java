@@ -0,0 +1,102 @@
+package com.thinkaurelius.titan.diskstorage.keycolumnvalue;
+
+import com.google.common.base.Preconditions;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.util.ByteBufferUtil;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the entries of a key in a {@link KeyColumnValueStore} which lie between the specified start (inclusive)
+ * and end (exclusive) columns by retrieving them in pages of fixed size.
+ *
+ * In contrast to {@link KeyColumnValueStore#getSlice(java.nio.ByteBuffer, java.nio.ByteBuffer, java.nio.ByteBuffer, StoreTransaction)}
+ * at most one page of entries is held in memory at any time and the next page is only retrieved
+ * when the current one has been consumed, so that very large rows can be iterated without materializing them and
+ * iteration can be stopped early.
+ *
+ * If a page retrieval fails, the state of the iterator is unchanged so that the failed call can be retried.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class PagedSliceIterator implements RecordIterator<Entry> {
+
+    private final KeyColumnValueStore store;
+    private final ByteBuffer key;
+    private final ByteBuffer columnEnd;
+    private final int pageSize;
+    private final StoreTransaction txh;
+
+    private ByteBuffer nextStart;
+    private Iterator<Entry> page;
+    private boolean lastPage;
+
+    public PagedSliceIterator(KeyColumnValueStore store, ByteBuffer key, ByteBuffer columnStart, ByteBuffer columnEnd,
+                              int pageSize, StoreTransaction txh) {
+        Preconditions.checkNotNull(store);
+        Preconditions.checkNotNull(key);
+        Preconditions.checkArgument(pageSize>0,"Page size must be positive: %s",pageSize);
+        this.store=store;
+        this.key=key;
+        this.columnEnd=columnEnd;
+        this.pageSize=pageSize;
+        this.txh=txh;
+
+        this.nextStart=columnStart;
+        this.page=null;
+        this.lastPage=false;
+    }
+
+    private void nextPage() throws StorageException {
+        List<Entry> entries = store.getSlice(key, nextStart, columnEnd, pageSize, txh);
+        //Only update state once the page has been retrieved successfully
+        if (entries.size()<pageSize) {
+            lastPage=true;
+        } else {
+            ByteBuffer lastColumn = entries.get(entries.size()-1).getColumn();
+            nextStart = successor(lastColumn);
+            if (columnEnd.hasRemaining() && !ByteBufferUtil.isSmallerThan(nextStart,columnEnd)) lastPage=true;
+        }
+        page = entries.iterator();
+    }
+
+    /**
+     * Returns the smallest column which is strictly bigger than the given one by appending a zero byte
+     *
+     * @param column
+     * @return
+     */
+    private static ByteBuffer successor(ByteBuffer column) {
+        ByteBuffer next = ByteBuffer.allocate(column.remaining()+1);
+        next.put(column.duplicate());
+        next.put((byte)0);
+        next.flip();
+        return next;
+    }
+
+    @Override
+    public boolean hasNext() throws StorageException {
+        while (page==null || !page.hasNext()) {
+            if (lastPage) return false;
+            nextPage();
+        }
+        return true;
+    }
+
+    @Override
+    public Entry next() throws StorageException {
+        if (!hasNext()) throw new NoSuchElementException();
+        return page.next();
+    }
+
+    @Override
+    public void close() throws StorageException {
+        page=null;
+        lastPage=true;
+    }
+
+}
@@ -74,4 +74,10 @@ public class ReadOnlyKeyColumnValueStore implements KeyColumnValueStore {
         return store.getSlice(key, columnStart, columnEnd, txh);
     }
 
+    @Override
+    public Map<ByteBuffer,List<Entry>> getSlice(List<ByteBuffer> keys, ByteBuffer columnStart,
+                                ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+        return store.getSlice(keys, columnStart, columnEnd, limit, txh);
+    }
+
 }
@@ -0,0 +1,56 @@
+package com.thinkaurelius.titan.diskstorage.keycolumnvalue;
+
+import com.thinkaurelius.titan.diskstorage.util.ByteBufferUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A contiguous range of the keys of a store which can be scanned independently of all other ranges.
+ *
+ * The bounds are interpreted by the store which created the split: ordered stores use keys (start inclusive,
+ * end exclusive), stores which distribute keys by hash may use tokens instead. A null bound denotes the start
+ * or end of the key space respectively.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class ScanSplit {
+
+    /**
+     * Split covering all keys of a store
+     */
+    public static final ScanSplit ALL = new ScanSplit(null,null);
+
+    private final ByteBuffer start;
+    private final ByteBuffer end;
+
+    public ScanSplit(ByteBuffer start, ByteBuffer end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return Lower bound of this split or null if it starts at the beginning of the key space
+     */
+    public ByteBuffer getStart() {
+        return start==null?null:start.duplicate();
+    }
+
+    /**
+     * @return Upper bound of this split or null if it extends to the end of the key space
+     */
+    public ByteBuffer getEnd() {
+        return end==null?null:end.duplicate();
+    }
+
+    public boolean isAll() {
+        return start==null && end==null;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + (start==null?"-":ByteBufferUtil.toBitString(start," ")) + ","
+                + (end==null?"-":ByteBufferUtil.toBitString(end," ")) + ")";
+    }
+
+}
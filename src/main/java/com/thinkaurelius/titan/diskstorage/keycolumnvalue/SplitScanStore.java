@@ -0,0 +1,39 @@
+package com.thinkaurelius.titan.diskstorage.keycolumnvalue;
+
+import com.thinkaurelius.titan.diskstorage.StorageException;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A store whose keys can be partitioned into {@link ScanSplit}s, so that the keys of the store can be scanned
+ * in parallel with each split being scanned independently, e.g. on a separate thread.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public interface SplitScanStore {
+
+    /**
+     * Partitions the keys of this store into disjoint splits which together cover all keys. The splits are derived
+     * from the way the storage backend partitions its data (e.g. regions or token ranges), hence the number of
+     * splits returned may differ from the requested number.
+     *
+     * @param numSplits Desired number of splits
+     * @param txh Transaction
+     * @return List of disjoint splits covering all keys of this store
+     * @throws StorageException
+     */
+    public List<ScanSplit> getScanSplits(int numSplits, StoreTransaction txh) throws StorageException;
+
+    /**
+     * Returns an iterator over all keys in the given split which has been returned by {@link #getScanSplits(int, StoreTransaction)}
+     *
+     * @param split Split to scan
+     * @param txh Transaction
+     * @return An iterator over all keys in the given split
+     * @throws StorageException
+     */
+    public RecordIterator<ByteBuffer> getKeys(ScanSplit split, StoreTransaction txh) throws StorageException;
+
+}
@@ -16,6 +16,7 @@ public class StoreFeatures {
 
     public Boolean supportsScan;
     public Boolean supportsBatchMutation;
+    public Boolean supportsMultiQuery;
 
     public Boolean supportsTransactions;
     public Boolean supportsConsistentKeyOperations;
@@ -93,6 +94,18 @@ public class StoreFeatures {
         return supportsBatchMutation;
     }
 
+    /**
+     * Whether this store retrieves slices for multiple keys in a batched call via
+     * {@link KeyColumnValueStore#getSlice(java.util.List, java.nio.ByteBuffer, java.nio.ByteBuffer, int, StoreTransaction)}
+     * rather than one key at a time.
+     *
+     * @return
+     */
+    public boolean supportsMultiQuery() {
+        verify();
+        return supportsMultiQuery;
+    }
+
     public boolean isKeyOrdered() {
         verify();
         return isKeyOrdered;
@@ -15,6 +15,14 @@ public interface StoreManager {
      */
     public StoreTransaction beginTransaction(ConsistencyLevel consistencyLevel) throws StorageException;
 
+    /**
+     * Returns a transaction handle for a new transaction which only reads. Storage backends may use this to read
+     * with relaxed isolation and without acquiring read locks. Writing in such a transaction is not supported.
+     *
+     * @return New Transaction Handle
+     */
+    public StoreTransaction beginReadOnlyTransaction(ConsistencyLevel consistencyLevel) throws StorageException;
+
     /**
      * Closes the Storage Manager and all databases that have been opened.
      */
@@ -0,0 +1,37 @@
+package com.thinkaurelius.titan.diskstorage.keycolumnvalue;
+
+import com.thinkaurelius.titan.diskstorage.StorageException;
+
+/**
+ * A {@link StoreManager} which allows the consistency of reads and writes to be chosen per transaction.
+ * The names of the supported consistency levels are specific to the storage backend.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public interface TunableConsistencyStoreManager extends StoreManager {
+
+    /**
+     * Returns a transaction handle for a new transaction which reads and writes with the given consistency levels.
+     *
+     * @param consistencyLevel
+     * @param readConsistency Name of the consistency level for reads or null to use the configured default
+     * @param writeConsistency Name of the consistency level for writes or null to use the configured default
+     * @return New Transaction Handle
+     * @throws IllegalArgumentException if a consistency level is not supported by the storage backend
+     */
+    public StoreTransaction beginTransaction(ConsistencyLevel consistencyLevel, String readConsistency,
+                                             String writeConsistency) throws StorageException;
+
+    /**
+     * Returns a transaction handle for a new read-only transaction which reads with the given consistency level.
+     *
+     * @param consistencyLevel
+     * @param readConsistency Name of the consistency level for reads or null to use the configured default
+     * @return New Transaction Handle
+     * @throws IllegalArgumentException if the consistency level is not supported by the storage backend
+     * @see StoreManager#beginReadOnlyTransaction(ConsistencyLevel)
+     */
+    public StoreTransaction beginReadOnlyTransaction(ConsistencyLevel consistencyLevel, String readConsistency) throws StorageException;
+
+}
@@ -18,6 +18,13 @@ public interface KeySelector {
 		
 	};
 
+	/**
+	 * Whether the given key should be included in the result. The key buffer may be reused by the store
+	 * once this method returns and must hence not be retained.
+	 *
+	 * @param key
+	 * @return
+	 */
 	public boolean include(ByteBuffer key);
 	
 	public boolean reachedLimit();
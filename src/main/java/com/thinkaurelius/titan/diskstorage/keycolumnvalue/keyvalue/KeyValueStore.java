@@ -7,6 +7,12 @@ import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreTransaction;
 import java.nio.ByteBuffer;
 import java.util.List;
 
+/**
+ * Store interface for ordered key-value stores.
+ *
+ * Key buffers passed to {@link #insert}, {@link #delete}, {@link #get} and {@link #containsKey} may be reused by
+ * the caller once the method returns and must therefore not be retained by implementations.
+ */
 public interface KeyValueStore {
 
     /**
@@ -27,6 +33,21 @@ public interface KeyValueStore {
 
     public void delete(ByteBuffer key, StoreTransaction txh) throws StorageException;
 
+    /**
+     * Applies the given deletions and additions to this store as one batch. All deletions are applied before
+     * the additions so that a key which is both deleted and added ends up with the added value. Deleting a key
+     * which does not exist is ignored.
+     *
+     * Both lists are expected to be sorted in key order (which allows implementations to apply them in a single pass
+     * over the underlying storage structure) and either may be null.
+     *
+     * @param additions entries to insert or overwrite, sorted by key
+     * @param deletions keys to delete, sorted
+     * @param txh
+     * @throws StorageException
+     */
+    public void mutate(List<KeyValueEntry> additions, List<ByteBuffer> deletions, StoreTransaction txh) throws StorageException;
+
     public ByteBuffer get(ByteBuffer key, StoreTransaction txh) throws StorageException;
 
     public boolean containsKey(ByteBuffer key, StoreTransaction txh) throws StorageException;
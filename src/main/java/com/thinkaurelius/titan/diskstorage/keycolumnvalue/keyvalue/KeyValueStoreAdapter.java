@@ -7,10 +7,11 @@ import com.thinkaurelius.titan.diskstorage.util.ByteBufferUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.*;
 
-public class KeyValueStoreAdapter implements KeyColumnValueStore {
+public class KeyValueStoreAdapter implements KeyColumnValueStore, SplitScanStore {
 
     private final Logger log = LoggerFactory.getLogger(KeyValueStoreAdapter.class);
 
@@ -22,6 +23,15 @@ public class KeyValueStoreAdapter implements KeyColumnValueStore {
     private final KeyValueStore store;
     private final int keyLength;
 
+    private static final int SCRATCH_BUFFER_SIZE = 256;
+
+    private static final ThreadLocal<ByteBuffer> scratchBuffer = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(SCRATCH_BUFFER_SIZE);
+        }
+    };
+
 	public KeyValueStoreAdapter(KeyValueStore store) {
 		this(store,variableKeyLength);
 	}
@@ -44,43 +54,92 @@ public class KeyValueStoreAdapter implements KeyColumnValueStore {
 	@Override
 	public List<Entry> getSlice(ByteBuffer key, ByteBuffer columnStart, ByteBuffer columnEnd, 
 			int limit, StoreTransaction txh) throws StorageException {
-		return convert(store.getSlice(concatenatePrefix(key,columnStart), concatenatePrefix(key,columnEnd), new KeyColumnSliceSelector(key,limit), txh));
+		ByteBuffer[] bounds = concatenatePrefixes(key,columnStart,columnEnd);
+		return convert(store.getSlice(bounds[0], bounds[1], new KeyColumnSliceSelector(key,limit), txh));
 	}
 
 	@Override
 	public List<Entry> getSlice(ByteBuffer key, ByteBuffer columnStart, ByteBuffer columnEnd, 
 			StoreTransaction txh) throws StorageException {
-		return convert(store.getSlice(concatenatePrefix(key,columnStart), concatenatePrefix(key,columnEnd), new KeyColumnSliceSelector(key), txh));
+		ByteBuffer[] bounds = concatenatePrefixes(key,columnStart,columnEnd);
+		return convert(store.getSlice(bounds[0], bounds[1], new KeyColumnSliceSelector(key), txh));
 	}
 
+    @Override
+    public Map<ByteBuffer,List<Entry>> getSlice(List<ByteBuffer> keys, ByteBuffer columnStart, ByteBuffer columnEnd,
+            int limit, StoreTransaction txh) throws StorageException {
+        //Local store - no network round trips to save, hence retrieve each key individually
+        Map<ByteBuffer,List<Entry>> result = new HashMap<ByteBuffer,List<Entry>>(keys.size());
+        for (ByteBuffer key : keys) {
+            result.put(key,getSlice(key,columnStart,columnEnd,limit,txh));
+        }
+        return result;
+    }
+
 
     @Override
     public void mutate(ByteBuffer key, List<Entry> additions, List<ByteBuffer> deletions, StoreTransaction txh) throws StorageException {
         if (deletions!=null && !deletions.isEmpty()) {
             for (ByteBuffer column : deletions) {
-                ByteBuffer del = concatenate(key,column);
-                store.delete(del,txh);
+                store.delete(concatenateToScratch(key,column),txh);
             }
 
         }
         if (additions!=null && !additions.isEmpty()) {
             for (Entry entry : additions) {
-                ByteBuffer newkey = concatenate(key,entry.getColumn());
-                store.insert(newkey,entry.getValue(),txh);
+                store.insert(concatenateToScratch(key,entry.getColumn()),entry.getValue(),txh);
             }
         }
     }
 
+    /**
+     * Applies the mutations for multiple keys as one batch against the underlying {@link KeyValueStore}.
+     * As for {@link #mutate(java.nio.ByteBuffer, java.util.List, java.util.List, StoreTransaction)}, deletions are applied
+     * before additions.
+     *
+     * @param mutations
+     * @param txh
+     * @throws StorageException
+     */
+    public void mutateMany(Map<ByteBuffer,Mutation> mutations, StoreTransaction txh) throws StorageException {
+        List<KeyValueEntry> additions = new ArrayList<KeyValueEntry>();
+        List<ByteBuffer> deletions = new ArrayList<ByteBuffer>();
+        for (Map.Entry<ByteBuffer,Mutation> entry : mutations.entrySet()) {
+            ByteBuffer key = entry.getKey();
+            Mutation m = entry.getValue();
+            if (m.hasDeletions()) {
+                for (ByteBuffer column : m.getDeletions()) {
+                    deletions.add(concatenate(key,column));
+                }
+            }
+            if (m.hasAdditions()) {
+                for (Entry add : m.getAdditions()) {
+                    additions.add(new KeyValueEntry(concatenate(key,add.getColumn()),add.getValue()));
+                }
+            }
+        }
+        if (additions.isEmpty() && deletions.isEmpty()) return;
+        //Sort so that the store can apply the batch in key order. Sorting is stable, hence the last addition for a key wins
+        Collections.sort(deletions,ByteBufferComparator.INSTANCE);
+        Collections.sort(additions,new Comparator<KeyValueEntry>() {
+            @Override
+            public int compare(KeyValueEntry e1, KeyValueEntry e2) {
+                return ByteBufferComparator.INSTANCE.compare(e1.getKey(),e2.getKey());
+            }
+        });
+        store.mutate(additions,deletions,txh);
+    }
+
     @Override
     public boolean containsKeyColumn(ByteBuffer key, ByteBuffer column,
                                      StoreTransaction txh) throws StorageException {
-        return store.containsKey(concatenate(key,column), txh);
+        return store.containsKey(concatenateToScratch(key,column), txh);
     }
 
     @Override
     public ByteBuffer get(ByteBuffer key, ByteBuffer column,
                           StoreTransaction txh) throws StorageException {
-        return store.get(concatenate(key,column), txh);
+        return store.get(concatenateToScratch(key,column), txh);
     }
 
     @Override
@@ -88,6 +147,88 @@ public class KeyValueStoreAdapter implements KeyColumnValueStore {
         return new KeysIterator(store.getKeys(txh));
     }
 
+    /**
+     * Splits the key range between the smallest and the largest key of the store uniformly. The largest key is found
+     * by binary search with one seek per key bit.
+     * Only stores with a fixed key length are split, and keys consisting of 0xFF bytes only are not supported.
+     *
+     * @param numSplits Desired number of splits
+     * @param txh Transaction
+     * @return
+     * @throws StorageException
+     */
+    @Override
+    public List<ScanSplit> getScanSplits(int numSplits, StoreTransaction txh) throws StorageException {
+        Preconditions.checkArgument(numSplits>0,"Number of splits must be positive");
+        if (!hasFixedKeyLength() || numSplits==1) return Collections.singletonList(ScanSplit.ALL);
+        ByteBuffer keyEnd = ByteBufferUtil.oneByteBuffer(keyLength);
+        ByteBuffer first = nextKey(ByteBufferUtil.zeroByteBuffer(keyLength),keyEnd,txh);
+        if (first==null) return Collections.singletonList(ScanSplit.ALL);
+
+        //Invariant: there is a key >= lower and none >= upper
+        BigInteger min = toNumber(first), lower = min, upper = toNumber(keyEnd);
+        while (upper.subtract(lower).compareTo(BigInteger.ONE)>0) {
+            BigInteger middle = lower.add(upper).shiftRight(1);
+            if (nextKey(toKey(middle),keyEnd,txh)!=null) lower=middle;
+            else upper=middle;
+        }
+        BigInteger range = lower.subtract(min).add(BigInteger.ONE);
+
+        List<ScanSplit> splits = new ArrayList<ScanSplit>(numSplits);
+        BigInteger previous = min;
+        ByteBuffer start = null;
+        for (int i=1;i<numSplits;i++) {
+            BigInteger bound = min.add(range.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(numSplits)));
+            if (bound.compareTo(previous)<=0) continue;
+            ByteBuffer end = toKey(bound);
+            splits.add(new ScanSplit(start,end));
+            start = end;
+            previous = bound;
+        }
+        splits.add(new ScanSplit(start,null));
+        return splits;
+    }
+
+    @Override
+    public RecordIterator<ByteBuffer> getKeys(ScanSplit split, StoreTransaction txh) throws StorageException {
+        if (!hasFixedKeyLength()) {
+            Preconditions.checkArgument(split.isAll(),"Stores with variable key length can only be scanned in full");
+            return getKeys(txh);
+        }
+        ByteBuffer start = split.getStart(), end = split.getEnd();
+        return new RangeKeysIterator(start==null?ByteBufferUtil.zeroByteBuffer(keyLength):start,
+                end==null?ByteBufferUtil.oneByteBuffer(keyLength):end, txh);
+    }
+
+    /**
+     * Returns the smallest key which is at least as large as keyStart and smaller than keyEnd, or null if no such key exists.
+     */
+    private ByteBuffer nextKey(ByteBuffer keyStart, ByteBuffer keyEnd, StoreTransaction txh) throws StorageException {
+        List<KeyValueEntry> entries = store.getSlice(keyStart,keyEnd,1,txh);
+        if (entries.isEmpty()) return null;
+        ByteBuffer key = getKey(entries.get(0).getKey());
+        ByteBuffer copy = ByteBuffer.allocate(key.remaining());
+        copy.put(key);
+        copy.flip();
+        return copy;
+    }
+
+    private static BigInteger toNumber(ByteBuffer key) {
+        byte[] bytes = new byte[key.remaining()];
+        key.duplicate().get(bytes);
+        return new BigInteger(1,bytes);
+    }
+
+    private ByteBuffer toKey(BigInteger number) {
+        byte[] bytes = number.toByteArray();
+        ByteBuffer key = ByteBuffer.allocate(keyLength);
+        int length = Math.min(bytes.length,keyLength);
+        key.position(keyLength-length);
+        key.put(bytes,bytes.length-length,length);
+        key.flip();
+        return key;
+    }
+
     @Override
     public ByteBuffer[] getLocalKeyPartition() throws StorageException {
         return store.getLocalKeyPartition();
@@ -165,18 +306,64 @@ public class KeyValueStoreAdapter implements KeyColumnValueStore {
     }
 
     private final ByteBuffer concatenate(ByteBuffer front, ByteBuffer end) {
-        return concatenate(front,end,true);
+        ByteBuffer result = ByteBuffer.allocate(getConcatenatedLength(front,end,true));
+        putConcatenation(result,front,end,true);
+        result.flip();
+        return result;
+    }
+
+    /**
+     * Concatenates the key and column into a scratch buffer which is reused by all subsequent calls from
+     * the same thread. Hence, the returned buffer is only valid until the next call and must only be handed
+     * to store operations which do not retain their key argument.
+     *
+     * @param front
+     * @param end
+     * @return
+     */
+    private final ByteBuffer concatenateToScratch(ByteBuffer front, ByteBuffer end) {
+        int length = getConcatenatedLength(front,end,true);
+        ByteBuffer result = scratchBuffer.get();
+        if (result.capacity()<length) {
+            result = ByteBuffer.allocate(Math.max(length,2*result.capacity()));
+            scratchBuffer.set(result);
+        }
+        result.clear();
+        putConcatenation(result,front,end,true);
+        result.flip();
+        return result;
     }
 
-    private final ByteBuffer concatenatePrefix(ByteBuffer front, ByteBuffer end) {
-        return concatenate(front,end,false);
+    /**
+     * Concatenates the key with the slice start and end column, respectively, into one backing buffer
+     *
+     * @param key
+     * @param columnStart
+     * @param columnEnd
+     * @return the start and end bound as views into the backing buffer
+     */
+    private final ByteBuffer[] concatenatePrefixes(ByteBuffer key, ByteBuffer columnStart, ByteBuffer columnEnd) {
+        int startLength = getConcatenatedLength(key,columnStart,false);
+        int endLength = getConcatenatedLength(key,columnEnd,false);
+        ByteBuffer result = ByteBuffer.allocate(startLength+endLength);
+        putConcatenation(result,key,columnStart,false);
+        putConcatenation(result,key,columnEnd,false);
+        result.flip();
+        result.limit(startLength);
+        ByteBuffer start = result.slice();
+        result.limit(startLength+endLength).position(startLength);
+        ByteBuffer end = result.slice();
+        return new ByteBuffer[]{start,end};
     }
 
-    private final ByteBuffer concatenate(ByteBuffer front, ByteBuffer end, final boolean appendLength) {
+    private final int getConcatenatedLength(ByteBuffer front, ByteBuffer end, final boolean appendLength) {
         final boolean addKeyLength = !hasFixedKeyLength() && appendLength;
-        int length = getLength(front);
+        return getLength(front) + end.remaining() + (addKeyLength?variableKeyLengthSize:0);
+    }
 
-        ByteBuffer result = ByteBuffer.allocate(length + end.remaining() + (addKeyLength?variableKeyLengthSize:0));
+    private final void putConcatenation(ByteBuffer result, ByteBuffer front, ByteBuffer end, final boolean appendLength) {
+        final boolean addKeyLength = !hasFixedKeyLength() && appendLength;
+        int length = getLength(front);
 
         front.mark();
         result.put(front);
@@ -186,10 +373,6 @@ public class KeyValueStoreAdapter implements KeyColumnValueStore {
         end.reset();
 
         if (addKeyLength) result.putShort((short)length);
-
-        result.flip();
-        front.reset(); end.reset();
-        return result;
     }
 
     private final ByteBuffer getColumn(ByteBuffer concat) {
@@ -237,6 +420,17 @@ public class KeyValueStoreAdapter implements KeyColumnValueStore {
         return inrange;
     }
 
+    private enum ByteBufferComparator implements Comparator<ByteBuffer> {
+
+        INSTANCE;
+
+        @Override
+        public int compare(ByteBuffer b1, ByteBuffer b2) {
+            if (b1.equals(b2)) return 0;
+            else return ByteBufferUtil.isSmallerThan(b1,b2)?-1:1;
+        }
+    }
+
 	private class ContainsSelector implements KeySelector {
 
 		private final ByteBuffer checkKey;
@@ -338,4 +532,39 @@ public class KeyValueStoreAdapter implements KeyColumnValueStore {
         }
     }
 
+    /**
+     * Iterates over the keys in a range by seeking to the first entry of the next key, which skips over the columns
+     * of each key.
+     */
+    private class RangeKeysIterator implements RecordIterator<ByteBuffer> {
+
+        private final ByteBuffer keyEnd;
+        private final StoreTransaction txh;
+        private ByteBuffer nextKey;
+
+        private RangeKeysIterator(ByteBuffer keyStart, ByteBuffer keyEnd, StoreTransaction txh) throws StorageException {
+            this.keyEnd=keyEnd;
+            this.txh=txh;
+            this.nextKey=nextKey(keyStart,keyEnd,txh);
+        }
+
+        @Override
+        public boolean hasNext() throws StorageException {
+            return nextKey!=null;
+        }
+
+        @Override
+        public ByteBuffer next() throws StorageException {
+            if (nextKey==null) throw new NoSuchElementException();
+            ByteBuffer returnKey = nextKey;
+            nextKey = nextKey(ByteBufferUtil.nextBiggerBuffer(returnKey),keyEnd,txh);
+            return returnKey.duplicate();
+        }
+
+        @Override
+        public void close() throws StorageException {
+            nextKey=null;
+        }
+    }
+
 }
@@ -12,6 +12,8 @@ import org.slf4j.LoggerFactory;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class KeyValueStoreManagerAdapter implements KeyColumnValueStoreManager {
 
@@ -22,6 +24,8 @@ public class KeyValueStoreManagerAdapter implements KeyColumnValueStoreManager {
 
     private final StoreFeatures features;
 
+    private final ConcurrentMap<String,KeyValueStoreAdapter> stores;
+
     public KeyValueStoreManagerAdapter(KeyValueStoreManager manager) {
         this(manager,null);
     }
@@ -32,7 +36,7 @@ public class KeyValueStoreManagerAdapter implements KeyColumnValueStoreManager {
         if (keyLengths!=null && !keyLengths.isEmpty()) mb.putAll(keyLengths);
         this.keyLengths=mb.build();
         features = manager.getFeatures().clone();
-        features.supportsBatchMutation=false;
+        stores = new ConcurrentHashMap<String, KeyValueStoreAdapter>();
 	}
 
     public StoreFeatures getFeatures() {
@@ -44,6 +48,11 @@ public class KeyValueStoreManagerAdapter implements KeyColumnValueStoreManager {
 		return manager.beginTransaction(level);
 	}
 
+    @Override
+    public StoreTransaction beginReadOnlyTransaction(ConsistencyLevel level) throws StorageException {
+        return manager.beginReadOnlyTransaction(level);
+    }
+
     @Override
 	public void close() throws StorageException {
 		manager.close();
@@ -57,15 +66,30 @@ public class KeyValueStoreManagerAdapter implements KeyColumnValueStoreManager {
     @Override
 	public KeyColumnValueStore openDatabase(String name)
 			throws StorageException {
-        return wrapKeyValueStore(manager.openDatabase(name),keyLengths);
+        KeyValueStoreAdapter store = wrapKeyValueStore(manager.openDatabase(name),keyLengths);
+        stores.put(name,store);
+        return store;
 	}
 
+    /**
+     * Applies the mutations to the stores previously opened through this adapter, one batch per store.
+     *
+     * @param mutations
+     * @param txh
+     * @throws StorageException
+     */
     @Override
     public void mutateMany(Map<String, Map<ByteBuffer, Mutation>> mutations, StoreTransaction txh) throws StorageException {
-        throw new UnsupportedOperationException();
+        Preconditions.checkArgument(features.supportsBatchMutation(),"Underlying store does not support batch mutations");
+        for (Map.Entry<String,Map<ByteBuffer,Mutation>> storeMutation : mutations.entrySet()) {
+            if (storeMutation.getValue().isEmpty()) continue;
+            KeyValueStoreAdapter store = stores.get(storeMutation.getKey());
+            Preconditions.checkArgument(store!=null,"Store has not been opened: %s",storeMutation.getKey());
+            store.mutateMany(storeMutation.getValue(), txh);
+        }
     }
     
-    public static final KeyColumnValueStore wrapKeyValueStore(KeyValueStore store, Map<String,Integer> keyLengths) {
+    public static final KeyValueStoreAdapter wrapKeyValueStore(KeyValueStore store, Map<String,Integer> keyLengths) {
         String name = store.getName();
         if (keyLengths.containsKey(name)) {
             int keyLength = keyLengths.get(name);
@@ -7,6 +7,7 @@ import com.thinkaurelius.titan.diskstorage.locking.PermanentLockingException;
 
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
 
 
 public class ConsistentKeyLockStore implements KeyColumnValueStore {
@@ -68,8 +69,16 @@ public class ConsistentKeyLockStore implements KeyColumnValueStore {
 	}
     
     private StoreTransaction getTx(StoreTransaction txh) {
-        Preconditions.checkArgument(txh!=null && txh instanceof ConsistentKeyLockTransaction);
-        return ((ConsistentKeyLockTransaction)txh).getWrappedTransaction();
+        Preconditions.checkArgument(txh!=null);
+        //Read-only transactions do not lock and hence are not wrapped
+        if (txh instanceof ConsistentKeyLockTransaction) return ((ConsistentKeyLockTransaction)txh).getWrappedTransaction();
+        return txh;
+    }
+
+    private ConsistentKeyLockTransaction getLockTx(StoreTransaction txh) throws StorageException {
+        if (!(txh instanceof ConsistentKeyLockTransaction))
+            throw new PermanentLockingException("Cannot lock or mutate in a read-only transaction");
+        return (ConsistentKeyLockTransaction)txh;
     }
 
     @Override
@@ -87,6 +96,11 @@ public class ConsistentKeyLockStore implements KeyColumnValueStore {
         return dataStore.getSlice(key,columnStart,columnEnd,getTx(txh));
     }
 
+    @Override
+    public Map<ByteBuffer,List<Entry>> getSlice(List<ByteBuffer> keys, ByteBuffer columnStart, ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+        return dataStore.getSlice(keys,columnStart,columnEnd,limit,getTx(txh));
+    }
+
     @Override
     public ByteBuffer get(ByteBuffer key, ByteBuffer column, StoreTransaction txh) throws StorageException {
         return dataStore.get(key,column,getTx(txh));
@@ -100,7 +114,7 @@ public class ConsistentKeyLockStore implements KeyColumnValueStore {
     @Override
     public void mutate(ByteBuffer key, List<Entry> additions, List<ByteBuffer> deletions, StoreTransaction txh) throws StorageException {
         if (lockStore!=null) {
-            ConsistentKeyLockTransaction tx = (ConsistentKeyLockTransaction)txh;
+            ConsistentKeyLockTransaction tx = getLockTx(txh);
             if (!tx.isMutationStarted()) {
                 tx.mutationStarted();
                 tx.verifyAllLockClaims();
@@ -112,7 +126,7 @@ public class ConsistentKeyLockStore implements KeyColumnValueStore {
     @Override
     public void acquireLock(ByteBuffer key, ByteBuffer column, ByteBuffer expectedValue, StoreTransaction txh) throws StorageException {
         if (lockStore!=null) {
-            ConsistentKeyLockTransaction tx = (ConsistentKeyLockTransaction)txh;
+            ConsistentKeyLockTransaction tx = getLockTx(txh);
             if (tx.isMutationStarted()) throw new PermanentLockingException("Attempted to obtain a lock after mutations had been persisted");
             tx.writeBlindLockClaim(this,key,column,expectedValue);
         } else {
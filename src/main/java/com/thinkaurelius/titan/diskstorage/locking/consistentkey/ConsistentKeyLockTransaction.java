@@ -1,19 +1,28 @@
 package com.thinkaurelius.titan.diskstorage.locking.consistentkey;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import com.google.common.base.Preconditions;
 import com.thinkaurelius.titan.diskstorage.*;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.BufferMutationKeyColumnValueStore;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.ConsistencyLevel;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.Entry;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.Mutation;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreTransaction;
 import com.thinkaurelius.titan.diskstorage.locking.PermanentLockingException;
 import com.thinkaurelius.titan.diskstorage.locking.TemporaryLockingException;
+import com.thinkaurelius.titan.diskstorage.util.ByteBufferUtil;
 import com.thinkaurelius.titan.diskstorage.util.TimeUtility;
 import org.apache.commons.codec.binary.Hex;
 import org.slf4j.Logger;
@@ -22,7 +31,15 @@ import org.slf4j.LoggerFactory;
 /**
  * This class implements locking according to the Titan key-column-expectedvalue
  * protocol.
- * 
+ *
+ * If a mutation store for the lock stores is given, lock claims are only
+ * checked against the local lock mediator when requested and are written to
+ * the backing store all at once with a single batch mutation before the claims
+ * are verified. Otherwise, each lock claim is written when requested.
+ * The claims are verified with one multi-key read of the lock rows per store and
+ * one multi-key read of the expected values per store and column. These reads
+ * are issued concurrently if an executor for verification is given.
+ *
  * This class is not safe for concurrent use by multiple threads.
  * 
  * @author Dan LaRocque <dalaro@hopcount.org>
@@ -59,14 +76,37 @@ public class ConsistentKeyLockTransaction implements StoreTransaction {
 	private final LinkedHashSet<LockClaim> lockClaims =
 			new LinkedHashSet<LockClaim>();
 
+	/**
+	 * Locks which have been acquired from the local lock mediator but whose
+	 * claims have not yet been written to the backing store. Only used if
+	 * lock claims are written in batches.
+	 */
+	private final LinkedHashSet<LockClaim> pendingLockClaims =
+			new LinkedHashSet<LockClaim>();
+
     private final StoreTransaction baseTx;
     private final StoreTransaction consistentTx;
+    private final BufferMutationKeyColumnValueStore lockMutationStore;
+    private final ExecutorService verificationExecutor;
 
 	public ConsistentKeyLockTransaction(StoreTransaction baseTx, StoreTransaction consistentTx) {
+        this(baseTx,consistentTx,null,null);
+	}
+
+    /**
+     * @param baseTx
+     * @param consistentTx
+     * @param lockMutationStore Store to write all pending lock claims with in one batch before verifying them, or null to write each lock claim when it is requested
+     * @param verificationExecutor Executor to issue the reads for verifying lock claims on concurrently, or null to issue them one after another
+     */
+    public ConsistentKeyLockTransaction(StoreTransaction baseTx, StoreTransaction consistentTx,
+                                        BufferMutationKeyColumnValueStore lockMutationStore, ExecutorService verificationExecutor) {
         Preconditions.checkArgument(consistentTx.getConsistencyLevel()==ConsistencyLevel.KEY_CONSISTENT);
         this.baseTx = baseTx;
         this.consistentTx=consistentTx;
-	}
+        this.lockMutationStore=lockMutationStore;
+        this.verificationExecutor=verificationExecutor;
+    }
 
     StoreTransaction getWrappedTransaction() {
         return baseTx;
@@ -74,14 +114,14 @@ public class ConsistentKeyLockTransaction implements StoreTransaction {
 
 	@Override
 	public void abort() throws StorageException {
-		if (0 < lockClaims.size())
+		if (0 < lockClaims.size() || 0 < pendingLockClaims.size())
 			unlockAll();
         baseTx.abort();
 	}
 
 	@Override
 	public void commit() throws StorageException {
-		if (0 < lockClaims.size())
+		if (0 < lockClaims.size() || 0 < pendingLockClaims.size())
 			unlockAll();
         baseTx.commit();
 	}
@@ -122,6 +162,11 @@ public class ConsistentKeyLockTransaction implements StoreTransaction {
 	 * <p>
 	 * If we can't get the lock from the local lock mediator, then we
 	 * throw a StorageException with a string message to that effect.
+	 * <p>
+	 * If lock claims are written in batches, this method only acquires the
+	 * lock from the local lock mediator and appends the LockClaim object to
+	 * the pendingLockClaims field. The claim is written to the backing store
+	 * together with all other pending claims in #verifyAllLockClaims().
 	 */
 	public void writeBlindLockClaim(
             ConsistentKeyLockStore backer, ByteBuffer key,
@@ -129,9 +174,9 @@ public class ConsistentKeyLockTransaction implements StoreTransaction {
 			throws StorageException {
 
 		LockClaim lc = new LockClaim(backer, key, column, expectedValue);
-		
+
 		// Check to see whether we already hold this lock
-		if (lockClaims.contains(lc)) {
+		if (lockClaims.contains(lc) || pendingLockClaims.contains(lc)) {
 			log.trace("Skipping lock {}: already held", lc);
 			return;
 		}
@@ -157,7 +202,13 @@ public class ConsistentKeyLockTransaction implements StoreTransaction {
 		if (!backer.getLocalLockMediator().lock(lc.getKc(), this, tempts)) {
 			throw new PermanentLockingException("Lock could not be acquired because it is held by a local transaction [" + lc + "]");
 		}
-		
+
+		if (null != lockMutationStore) {
+			log.trace("Deferred writing lock: {}", lc);
+			pendingLockClaims.add(lc);
+			return;
+		}
+
 		/* Write lock to the backing store
 		 *
 		 * The key we write is a concatenation of the arguments key and column,
@@ -218,6 +269,77 @@ public class ConsistentKeyLockTransaction implements StoreTransaction {
 		}
 	}
 
+	/*
+	 * Writes the claims of all pending locks to the backing stores with a
+	 * single batch mutation. As in #writeBlindLockClaim(), the claims are
+	 * deleted and written again with a new timestamp if writing them took
+	 * longer than the lock wait time.
+	 * <p>
+	 * If the claims could not be written, the pending locks are released
+	 * in the local lock mediators.
+	 */
+	private void writePendingLockClaims() throws StorageException {
+		if (pendingLockClaims.isEmpty())
+			return;
+
+		int lockRetryCount = Integer.MAX_VALUE;
+		long lockWaitMS = Long.MAX_VALUE;
+		for (LockClaim lc : pendingLockClaims) {
+			lockRetryCount = Math.min(lockRetryCount, lc.getBacker().getLockRetryCount());
+			lockWaitMS = Math.min(lockWaitMS, lc.getBacker().getLockWaitMS());
+		}
+
+		ByteBuffer valBuf = ByteBuffer.allocate(4);
+		valBuf.putInt(0).rewind();
+
+		boolean ok = false;
+		try {
+			for (int i = 0; i < lockRetryCount; i++) {
+				long tsNS = TimeUtility.getApproxNSSinceEpoch(false);
+				Map<String, Map<ByteBuffer, Mutation>> additions = new HashMap<String, Map<ByteBuffer, Mutation>>();
+				for (LockClaim lc : pendingLockClaims) {
+					lc.setTimestamp(tsNS);
+					List<Entry> entries = new ArrayList<Entry>(1);
+					entries.add(new Entry(lc.getLockCol(tsNS, lc.getBacker().getRid()), valBuf));
+					addLockMutation(additions, lc, new Mutation(entries, null));
+				}
+
+				long before = System.currentTimeMillis();
+				lockMutationStore.mutateMany(additions, consistentTx);
+				long after = System.currentTimeMillis();
+
+				if (lockWaitMS < after - before) {
+					// Too slow
+					// Delete lock claims and loop again
+					lockMutationStore.mutateMany(getLockDeletions(pendingLockClaims), consistentTx);
+				} else {
+					ok = true;
+					log.trace("Wrote {} lock(s) in one batch", pendingLockClaims.size());
+					for (LockClaim lc : pendingLockClaims) {
+						ConsistentKeyLockStore backer = lc.getBacker();
+						lastLockApplicationTimesMS.put(backer, before);
+						lockClaims.add(lc);
+
+						// Update the timeout, see #writeBlindLockClaim()
+						boolean expireTimeUpdated = backer.getLocalLockMediator().lock(
+								lc.getKc(), this, tsNS + MILLION * backer.getLockExpireMS());
+						if (!expireTimeUpdated)
+							log.warn("Failed to update expiration time of local lock {}; is titan.storage.lock-expiry-time too low?", lc);
+					}
+					return;
+				}
+			}
+
+			throw new TemporaryLockingException("Lock failed: exceeded max timeouts writing " + pendingLockClaims.size() + " lock claim(s)");
+		} finally {
+			if (!ok) {
+				for (LockClaim lc : pendingLockClaims)
+					lc.getBacker().getLocalLockMediator().unlock(lc.getKc(), this);
+			}
+			pendingLockClaims.clear();
+		}
+	}
+
 	/*
 	 * For each object in the lockClaims list, this method checks (1)
 	 * that the current transaction indeed holds the lock globally (that
@@ -226,6 +348,8 @@ public class ConsistentKeyLockTransaction implements StoreTransaction {
 	 * expectedValue originally supplied in the locking request matches
 	 * the current value stored at the key-column coordinate of the lock.
 	 * <p>
+	 * Any pending lock claims are written before the claims are checked.
+	 * <p>
 	 * If we are not most senior on any object in the lockClaims list,
 	 * then we throw StorageException to that effect.
 	 * <p>
@@ -241,11 +365,13 @@ public class ConsistentKeyLockTransaction implements StoreTransaction {
 	 */
 	public void verifyAllLockClaims() throws StorageException {
 
+		writePendingLockClaims();
+
 		// wait one full idApplicationWaitMS since the last claim attempt, if needed
 		if (0 == lastLockApplicationTimesMS.size())
 			return; // no locks
 		
-		long now = TimeUtility.getApproxNSSinceEpoch(false);
+		final long now = TimeUtility.getApproxNSSinceEpoch(false);
 		
 		// Iterate over all backends and sleep, if necessary, until
 		// the backend-specific grace period since our last lock application
@@ -261,17 +387,66 @@ public class ConsistentKeyLockTransaction implements StoreTransaction {
 			
 			TimeUtility.sleepUntil(appTimeMS + i.getLockWaitMS(), log);
 		}
-		
-		// Check lock claim seniority
+
+		// Group the lock claims by backer and, for reading the expected values, by column
+		Map<ConsistentKeyLockStore, List<LockClaim>> claimsByBacker =
+				new LinkedHashMap<ConsistentKeyLockStore, List<LockClaim>>();
+		Map<ConsistentKeyLockStore, Map<ByteBuffer, List<LockClaim>>> claimsByColumn =
+				new LinkedHashMap<ConsistentKeyLockStore, Map<ByteBuffer, List<LockClaim>>>();
 		for (LockClaim lc : lockClaims) {
-			
-			ByteBuffer lockKey = lc.getLockKey();
-			ByteBuffer empty = ByteBuffer.allocate(0);
+			List<LockClaim> backerClaims = claimsByBacker.get(lc.getBacker());
+			if (null == backerClaims) {
+				backerClaims = new ArrayList<LockClaim>();
+				claimsByBacker.put(lc.getBacker(), backerClaims);
+				claimsByColumn.put(lc.getBacker(), new LinkedHashMap<ByteBuffer, List<LockClaim>>());
+			}
+			backerClaims.add(lc);
+			Map<ByteBuffer, List<LockClaim>> backerColumns = claimsByColumn.get(lc.getBacker());
+			List<LockClaim> columnClaims = backerColumns.get(lc.getColumn());
+			if (null == columnClaims) {
+				columnClaims = new ArrayList<LockClaim>();
+				backerColumns.put(lc.getColumn(), columnClaims);
+			}
+			columnClaims.add(lc);
+		}
+
+		List<LockCheck> checks = new ArrayList<LockCheck>();
+		// Check lock claim seniority
+		for (final Map.Entry<ConsistentKeyLockStore, List<LockClaim>> claims : claimsByBacker.entrySet()) {
+			checks.add(new LockCheck() {
+				@Override
+				public void check() throws StorageException {
+					checkSeniority(claims.getKey(), claims.getValue(), now);
+				}
+			});
+		}
+		// Check expectedValue
+		for (final Map.Entry<ConsistentKeyLockStore, Map<ByteBuffer, List<LockClaim>>> backerColumns : claimsByColumn.entrySet()) {
+			for (final Map.Entry<ByteBuffer, List<LockClaim>> claims : backerColumns.getValue().entrySet()) {
+				checks.add(new LockCheck() {
+					@Override
+					public void check() throws StorageException {
+						checkExpectedValues(backerColumns.getKey(), claims.getKey(), claims.getValue());
+					}
+				});
+			}
+		}
+		runLockChecks(checks);
+	}
+
+	private void checkSeniority(ConsistentKeyLockStore backer, List<LockClaim> claims, long now) throws StorageException {
+		List<ByteBuffer> lockKeys = new ArrayList<ByteBuffer>(claims.size());
+		for (LockClaim lc : claims)
+			lockKeys.add(lc.getLockKey().duplicate());
+		ByteBuffer empty = ByteBuffer.allocate(0);
+
+		Map<ByteBuffer, List<Entry>> rows = backer.getLockStore().getSlice(lockKeys, empty, empty, Integer.MAX_VALUE, consistentTx);
+
+		for (LockClaim lc : claims) {
+			List<Entry> entries = rows.get(lc.getLockKey());
+			if (null == entries)
+				entries = new ArrayList<Entry>(0);
 
-            ConsistentKeyLockStore backer = lc.getBacker();
-			
-			List<Entry> entries = backer.getLockStore().getSlice(lockKey, empty, empty, consistentTx);
-			
 			// Determine the timestamp and rid of the earliest still-valid lock claim
 			Long earliestNS = null;
 			byte[] earliestRid = null;
@@ -323,20 +498,112 @@ public class ConsistentKeyLockTransaction implements StoreTransaction {
                 		earliestNS });
 				throw new PermanentLockingException("Lock could not be acquired because it is held by a remote transaction [" + lc + "]");
 			}
-			
-			
-			// Check expectedValue
-			ByteBuffer bb = backer.getDataStore().get(lc.getKey(), lc.getColumn(), baseTx);
-			if ((null == bb && null != lc.getExpectedValue()) ||
-			    (null != bb && null == lc.getExpectedValue()) ||
-			    (null != bb && null != lc.getExpectedValue() && !lc.getExpectedValue().equals(bb))) {
-				throw new PermanentLockingException("Updated state: lock acquired but value has changed since read [" + lc + "]");
-			}
+		}
+	}
+
+	/*
+	 * Reads through the consistent transaction, since the base transaction may read with a weaker
+	 * per-transaction consistency level and miss a concurrent update of the locked value
+	 */
+	private void checkExpectedValues(ConsistentKeyLockStore backer, ByteBuffer column, List<LockClaim> claims) throws StorageException {
+		ByteBuffer columnEnd;
+		try {
+			columnEnd = ByteBufferUtil.nextBiggerBuffer(column.slice());
+		} catch (IllegalArgumentException e) {
+			// No column follows this column, hence read each value individually
+			for (LockClaim lc : claims)
+				checkExpectedValue(lc, backer.getDataStore().get(lc.getKey(), column, consistentTx));
+			return;
+		}
+
+		List<ByteBuffer> keys = new ArrayList<ByteBuffer>(claims.size());
+		for (LockClaim lc : claims)
+			keys.add(lc.getKey().duplicate());
+
+		// The slice from the column to the next bigger column starts with the column itself, if present
+		Map<ByteBuffer, List<Entry>> values = backer.getDataStore().getSlice(keys, column, columnEnd, 1, consistentTx);
+
+		for (LockClaim lc : claims) {
+			List<Entry> entries = values.get(lc.getKey());
+			ByteBuffer bb = null;
+			if (null != entries && !entries.isEmpty() && column.equals(entries.get(0).getColumn()))
+				bb = entries.get(0).getValue();
+			checkExpectedValue(lc, bb);
+		}
+	}
+
+	private static void checkExpectedValue(LockClaim lc, ByteBuffer bb) throws StorageException {
+		if ((null == bb && null != lc.getExpectedValue()) ||
+		    (null != bb && null == lc.getExpectedValue()) ||
+		    (null != bb && null != lc.getExpectedValue() && !lc.getExpectedValue().equals(bb))) {
+			throw new PermanentLockingException("Updated state: lock acquired but value has changed since read [" + lc + "]");
+		}
+	}
+
+	/*
+	 * Runs the given checks concurrently on the verification executor, if
+	 * there is one, and one after another otherwise. Throws the exception of
+	 * the first check, in the given order, that failed.
+	 */
+	private void runLockChecks(List<LockCheck> checks) throws StorageException {
+		if (null == verificationExecutor || checks.size() < 2) {
+			for (LockCheck check : checks)
+				check.check();
+			return;
+		}
+
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(checks.size());
+		try {
+			for (LockCheck check : checks)
+				futures.add(verificationExecutor.submit(check));
+			for (Future<Void> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new PermanentLockingException("Interrupted while verifying lock claims", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof StorageException)
+				throw (StorageException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new PermanentLockingException("Could not verify lock claims", cause);
+		} finally {
+			// Checks still queued after a failure are no longer needed
+			for (Future<Void> future : futures)
+				future.cancel(false);
 		}
 	}
 
 	private void unlockAll() {
 
+		// Pending lock claims have not been written and only need to be released locally
+		for (LockClaim lc : pendingLockClaims) {
+			try {
+				lc.getBacker().getLocalLockMediator().unlock(lc.getKc(), this);
+			} catch (Throwable t) {
+				log.error("Failed to locally unlock {}", lc, t);
+			}
+		}
+		pendingLockClaims.clear();
+
+		boolean remotelyUnlocked = false;
+		if (null != lockMutationStore && 1 < lockClaims.size()) {
+			try {
+				// Release all locks remotely at once
+				lockMutationStore.mutateMany(getLockDeletions(lockClaims), consistentTx);
+				remotelyUnlocked = true;
+
+				if (log.isTraceEnabled()) {
+					log.trace("Wrote {} unlock(s) in one batch", lockClaims.size());
+				}
+			} catch (Throwable t) {
+				log.error("Failed to unlock {} lock(s) in one batch", lockClaims.size(), t);
+			}
+		}
+
 		for (LockClaim lc : lockClaims) {
 
 			assert null != lc;
@@ -347,15 +614,17 @@ public class ConsistentKeyLockTransaction implements StoreTransaction {
 			assert null != lockColBuf;
 			assert lockColBuf.hasRemaining();
 			
-			try {	
-				// Release lock remotely
-				lc.getBacker().getLockStore().mutate(lockKeyBuf, null, Arrays.asList(lockColBuf), consistentTx);
-			
-				if (log.isTraceEnabled()) {
-					log.trace("Wrote unlock {}", lc);
+			if (!remotelyUnlocked) {
+				try {
+					// Release lock remotely
+					lc.getBacker().getLockStore().mutate(lockKeyBuf, null, Arrays.asList(lockColBuf), consistentTx);
+
+					if (log.isTraceEnabled()) {
+						log.trace("Wrote unlock {}", lc);
+					}
+				} catch (Throwable t) {
+					log.error("Failed to unlock {}", lc, t);
 				}
-			} catch (Throwable t) {
-				log.error("Failed to unlock {}", lc, t);
 			}
 
 			try {
@@ -371,4 +640,44 @@ public class ConsistentKeyLockTransaction implements StoreTransaction {
 		}
 	}
 
+	/*
+	 * Returns the mutations which delete the lock claims written with the
+	 * current timestamps of the given claims.
+	 */
+	private static Map<String, Map<ByteBuffer, Mutation>> getLockDeletions(Iterable<LockClaim> claims) {
+		Map<String, Map<ByteBuffer, Mutation>> deletions = new HashMap<String, Map<ByteBuffer, Mutation>>();
+		for (LockClaim lc : claims) {
+			List<ByteBuffer> columns = new ArrayList<ByteBuffer>(1);
+			columns.add(lc.getLockCol(lc.getTimestamp(), lc.getBacker().getRid()));
+			addLockMutation(deletions, lc, new Mutation(null, columns));
+		}
+		return deletions;
+	}
+
+	private static void addLockMutation(Map<String, Map<ByteBuffer, Mutation>> mutations, LockClaim lc, Mutation mutation) {
+		String storeName = lc.getBacker().getLockStore().getName();
+		Map<ByteBuffer, Mutation> storeMutations = mutations.get(storeName);
+		if (null == storeMutations) {
+			storeMutations = new HashMap<ByteBuffer, Mutation>();
+			mutations.put(storeName, storeMutations);
+		}
+		Mutation existing = storeMutations.get(lc.getLockKey());
+		if (null == existing)
+			storeMutations.put(lc.getLockKey(), mutation);
+		else
+			existing.merge(mutation);
+	}
+
+	private static abstract class LockCheck implements Callable<Void> {
+
+		public abstract void check() throws StorageException;
+
+		@Override
+		public Void call() throws StorageException {
+			check();
+			return null;
+		}
+
+	}
+
 }
@@ -0,0 +1,707 @@
+package com.thinkaurelius.titan.diskstorage.lsm;
+
+import com.google.common.base.Preconditions;
+import com.thinkaurelius.titan.diskstorage.PermanentStorageException;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.TemporaryStorageException;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.RecordIterator;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreTransaction;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.KeySelector;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.KeyValueEntry;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.KeyValueStore;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.LimitedSelector;
+import com.thinkaurelius.titan.diskstorage.locking.PermanentLockingException;
+import com.thinkaurelius.titan.diskstorage.locking.TemporaryLockingException;
+import com.thinkaurelius.titan.diskstorage.util.ByteBufferUtil;
+import com.thinkaurelius.titan.diskstorage.util.RecordLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Log-structured {@link KeyValueStore} which keeps all data of one database in its own directory.
+ *
+ * Mutations are appended to a {@link RecordLog} and applied to an in-memory sorted memtable. Once the memtable
+ * exceeds the configured size it is swapped for an empty one and written to an immutable sorted {@link Segment}
+ * in the background, after which its records are marked as applied in the log. When the number of segments reaches the compaction threshold, the newest segments are merged
+ * into one in the background as well. Reads merge the memtables and all segments, newest first, where a deletion
+ * marker hides all older values of a key. Values read from segments are views into the memory-mapped segment files.
+ *
+ * Mutations are visible immediately and not isolated between transactions. Locks are held locally by the
+ * transaction which acquired them until it commits or aborts.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class LSMKeyValueStore implements KeyValueStore {
+
+    private static final Logger log = LoggerFactory.getLogger(LSMKeyValueStore.class);
+
+    static final String LOG_PREFIX = "log-";
+    static final String LOG_SUFFIX = ".wal";
+
+    /**
+     * Value which marks a key as deleted, identified by reference
+     */
+    static final ByteBuffer TOMBSTONE = ByteBuffer.allocate(0);
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    //Approximate heap overhead of one memtable entry in addition to the key and value
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private static final Comparator<ByteBuffer> BYTE_ORDER = new Comparator<ByteBuffer>() {
+        @Override
+        public int compare(ByteBuffer b1, ByteBuffer b2) {
+            return ByteBufferUtil.compare(b1, b2);
+        }
+    };
+
+    private final String name;
+    private final File directory;
+    private final LSMStoreManager manager;
+    private final ConcurrentMap<ByteBuffer, LSMTransaction> locks;
+
+    private volatile State state;
+    private volatile StorageException backgroundFailure = null;
+
+    //Guards the fields below as well as replacing the state
+    private final Object writeLock = new Object();
+    private RecordLog wal;
+    private long memtableBytes = 0;
+    private long nextSequence;
+    private boolean closed = false;
+
+    LSMKeyValueStore(String name, File directory, LSMStoreManager manager) throws StorageException {
+        Preconditions.checkNotNull(name);
+        this.name = name;
+        this.directory = directory;
+        this.manager = manager;
+        this.locks = new ConcurrentHashMap<ByteBuffer, LSMTransaction>();
+        try {
+            recover();
+        } catch (StorageException e) {
+            closeLogAfterFailure();
+            throw e;
+        } catch (IOException e) {
+            closeLogAfterFailure();
+            throw new PermanentStorageException("Could not open store " + name + " in " + directory, e);
+        }
+    }
+
+    private void closeLogAfterFailure() {
+        if (wal == null) return;
+        try {
+            wal.close();
+        } catch (StorageException e) {
+            log.warn("Could not close log of store {}", name, e);
+        }
+    }
+
+    /**
+     * Opens the segments in the directory, discards segments which have been superseded by a compaction and
+     * writes all records left in the log to a new segment.
+     */
+    private void recover() throws IOException, StorageException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create directory: " + directory);
+        List<Segment> segments = new ArrayList<Segment>();
+        long maxSequence = 0;
+        for (File file : directory.listFiles()) {
+            String fileName = file.getName();
+            if (fileName.endsWith(SegmentWriter.TEMP_SUFFIX)) {
+                //Incomplete segment
+                file.delete();
+                continue;
+            }
+            long sequence = Segment.parseSequence(fileName);
+            if (sequence >= 0) {
+                segments.add(Segment.open(file, sequence));
+                maxSequence = Math.max(maxSequence, sequence);
+            }
+        }
+
+        List<Segment> superseded = new ArrayList<Segment>();
+        for (Segment segment : segments) {
+            for (Segment other : segments) {
+                if (other.getSequence() >= segment.getMinSequence() && other.getSequence() < segment.getSequence())
+                    superseded.add(other);
+            }
+        }
+        for (Segment segment : superseded) {
+            segments.remove(segment);
+            segment.getFile().delete();
+        }
+        nextSequence = maxSequence + 1;
+
+        //Records of a memtable which was written to a segment right before a crash are replayed again. Since all
+        //subsequent records are replayed as well, the new segment holds their latest values.
+        final ConcurrentSkipListMap<ByteBuffer, ByteBuffer> memtable = new ConcurrentSkipListMap<ByteBuffer, ByteBuffer>(BYTE_ORDER);
+        wal = new RecordLog(directory, LOG_PREFIX, LOG_SUFFIX, manager.getMemtableSize());
+        wal.replay(new RecordLog.RecordHandler() {
+            @Override
+            public void handle(long seq, ByteBuffer record) throws StorageException {
+                readRecords(record, memtable);
+            }
+        });
+        if (!memtable.isEmpty()) {
+            long sequence = nextSequence++;
+            segments.add(writeSegment(new MapCursor(memtable), sequence, sequence, segments.isEmpty()));
+            log.debug("Recovered {} entries of store {} from its log", memtable.size(), name);
+        }
+        wal.applied(wal.getLastSequenceNumber());
+
+        Collections.sort(segments, new Comparator<Segment>() {
+            @Override
+            public int compare(Segment s1, Segment s2) {
+                return Long.signum(s2.getSequence() - s1.getSequence());
+            }
+        });
+        state = new State(new ConcurrentSkipListMap<ByteBuffer, ByteBuffer>(BYTE_ORDER), null,
+                Collections.unmodifiableList(segments));
+    }
+
+    /**
+     * Serializes the given mutations into a log record. Records use the same layout as {@link Segment} records.
+     */
+    private static ByteBuffer writeRecords(List<KeyValueEntry> additions, List<ByteBuffer> deletions) {
+        int length = 0;
+        if (deletions != null) {
+            for (ByteBuffer key : deletions) length += Segment.RECORD_HEADER_LENGTH + key.remaining();
+        }
+        if (additions != null) {
+            for (KeyValueEntry entry : additions)
+                length += Segment.RECORD_HEADER_LENGTH + entry.getKey().remaining() + entry.getValue().remaining();
+        }
+        ByteBuffer record = ByteBuffer.allocate(length);
+        if (deletions != null) {
+            for (ByteBuffer key : deletions) {
+                record.putInt(key.remaining());
+                record.putInt(Segment.TOMBSTONE_LENGTH);
+                record.put(key.duplicate());
+            }
+        }
+        if (additions != null) {
+            for (KeyValueEntry entry : additions) {
+                record.putInt(entry.getKey().remaining());
+                record.putInt(entry.getValue().remaining());
+                record.put(entry.getKey().duplicate());
+                record.put(entry.getValue().duplicate());
+            }
+        }
+        record.flip();
+        return record;
+    }
+
+    private static void readRecords(ByteBuffer record, Map<ByteBuffer, ByteBuffer> memtable) throws StorageException {
+        ByteBuffer data = record.duplicate();
+        while (data.hasRemaining()) {
+            if (data.remaining() < Segment.RECORD_HEADER_LENGTH)
+                throw new PermanentStorageException("Invalid log record");
+            int keyLength = data.getInt();
+            int valueLength = data.getInt();
+            if (keyLength < 0 || valueLength < Segment.TOMBSTONE_LENGTH
+                    || data.remaining() < keyLength + Math.max(valueLength, 0))
+                throw new PermanentStorageException("Invalid log record");
+            ByteBuffer key = ByteBuffer.allocate(keyLength);
+            data.get(key.array());
+            ByteBuffer value = TOMBSTONE;
+            if (valueLength != Segment.TOMBSTONE_LENGTH) {
+                value = ByteBuffer.allocate(valueLength);
+                data.get(value.array());
+            }
+            memtable.put(key, value);
+        }
+    }
+
+    private Segment writeSegment(EntryCursor cursor, long sequence, long minSequence, boolean dropDeleted) throws IOException {
+        SegmentWriter writer = new SegmentWriter(new File(directory, Segment.getFileName(sequence)), manager.getIndexInterval());
+        try {
+            while (cursor.next()) {
+                if (cursor.isDeleted()) {
+                    if (!dropDeleted) writer.add(cursor.key(), TOMBSTONE);
+                } else {
+                    writer.add(cursor.key(), cursor.entryValue());
+                }
+            }
+            return Segment.open(writer.finish(minSequence), sequence);
+        } catch (IOException e) {
+            writer.abort();
+            throw e;
+        }
+    }
+
+    private static ByteBuffer copy(ByteBuffer b) {
+        ByteBuffer c = ByteBuffer.allocate(b.remaining());
+        c.put(b.duplicate());
+        c.flip();
+        return c;
+    }
+
+    /* ---------------------------------------------------------------
+     * Reads
+     * ---------------------------------------------------------------
+     */
+
+    private static List<EntryCursor> getCursors(State s, ByteBuffer start) {
+        List<EntryCursor> cursors = new ArrayList<EntryCursor>(s.segments.size() + 2);
+        cursors.add(new MapCursor(s.memtable.tailMap(start, true)));
+        if (s.flushing != null) cursors.add(new MapCursor(s.flushing.tailMap(start, true)));
+        for (Segment segment : s.segments) cursors.add(segment.cursor(start));
+        return cursors;
+    }
+
+    @Override
+    public ByteBuffer get(ByteBuffer key, StoreTransaction txh) throws StorageException {
+        State s = state;
+        ByteBuffer value = s.memtable.get(key);
+        if (value == null && s.flushing != null) value = s.flushing.get(key);
+        if (value != null) return value == TOMBSTONE ? null : value.duplicate();
+        for (Segment segment : s.segments) {
+            value = segment.get(key);
+            if (value != null) return value == TOMBSTONE ? null : value;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(ByteBuffer key, StoreTransaction txh) throws StorageException {
+        return get(key, txh) != null;
+    }
+
+    @Override
+    public List<KeyValueEntry> getSlice(ByteBuffer keyStart, ByteBuffer keyEnd, StoreTransaction txh) throws StorageException {
+        return getSlice(keyStart, keyEnd, Integer.MAX_VALUE, txh);
+    }
+
+    @Override
+    public List<KeyValueEntry> getSlice(ByteBuffer keyStart, ByteBuffer keyEnd, int limit, StoreTransaction txh) throws StorageException {
+        return getSlice(keyStart, keyEnd, new LimitedSelector(limit), txh);
+    }
+
+    @Override
+    public List<KeyValueEntry> getSlice(ByteBuffer keyStart, ByteBuffer keyEnd, KeySelector selector, StoreTransaction txh) throws StorageException {
+        MergeCursor cursor = new MergeCursor(getCursors(state, keyStart), keyEnd);
+        List<KeyValueEntry> result = new ArrayList<KeyValueEntry>();
+        while (cursor.next()) {
+            if (cursor.isDeleted()) continue;
+            if (selector.include(cursor.key().duplicate())) {
+                result.add(new KeyValueEntry(cursor.entryKey(), cursor.entryValue()));
+            }
+            if (selector.reachedLimit()) break;
+        }
+        return result;
+    }
+
+    @Override
+    public RecordIterator<ByteBuffer> getKeys(StoreTransaction txh) throws StorageException {
+        final MergeCursor cursor = new MergeCursor(getCursors(state, EMPTY), null);
+        return new RecordIterator<ByteBuffer>() {
+
+            private ByteBuffer next = nextKey();
+
+            private ByteBuffer nextKey() {
+                while (cursor.next()) {
+                    if (!cursor.isDeleted()) return cursor.entryKey();
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() throws StorageException {
+                return next != null;
+            }
+
+            @Override
+            public ByteBuffer next() throws StorageException {
+                if (next == null) throw new NoSuchElementException();
+                ByteBuffer current = next;
+                next = nextKey();
+                return current;
+            }
+
+            @Override
+            public void close() throws StorageException {
+                next = null;
+            }
+        };
+    }
+
+    @Override
+    public ByteBuffer[] getLocalKeyPartition() throws StorageException {
+        throw new UnsupportedOperationException();
+    }
+
+    /* ---------------------------------------------------------------
+     * Writes
+     * ---------------------------------------------------------------
+     */
+
+    @Override
+    public void insert(ByteBuffer key, ByteBuffer value, StoreTransaction txh) throws StorageException {
+        mutate(Arrays.asList(new KeyValueEntry(key, value)), null, txh);
+    }
+
+    @Override
+    public void delete(ByteBuffer key, StoreTransaction txh) throws StorageException {
+        mutate(null, Arrays.asList(key), txh);
+    }
+
+    @Override
+    public void mutate(List<KeyValueEntry> additions, List<ByteBuffer> deletions, StoreTransaction txh) throws StorageException {
+        synchronized (writeLock) {
+            Preconditions.checkState(!closed, "Store has been closed: %s", name);
+            checkBackgroundFailure();
+            if (memtableBytes >= manager.getMemtableSize()) rotate();
+            wal.append(writeRecords(additions, deletions));
+            ConcurrentNavigableMap<ByteBuffer, ByteBuffer> memtable = state.memtable;
+            if (deletions != null) {
+                for (ByteBuffer key : deletions) {
+                    memtable.put(copy(key), TOMBSTONE);
+                    memtableBytes += key.remaining() + ENTRY_OVERHEAD;
+                }
+            }
+            if (additions != null) {
+                for (KeyValueEntry entry : additions) {
+                    memtable.put(copy(entry.getKey()), copy(entry.getValue()));
+                    memtableBytes += entry.getKey().remaining() + entry.getValue().remaining() + ENTRY_OVERHEAD;
+                }
+            }
+        }
+    }
+
+    private void checkBackgroundFailure() throws StorageException {
+        if (backgroundFailure != null) throw backgroundFailure;
+    }
+
+    /**
+     * Swaps the memtable for an empty one and schedules it to be written to a segment. Waits for the previous
+     * memtable to be written first. Must hold the write lock.
+     */
+    private void rotate() throws StorageException {
+        try {
+            while (state.flushing != null) {
+                writeLock.wait();
+                checkBackgroundFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TemporaryStorageException("Interrupted while waiting for memtable to be written", e);
+        }
+        final long sequence = nextSequence++;
+        final long lastRecord = wal.roll();
+        final State s = state;
+        state = new State(new ConcurrentSkipListMap<ByteBuffer, ByteBuffer>(BYTE_ORDER), s.memtable, s.segments);
+        memtableBytes = 0;
+        manager.getMaintenanceExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                flush(s.memtable, sequence, lastRecord);
+            }
+        });
+    }
+
+    /**
+     * Writes the given memtable to a new segment and marks its records as applied in the log, then compacts segments
+     * if necessary. Runs on the maintenance thread of the manager.
+     *
+     * @param sequence sequence number of the new segment
+     * @param lastRecord sequence number of the last log record of the memtable
+     */
+    private void flush(ConcurrentNavigableMap<ByteBuffer, ByteBuffer> memtable, long sequence, long lastRecord) {
+        try {
+            //Only the maintenance thread modifies the segments, hence they cannot change until the new state is set
+            Segment segment = writeSegment(new MapCursor(memtable), sequence, sequence, state.segments.isEmpty());
+            synchronized (writeLock) {
+                State s = state;
+                List<Segment> segments = new ArrayList<Segment>(s.segments.size() + 1);
+                segments.add(segment);
+                segments.addAll(s.segments);
+                state = new State(s.memtable, null, Collections.unmodifiableList(segments));
+                writeLock.notifyAll();
+            }
+            wal.applied(lastRecord);
+            compact();
+        } catch (Throwable e) {
+            log.error("Could not write memtable of store " + name + " to disk", e);
+            synchronized (writeLock) {
+                backgroundFailure = new PermanentStorageException("Writing memtable of store " + name + " failed", e);
+                writeLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Merges the newest segments into one if the number of segments reached the compaction threshold.
+     * The merged segments are the longest run of newest segments whose combined size does not exceed the
+     * maximum segment size. Deletion markers are dropped only when all segments are merged.
+     */
+    private void compact() throws IOException {
+        List<Segment> segments = state.segments;
+        if (segments.size() < manager.getCompactionThreshold()) return;
+        int count = 0;
+        long size = 0;
+        while (count < segments.size() && size + segments.get(count).getSize() <= manager.getMaxSegmentSize()) {
+            size += segments.get(count).getSize();
+            count++;
+        }
+        if (count < 2) return;
+
+        List<Segment> merged = segments.subList(0, count);
+        List<EntryCursor> cursors = new ArrayList<EntryCursor>(count);
+        for (Segment segment : merged) cursors.add(segment.cursor(EMPTY));
+        long sequence = merged.get(0).getSequence();
+        Segment compacted = writeSegment(new MergeCursor(cursors, null), sequence,
+                merged.get(count - 1).getMinSequence(), count == segments.size());
+        synchronized (writeLock) {
+            State s = state;
+            List<Segment> updated = new ArrayList<Segment>(s.segments.size() - count + 1);
+            updated.add(compacted);
+            updated.addAll(s.segments.subList(count, s.segments.size()));
+            state = new State(s.memtable, s.flushing, Collections.unmodifiableList(updated));
+        }
+        //Readers may still be using the merged segments, their mappings remain valid after deletion
+        for (Segment segment : merged) {
+            if (segment.getSequence() != sequence) segment.getFile().delete();
+        }
+        log.debug("Compacted {} segments of store {} into {} bytes", new Object[]{count, name, compacted.getSize()});
+    }
+
+    /**
+     * Forces all logged mutations to disk
+     */
+    void sync() throws StorageException {
+        synchronized (writeLock) {
+            if (closed) return;
+            wal.sync(wal.getLastSequenceNumber());
+        }
+    }
+
+    /* ---------------------------------------------------------------
+     * Locking
+     * ---------------------------------------------------------------
+     */
+
+    /**
+     * Acquires an exclusive lock on the given key for the given transaction, which must have been started by
+     * {@link LSMStoreManager}, and verifies that the key currently holds the expected value.
+     * The lock is held until the transaction commits or aborts.
+     *
+     * @throws TemporaryLockingException if another transaction holds the lock
+     * @throws PermanentLockingException if the current value does not match the expected value
+     */
+    @Override
+    public void acquireLock(ByteBuffer key, ByteBuffer expectedValue, StoreTransaction txh) throws StorageException {
+        Preconditions.checkArgument(txh instanceof LSMTransaction, "Unexpected transaction handle: %s", txh);
+        LSMTransaction tx = (LSMTransaction) txh;
+        ByteBuffer lock = copy(key);
+        LSMTransaction holder = locks.putIfAbsent(lock, tx);
+        if (holder == null) {
+            tx.registerLock(this, lock);
+        } else if (holder != tx) {
+            throw new TemporaryLockingException("Lock on key is held by another transaction");
+        }
+        ByteBuffer current = get(key, txh);
+        if (expectedValue == null ? current != null : !expectedValue.equals(current)) {
+            throw new PermanentLockingException("Expected value mismatch on locked key");
+        }
+    }
+
+    void releaseLock(ByteBuffer lock, LSMTransaction tx) {
+        locks.remove(lock, tx);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Waits for background maintenance to complete and closes the log. The memtable is recovered from the log
+     * when the store is opened again.
+     */
+    @Override
+    public void close() throws StorageException {
+        synchronized (writeLock) {
+            if (closed) return;
+            closed = true;
+        }
+        try {
+            manager.awaitMaintenance();
+            synchronized (writeLock) {
+                wal.close();
+            }
+        } finally {
+            locks.clear();
+            manager.removeDatabase(this);
+        }
+    }
+
+    private static class State {
+
+        private final ConcurrentNavigableMap<ByteBuffer, ByteBuffer> memtable;
+        //Memtable which is being written to a segment or null
+        private final ConcurrentNavigableMap<ByteBuffer, ByteBuffer> flushing;
+        //Newest first
+        private final List<Segment> segments;
+
+        private State(ConcurrentNavigableMap<ByteBuffer, ByteBuffer> memtable,
+                      ConcurrentNavigableMap<ByteBuffer, ByteBuffer> flushing, List<Segment> segments) {
+            this.memtable = memtable;
+            this.flushing = flushing;
+            this.segments = segments;
+        }
+    }
+
+    /* ---------------------------------------------------------------
+     * Cursors
+     * ---------------------------------------------------------------
+     */
+
+    /**
+     * Iterates over entries in key order.
+     */
+    interface EntryCursor {
+
+        /**
+         * Moves to the next entry
+         *
+         * @return false if there are no more entries
+         */
+        public boolean next();
+
+        /**
+         * Key of the current entry. The returned buffer is reused by the cursor and must not be modified.
+         */
+        public ByteBuffer key();
+
+        /**
+         * Whether the current entry is a deletion marker
+         */
+        public boolean isDeleted();
+
+        /**
+         * Key of the current entry as a buffer which may be retained by the caller
+         */
+        public ByteBuffer entryKey();
+
+        /**
+         * Value of the current entry as a buffer which may be retained by the caller or {@link #TOMBSTONE}
+         */
+        public ByteBuffer entryValue();
+
+    }
+
+    private static class MapCursor implements EntryCursor {
+
+        private final Iterator<Map.Entry<ByteBuffer, ByteBuffer>> iterator;
+        private Map.Entry<ByteBuffer, ByteBuffer> current = null;
+
+        private MapCursor(NavigableMap<ByteBuffer, ByteBuffer> map) {
+            iterator = map.entrySet().iterator();
+        }
+
+        @Override
+        public boolean next() {
+            if (!iterator.hasNext()) return false;
+            current = iterator.next();
+            return true;
+        }
+
+        @Override
+        public ByteBuffer key() {
+            return current.getKey();
+        }
+
+        @Override
+        public boolean isDeleted() {
+            return current.getValue() == TOMBSTONE;
+        }
+
+        @Override
+        public ByteBuffer entryKey() {
+            return current.getKey().duplicate();
+        }
+
+        @Override
+        public ByteBuffer entryValue() {
+            ByteBuffer value = current.getValue();
+            return value == TOMBSTONE ? TOMBSTONE : value.duplicate();
+        }
+    }
+
+    /**
+     * Merges the given cursors, which are ordered from newest to oldest, such that each key is returned once
+     * with the entry of the newest cursor containing it. Stops at the given exclusive end key unless it is null.
+     */
+    private static class MergeCursor implements EntryCursor {
+
+        private final EntryCursor[] cursors;
+        private final boolean[] valid;
+        private final boolean[] consumed;
+        private final ByteBuffer end;
+        private int current = -1;
+        private boolean exhausted = false;
+
+        private MergeCursor(List<EntryCursor> cursors, ByteBuffer end) {
+            this.cursors = cursors.toArray(new EntryCursor[cursors.size()]);
+            this.valid = new boolean[this.cursors.length];
+            this.consumed = new boolean[this.cursors.length];
+            Arrays.fill(consumed, true);
+            this.end = end;
+        }
+
+        @Override
+        public boolean next() {
+            if (exhausted) return false;
+            current = -1;
+            for (int i = 0; i < cursors.length; i++) {
+                if (consumed[i]) {
+                    valid[i] = cursors[i].next();
+                    consumed[i] = false;
+                }
+                if (valid[i] && (current < 0 || ByteBufferUtil.compare(cursors[i].key(), cursors[current].key()) < 0))
+                    current = i;
+            }
+            if (current < 0 || (end != null && ByteBufferUtil.compare(cursors[current].key(), end) >= 0)) {
+                exhausted = true;
+                current = -1;
+                return false;
+            }
+            ByteBuffer key = cursors[current].key();
+            for (int i = 0; i < cursors.length; i++) {
+                if (valid[i] && ByteBufferUtil.compare(cursors[i].key(), key) == 0) consumed[i] = true;
+            }
+            return true;
+        }
+
+        @Override
+        public ByteBuffer key() {
+            return cursors[current].key();
+        }
+
+        @Override
+        public boolean isDeleted() {
+            return cursors[current].isDeleted();
+        }
+
+        @Override
+        public ByteBuffer entryKey() {
+            return cursors[current].entryKey();
+        }
+
+        @Override
+        public ByteBuffer entryValue() {
+            return cursors[current].entryValue();
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+package com.thinkaurelius.titan.diskstorage.lsm;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.thinkaurelius.titan.diskstorage.PermanentStorageException;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.TemporaryStorageException;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.ConsistencyLevel;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreFeatures;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreTransaction;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.KeyValueStoreManager;
+import com.thinkaurelius.titan.util.system.IOUtils;
+import org.apache.commons.configuration.Configuration;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.thinkaurelius.titan.graphdb.configuration.GraphDatabaseConfiguration.STORAGE_DIRECTORY_KEY;
+
+/**
+ * Storage manager for local, log-structured {@link LSMKeyValueStore}s. Each database is kept in a subdirectory
+ * of the storage directory. Memtables are written to segments and segments are compacted by a single background
+ * thread shared by all databases of this manager.
+ *
+ * Mutations are visible immediately and are neither isolated between transactions nor rolled back on abort.
+ * Hence, there must be at most one Titan instance interacting with a storage directory.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class LSMStoreManager implements KeyValueStoreManager {
+
+    /**
+     * Size of the memtable in bytes after which it is written to a segment
+     */
+    public static final String MEMTABLE_SIZE_KEY = "memtable-size";
+    public static final long MEMTABLE_SIZE_DEFAULT = 64L * 1024 * 1024;
+
+    /**
+     * Number of segments at which the newest segments are merged
+     */
+    public static final String COMPACTION_THRESHOLD_KEY = "compaction-threshold";
+    public static final int COMPACTION_THRESHOLD_DEFAULT = 8;
+
+    /**
+     * Maximum size in bytes of a segment produced by compaction
+     */
+    public static final String MAX_SEGMENT_SIZE_KEY = "max-segment-size";
+    public static final long MAX_SEGMENT_SIZE_DEFAULT = 1024L * 1024 * 1024;
+
+    /**
+     * Number of bytes of records in a segment per entry in its sparse index
+     */
+    public static final String INDEX_INTERVAL_KEY = "index-interval";
+    public static final int INDEX_INTERVAL_DEFAULT = 4096;
+
+    /**
+     * Whether committing a transaction forces the logs to disk
+     */
+    public static final String SYNC_ON_COMMIT_KEY = "sync-on-commit";
+    public static final boolean SYNC_ON_COMMIT_DEFAULT = true;
+
+    private final Map<String, LSMKeyValueStore> stores;
+    private final File directory;
+    private final StoreFeatures features;
+
+    private final long memtableSize;
+    private final int compactionThreshold;
+    private final long maxSegmentSize;
+    private final int indexInterval;
+    private final boolean syncOnCommit;
+
+    private final ExecutorService maintenance;
+
+    public LSMStoreManager(Configuration configuration) throws StorageException {
+        stores = new HashMap<String, LSMKeyValueStore>();
+        String storageDir = configuration.getString(STORAGE_DIRECTORY_KEY);
+        Preconditions.checkArgument(storageDir != null, "Need to specify storage directory");
+        directory = new File(storageDir);
+        Preconditions.checkArgument(directory.isDirectory() && directory.canWrite(), "Cannot open or write to directory: " + directory);
+
+        memtableSize = configuration.getLong(MEMTABLE_SIZE_KEY, MEMTABLE_SIZE_DEFAULT);
+        compactionThreshold = configuration.getInt(COMPACTION_THRESHOLD_KEY, COMPACTION_THRESHOLD_DEFAULT);
+        maxSegmentSize = configuration.getLong(MAX_SEGMENT_SIZE_KEY, MAX_SEGMENT_SIZE_DEFAULT);
+        indexInterval = configuration.getInt(INDEX_INTERVAL_KEY, INDEX_INTERVAL_DEFAULT);
+        syncOnCommit = configuration.getBoolean(SYNC_ON_COMMIT_KEY, SYNC_ON_COMMIT_DEFAULT);
+        Preconditions.checkArgument(memtableSize > 0, "Invalid memtable size: %s", memtableSize);
+        Preconditions.checkArgument(compactionThreshold >= 2, "Compaction threshold must be at least 2: %s", compactionThreshold);
+        Preconditions.checkArgument(maxSegmentSize > 0 && maxSegmentSize < Integer.MAX_VALUE,
+                "Segments must be smaller than 2GB: %s", maxSegmentSize);
+        Preconditions.checkArgument(indexInterval > 0, "Invalid index interval: %s", indexInterval);
+
+        maintenance = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("titan-lsm-maintenance-%d").build());
+
+        features = new StoreFeatures();
+        //Transactions are not isolated, but all operations are immediately consistent which suffices for id allocation
+        features.supportsScan = true; features.supportsBatchMutation = true; features.supportsMultiQuery = false; features.supportsTransactions = false;
+        features.supportsConsistentKeyOperations = true; features.supportsLocking = true; features.isKeyOrdered = true;
+        features.isDistributed = false; features.hasLocalKeyPartition = false;
+    }
+
+    @Override
+    public StoreFeatures getFeatures() {
+        return features;
+    }
+
+    @Override
+    public StoreTransaction beginTransaction(ConsistencyLevel level) throws StorageException {
+        return new LSMTransaction(this, level);
+    }
+
+    @Override
+    public StoreTransaction beginReadOnlyTransaction(ConsistencyLevel level) throws StorageException {
+        //Reads never block
+        return beginTransaction(level);
+    }
+
+    @Override
+    public synchronized LSMKeyValueStore openDatabase(String name) throws StorageException {
+        Preconditions.checkNotNull(name);
+        LSMKeyValueStore store = stores.get(name);
+        if (store == null) {
+            store = new LSMKeyValueStore(name, new File(directory, name), this);
+            stores.put(name, store);
+        }
+        return store;
+    }
+
+    synchronized void removeDatabase(LSMKeyValueStore store) {
+        if (!stores.containsKey(store.getName())) {
+            throw new IllegalArgumentException("Tried to remove an unkown database from the storage manager");
+        }
+        stores.remove(store.getName());
+    }
+
+    /**
+     * Forces the logs of all open databases to disk
+     */
+    synchronized void sync() throws StorageException {
+        for (LSMKeyValueStore store : stores.values()) store.sync();
+    }
+
+    /**
+     * Waits until all previously scheduled background maintenance has completed
+     */
+    void awaitMaintenance() throws StorageException {
+        try {
+            maintenance.submit(new Runnable() {
+                @Override
+                public void run() {
+                    //Tasks are executed in order, hence all previous tasks completed once this one runs
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TemporaryStorageException("Interrupted while waiting for background maintenance", e);
+        } catch (ExecutionException e) {
+            throw new PermanentStorageException(e);
+        }
+    }
+
+    Executor getMaintenanceExecutor() {
+        return maintenance;
+    }
+
+    long getMemtableSize() {
+        return memtableSize;
+    }
+
+    int getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+    long getMaxSegmentSize() {
+        return maxSegmentSize;
+    }
+
+    int getIndexInterval() {
+        return indexInterval;
+    }
+
+    boolean isSyncOnCommit() {
+        return syncOnCommit;
+    }
+
+    @Override
+    public synchronized void close() throws StorageException {
+        if (!stores.isEmpty()) throw new IllegalStateException("Cannot shutdown manager since some databases are still open");
+        maintenance.shutdown();
+    }
+
+    @Override
+    public synchronized void clearStorage() throws StorageException {
+        if (!stores.isEmpty()) throw new IllegalStateException("Cannot delete store, since database is open: " + stores.keySet().toString());
+        close();
+        IOUtils.deleteFromDirectory(directory);
+    }
+
+    @Override
+    public String toString() {
+        return "lsm[" + directory + "]";
+    }
+
+}
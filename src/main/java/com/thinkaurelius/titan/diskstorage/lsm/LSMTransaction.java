@@ -0,0 +1,62 @@
+package com.thinkaurelius.titan.diskstorage.lsm;
+
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.common.AbstractStoreTransaction;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.ConsistencyLevel;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transaction handle for {@link LSMStoreManager}. Mutations are applied immediately, the transaction keeps track of
+ * the locks it holds so that they can be released on commit or abort. Committing forces the logs to disk
+ * unless this has been disabled in the configuration.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class LSMTransaction extends AbstractStoreTransaction {
+
+    private final LSMStoreManager manager;
+    private List<ByteBuffer> heldLocks = null;
+    private List<LSMKeyValueStore> lockStores = null;
+
+    public LSMTransaction(LSMStoreManager manager, ConsistencyLevel level) {
+        super(level);
+        this.manager = manager;
+    }
+
+    synchronized void registerLock(LSMKeyValueStore store, ByteBuffer lock) {
+        if (heldLocks == null) {
+            heldLocks = new ArrayList<ByteBuffer>();
+            lockStores = new ArrayList<LSMKeyValueStore>();
+        }
+        heldLocks.add(lock);
+        lockStores.add(store);
+    }
+
+    private synchronized void releaseLocks() {
+        if (heldLocks == null) return;
+        for (int i = 0; i < heldLocks.size(); i++) {
+            lockStores.get(i).releaseLock(heldLocks.get(i), this);
+        }
+        heldLocks = null;
+        lockStores = null;
+    }
+
+    @Override
+    public void commit() throws StorageException {
+        try {
+            if (manager.isSyncOnCommit()) manager.sync();
+        } finally {
+            releaseLocks();
+        }
+    }
+
+    @Override
+    public void abort() throws StorageException {
+        releaseLocks();
+    }
+
+}
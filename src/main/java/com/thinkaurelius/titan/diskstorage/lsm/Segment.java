@@ -0,0 +1,223 @@
+package com.thinkaurelius.titan.diskstorage.lsm;
+
+import com.thinkaurelius.titan.diskstorage.util.ByteBufferUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Immutable sorted file of key-value records which is read through a {@link MappedByteBuffer}.
+ *
+ * The file consists of the records in key order, followed by a sparse index and a fixed size footer:
+ * <ul>
+ *     <li>record: [key length:int][value length:int, -1 for a deletion marker][key][value]</li>
+ *     <li>index entry: [key length:int][key][record offset:int] for the first record of each block</li>
+ *     <li>footer: [index offset:long][number of index entries:int][min sequence:long][magic:int]</li>
+ * </ul>
+ *
+ * The min sequence is the sequence number of the oldest segment that was merged into this one. On recovery, all
+ * segments with a sequence number in [min sequence, sequence) are superseded by this segment.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+class Segment {
+
+    static final int MAGIC = 0x544c534d;
+    static final int FOOTER_LENGTH = 8 + 4 + 8 + 4;
+    static final int RECORD_HEADER_LENGTH = 8;
+    static final int TOMBSTONE_LENGTH = -1;
+
+    static final String FILE_PREFIX = "seg-";
+    static final String FILE_SUFFIX = ".dat";
+
+    private final File file;
+    private final long sequence;
+    private final long minSequence;
+
+    //Read-only view of the records, the index and footer are excluded
+    private final ByteBuffer data;
+    private final ByteBuffer[] indexKeys;
+    private final int[] indexOffsets;
+
+    private Segment(File file, long sequence, long minSequence, ByteBuffer data, ByteBuffer[] indexKeys, int[] indexOffsets) {
+        this.file = file;
+        this.sequence = sequence;
+        this.minSequence = minSequence;
+        this.data = data;
+        this.indexKeys = indexKeys;
+        this.indexOffsets = indexOffsets;
+    }
+
+    static String getFileName(long sequence) {
+        return FILE_PREFIX + sequence + FILE_SUFFIX;
+    }
+
+    /**
+     * Returns the sequence number encoded in the given file name or -1 if it is not the name of a segment
+     */
+    static long parseSequence(String fileName) {
+        if (!fileName.startsWith(FILE_PREFIX) || !fileName.endsWith(FILE_SUFFIX)) return -1;
+        try {
+            return Long.parseLong(fileName.substring(FILE_PREFIX.length(), fileName.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static Segment open(File file, long sequence) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < FOOTER_LENGTH || size > Integer.MAX_VALUE)
+                throw new IOException("Invalid segment size " + size + ": " + file);
+            //The mapping remains valid after the channel is closed and the file is deleted
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            mapped.position((int) size - FOOTER_LENGTH);
+            long indexOffset = mapped.getLong();
+            int indexCount = mapped.getInt();
+            long minSequence = mapped.getLong();
+            if (mapped.getInt() != MAGIC) throw new IOException("Segment is corrupted: " + file);
+            if (indexOffset < 0 || indexOffset > size - FOOTER_LENGTH || indexCount < 0)
+                throw new IOException("Segment index is corrupted: " + file);
+
+            ByteBuffer[] indexKeys = new ByteBuffer[indexCount];
+            int[] indexOffsets = new int[indexCount];
+            mapped.position((int) indexOffset);
+            for (int i = 0; i < indexCount; i++) {
+                int keyLength = mapped.getInt();
+                indexKeys[i] = slice(mapped, mapped.position(), keyLength);
+                mapped.position(mapped.position() + keyLength);
+                indexOffsets[i] = mapped.getInt();
+            }
+            ByteBuffer data = slice(mapped, 0, (int) indexOffset);
+            return new Segment(file, sequence, minSequence, data, indexKeys, indexOffsets);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer b, int offset, int length) {
+        ByteBuffer view = b.duplicate();
+        view.limit(offset + length).position(offset);
+        return view.slice();
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    long getMinSequence() {
+        return minSequence;
+    }
+
+    long getSize() {
+        return file.length();
+    }
+
+    /**
+     * Offset of the block which would contain the given key
+     */
+    private int getBlockOffset(ByteBuffer key) {
+        int low = 0, high = indexKeys.length - 1, block = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (ByteBufferUtil.compare(indexKeys[mid], key) <= 0) {
+                block = mid;
+                low = mid + 1;
+            } else high = mid - 1;
+        }
+        return indexKeys.length == 0 ? data.limit() : indexOffsets[block];
+    }
+
+    /**
+     * Returns the value of the given key, {@link LSMKeyValueStore#TOMBSTONE} if the key has been deleted
+     * or null if this segment does not contain the key.
+     */
+    ByteBuffer get(ByteBuffer key) {
+        SegmentCursor cursor = cursor(key);
+        if (cursor.next() && ByteBufferUtil.compare(cursor.key(), key) == 0) {
+            return cursor.entryValue();
+        }
+        return null;
+    }
+
+    /**
+     * Returns a cursor positioned before the first record with a key greater or equal to the given key
+     */
+    SegmentCursor cursor(ByteBuffer start) {
+        SegmentCursor cursor = new SegmentCursor(getBlockOffset(start));
+        //Skip over the records in the block which precede the start key
+        while (cursor.peekKeyLessThan(start)) cursor.skip();
+        return cursor;
+    }
+
+    class SegmentCursor implements LSMKeyValueStore.EntryCursor {
+
+        private int offset;
+        private final ByteBuffer key = data.duplicate();
+        private int valueOffset;
+        private int valueLength;
+
+        private SegmentCursor(int offset) {
+            this.offset = offset;
+        }
+
+        private boolean peekKeyLessThan(ByteBuffer start) {
+            if (offset >= data.limit()) return false;
+            int keyLength = data.getInt(offset);
+            key.limit(offset + RECORD_HEADER_LENGTH + keyLength).position(offset + RECORD_HEADER_LENGTH);
+            return ByteBufferUtil.compare(key, start) < 0;
+        }
+
+        private void skip() {
+            int keyLength = data.getInt(offset);
+            int valueLength = data.getInt(offset + 4);
+            offset += RECORD_HEADER_LENGTH + keyLength + Math.max(valueLength, 0);
+        }
+
+        @Override
+        public boolean next() {
+            if (offset >= data.limit()) return false;
+            int keyLength = data.getInt(offset);
+            valueLength = data.getInt(offset + 4);
+            int keyOffset = offset + RECORD_HEADER_LENGTH;
+            key.limit(keyOffset + keyLength).position(keyOffset);
+            valueOffset = keyOffset + keyLength;
+            offset = valueOffset + Math.max(valueLength, 0);
+            return true;
+        }
+
+        @Override
+        public ByteBuffer key() {
+            return key;
+        }
+
+        @Override
+        public boolean isDeleted() {
+            return valueLength == TOMBSTONE_LENGTH;
+        }
+
+        @Override
+        public ByteBuffer entryKey() {
+            return slice(data, key.position(), key.remaining());
+        }
+
+        @Override
+        public ByteBuffer entryValue() {
+            if (valueLength == TOMBSTONE_LENGTH) return LSMKeyValueStore.TOMBSTONE;
+            return slice(data, valueOffset, valueLength);
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.thinkaurelius.titan.diskstorage.lsm;
+
+import com.google.common.base.Preconditions;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a {@link Segment} file from records which are added in key order. The segment is written to a temporary
+ * file which is synced and renamed to its final name by {@link #finish(long)}, so that a segment file is either
+ * complete or absent.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+class SegmentWriter {
+
+    static final String TEMP_SUFFIX = ".tmp";
+
+    private final File target;
+    private final File temp;
+    private final FileOutputStream fileOut;
+    private final DataOutputStream out;
+    private final int indexInterval;
+
+    private final List<byte[]> indexKeys = new ArrayList<byte[]>();
+    private final List<Integer> indexOffsets = new ArrayList<Integer>();
+    private long offset = 0;
+    private long lastIndexedOffset = -1;
+    private boolean finished = false;
+
+    /**
+     * @param target file of the segment
+     * @param indexInterval number of bytes after which a new block starts and hence a key is added to the index
+     */
+    SegmentWriter(File target, int indexInterval) throws IOException {
+        Preconditions.checkArgument(indexInterval > 0);
+        this.target = target;
+        this.temp = new File(target.getParentFile(), target.getName() + TEMP_SUFFIX);
+        this.indexInterval = indexInterval;
+        fileOut = new FileOutputStream(temp);
+        out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16));
+    }
+
+    /**
+     * Adds a record. Keys must be added in strictly increasing order.
+     *
+     * @param key
+     * @param value value of the record or {@link LSMKeyValueStore#TOMBSTONE} for a deletion marker
+     */
+    void add(ByteBuffer key, ByteBuffer value) throws IOException {
+        Preconditions.checkState(!finished);
+        int recordLength = Segment.RECORD_HEADER_LENGTH + key.remaining();
+        if (value != LSMKeyValueStore.TOMBSTONE) recordLength += value.remaining();
+        if (offset + recordLength > Integer.MAX_VALUE - Segment.FOOTER_LENGTH)
+            throw new IOException("Segment exceeds maximum size: " + target);
+
+        if (lastIndexedOffset < 0 || offset - lastIndexedOffset >= indexInterval) {
+            byte[] indexKey = new byte[key.remaining()];
+            key.duplicate().get(indexKey);
+            indexKeys.add(indexKey);
+            indexOffsets.add((int) offset);
+            lastIndexedOffset = offset;
+        }
+
+        out.writeInt(key.remaining());
+        if (value == LSMKeyValueStore.TOMBSTONE) {
+            out.writeInt(Segment.TOMBSTONE_LENGTH);
+            write(key);
+        } else {
+            out.writeInt(value.remaining());
+            write(key);
+            write(value);
+        }
+        offset += recordLength;
+    }
+
+    private void write(ByteBuffer b) throws IOException {
+        if (b.hasArray()) {
+            out.write(b.array(), b.arrayOffset() + b.position(), b.remaining());
+        } else {
+            byte[] bytes = new byte[b.remaining()];
+            b.duplicate().get(bytes);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Size of the records written so far
+     */
+    long getDataSize() {
+        return offset;
+    }
+
+    /**
+     * Writes the index and footer, syncs the file to disk and moves it to its final location
+     *
+     * @param minSequence sequence number of the oldest segment superseded by this one
+     * @return the completed segment file
+     */
+    File finish(long minSequence) throws IOException {
+        Preconditions.checkState(!finished);
+        finished = true;
+        long indexOffset = offset;
+        for (int i = 0; i < indexKeys.size(); i++) {
+            out.writeInt(indexKeys.get(i).length);
+            out.write(indexKeys.get(i));
+            out.writeInt(indexOffsets.get(i));
+        }
+        out.writeLong(indexOffset);
+        out.writeInt(indexKeys.size());
+        out.writeLong(minSequence);
+        out.writeInt(Segment.MAGIC);
+        out.flush();
+        fileOut.getFD().sync();
+        out.close();
+        //Renaming atomically replaces an existing segment on POSIX file systems, others need to delete it first
+        if (!temp.renameTo(target) && !(target.delete() && temp.renameTo(target)))
+            throw new IOException("Could not rename segment file: " + temp);
+        return target;
+    }
+
+    /**
+     * Discards an unfinished segment
+     */
+    void abort() {
+        if (finished) return;
+        finished = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            //Ignore, the file is deleted anyway
+        }
+        temp.delete();
+    }
+
+}
@@ -64,6 +64,24 @@ public class  ByteBufferUtil {
         return res;
     }
 	
+	/**
+	 * Compares the remaining bytes of two {@link java.nio.ByteBuffer}s lexicographically, treating bytes as unsigned.
+	 * This is the same order as {@link #isSmallerThan(java.nio.ByteBuffer, java.nio.ByteBuffer)}. The positions
+	 * of the buffers are not modified.
+	 *
+	 * @param a First ByteBuffer
+	 * @param b Second ByteBuffer
+	 * @return a negative integer, zero, or a positive integer as the first ByteBuffer is smaller than, equal to, or bigger than the second
+	 */
+	public static final int compare(ByteBuffer a, ByteBuffer b) {
+		int length = Math.min(a.remaining(), b.remaining());
+		for (int i=0;i<length;i++) {
+			int ca = a.get(a.position()+i) & 0xFF, cb = b.get(b.position()+i) & 0xFF;
+			if (ca!=cb) return ca-cb;
+		}
+		return a.remaining()-b.remaining();
+	}
+
 	/**
 	 * Compares two {@link java.nio.ByteBuffer}s and checks whether the first ByteBuffer is smaller than the second.
 	 * 
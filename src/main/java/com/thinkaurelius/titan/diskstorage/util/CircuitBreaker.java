@@ -0,0 +1,85 @@
+package com.thinkaurelius.titan.diskstorage.util;
+
+import com.google.common.base.Preconditions;
+import com.thinkaurelius.titan.diskstorage.PermanentStorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fails storage operations fast while the storage backend is unhealthy. After the given number of consecutive
+ * temporary failures the circuit opens and all operations are rejected until the reset time has passed.
+ * Then a single trial operation is let through: if it succeeds the circuit closes, otherwise it stays open
+ * for another reset period.
+ *
+ * Rejected operations fail with a {@link PermanentStorageException} so that they are not retried.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class CircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private static final long CLOSED = 0;
+
+    private final String name;
+    private final int failureThreshold;
+    private final long resetTime;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
+    private final AtomicLong openUntil = new AtomicLong(CLOSED);
+
+    /**
+     * @param name name of the guarded store used in messages
+     * @param failureThreshold number of consecutive failures after which the circuit opens
+     * @param resetTime time in milliseconds after which a trial operation is let through an open circuit
+     */
+    public CircuitBreaker(String name, int failureThreshold, long resetTime) {
+        Preconditions.checkArgument(failureThreshold>0,"Failure threshold must be positive");
+        Preconditions.checkArgument(resetTime>0,"Reset time must be positive");
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.resetTime = resetTime;
+    }
+
+    /**
+     * Must be called before each operation.
+     *
+     * @throws PermanentStorageException if the circuit is open
+     */
+    public void before() throws PermanentStorageException {
+        long until = openUntil.get();
+        if (until==CLOSED) return;
+        long now = System.currentTimeMillis();
+        //Only the first caller after the reset time gets through as trial operation
+        if (now<until || !openUntil.compareAndSet(until,now+resetTime))
+            throw new PermanentStorageException("Failing fast since storage backend is unavailable: " + name);
+    }
+
+    /**
+     * Records the successful completion of an operation
+     */
+    public void success() {
+        consecutiveFailures.set(0);
+        if (openUntil.getAndSet(CLOSED)!=CLOSED) log.info("Storage backend is available again: {}",name);
+    }
+
+    /**
+     * Records a temporary failure of an operation
+     */
+    public void failure() {
+        if (consecutiveFailures.incrementAndGet()>=failureThreshold) {
+            if (openUntil.getAndSet(System.currentTimeMillis()+resetTime)==CLOSED)
+                log.warn("Storage backend failed {} consecutive times, failing fast for {} ms: {}",
+                        new Object[]{failureThreshold,resetTime,name});
+        }
+    }
+
+    public boolean isOpen() {
+        return openUntil.get()!=CLOSED;
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.thinkaurelius.titan.diskstorage.util;
+
+import com.google.common.base.Preconditions;
+import com.thinkaurelius.titan.graphdb.configuration.GraphDatabaseConfiguration;
+import org.apache.commons.configuration.Configuration;
+
+import java.util.Random;
+
+/**
+ * Doubles the wait time with every failed attempt, starting from a base wait time up to a maximum.
+ * The actual wait time is drawn uniformly from the upper half of the current backoff interval, so that
+ * threads which failed at the same time do not retry in lockstep.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class ExponentialBackoffRetryPolicy implements RetryPolicy {
+
+    private final long baseWaitTime;
+    private final long maxWaitTime;
+    private final Random random = new Random();
+
+    /**
+     * @param baseWaitTime wait time in milliseconds after the first failure
+     * @param maxWaitTime maximum wait time in milliseconds
+     */
+    public ExponentialBackoffRetryPolicy(long baseWaitTime, long maxWaitTime) {
+        Preconditions.checkArgument(baseWaitTime>0,"Base wait time must be positive");
+        Preconditions.checkArgument(maxWaitTime>=baseWaitTime,"Maximum wait time must be at least the base wait time");
+        this.baseWaitTime = baseWaitTime;
+        this.maxWaitTime = maxWaitTime;
+    }
+
+    public ExponentialBackoffRetryPolicy(Configuration storageConfig) {
+        this(storageConfig.getInt(GraphDatabaseConfiguration.STORAGE_ATTEMPT_WAITTIME_KEY,
+                GraphDatabaseConfiguration.STORAGE_ATTEMPT_WAITTIME_DEFAULT),
+             storageConfig.getLong(GraphDatabaseConfiguration.STORAGE_ATTEMPT_MAX_WAITTIME_KEY,
+                GraphDatabaseConfiguration.STORAGE_ATTEMPT_MAX_WAITTIME_DEFAULT));
+    }
+
+    @Override
+    public long getWaitTime(int failures) {
+        Preconditions.checkArgument(failures>0);
+        long backoff = baseWaitTime;
+        for (int i=1;i<failures && backoff<maxWaitTime;i++) backoff*=2;
+        backoff = Math.min(backoff,maxWaitTime);
+        long half = backoff/2;
+        synchronized (random) {
+            return backoff-half + (long)(random.nextDouble()*(half+1));
+        }
+    }
+
+}
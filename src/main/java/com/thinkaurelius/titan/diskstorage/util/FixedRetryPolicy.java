@@ -0,0 +1,32 @@
+package com.thinkaurelius.titan.diskstorage.util;
+
+import com.google.common.base.Preconditions;
+import com.thinkaurelius.titan.graphdb.configuration.GraphDatabaseConfiguration;
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Waits the same amount of time before each retry.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class FixedRetryPolicy implements RetryPolicy {
+
+    private final long waitTime;
+
+    public FixedRetryPolicy(long waitTime) {
+        Preconditions.checkArgument(waitTime>=0,"Wait time must be non-negative");
+        this.waitTime = waitTime;
+    }
+
+    public FixedRetryPolicy(Configuration storageConfig) {
+        this(storageConfig.getInt(GraphDatabaseConfiguration.STORAGE_ATTEMPT_WAITTIME_KEY,
+                GraphDatabaseConfiguration.STORAGE_ATTEMPT_WAITTIME_DEFAULT));
+    }
+
+    @Override
+    public long getWaitTime(int failures) {
+        return waitTime;
+    }
+
+}
@@ -0,0 +1,352 @@
+package com.thinkaurelius.titan.diskstorage.util;
+
+import com.google.common.base.Preconditions;
+import com.thinkaurelius.titan.diskstorage.PermanentStorageException;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Local append-only log of opaque records which is used as a write-ahead log.
+ *
+ * The log is split into segment files whose names share a common prefix. Each record is checksummed and identified
+ * by a sequence number which is assigned in the order the records are appended. Appended records are durable once
+ * {@link #sync(long)} has returned for their sequence number. Concurrent calls to {@link #sync(long)} are batched
+ * into a single fsync. Segments are deleted once all of their records have been marked as {@link #applied(long)}.
+ *
+ * On startup, the records left over by a previous instance must be read via {@link #replay(RecordHandler)}
+ * before new records can be appended. A record which was only partially written at the end of a segment
+ * is discarded.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class RecordLog {
+
+    private static final Logger log = LoggerFactory.getLogger(RecordLog.class);
+
+    private static final int RECORD_HEADER_LENGTH = 4 + 8;
+
+    private final File directory;
+    private final String prefix;
+    private final String suffix;
+    private final long segmentSize;
+
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+
+    private final Deque<Segment> closedSegments = new ArrayDeque<Segment>();
+    private long nextSegmentIndex = 0;
+    private Segment active = null;
+    private FileChannel channel = null;
+    private long lastSeq = 0;
+    private long syncedSeq = 0;
+    private long appliedSeq = 0;
+    private boolean isOpen = true;
+
+    /**
+     * @param directory Directory which holds the segments of the log
+     * @param prefix Prefix of the file names of the segments, which must not be used by any other files in the directory
+     * @param suffix Suffix of the file names of the segments
+     * @param segmentSize Size in bytes after which a new segment is started
+     */
+    public RecordLog(File directory, String prefix, String suffix, long segmentSize) {
+        Preconditions.checkNotNull(directory);
+        Preconditions.checkArgument(prefix!=null && !prefix.isEmpty(),"Need to specify a segment prefix");
+        Preconditions.checkNotNull(suffix);
+        Preconditions.checkArgument(segmentSize>0,"Segment size must be positive");
+        if (!directory.exists()) directory.mkdirs();
+        Preconditions.checkArgument(directory.isDirectory(),"Not a directory: %s",directory);
+        this.directory = directory;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.segmentSize = segmentSize;
+    }
+
+    public interface RecordHandler {
+
+        public void handle(long seq, ByteBuffer record) throws StorageException;
+
+    }
+
+    /**
+     * Passes all records left in the log by a previous instance to the given handler in the order they were
+     * appended and opens the log for appending.
+     *
+     * @param handler
+     * @throws StorageException
+     */
+    public void replay(RecordHandler handler) throws StorageException {
+        synchronized (writeLock) {
+            Preconditions.checkState(active==null && isOpen,"Log has already been opened");
+            List<File> files = getSegmentFiles();
+            for (File file : files) {
+                nextSegmentIndex = Math.max(nextSegmentIndex,getSegmentIndex(file)+1);
+                long records = replay(file,handler);
+                if (records>0) log.info("Replayed {} records from log segment {}",records,file);
+                synchronized (closedSegments) {
+                    closedSegments.add(new Segment(file,lastSeq));
+                }
+            }
+            syncedSeq = lastSeq;
+            openSegment();
+        }
+        deleteAppliedSegments();
+    }
+
+    private long replay(File file, RecordHandler handler) throws StorageException {
+        long records = 0;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                while (true) {
+                    int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    byte[] payload;
+                    try {
+                        long checksum = in.readLong();
+                        if (length<0) throw new IOException("Invalid record length: " + length);
+                        payload = new byte[length];
+                        in.readFully(payload);
+                        if (checksum(payload,0,length)!=checksum) throw new IOException("Checksum mismatch");
+                    } catch (IOException e) {
+                        //Segments are never appended to after a restart, hence only the last record can be incomplete
+                        log.warn("Discarding incomplete record at the end of log segment {}: {}",file,e.getMessage());
+                        break;
+                    }
+                    lastSeq++;
+                    records++;
+                    handler.handle(lastSeq,ByteBuffer.wrap(payload));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new PermanentStorageException("Could not read log segment: " + file,e);
+        }
+        return records;
+    }
+
+    /**
+     * Appends the given record to the log. The record is not durable until {@link #sync(long)} returns.
+     *
+     * @param record
+     * @return Sequence number of the appended record
+     * @throws StorageException
+     */
+    public long append(ByteBuffer record) throws StorageException {
+        int length = record.remaining();
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_LENGTH+length);
+        buffer.putInt(length);
+        buffer.putLong(checksum(record));
+        buffer.put(record.duplicate());
+        buffer.flip();
+
+        synchronized (writeLock) {
+            Preconditions.checkState(active!=null,"Log has not been replayed");
+            Preconditions.checkState(isOpen,"Log has been closed");
+            long start;
+            try {
+                if (channel.position()>0 && channel.position()+buffer.remaining()>segmentSize) {
+                    closeSegment();
+                    openSegment();
+                }
+                start = channel.position();
+            } catch (IOException e) {
+                throw new PermanentStorageException("Could not roll log segment",e);
+            }
+            try {
+                while (buffer.hasRemaining()) channel.write(buffer);
+            } catch (IOException e) {
+                //Remove the partial record so that subsequent records remain readable
+                try {
+                    channel.truncate(start);
+                } catch (IOException e2) {
+                    log.error("Could not remove partially written record from log",e2);
+                }
+                throw new PermanentStorageException("Could not append to log",e);
+            }
+            lastSeq++;
+            return lastSeq;
+        }
+    }
+
+    /**
+     * Blocks until all records up to the given sequence number are durable. Concurrent invocations share a single fsync.
+     *
+     * @param seq
+     * @throws StorageException
+     */
+    public void sync(long seq) throws StorageException {
+        synchronized (syncLock) {
+            if (syncedSeq>=seq) return;
+            FileChannel current;
+            long target;
+            synchronized (writeLock) {
+                current = channel;
+                target = lastSeq;
+            }
+            try {
+                current.force(false);
+            } catch (ClosedChannelException e) {
+                //The segment has been closed in the meantime which forces its records to disk
+            } catch (IOException e) {
+                throw new PermanentStorageException("Could not sync log",e);
+            }
+            syncedSeq = target;
+        }
+    }
+
+    /**
+     * Marks all records up to the given sequence number as applied and deletes segments which only contain applied records.
+     *
+     * @param seq
+     */
+    public void applied(long seq) {
+        synchronized (closedSegments) {
+            appliedSeq = Math.max(appliedSeq,seq);
+        }
+        deleteAppliedSegments();
+    }
+
+    /**
+     * Closes the segment which records are currently appended to and starts a new one, such that the closed segment
+     * is deleted once all records up to the returned sequence number have been marked as applied.
+     *
+     * @return Sequence number of the last record in the closed segment
+     * @throws StorageException
+     */
+    public long roll() throws StorageException {
+        synchronized (writeLock) {
+            Preconditions.checkState(active!=null,"Log has not been replayed");
+            Preconditions.checkState(isOpen,"Log has been closed");
+            try {
+                closeSegment();
+            } catch (IOException e) {
+                throw new PermanentStorageException("Could not close log segment",e);
+            }
+            openSegment();
+            return lastSeq;
+        }
+    }
+
+    public long getLastSequenceNumber() {
+        synchronized (writeLock) {
+            return lastSeq;
+        }
+    }
+
+    /**
+     * Closes the log. Segments which contain records that have not been applied are retained for replay.
+     *
+     * @throws StorageException
+     */
+    public void close() throws StorageException {
+        synchronized (writeLock) {
+            if (!isOpen) return;
+            isOpen = false;
+            if (active!=null) {
+                try {
+                    closeSegment();
+                } catch (IOException e) {
+                    throw new PermanentStorageException("Could not close log",e);
+                }
+            }
+        }
+        deleteAppliedSegments();
+    }
+
+    private void deleteAppliedSegments() {
+        synchronized (closedSegments) {
+            while (!closedSegments.isEmpty() && closedSegments.peek().lastSeq<=appliedSeq) {
+                File file = closedSegments.poll().file;
+                if (!file.delete()) log.warn("Could not delete applied log segment {}",file);
+            }
+        }
+    }
+
+    private void openSegment() throws StorageException {
+        assert Thread.holdsLock(writeLock);
+        File file = new File(directory,String.format("%s%020d%s",prefix,nextSegmentIndex,suffix));
+        nextSegmentIndex++;
+        try {
+            channel = new FileOutputStream(file,true).getChannel();
+        } catch (IOException e) {
+            throw new PermanentStorageException("Could not create log segment: " + file,e);
+        }
+        active = new Segment(file,-1);
+    }
+
+    private void closeSegment() throws IOException {
+        assert Thread.holdsLock(writeLock);
+        channel.force(false);
+        channel.close();
+        synchronized (closedSegments) {
+            closedSegments.add(new Segment(active.file,lastSeq));
+        }
+    }
+
+    private List<File> getSegmentFiles() {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(prefix) && name.endsWith(suffix);
+            }
+        });
+        List<File> result = new ArrayList<File>(files==null?0:files.length);
+        if (files!=null) result.addAll(Arrays.asList(files));
+        Collections.sort(result,new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                long i1 = getSegmentIndex(f1), i2 = getSegmentIndex(f2);
+                return i1<i2?-1:(i1==i2?0:1);
+            }
+        });
+        return result;
+    }
+
+    private long getSegmentIndex(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(prefix.length(),name.length()-suffix.length()));
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid log segment name: " + name);
+        }
+    }
+
+    private static long checksum(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes,offset,length);
+        return crc.getValue();
+    }
+
+    private static long checksum(ByteBuffer b) {
+        if (b.hasArray()) return checksum(b.array(),b.arrayOffset()+b.position(),b.remaining());
+        byte[] bytes = new byte[b.remaining()];
+        b.duplicate().get(bytes);
+        return checksum(bytes,0,bytes.length);
+    }
+
+    private static class Segment {
+
+        private final File file;
+        private final long lastSeq;
+
+        private Segment(File file, long lastSeq) {
+            this.file = file;
+            this.lastSeq = lastSeq;
+        }
+    }
+
+}
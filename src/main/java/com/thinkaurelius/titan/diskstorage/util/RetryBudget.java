@@ -0,0 +1,44 @@
+package com.thinkaurelius.titan.diskstorage.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the total number of retries of failed storage operations within one transaction, so that
+ * a transaction fails once the storage backend is evidently unhealthy instead of retrying each of its
+ * operations the maximum number of times.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class RetryBudget {
+
+    /**
+     * Budget which allows an unlimited number of retries
+     */
+    public static final RetryBudget UNLIMITED = new RetryBudget(0);
+
+    private final int maxRetries;
+    private final AtomicInteger retries = new AtomicInteger(0);
+
+    /**
+     * @param maxRetries maximum number of retries, 0 for no limit
+     */
+    public RetryBudget(int maxRetries) {
+        this.maxRetries = Math.max(0,maxRetries);
+    }
+
+    /**
+     * Consumes one retry from the budget
+     *
+     * @return true if the retry may proceed, false if the budget is exhausted
+     */
+    public boolean acquire() {
+        if (maxRetries==0) return true;
+        return retries.incrementAndGet()<=maxRetries;
+    }
+
+    public int getRetries() {
+        return retries.get();
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.thinkaurelius.titan.diskstorage.util;
+
+/**
+ * Determines how long to wait before retrying a storage operation which failed with a
+ * {@link com.thinkaurelius.titan.diskstorage.TemporaryStorageException}.
+ *
+ * Implementations which are configured by name must provide a constructor with a single
+ * {@link org.apache.commons.configuration.Configuration} argument which receives the storage configuration.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public interface RetryPolicy {
+
+    /**
+     * Returns the time in milliseconds to wait before the next attempt of an operation which has failed
+     * the given number of times.
+     *
+     * @param failures Number of failed attempts so far, at least 1
+     * @return Wait time in milliseconds
+     */
+    public long getWaitTime(int failures);
+
+}
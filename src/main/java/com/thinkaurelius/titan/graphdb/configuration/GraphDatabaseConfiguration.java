@@ -8,6 +8,7 @@ import com.thinkaurelius.titan.graphdb.blueprints.BlueprintsDefaultTypeMaker;
 import com.thinkaurelius.titan.graphdb.database.idassigner.VertexIDAssigner;
 import com.thinkaurelius.titan.graphdb.database.serialize.Serializer;
 import com.thinkaurelius.titan.graphdb.database.serialize.kryo.KryoSerializer;
+import com.thinkaurelius.titan.graphdb.database.util.StoreKeyFilter;
 import com.thinkaurelius.titan.graphdb.types.DisableDefaultTypeMaker;
 import org.apache.commons.configuration.BaseConfiguration;
 import org.apache.commons.configuration.Configuration;
@@ -119,9 +120,167 @@ public class GraphDatabaseConfiguration {
 
     /**
      * Time in milliseconds that Titan waits after an unsuccessful storage attempt before retrying.
+     * When backing off exponentially, this is the wait time after the first unsuccessful attempt.
      */
     public static final String STORAGE_ATTEMPT_WAITTIME_KEY = "attempt-wait";
     public static final int STORAGE_ATTEMPT_WAITTIME_DEFAULT = 250;
+
+    /**
+     * Maximum time in milliseconds that Titan waits after an unsuccessful storage attempt before retrying
+     * when backing off exponentially.
+     */
+    public static final String STORAGE_ATTEMPT_MAX_WAITTIME_KEY = "attempt-max-wait";
+    public static final long STORAGE_ATTEMPT_MAX_WAITTIME_DEFAULT = 10000;
+
+    /**
+     * Determines how long Titan waits before retrying an unsuccessful storage attempt. Either "exponential",
+     * which doubles the wait time with every attempt starting from the attempt wait time and randomizes it,
+     * "fixed", which always waits the attempt wait time, or the full class name of a
+     * {@link com.thinkaurelius.titan.diskstorage.util.RetryPolicy}.
+     */
+    public static final String STORAGE_RETRY_POLICY_KEY = "retry-backoff";
+    public static final String STORAGE_RETRY_POLICY_DEFAULT = "fixed";
+
+    /**
+     * Maximum number of retries of unsuccessful storage attempts within one transaction. Once exhausted,
+     * the next temporary failure fails the transaction. Set to 0 to disable the limit.
+     */
+    public static final String STORAGE_RETRY_BUDGET_KEY = "retry-budget";
+    public static final int STORAGE_RETRY_BUDGET_DEFAULT = 0;
+
+    /**
+     * Number of consecutive temporary failures of a store after which all operations against this store fail
+     * immediately until the circuit breaker reset time has passed. Set to 0 to disable.
+     */
+    public static final String CIRCUIT_BREAKER_FAILURES_KEY = "circuit-breaker-failures";
+    public static final int CIRCUIT_BREAKER_FAILURES_DEFAULT = 0;
+
+    /**
+     * Time in milliseconds after which an open circuit breaker lets a trial operation through to the store.
+     */
+    public static final String CIRCUIT_BREAKER_RESET_KEY = "circuit-breaker-reset";
+    public static final long CIRCUIT_BREAKER_RESET_DEFAULT = 1000;
+
+    /**
+     * Whether values in the edge store and vertex index are compressed when they exceed the compression threshold.
+     * This changes the storage format and can therefore only be configured when the graph is created. Stores which
+     * already contain uncompressed values when compression is enabled remain uncompressed.
+     */
+    public static final String COMPRESS_VALUES_KEY = "compress-values";
+    public static final boolean COMPRESS_VALUES_DEFAULT = false;
+
+    /**
+     * Minimum size in bytes of a value to be compressed
+     */
+    public static final String COMPRESSION_THRESHOLD_KEY = "compression-threshold";
+    public static final int COMPRESSION_THRESHOLD_DEFAULT = 512;
+
+    /**
+     * Compression level between 1 (fastest) and 9 (best compression)
+     */
+    public static final String COMPRESSION_LEVEL_KEY = "compression-level";
+    public static final int COMPRESSION_LEVEL_DEFAULT = 1;
+
+    /**
+     * Number of entries retrieved from the storage backend per call when loading all relations of a vertex.
+     * Large adjacency lists are retrieved in pages of this size instead of being read in a single call, which bounds
+     * the size of each backend response at the expense of additional round trips. This does not bound the memory
+     * used by the transaction since all loaded relations are still held by it. Set to 0 to read adjacency lists
+     * in a single call.
+     */
+    public static final String PAGE_SIZE_KEY = "page-size";
+    public static final int PAGE_SIZE_DEFAULT = 0;
+
+    /**
+     * Maximum size in bytes of the cache for edge store slice queries which is shared by all transactions
+     * of a graph instance. Set to 0 to disable the cache.
+     * Mutations by other graph instances are not visible in cached results until they expire.
+     */
+    public static final String EDGESTORE_CACHE_SIZE_KEY = "edgestore-cache-size";
+    public static final long EDGESTORE_CACHE_SIZE_DEFAULT = 0;
+
+    /**
+     * Time in milliseconds after which cached edge store slices expire. Set to 0 to never expire cached slices.
+     */
+    public static final String EDGESTORE_CACHE_TTL_KEY = "edgestore-cache-ttl";
+    public static final long EDGESTORE_CACHE_TTL_DEFAULT = 10000;
+
+    /**
+     * Whether to maintain Bloom filters over the vertex ids and indexed values in the storage backend, so that lookups
+     * of non-existing vertices and index entries are answered without accessing the storage backend.
+     * The filters only contain keys written by this graph instance and must therefore only be enabled when this
+     * instance is the only one writing to the storage backend. Hence, they are ignored for distributed storage backends.
+     * They are persisted in the storage directory on shutdown and otherwise rebuilt on startup by scanning all keys,
+     * which requires a storage backend that supports scans.
+     */
+    public static final String KEY_FILTER_KEY = "key-filter";
+    public static final boolean KEY_FILTER_DEFAULT = false;
+
+    /**
+     * Number of vertices and of distinct indexed values the key filters are sized for
+     */
+    public static final String KEY_FILTER_EXPECTED_KEYS_KEY = "key-filter-expected-keys";
+    public static final long KEY_FILTER_EXPECTED_KEYS_DEFAULT = 1000000;
+
+    /**
+     * False positive probability of the key filters once they contain the expected number of keys
+     */
+    public static final String KEY_FILTER_FPP_KEY = "key-filter-fpp";
+    public static final double KEY_FILTER_FPP_DEFAULT = 0.01;
+
+    private static final String KEY_FILTER_FILE = "titan-keyfilter.bin";
+
+    /**
+     * Number of background threads which persist full mutation buffers while transactions continue to buffer
+     * new mutations. Set to 0 to persist full buffers synchronously on the thread of the transaction.
+     * Only applies if buffering is enabled and the storage backend is not transactional.
+     */
+    public static final String BUFFER_FLUSH_THREADS_KEY = "buffer-flush-threads";
+    public static final int BUFFER_FLUSH_THREADS_DEFAULT = 0;
+
+    /**
+     * Maximum number of full mutation buffers per transaction that are waiting to be persisted in the background.
+     * A transaction which fills another buffer while this many are pending blocks until one has been persisted.
+     */
+    public static final String BUFFER_FLUSH_QUEUE_KEY = "buffer-flush-queue";
+    public static final int BUFFER_FLUSH_QUEUE_DEFAULT = 2;
+
+    /**
+     * Whether transactions commit once their mutations have been written to a local write-ahead log instead of
+     * the storage backend. The logged mutations are applied to the storage backend in the background and replayed
+     * on restart if the instance shuts down before they have been applied. Hence, committed mutations are not
+     * visible to readers until they have been applied.
+     * Requires buffering and a storage backend which is neither transactional nor relies on consistent key locking,
+     * since lock verification would read values that do not yet reflect committed mutations.
+     */
+    public static final String ASYNC_COMMIT_KEY = "async-commit";
+    public static final boolean ASYNC_COMMIT_DEFAULT = false;
+
+    /**
+     * Directory of the write-ahead log for asynchronous commits. Must not be shared with any other instance.
+     */
+    public static final String ASYNC_COMMIT_DIRECTORY_KEY = "async-commit-directory";
+
+    /**
+     * Size in bytes of the segment files of the write-ahead log
+     */
+    public static final String ASYNC_COMMIT_SEGMENT_SIZE_KEY = "async-commit-segment-size";
+    public static final long ASYNC_COMMIT_SEGMENT_SIZE_DEFAULT = 64 * 1024 * 1024;
+
+    /**
+     * Maximum number of logged mutation batches which have not yet been applied to the storage backend.
+     * Commits block while this many batches are pending.
+     */
+    public static final String ASYNC_COMMIT_QUEUE_KEY = "async-commit-queue";
+    public static final int ASYNC_COMMIT_QUEUE_DEFAULT = 1000;
+
+    /**
+     * Whether to record call counts, latencies, transferred bytes and result sizes for all operations against the
+     * storage backend and publish them over JMX.
+     */
+    public static final String STORAGE_METRICS_KEY = "metrics";
+    public static final boolean STORAGE_METRICS_DEFAULT = false;
+
     /**
      *  A unique identifier for the machine running the @TitanGraph@ instance.
      *  It must be ensured that no other machine accessing the storage backend can have the same identifier.
@@ -154,6 +313,12 @@ public class GraphDatabaseConfiguration {
      */
     public static final String LOCK_EXPIRE_MS = "lock-expiry-time";
     public static final long LOCK_EXPIRE_MS_DEFAULT = 300 * 1000;
+    /**
+     * Number of background threads which concurrently read the lock claims and expected values when verifying the
+     * locks of a transaction. Set to 0 to issue these reads one after another on the thread of the transaction.
+     */
+    public static final String LOCK_VERIFY_THREADS = "lock-verify-threads";
+    public static final int LOCK_VERIFY_THREADS_DEFAULT = 4;
 
     /**
      * The number of milliseconds the system waits for an id block application to be acknowledged by the storage backend.
@@ -215,6 +380,37 @@ public class GraphDatabaseConfiguration {
     public static final String IDS_BLOCK_SIZE_KEY = "block-size";
     public static final int IDS_BLOCK_SIZE_DEFAULT = 10000;
 
+    /**
+     * Whether the size of id blocks adapts to the rate at which ids are consumed. If enabled, the configured block size
+     * is the initial block size and blocks are sized such that they are renewed once per renewal interval.
+     */
+    public static final String IDS_BLOCK_SIZE_ADAPTIVE_KEY = "block-size-adaptive";
+    public static final boolean IDS_BLOCK_SIZE_ADAPTIVE_DEFAULT = false;
+
+    /**
+     * The targeted time in milliseconds between two renewals of the id block of a partition when the block size is adaptive.
+     */
+    public static final String IDS_RENEW_INTERVAL_KEY = "renew-interval";
+    public static final long IDS_RENEW_INTERVAL_DEFAULT = 30000;
+
+    /**
+     * Number of id blocks each id pool acquires ahead of the block it currently hands out ids from
+     */
+    public static final String IDS_PREFETCH_BLOCKS_KEY = "prefetch-blocks";
+    public static final int IDS_PREFETCH_BLOCKS_DEFAULT = 1;
+
+    /**
+     * Number of threads which acquire id blocks in the background. These threads are shared by all id pools.
+     */
+    public static final String IDS_RENEW_THREADS_KEY = "renew-threads";
+    public static final int IDS_RENEW_THREADS_DEFAULT = 4;
+
+    /**
+     * Time in milliseconds that id assignment waits for a new id block to be acquired before failing.
+     */
+    public static final String IDS_RENEW_TIMEOUT_KEY = "renew-timeout";
+    public static final long IDS_RENEW_TIMEOUT_DEFAULT = 60000;
+
     /**
      * Whether the id space should be partitioned for equal distribution of keys. If the keyspace is ordered, this needs to be
      * enabled to ensure an even distribution of data. If the keyspace is random/hashed, then enabling this only has the benefit
@@ -223,6 +419,15 @@ public class GraphDatabaseConfiguration {
     public static final String IDS_PARTITION_KEY = "partition";
     public static final boolean IDS_PARTITION_DEFAULT = false;
 
+    /**
+     * Determines how new vertices are placed into partitions when the id space is partitioned. Either "simple", which
+     * places the vertices of a transaction into a random partition, or "neighbour", which places a vertex into the
+     * partition of the vertex it is first connected to in the same transaction. The latter improves locality of
+     * traversals on key-ordered storage backends.
+     */
+    public static final String IDS_PLACEMENT_KEY = "placement";
+    public static final String IDS_PLACEMENT_DEFAULT = "simple";
+
     /**
      * If flush idAuthorities is enabled, vertices and edges are assigned idAuthorities immediately upon creation. If not, then idAuthorities are only
      * assigned when the transaction is committed.
@@ -325,6 +530,12 @@ public class GraphDatabaseConfiguration {
         return attempts;
     }
 
+    public int getPageSize() {
+        int size = configuration.subset(STORAGE_NAMESPACE).getInt(PAGE_SIZE_KEY, PAGE_SIZE_DEFAULT);
+        Preconditions.checkArgument(size>=0,"Page size must be non-negative (use 0 to disable)");
+        return size;
+    }
+
     public int getStorageWaittime() {
         int time = configuration.subset(STORAGE_NAMESPACE).getInt(STORAGE_ATTEMPT_WAITTIME_KEY, STORAGE_ATTEMPT_WAITTIME_DEFAULT);
         Preconditions.checkArgument(time>0,"Persistence attempt retry wait time must be positive");
@@ -383,6 +594,23 @@ public class GraphDatabaseConfiguration {
 		return new VertexIDAssigner(configuration.subset(IDS_NAMESPACE),backend.getIDAuthority(),backend.getStoreFeatures());
 	}
 
+    /**
+     * Opens the key filter if it is enabled
+     *
+     * @return The key filter or null if it is disabled
+     */
+    public StoreKeyFilter getKeyFilter() {
+        Configuration storageconfig = configuration.subset(STORAGE_NAMESPACE);
+        if (!storageconfig.getBoolean(KEY_FILTER_KEY,KEY_FILTER_DEFAULT)) return null;
+        File file = null;
+        if (storageconfig.containsKey(STORAGE_DIRECTORY_KEY)) {
+            File dir = new File(storageconfig.getString(STORAGE_DIRECTORY_KEY));
+            if (dir.isDirectory()) file = new File(dir,KEY_FILTER_FILE);
+        }
+        return StoreKeyFilter.open(file,storageconfig.getLong(KEY_FILTER_EXPECTED_KEYS_KEY,KEY_FILTER_EXPECTED_KEYS_DEFAULT),
+                storageconfig.getDouble(KEY_FILTER_FPP_KEY,KEY_FILTER_FPP_DEFAULT));
+    }
+
     public String getBackendDescription() {
         Configuration storageconfig = configuration.subset(STORAGE_NAMESPACE);
         String clazzname = storageconfig.getString(STORAGE_BACKEND_KEY,STORAGE_BACKEND_DEFAULT);
@@ -5,6 +5,7 @@ import com.thinkaurelius.titan.diskstorage.StorageException;
 import com.thinkaurelius.titan.core.TitanGraph;
 import com.thinkaurelius.titan.core.TitanKey;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.RecordIterator;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.ScanSplit;
 import com.thinkaurelius.titan.graphdb.transaction.TransactionConfig;
 import com.thinkaurelius.titan.graphdb.query.AtomicQuery;
 import com.thinkaurelius.titan.graphdb.relations.InternalRelation;
@@ -14,6 +15,7 @@ import com.thinkaurelius.titan.graphdb.vertices.InternalTitanVertex;
 import com.tinkerpop.blueprints.Features;
 
 import java.util.Collection;
+import java.util.List;
 
 public interface InternalTitanGraph extends TitanGraph {
 
@@ -30,6 +32,16 @@ public interface InternalTitanGraph extends TitanGraph {
     public boolean isReferenceVertexID(long vertexid);
 
 	void loadRelations(AtomicQuery query, InternalTitanTransaction tx);
+
+    /**
+     * Loads the relations matching the given query for all of the given vertices using batched
+     * backend retrievals. The vertex the query was constructed for is ignored.
+     *
+     * @param query Query defining the relations to load
+     * @param vertices Vertices for which to load the matching relations
+     * @param tx Transaction into which the relations are loaded
+     */
+    void loadRelations(AtomicQuery query, List<InternalTitanVertex> vertices, InternalTitanTransaction tx);
 	
 	public AbstractLongList getRawNeighborhood(AtomicQuery query, InternalTitanTransaction tx);
 	
@@ -37,6 +49,15 @@ public interface InternalTitanGraph extends TitanGraph {
 
     public RecordIterator<Long> getVertexIDs(InternalTitanTransaction tx);
 
+    /**
+     * Returns an iterator over the ids of all vertices in the given split. The iterator must be closed.
+     *
+     * @param split Split of the edge store as returned by {@link com.thinkaurelius.titan.diskstorage.Backend#getEdgeStoreScanSplits(int)}
+     * @param tx
+     * @return
+     */
+    public RecordIterator<Long> getVertexIDs(ScanSplit split, InternalTitanTransaction tx);
+
 	public InternalTitanTransaction startTransaction(TransactionConfig configuration);
     
 
@@ -9,8 +9,11 @@ import com.thinkaurelius.titan.core.*;
 import com.thinkaurelius.titan.diskstorage.*;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.Entry;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.KeyColumnValueStore;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.PagedSliceIterator;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.RecordIterator;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.ScanSplit;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreTransaction;
+import com.thinkaurelius.titan.diskstorage.util.RetryPolicy;
 import com.thinkaurelius.titan.diskstorage.util.ByteBufferUtil;
 import com.thinkaurelius.titan.graphdb.blueprints.TitanBlueprintsGraph;
 import com.thinkaurelius.titan.graphdb.blueprints.TitanFeatures;
@@ -21,6 +24,7 @@ import com.thinkaurelius.titan.graphdb.database.idhandling.VariableLong;
 import com.thinkaurelius.titan.graphdb.database.serialize.DataOutput;
 import com.thinkaurelius.titan.graphdb.database.serialize.Serializer;
 import com.thinkaurelius.titan.graphdb.database.util.LimitTracker;
+import com.thinkaurelius.titan.graphdb.database.util.StoreKeyFilter;
 import com.thinkaurelius.titan.graphdb.database.util.TypeSignature;
 import com.thinkaurelius.titan.graphdb.idmanagement.IDInspector;
 import com.thinkaurelius.titan.graphdb.idmanagement.IDManager;
@@ -32,6 +36,7 @@ import com.thinkaurelius.titan.graphdb.relations.InternalRelation;
 import com.thinkaurelius.titan.graphdb.transaction.InternalTitanTransaction;
 import com.thinkaurelius.titan.graphdb.transaction.StandardPersistTitanTx;
 import com.thinkaurelius.titan.graphdb.transaction.TransactionConfig;
+import com.thinkaurelius.titan.graphdb.transaction.VertexIterable;
 import com.thinkaurelius.titan.graphdb.types.InternalTitanType;
 import com.thinkaurelius.titan.graphdb.types.TypeDefinition;
 import com.thinkaurelius.titan.graphdb.types.manager.SimpleTypeManager;
@@ -51,6 +56,11 @@ import java.util.*;
 public class StandardTitanGraph extends TitanBlueprintsGraph implements InternalTitanGraph {
 
 	private static final int defaultOutputCapacity = 128;
+
+    /**
+     * Maximum number of keys retrieved from the edge store in a single multi-key slice query
+     */
+    private static final int maxMultiQueryKeys = 500;
 	
 	private static final Logger log =
 		LoggerFactory.getLogger(StandardTitanGraph.class);
@@ -65,7 +75,9 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
 
     private final int maxWriteRetryAttempts;
     private final int maxReadRetryAttempts;
-    private final int retryStorageWaitTime;
+    private final RetryPolicy retryPolicy;
+    private final int pageSize;
+    private final StoreKeyFilter keyFilter;
 
 	
 	private final Serializer serializer;
@@ -80,7 +92,8 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
 		this.propertyIndex = backend.getVertexIndexStore();
         this.maxWriteRetryAttempts =config.getWriteAttempts();
         this.maxReadRetryAttempts = config.getReadAttempts();
-        this.retryStorageWaitTime =config.getStorageWaittime();
+        this.retryPolicy = backend.getRetryPolicy();
+        this.pageSize = config.getPageSize();
         
 
         this.idAssigner = config.getIDAssigner(backend);
@@ -88,9 +101,44 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
 		
 		this.serializer = config.getSerializer();
         this.etManager = new SimpleTypeManager(this);
+        this.keyFilter = openKeyFilter();
         isOpen = true;
 	}
 	
+    /**
+     * Opens the key filter and rebuilds it if it could not be loaded.
+     *
+     * @return The complete key filter or null if it is disabled or could not be rebuilt
+     */
+    private StoreKeyFilter openKeyFilter() {
+        StoreKeyFilter filter = config.getKeyFilter();
+        if (filter==null) return null;
+        if (backend.getStoreFeatures().isDistributed()) {
+            log.warn("Key filter disabled since other instances may write to the distributed storage backend");
+            return null;
+        }
+        if (filter.isComplete()) return filter;
+        if (!backend.getStoreFeatures().supportsScan()) {
+            log.warn("Key filter disabled since the storage backend does not support scans to rebuild it");
+            return null;
+        }
+        try {
+            RecordIterator<ByteBuffer> vertexKeys = backend.getEdgeStoreKeys(ScanSplit.ALL);
+            RecordIterator<ByteBuffer> indexKeys;
+            try {
+                indexKeys = backend.getVertexIndexKeys();
+            } catch (StorageException e) {
+                vertexKeys.close();
+                throw e;
+            }
+            filter.rebuild(vertexKeys,indexKeys);
+        } catch (StorageException e) {
+            log.warn("Key filter disabled since it could not be rebuilt",e);
+            return null;
+        }
+        return filter;
+    }
+
 	@Override
 	public IDInspector getIDInspector() {
 		return idManager;
@@ -118,6 +166,7 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
         } catch (StorageException e) {
             throw new TitanException("Could not close storage backend",e);
         }
+        if (keyFilter!=null) keyFilter.close();
         isOpen=false;
 	}
 
@@ -138,7 +187,8 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
 	@Override
 	public InternalTitanTransaction startTransaction(TransactionConfig configuration) {
         try {
-		    return new StandardPersistTitanTx(this,etManager, configuration, backend.beginTransaction());
+		    return new StandardPersistTitanTx(this,etManager, configuration, backend.beginTransaction(configuration.isReadOnly(),
+                    configuration.getReadConsistency(),configuration.getWriteConsistency()));
         } catch (StorageException e) {
             throw new TitanException("Could not start new transaction",e);
         }
@@ -146,9 +196,13 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
 
     // ################### READ #########################
 
-    private static final StoreTransaction getStoreTransaction(InternalTitanTransaction tx) {
+    private static final BackendTransaction getBackendTransaction(InternalTitanTransaction tx) {
         assert tx.getTxHandle() instanceof BackendTransaction;
-        return ((BackendTransaction)tx.getTxHandle()).getStoreTransactionHandle();
+        return (BackendTransaction)tx.getTxHandle();
+    }
+
+    private static final StoreTransaction getStoreTransaction(InternalTitanTransaction tx) {
+        return getBackendTransaction(tx).getStoreTransactionHandle();
     }
     
     private final TitanException readException(StorageException e) {
@@ -162,30 +216,49 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
             return new TitanException("Could not read from storage after "+attempts+" attempts",e);
     }
 
-    private final void temporaryStorageException(Throwable e) {
+    /**
+     * Decides whether to retry an operation which failed with a temporary exception and waits
+     * according to the retry policy before the retry.
+     *
+     * @param e Temporary exception
+     * @param attempt Number of the failed attempt, starting at 0
+     * @param maxAttempts Maximum number of attempts
+     * @param btx Transaction whose retry budget is charged for the retry, or null if the operation is not part of a transaction
+     * @return true if the operation should be retried, false if it should fail
+     */
+    private final boolean retryTemporaryFailure(Throwable e, int attempt, int maxAttempts, BackendTransaction btx) {
         Preconditions.checkArgument(e instanceof TemporaryStorageException);
-        log.info("Temporary exception in storage backend. Attempting retry in {} ms. {}", retryStorageWaitTime,e);
+        if (attempt>=maxAttempts-1) return false;
+        if (btx!=null && !btx.getRetryBudget().acquire()) {
+            log.info("Temporary exception in storage backend and retry budget of transaction is exhausted. {}",e);
+            return false;
+        }
+        long waitTime = retryPolicy.getWaitTime(attempt+1);
+        log.info("Temporary exception in storage backend. Attempting retry in {} ms. {}", waitTime,e);
         //Wait before retry
-        if (retryStorageWaitTime >0) {
+        if (waitTime >0) {
             try {
-                Thread.sleep(retryStorageWaitTime);
+                Thread.sleep(waitTime);
             } catch (InterruptedException r) {
                 throw new TitanException("Interrupted while waiting to retry failed storage operation",e);
             }
         }
+        return true;
     }
 
 	@Override
 	public boolean containsVertexID(long id, InternalTitanTransaction tx) {
 		log.trace("Checking node existence for {}", id);
+        ByteBuffer key = IDHandler.getKey(id);
+        if (keyFilter!=null && !keyFilter.mightContainVertexKey(key)) return false;
 
         for (int readAttempt=0;readAttempt<maxReadRetryAttempts;readAttempt++) {
             try {
-                return edgeStore.containsKey(IDHandler.getKey(id), getStoreTransaction(tx));
+                return edgeStore.containsKey(key, getStoreTransaction(tx));
             } catch (StorageException e) {
                 if (e instanceof TemporaryStorageException) {
-                    if (readAttempt<maxReadRetryAttempts-1) temporaryStorageException(e);
-                    else throw readException(e,maxReadRetryAttempts);
+                    if (!retryTemporaryFailure(e,readAttempt,maxReadRetryAttempts,getBackendTransaction(tx)))
+                        throw readException(e,readAttempt+1);
                 } else throw readException(e);
             }
         }
@@ -219,14 +292,84 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
                 };
             } catch (StorageException e) {
                 if (e instanceof TemporaryStorageException) {
-                    if (readAttempt<maxReadRetryAttempts-1) temporaryStorageException(e);
-                    else throw readException(e,maxReadRetryAttempts);
+                    if (!retryTemporaryFailure(e,readAttempt,maxReadRetryAttempts,getBackendTransaction(tx)))
+                        throw readException(e,readAttempt+1);
+                } else throw readException(e);
+            }
+        }
+        throw new AssertionError("Illegal program state");
+    }
+
+    @Override
+    public RecordIterator<Long> getVertexIDs(ScanSplit split, final InternalTitanTransaction tx) {
+        for (int readAttempt=0;readAttempt<maxReadRetryAttempts;readAttempt++) {
+            try {
+                final RecordIterator<ByteBuffer> keyiter = backend.getEdgeStoreKeys(split);
+                return new RecordIterator<Long>() {
+
+                    @Override
+                    public boolean hasNext() throws StorageException {
+                        return keyiter.hasNext();
+                    }
+
+                    @Override
+                    public Long next() throws StorageException {
+                        return IDHandler.getKeyID(keyiter.next());
+                    }
+
+                    @Override
+                    public void close() throws StorageException {
+                        keyiter.close();
+                    }
+                };
+            } catch (StorageException e) {
+                if (e instanceof TemporaryStorageException) {
+                    if (!retryTemporaryFailure(e,readAttempt,maxReadRetryAttempts,getBackendTransaction(tx)))
+                        throw readException(e,readAttempt+1);
                 } else throw readException(e);
             }
         }
         throw new AssertionError("Illegal program state");
     }
 
+    @Override
+    public List<VertexSplit> getVertexSplits(int numSplits) {
+        Preconditions.checkArgument(numSplits>0,"Number of splits must be positive");
+        if (!backend.supportsEdgeStoreScan())
+            throw new UnsupportedOperationException("The configured storage backend does not support global graph operations - use Faunus instead");
+
+        List<ScanSplit> splits = null;
+        for (int readAttempt=0;readAttempt<maxReadRetryAttempts && splits==null;readAttempt++) {
+            try {
+                splits = backend.getEdgeStoreScanSplits(numSplits);
+            } catch (StorageException e) {
+                if (e instanceof TemporaryStorageException) {
+                    if (!retryTemporaryFailure(e,readAttempt,maxReadRetryAttempts,null))
+                        throw readException(e,readAttempt+1);
+                } else throw readException(e);
+            }
+        }
+        assert splits!=null;
+        log.debug("Split vertices into {} splits",splits.size());
+
+        List<VertexSplit> vertexSplits = new ArrayList<VertexSplit>(splits.size());
+        for (final ScanSplit split : splits) {
+            vertexSplits.add(new VertexSplit() {
+                @Override
+                public Iterable<TitanVertex> getVertices(TitanTransaction tx) {
+                    Preconditions.checkArgument(tx instanceof InternalTitanTransaction && tx.isOpen(),"Invalid transaction");
+                    return (Iterable)new VertexIterable(StandardTitanGraph.this,(InternalTitanTransaction)tx,split);
+                }
+
+                @Override
+                public String toString() {
+                    return split.toString();
+                }
+            });
+        }
+        return vertexSplits;
+    }
+
     @Override
 	public long[] indexRetrieval(Object key, TitanKey pt, InternalTitanTransaction tx) {
 		Preconditions.checkArgument(pt.isSimple(),
@@ -237,19 +380,20 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
 		long[] vertices = null;
 			
         Preconditions.checkArgument(pt.getDataType().isInstance(key),"Specified object is incompatible with property data type ["+pt.getName()+"]");
-
+        ByteBuffer indexKey = getIndexKey(key);
+        if (keyFilter!=null && !keyFilter.mightContainIndexKey(indexKey)) return new long[0];
 
         for (int readAttempt=0;readAttempt<maxReadRetryAttempts;readAttempt++) {
             try {
                 if (pt.isUnique()) {
-                    ByteBuffer value = propertyIndex.get(getIndexKey(key), getKeyedIndexColumn(pt), getStoreTransaction(tx));
+                    ByteBuffer value = propertyIndex.get(indexKey, getKeyedIndexColumn(pt), getStoreTransaction(tx));
                     if (value!=null) {
                         vertices = new long[1];
                         vertices[0]=VariableLong.readPositive(value);
                     }
                 } else {
                     ByteBuffer startColumn = VariableLong.positiveByteBuffer(pt.getID());
-                    List<Entry> entries = propertyIndex.getSlice(getIndexKey(key), startColumn,
+                    List<Entry> entries = propertyIndex.getSlice(indexKey, startColumn,
                             ByteBufferUtil.nextBiggerBuffer(startColumn), getStoreTransaction(tx));
                     vertices = new long[entries.size()];
                     int i = 0;
@@ -261,8 +405,8 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
                 break;
             } catch (StorageException e) {
                 if (e instanceof TemporaryStorageException) {
-                    if (readAttempt<maxReadRetryAttempts-1) temporaryStorageException(e);
-                    else throw readException(e,maxReadRetryAttempts);
+                    if (!retryTemporaryFailure(e,readAttempt,maxReadRetryAttempts,getBackendTransaction(tx)))
+                        throw readException(e,readAttempt+1);
                 } else throw readException(e);
             }
         }
@@ -284,7 +428,7 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
 	public AbstractLongList getRawNeighborhood(AtomicQuery query, InternalTitanTransaction tx) {
         Preconditions.checkArgument(QueryUtil.queryCoveredByDiskIndexes(query),
                 "Raw retrieval is currently does not support in-memory filtering");
-		List<Entry> entries = queryForEntries(query,getStoreTransaction(tx));
+		List<Entry> entries = queryForEntries(query,getBackendTransaction(tx));
 		
         InternalTitanVertex node = query.getNode();
 		TitanType titanType = null;
@@ -319,12 +463,40 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
             compiledQuery.removeLimit();
         }
 
-        List<Entry> entries = queryForEntries(compiledQuery,getStoreTransaction(tx));
+        Iterable<Entry> entries;
+        if (compiledQuery.hasLimit() || pageSize==0) entries = queryForEntries(compiledQuery,getBackendTransaction(tx));
+        else entries = streamForEntries(compiledQuery,getBackendTransaction(tx));
         VertexRelationLoader loader = new StandardVertexRelationLoader(compiledQuery.getNode());
         loadRelations(entries,loader,tx);
         compiledQuery.getNode().loadedEdges(compiledQuery);
     }
     
+    @Override
+    public void loadRelations(AtomicQuery query, List<InternalTitanVertex> vertices, InternalTitanTransaction tx) {
+        AtomicQuery compiledQuery = query.clone();
+        if (compiledQuery.hasLimit() && compiledQuery.hasConstraints() && !QueryUtil.queryCoveredByDiskIndexes(compiledQuery)) {
+            compiledQuery.removeLimit();
+        }
+
+        BackendTransaction btx = getBackendTransaction(tx);
+        for (int from=0;from<vertices.size();from+=maxMultiQueryKeys) {
+            List<InternalTitanVertex> batch = vertices.subList(from,Math.min(vertices.size(),from+maxMultiQueryKeys));
+            List<ByteBuffer> keys = new ArrayList<ByteBuffer>(batch.size());
+            for (InternalTitanVertex vertex : batch) keys.add(IDHandler.getKey(vertex.getID()));
+
+            Map<ByteBuffer,List<Entry>> entries = queryForEntries(compiledQuery,keys,btx);
+            for (int i=0;i<batch.size();i++) {
+                InternalTitanVertex vertex = batch.get(i);
+                //Synchronize with AbstractTitanVertex#ensureLoadedEdges(AtomicQuery) to not load relations twice
+                synchronized (vertex) {
+                    if (vertex.hasLoadedEdges(compiledQuery)) continue;
+                    loadRelations(entries.get(keys.get(i)),new StandardVertexRelationLoader(vertex),tx);
+                    vertex.loadedEdges(compiledQuery);
+                }
+            }
+        }
+    }
+    
     protected void loadRelations(Iterable<Entry> entries, VertexRelationLoader loader, InternalTitanTransaction tx) {
         Map<String,TitanType> etCache = new HashMap<String,TitanType>();
         TitanType titanType = null;
@@ -465,11 +637,153 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
         return dirs;
     }
 
-	private List<Entry> queryForEntries(AtomicQuery query, StoreTransaction txh) {
+	private List<Entry> queryForEntries(AtomicQuery query, BackendTransaction btx) {
 		ByteBuffer key = IDHandler.getKey(query.getVertexID());
 		List<Entry> entries = null;
 		LimitTracker limit = new LimitTracker(query);
-		
+
+        for (ColumnSlice slice : getColumnSlices(query)) {
+            if (limit.limitExhausted()) break;
+            entries = appendResults(key,slice.start,slice.end,entries,limit,btx);
+        }
+
+		if (entries==null) return ImmutableList.of();
+		else return entries;
+	}
+
+    /**
+     * Returns the entries matching the given query which are retrieved lazily from the storage backend
+     * in pages of the configured size while iterating. Only applicable to queries without limit and if a page size
+     * has been configured.
+     * This bounds the size of each backend read and of the raw entries held at a time, however, the relations
+     * constructed from the entries are added to the vertex and hence remain in memory for the transaction.
+     *
+     * @param query
+     * @param btx
+     * @return
+     */
+    private Iterable<Entry> streamForEntries(AtomicQuery query, final BackendTransaction btx) {
+        assert !query.hasLimit() && pageSize>0;
+        final ByteBuffer key = IDHandler.getKey(query.getVertexID());
+        final List<ColumnSlice> slices = getColumnSlices(query);
+        return new Iterable<Entry>() {
+            @Override
+            public Iterator<Entry> iterator() {
+                return new PagedEntryIterator(key,slices.iterator(),btx);
+            }
+        };
+    }
+
+    /**
+     * Iterates over the entries of all given column slices for a key by retrieving each slice in pages.
+     * Temporary failures while retrieving a page are retried like any other read.
+     */
+    private class PagedEntryIterator implements Iterator<Entry> {
+
+        private final ByteBuffer key;
+        private final Iterator<ColumnSlice> slices;
+        private final BackendTransaction btx;
+
+        private RecordIterator<Entry> current;
+
+        PagedEntryIterator(ByteBuffer key, Iterator<ColumnSlice> slices, BackendTransaction btx) {
+            this.key=key;
+            this.slices=slices;
+            this.btx=btx;
+            this.current=null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            for (int readAttempt=0;readAttempt<maxReadRetryAttempts;readAttempt++) {
+                try {
+                    while (current==null || !current.hasNext()) {
+                        if (!slices.hasNext()) return false;
+                        ColumnSlice slice = slices.next();
+                        current = new PagedSliceIterator(edgeStore,key,slice.start,slice.end,pageSize,btx.getStoreTransactionHandle());
+                    }
+                    return true;
+                } catch (StorageException e) {
+                    if (e instanceof TemporaryStorageException) {
+                        if (!retryTemporaryFailure(e,readAttempt,maxReadRetryAttempts,btx))
+                            throw readException(e,readAttempt+1);
+                    } else throw readException(e);
+                }
+            }
+            throw new AssertionError("Illegal program state");
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            try {
+                return current.next();
+            } catch (StorageException e) {
+                throw readException(e);
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Retrieves the entries matching the given query for all of the given keys. The vertex of the query is ignored
+     * and the query only determines the column slices to retrieve, each of which is fetched for all keys at once.
+     *
+     * @param query Query defining the column slices to retrieve
+     * @param keys Keys of the vertices to retrieve the entries for
+     * @param btx Transaction
+     * @return Map from each of the given keys to its matching entries
+     */
+    private Map<ByteBuffer,List<Entry>> queryForEntries(AtomicQuery query, List<ByteBuffer> keys, BackendTransaction btx) {
+        Map<ByteBuffer,List<Entry>> entries = new HashMap<ByteBuffer,List<Entry>>(keys.size());
+        Map<ByteBuffer,LimitTracker> limits = new HashMap<ByteBuffer,LimitTracker>(keys.size());
+        for (ByteBuffer key : keys) {
+            entries.put(key,new ArrayList<Entry>());
+            limits.put(key,new LimitTracker(query));
+        }
+
+        List<ByteBuffer> remainingKeys = keys;
+        for (ColumnSlice slice : getColumnSlices(query)) {
+            //Only retrieve keys whose limit has not been exhausted by previous slices
+            List<ByteBuffer> sliceKeys = new ArrayList<ByteBuffer>(remainingKeys.size());
+            int maxLimit = 0;
+            for (ByteBuffer key : remainingKeys) {
+                LimitTracker limit = limits.get(key);
+                if (!limit.limitExhausted()) {
+                    sliceKeys.add(key);
+                    maxLimit = Math.max(maxLimit,limit.getLimit());
+                }
+            }
+            if (sliceKeys.isEmpty()) break;
+            remainingKeys = sliceKeys;
+
+            Map<ByteBuffer,List<Entry>> results = getSlices(sliceKeys,slice.start,slice.end,maxLimit,btx);
+            for (ByteBuffer key : sliceKeys) {
+                List<Entry> result = results.get(key);
+                if (result==null || result.isEmpty()) continue;
+                LimitTracker limit = limits.get(key);
+                if (result.size()>limit.getLimit()) result = result.subList(0,limit.getLimit());
+                limit.retrieved(result.size());
+                entries.get(key).addAll(result);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Determines the column slices that need to be retrieved from a vertex's row in the edge store
+     * to answer the given query. The slices are returned in the order in which they are to be retrieved.
+     *
+     * @param query
+     * @return List of column slices
+     */
+    private List<ColumnSlice> getColumnSlices(AtomicQuery query) {
+        List<ColumnSlice> slices = new ArrayList<ColumnSlice>(4);
+
         boolean dirs[] = getAllowedDirections(query);
         
 		if (query.hasEdgeTypeCondition()) {
@@ -540,7 +854,7 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
                                         if (interval.endInclusive())
                                             endColumn = ByteBufferUtil.nextBiggerBuffer(endColumn);
 
-                                        entries = appendResults(key,startColumn,endColumn,entries,limit,txh);
+                                        slices.add(new ColumnSlice(startColumn,endColumn));
                                         break; //redundant, this must be the last iteration because its a range
                                     }
                                 } else {
@@ -551,10 +865,10 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
                                     if (isRange) VariableLong.writePositive(end,id);
                                 }
                             }
-                            if (!isRange) entries = appendResults(key,start.getByteBuffer(),entries,limit,txh);
+                            if (!isRange) slices.add(new ColumnSlice(start.getByteBuffer()));
                         } else {
                             ByteBuffer columnStart = IDHandler.getEdgeType(et.getID(),dirID,idManager);
-                            entries = appendResults(key,columnStart,entries,limit,txh);
+                            slices.add(new ColumnSlice(columnStart));
                         }
                         
                     }
@@ -565,7 +879,7 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
             for (int dirID=0;dirID<4;dirID++) {
                 if (dirs[dirID]) {
                     ByteBuffer columnStart = IDHandler.getEdgeTypeGroup(groupid,dirID,idManager);
-                    entries = appendResults(key,columnStart,entries,limit,txh);
+                    slices.add(new ColumnSlice(columnStart));
                 }
             }
 		} else {
@@ -574,7 +888,7 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
                 if ( (dirID>=4 || !dirs[dirID]) && lastDirID>=0) {
                     ByteBuffer columnStart = IDHandler.getEdgeTypeGroup(0,lastDirID,idManager);
                     ByteBuffer columnEnd = IDHandler.getEdgeTypeGroup(idManager.getMaxGroupID()+1,dirID-1,idManager);
-                    entries = appendResults(key,columnStart,columnEnd,entries,limit,txh);
+                    slices.add(new ColumnSlice(columnStart,columnEnd));
                     lastDirID = -1;
                 }
                 if (dirID<4) {
@@ -582,29 +896,37 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
                 }
             }
 		}
-
-		if (entries==null) return ImmutableList.of();
-		else return entries;
+        return slices;
 	}
 
-    private List<Entry> appendResults(ByteBuffer key, ByteBuffer columnPrefix,
-                                      List<Entry> entries, LimitTracker limit, StoreTransaction txh) {
-        return appendResults(key,columnPrefix,ByteBufferUtil.nextBiggerBuffer(columnPrefix),entries,limit,txh);
+    private static class ColumnSlice {
+
+        final ByteBuffer start;
+        final ByteBuffer end;
+
+        ColumnSlice(ByteBuffer start, ByteBuffer end) {
+            this.start=start;
+            this.end=end;
+        }
+
+        ColumnSlice(ByteBuffer columnPrefix) {
+            this(columnPrefix,ByteBufferUtil.nextBiggerBuffer(columnPrefix));
+        }
+
     }
 
     private List<Entry> appendResults(ByteBuffer key, ByteBuffer columnStart, ByteBuffer columnEnd,
-                                      List<Entry> entries, LimitTracker limit, StoreTransaction txh) {
-		if (limit.limitExhausted()) return null;
+                                      List<Entry> entries, LimitTracker limit, BackendTransaction btx) {
 		List<Entry> results = null;
         
         for (int readAttempt=0;readAttempt<maxReadRetryAttempts;readAttempt++) {
             try {
-                results = edgeStore.getSlice(key, columnStart, columnEnd, limit.getLimit(), txh);
+                results = edgeStore.getSlice(key, columnStart, columnEnd, limit.getLimit(), btx.getStoreTransactionHandle());
                 break;
             } catch (StorageException e) {
                 if (e instanceof TemporaryStorageException) {
-                    if (readAttempt<maxReadRetryAttempts-1) temporaryStorageException(e);
-                    else throw readException(e,maxReadRetryAttempts);
+                    if (!retryTemporaryFailure(e,readAttempt,maxReadRetryAttempts,btx))
+                        throw readException(e,readAttempt+1);
                 } else throw readException(e);
             }
         }
@@ -618,6 +940,21 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
 		}
 	}
 
+    private Map<ByteBuffer,List<Entry>> getSlices(List<ByteBuffer> keys, ByteBuffer columnStart, ByteBuffer columnEnd,
+                                                  int limit, BackendTransaction btx) {
+        for (int readAttempt=0;readAttempt<maxReadRetryAttempts;readAttempt++) {
+            try {
+                return edgeStore.getSlice(keys, columnStart, columnEnd, limit, btx.getStoreTransactionHandle());
+            } catch (StorageException e) {
+                if (e instanceof TemporaryStorageException) {
+                    if (!retryTemporaryFailure(e,readAttempt,maxReadRetryAttempts,btx))
+                        throw readException(e,readAttempt+1);
+                } else throw readException(e);
+            }
+        }
+        throw new AssertionError("Illegal program state");
+    }
+
     // ################### WRITE #########################
 	
     @Override
@@ -754,8 +1091,8 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
             break;
         } catch (Throwable e) {
             if (e instanceof TemporaryStorageException) {
-                if (saveAttempt<maxWriteRetryAttempts-1) temporaryStorageException(e);
-                else throw new PermanentStorageException("Tried committing "+ maxWriteRetryAttempts +" times on temporary exception without success",e);
+                if (!retryTemporaryFailure(e,saveAttempt,maxWriteRetryAttempts,getBackendTransaction(tx)))
+                    throw new PermanentStorageException("Tried committing "+ (saveAttempt+1) +" times on temporary exception without success",e);
             } else if (e instanceof StorageException) {
                 throw (StorageException)e;
             } else {
@@ -808,7 +1145,9 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
                 }
 
 			}
-			mutator.mutateEdges(IDHandler.getKey(node.getID()), additions, deletions);
+            ByteBuffer key = IDHandler.getKey(node.getID());
+            if (keyFilter!=null && !additions.isEmpty()) keyFilter.addVertexKey(key);
+			mutator.mutateEdges(key, additions, deletions);
             //Persist property index for retrieval
             for (TitanProperty prop : properties) {
                 addIndexEntry(prop, mutator);
@@ -1017,11 +1356,13 @@ public class StandardTitanGraph extends TitanBlueprintsGraph implements Internal
 		TitanKey pt = prop.getPropertyKey();
 		assert pt.isSimple();
 		if (pt.hasIndex()) {
+            ByteBuffer indexKey = getIndexKey(prop.getAttribute());
+            if (keyFilter!=null) keyFilter.addIndexKey(indexKey);
             if (pt.isUnique()) {
-                mutator.mutateVertexIndex(getIndexKey(prop.getAttribute()),
+                mutator.mutateVertexIndex(indexKey,
                         Lists.newArrayList(new Entry(getKeyedIndexColumn(pt), getIndexValue(prop))), null);
             } else {
-                mutator.mutateVertexIndex(getIndexKey(prop.getAttribute()),
+                mutator.mutateVertexIndex(indexKey,
                         Lists.newArrayList(new Entry(getIndexColumn(pt, prop.getID()), getIndexValue(prop))), null);
             }
 		}
@@ -0,0 +1,82 @@
+package com.thinkaurelius.titan.graphdb.database.idassigner;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Adapts the size of id blocks to the rate at which ids are consumed in each partition, such that an
+ * {@link IDPool} needs to renew its block roughly once per target renewal interval.
+ *
+ * The pools report their consumption through {@link #consumed(int, long, long)}. Starting from the block size of
+ * the given base sizer, blocks grow by at most a factor of {@link #MAX_GROWTH} and shrink by at most a factor of
+ * {@link #MAX_SHRINK} per renewal. Block sizes are bounded to within a factor of {@link #MAX_SCALE} of the base
+ * block size, but are not shrunk below {@link #MIN_BLOCK_SIZE} unless the base block size is smaller.
+ *
+ * Block sizes differ between instances. Hence, the {@link com.thinkaurelius.titan.diskstorage.IDAuthority} must
+ * detect contending claims on overlapping id ranges of different lengths.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class AdaptiveIDBlockSizer implements IDBlockSizer {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveIDBlockSizer.class);
+
+    public static final int MAX_GROWTH = 8;
+    public static final int MAX_SHRINK = 2;
+    public static final int MAX_SCALE = 100;
+    public static final long MIN_BLOCK_SIZE = 100;
+
+    private final IDBlockSizer baseSizer;
+    private final long renewalInterval;
+
+    private final ConcurrentMap<Integer,Long> blockSizes;
+
+    /**
+     * @param baseSizer Sizer determining the initial block size of each partition
+     * @param renewalInterval Targeted time in milliseconds between two block renewals of a partition
+     */
+    public AdaptiveIDBlockSizer(IDBlockSizer baseSizer, long renewalInterval) {
+        Preconditions.checkNotNull(baseSizer);
+        Preconditions.checkArgument(renewalInterval>0,"Renewal interval must be positive");
+        this.baseSizer = baseSizer;
+        this.renewalInterval = renewalInterval;
+        this.blockSizes = new ConcurrentHashMap<Integer,Long>();
+    }
+
+    @Override
+    public long getBlockSize(int partitionID) {
+        Long size = blockSizes.get(partitionID);
+        if (size==null) return baseSizer.getBlockSize(partitionID);
+        return size;
+    }
+
+    /**
+     * Records that the given number of ids have been consumed from the given partition in the given time.
+     *
+     * @param partitionID
+     * @param numIDs Number of consumed ids
+     * @param time Time in milliseconds it took to consume the ids
+     */
+    public void consumed(int partitionID, long numIDs, long time) {
+        if (numIDs<=0) return;
+        long baseSize = baseSizer.getBlockSize(partitionID);
+        long minSize = Math.max(baseSize/MAX_SCALE,Math.min(baseSize,MIN_BLOCK_SIZE));
+        long maxSize = baseSize*MAX_SCALE;
+
+        long current = getBlockSize(partitionID);
+        double rate = ((double)numIDs)/Math.max(1,time);
+        long target = (long)Math.min(Long.MAX_VALUE/2,Math.ceil(rate*renewalInterval));
+        long size = Math.max(current/MAX_SHRINK,Math.min(current*MAX_GROWTH,target));
+        size = Math.max(minSize,Math.min(maxSize,size));
+        if (size!=current) {
+            log.debug("Adjusted id block size of partition {} from {} to {}",new Object[]{partitionID,current,size});
+            blockSizes.put(partitionID,size);
+        }
+    }
+
+}
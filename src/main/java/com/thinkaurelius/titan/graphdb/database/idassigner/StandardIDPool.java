@@ -1,13 +1,30 @@
 package com.thinkaurelius.titan.graphdb.database.idassigner;
 
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.thinkaurelius.titan.core.TitanException;
 import com.thinkaurelius.titan.diskstorage.IDAuthority;
 import com.thinkaurelius.titan.diskstorage.StorageException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
+ * Hands out the ids of the current block through an atomic increment and keeps a configurable number of
+ * id blocks prefetched from the {@link IDAuthority}. Prefetching runs on an executor which may be shared between pools.
+ * Only switching to the next block is synchronized. If no prefetched block is available at that point,
+ * the caller waits up to the renewal timeout for one to arrive and failed renewals are retried in the meantime.
+ *
  * (c) Matthias Broecheler (me@matthiasb.com)
  */
 
@@ -16,148 +33,250 @@ public class StandardIDPool implements IDPool {
     private static final Logger log =
             LoggerFactory.getLogger(StandardIDPool.class);
 
-    private static final long BUFFER_EMPTY = -1;
-    private static final long BUFFER_POOL_EXHAUSTION = -100;
-    
-    private static final int RENEW_ID_COUNT = 100;
-    
-    private static final int MAX_WAIT_TIME = 2000;
-    
+    public static final int DEFAULT_PREFETCH_BLOCKS = 1;
+    public static final long DEFAULT_RENEW_TIMEOUT = 60000;
+
+    private static final long POLL_WAIT_TIME = 100;
+    private static final long CLOSE_WAIT_TIME = 5000;
+
     private final IDAuthority idAuthority;
     private final long maxID; //inclusive
     private final int partitionID;
-        
-    private long nextID;
-    private long currentMaxID;
-    private long renewBufferID;
-    
-    private volatile long bufferNextID;
-    private volatile long bufferMaxID;
-    private Thread idBlockRenewer;
-
-    private boolean initialized;
-    
+    private final AdaptiveIDBlockSizer blockSizer;
+    private final ExecutorService renewalExecutor;
+    private final boolean ownsExecutor;
+    private final int prefetchBlocks;
+    private final long renewTimeout;
+
+    private volatile IDBlock currentBlock;
+    private final BlockingQueue<IDBlock> prefetched;
+    private final AtomicBoolean renewing;
+    private volatile IDBlockRenewer renewer;
+
+    private volatile boolean exhausted;
+    private volatile Throwable renewalFailure;
+    private volatile boolean closed;
+
     public StandardIDPool(IDAuthority idAuthority, long partitionID, long maximumID) {
+        this(idAuthority,partitionID,maximumID,null,null,DEFAULT_PREFETCH_BLOCKS,DEFAULT_RENEW_TIMEOUT);
+    }
+
+    /**
+     * @param idAuthority
+     * @param partitionID
+     * @param maximumID
+     * @param blockSizer Sizer to report the consumption of ids to, or null if the block size is not adaptive
+     * @param renewalExecutor Executor to prefetch id blocks on, or null to use a dedicated thread for this pool
+     * @param prefetchBlocks Number of id blocks to keep prefetched beyond the current block
+     * @param renewTimeout Maximum time in milliseconds to wait for an id block
+     */
+    public StandardIDPool(IDAuthority idAuthority, long partitionID, long maximumID, AdaptiveIDBlockSizer blockSizer,
+                          ExecutorService renewalExecutor, int prefetchBlocks, long renewTimeout) {
         Preconditions.checkArgument(maximumID>0);
+        Preconditions.checkArgument(prefetchBlocks>0,"Need to prefetch at least one block");
+        Preconditions.checkArgument(renewTimeout>0,"Renewal timeout must be positive");
         this.idAuthority = idAuthority;
         this.partitionID=(int)partitionID;
         this.maxID = maximumID;
+        this.blockSizer = blockSizer;
+        this.prefetchBlocks = prefetchBlocks;
+        this.renewTimeout = renewTimeout;
+        if (renewalExecutor==null) {
+            this.renewalExecutor = Executors.newSingleThreadExecutor(
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("titan-id-renewal-"+this.partitionID+"-%d").build());
+            this.ownsExecutor = true;
+        } else {
+            this.renewalExecutor = renewalExecutor;
+            this.ownsExecutor = false;
+        }
 
-        nextID = 0;
-        currentMaxID = 0;
-        renewBufferID = 0;
-        
-        bufferNextID = BUFFER_EMPTY;
-        bufferMaxID = BUFFER_EMPTY;
-        idBlockRenewer = null;
+        currentBlock = IDBlock.EMPTY;
+        prefetched = new LinkedBlockingQueue<IDBlock>();
+        renewing = new AtomicBoolean(false);
 
-        initialized=false;
-    }
-    
-    private synchronized void nextBlock() throws InterruptedException {
-        assert nextID == currentMaxID;
-        
-        long time = System.currentTimeMillis();
-        if (idBlockRenewer!=null && idBlockRenewer.isAlive()) {
-            //Updating thread has not yet completed, so wait for it
-            log.debug("Waiting for id renewal thread");
-            idBlockRenewer.join(MAX_WAIT_TIME);
-            if (idBlockRenewer.isAlive()) throw new IllegalStateException("ID renewal thread did not complete in time.");
-        }
-        if (bufferMaxID==BUFFER_POOL_EXHAUSTION || bufferNextID==BUFFER_POOL_EXHAUSTION)
-            throw new IDPoolExhaustedException("Exhausted ID Pool for partition: " + partitionID);
-
-        Preconditions.checkArgument(bufferMaxID>0,bufferMaxID);
-        Preconditions.checkArgument(bufferNextID>0,bufferNextID);
-        
-        nextID = bufferNextID;
-        currentMaxID = bufferMaxID;
-        
-        log.debug("[{}] Next/Max ID: {}",partitionID,new long[]{nextID, currentMaxID});
-
-        assert nextID>0 && currentMaxID >nextID;
-        
-        bufferNextID = BUFFER_EMPTY;
-        bufferMaxID = BUFFER_EMPTY;
-        
-        renewBufferID = currentMaxID - Math.max(RENEW_ID_COUNT, (currentMaxID - nextID)/5);
-        if (renewBufferID>= currentMaxID) renewBufferID = currentMaxID -1;
-        if (renewBufferID<nextID) renewBufferID = nextID;
-        assert renewBufferID>=nextID && renewBufferID< currentMaxID;
-    }
-    
-    private void renewBuffer() {
-        Preconditions.checkArgument(bufferNextID==BUFFER_EMPTY,bufferNextID);
-        Preconditions.checkArgument(bufferMaxID==BUFFER_EMPTY,bufferMaxID);
-        try {
-            long[] idblock = idAuthority.getIDBlock(partitionID);
-            bufferNextID = idblock[0];
-            bufferMaxID = idblock[1];
-            Preconditions.checkArgument(bufferNextID>0,bufferNextID);
-            Preconditions.checkArgument(bufferMaxID>bufferNextID,bufferMaxID);
-        } catch (StorageException e) {
-            throw new TitanException("Could not acquire new ID block from storage",e);
-        } catch (IDPoolExhaustedException e) {
-            bufferNextID=BUFFER_POOL_EXHAUSTION;
-            bufferMaxID=BUFFER_POOL_EXHAUSTION;
-        }
+        exhausted = false;
+        renewalFailure = null;
+        closed = false;
     }
 
     @Override
-    public synchronized long nextID() {
-        assert nextID<= currentMaxID;
-        if (!initialized) {
-            renewBuffer();
-            initialized=true;
+    public long nextID() {
+        while (true) {
+            IDBlock block = currentBlock;
+            long id = block.nextID.getAndIncrement();
+            if (id<block.maxID) {
+                if (id>maxID) throw new IDPoolExhaustedException("Exhausted max id of " + maxID);
+                log.trace("[{}] Returned id: {}",partitionID,id);
+                return id;
+            }
+            nextBlock(block);
         }
+    }
 
-        if (nextID== currentMaxID) {
+    private synchronized void nextBlock(IDBlock exhaustedBlock) {
+        //Another thread has already switched to the next block
+        if (currentBlock!=exhaustedBlock) return;
+        Preconditions.checkState(!closed,"ID pool has been closed for partition: " + partitionID);
+
+        IDBlock next = prefetched.poll();
+        if (next==null) {
+            log.debug("Waiting for id block renewal in partition {}",partitionID);
+            long deadline = System.currentTimeMillis()+renewTimeout;
+            Throwable lastFailure = null;
             try {
-                nextBlock();
+                while (next==null) {
+                    if (exhausted) {
+                        next = prefetched.poll();
+                        if (next==null) throw new IDPoolExhaustedException("Exhausted ID Pool for partition: " + partitionID);
+                        break;
+                    }
+                    Throwable failure = renewalFailure;
+                    if (failure!=null) {
+                        //Retry the failed renewal below until the deadline has passed
+                        renewalFailure = null;
+                        lastFailure = failure;
+                    }
+                    startRenewal();
+                    long waitTime = deadline-System.currentTimeMillis();
+                    if (waitTime<=0)
+                        throw new TitanException("Could not acquire new ID block for partition "+partitionID+" within "+renewTimeout+" ms",lastFailure);
+                    next = prefetched.poll(Math.min(waitTime,POLL_WAIT_TIME),TimeUnit.MILLISECONDS);
+                }
             } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
                 throw new TitanException("Could not renew id block due to interruption",e);
             }
         }
 
-        if (nextID == renewBufferID) {
-            Preconditions.checkArgument(idBlockRenewer==null || !idBlockRenewer.isAlive(),idBlockRenewer);
-            //Renew buffer
-            log.debug("Starting id block renewal thread upon {}",nextID);
-            idBlockRenewer = new IDBlockThread();
-            idBlockRenewer.start();
+        long time = System.currentTimeMillis();
+        if (blockSizer!=null && exhaustedBlock!=IDBlock.EMPTY)
+            blockSizer.consumed(partitionID,exhaustedBlock.maxID-exhaustedBlock.minID,time-exhaustedBlock.startTime);
+        next.startTime = time;
+        currentBlock = next;
+        log.debug("[{}] Next/Max ID: {}",partitionID,new long[]{next.minID, next.maxID});
+        startRenewal();
+    }
+
+    /**
+     * Adds id blocks which have been acquired on behalf of this pool, for instance together with the blocks of other pools.
+     *
+     * @param idblocks Blocks as returned by {@link IDAuthority#getIDBlocks(java.util.Map)}
+     */
+    public void addBlocks(long[][] idblocks) {
+        //Like prefetched blocks, blocks added after closing are never used
+        if (closed) return;
+        for (long[] idblock : idblocks) {
+            Preconditions.checkArgument(idblock[0]>0,idblock[0]);
+            Preconditions.checkArgument(idblock[1]>idblock[0],idblock[1]);
+            prefetched.add(new IDBlock(idblock[0],idblock[1]));
         }
-        long returnId = nextID;
-        nextID++;
-        if (returnId>maxID) throw new IDPoolExhaustedException("Exhausted max id of " + maxID);
-        log.trace("[{}] Returned id: {}",partitionID,returnId);
-        return returnId;
     }
 
-    @Override
-    public synchronized void close() {
-        if (idBlockRenewer!=null && idBlockRenewer.isAlive()) {
-            log.debug("ID renewal thread still alive on close");
+    private void startRenewal() {
+        if (closed || exhausted || prefetched.size()>=prefetchBlocks) return;
+        if (!renewing.compareAndSet(false,true)) return;
+        try {
+            renewer = new IDBlockRenewer();
+            renewalExecutor.execute(renewer);
+        } catch (RejectedExecutionException e) {
+            renewalFailure = e;
+            finishedRenewal();
+        }
+    }
 
-            //Wait for renewer to finish
-            try {
-                idBlockRenewer.join(5000);
-            } catch (InterruptedException e) {
-                throw new TitanException("Interrupted while waiting for id renewer thread to finish",e);
-            }
-            if (idBlockRenewer.isAlive()) {
-                throw new TitanException("ID renewer thread did not finish");
+    private void finishedRenewal() {
+        synchronized (renewing) {
+            renewing.set(false);
+            renewing.notifyAll();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        //A renewal which is still queued behind those of other pools on a shared executor is skipped
+        IDBlockRenewer queued = renewer;
+        if (queued!=null && queued.cancel()) finishedRenewal();
+        long deadline = System.currentTimeMillis()+CLOSE_WAIT_TIME;
+        synchronized (renewing) {
+            while (renewing.get()) {
+                long waitTime = deadline-System.currentTimeMillis();
+                if (waitTime<=0) {
+                    //The renewal discards its blocks once it completes since the pool has been closed
+                    log.warn("ID renewal for partition {} did not finish within {} ms of closing",partitionID,CLOSE_WAIT_TIME);
+                    break;
+                }
+                log.debug("ID renewal still running on close");
+                try {
+                    renewing.wait(waitTime);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new TitanException("Interrupted while waiting for id renewal to finish",e);
+                }
             }
         }
+        if (ownsExecutor) renewalExecutor.shutdown();
     }
 
-    private class IDBlockThread extends Thread {
+    private class IDBlockRenewer implements Runnable {
+
+        private static final int QUEUED = 0;
+        private static final int RUNNING = 1;
+        private static final int CANCELLED = 2;
+
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        /**
+         * @return true if the renewal had not started and will not run
+         */
+        private boolean cancel() {
+            return state.compareAndSet(QUEUED,CANCELLED);
+        }
 
         @Override
         public void run() {
-            renewBuffer();
-            log.debug("Finishing id renewal thread");
+            if (!state.compareAndSet(QUEUED,RUNNING)) return;
+            try {
+                while (!closed && prefetched.size()<prefetchBlocks) {
+                    int missing = prefetchBlocks-prefetched.size();
+                    if (missing==1) {
+                        addBlocks(new long[][]{idAuthority.getIDBlock(partitionID)});
+                    } else {
+                        //Acquire all missing blocks at once
+                        addBlocks(idAuthority.getIDBlocks(Collections.singletonMap(partitionID,missing)).get(partitionID));
+                    }
+                    renewalFailure = null;
+                }
+            } catch (IDPoolExhaustedException e) {
+                exhausted = true;
+            } catch (StorageException e) {
+                log.warn("Could not acquire new ID block from storage",e);
+                renewalFailure = e;
+            } catch (RuntimeException e) {
+                log.error("Could not acquire new ID block",e);
+                renewalFailure = e;
+            } finally {
+                finishedRenewal();
+            }
+            log.debug("Finishing id renewal for partition {}",partitionID);
         }
 
     }
 
+    private static class IDBlock {
+
+        private static final IDBlock EMPTY = new IDBlock(0,0);
+
+        private final long minID;
+        private final long maxID; //exclusive
+        private final AtomicLong nextID;
+        private volatile long startTime;
+
+        private IDBlock(long minID, long maxID) {
+            this.minID = minID;
+            this.maxID = maxID;
+            this.nextID = new AtomicLong(minID);
+        }
+    }
+
 }
@@ -5,14 +5,18 @@ import cern.colt.list.ObjectArrayList;
 import cern.colt.map.AbstractIntObjectMap;
 import cern.colt.map.OpenIntObjectHashMap;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.thinkaurelius.titan.core.TitanLabel;
 import com.thinkaurelius.titan.core.TitanType;
 import com.thinkaurelius.titan.core.TitanKey;
 import com.thinkaurelius.titan.diskstorage.IDAuthority;
+import com.thinkaurelius.titan.diskstorage.StorageException;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreFeatures;
 import com.thinkaurelius.titan.graphdb.configuration.GraphDatabaseConfiguration;
 import com.thinkaurelius.titan.graphdb.database.idassigner.placement.DefaultPlacementStrategy;
 import com.thinkaurelius.titan.graphdb.database.idassigner.placement.IDPlacementStrategy;
+import com.thinkaurelius.titan.graphdb.database.idassigner.placement.NeighbourAwarePlacementStrategy;
+import com.thinkaurelius.titan.graphdb.database.idassigner.placement.NeighbourPlacementStrategy;
 import com.thinkaurelius.titan.graphdb.database.idassigner.placement.PartitionAssignment;
 import com.thinkaurelius.titan.graphdb.database.idassigner.placement.SimpleBulkPlacementStrategy;
 import com.thinkaurelius.titan.graphdb.relations.InternalRelation;
@@ -25,8 +29,12 @@ import org.slf4j.LoggerFactory;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -46,6 +54,10 @@ public class VertexIDAssigner {
     final ReadWriteLock idPoolsLock;
 
 	private final IDAuthority idAuthority;
+    private final AdaptiveIDBlockSizer adaptiveBlockSizer;
+    private final ExecutorService renewalExecutor;
+    private final int prefetchBlocks;
+    private final long renewTimeout;
     private final IDManager idManager;
     private final IDPlacementStrategy placementStrategy;
 
@@ -66,22 +78,51 @@ public class VertexIDAssigner {
             //Use a placement strategy that balances partitions
             partitionBits=DEFAULT_PARTITION_BITS;
             hasLocalPartitions = idAuthFeatures.hasLocalKeyPartition();
-            placementStrategy = new SimpleBulkPlacementStrategy(config);
         } else {
             if (idAuthFeatures.isKeyOrdered() && idAuthFeatures.isDistributed()) log.warn("ID Partitioning is disabled which will likely cause uneven data distribution");
-            //Use the default placement strategy
             partitionBits=0;
             hasLocalPartitions = false;
-            placementStrategy = new DefaultPlacementStrategy(0);
         }
         idManager = new IDManager(partitionBits,groupBits);
+        if (partitionIDs) {
+            String placement = config.getString(GraphDatabaseConfiguration.IDS_PLACEMENT_KEY,GraphDatabaseConfiguration.IDS_PLACEMENT_DEFAULT);
+            if (placement.equalsIgnoreCase("simple")) {
+                //Use a placement strategy that balances partitions
+                placementStrategy = new SimpleBulkPlacementStrategy(config);
+            } else if (placement.equalsIgnoreCase("neighbour")) {
+                //Place vertices with their neighbours while bounding the skew between partitions
+                placementStrategy = new NeighbourPlacementStrategy(config,idManager);
+            } else {
+                throw new IllegalArgumentException("Unknown id placement strategy: " + placement);
+            }
+        } else {
+            //Use the default placement strategy
+            placementStrategy = new DefaultPlacementStrategy(0);
+        }
         Preconditions.checkArgument(idManager.getMaxPartitionID()<=Integer.MAX_VALUE);
         this.maxPartitionID = (int)idManager.getMaxPartitionID();
 
         partitionRelationTypes = false;
         
         long baseBlockSize = config.getLong(GraphDatabaseConfiguration.IDS_BLOCK_SIZE_KEY,GraphDatabaseConfiguration.IDS_BLOCK_SIZE_DEFAULT);
-        idAuthority.setIDBlockSizer(new SimpleVertexIDBlockSizer(baseBlockSize));
+        IDBlockSizer blockSizer = new SimpleVertexIDBlockSizer(baseBlockSize);
+        if (config.getBoolean(GraphDatabaseConfiguration.IDS_BLOCK_SIZE_ADAPTIVE_KEY,GraphDatabaseConfiguration.IDS_BLOCK_SIZE_ADAPTIVE_DEFAULT)) {
+            adaptiveBlockSizer = new AdaptiveIDBlockSizer(blockSizer,
+                    config.getLong(GraphDatabaseConfiguration.IDS_RENEW_INTERVAL_KEY,GraphDatabaseConfiguration.IDS_RENEW_INTERVAL_DEFAULT));
+            blockSizer = adaptiveBlockSizer;
+        } else {
+            adaptiveBlockSizer = null;
+        }
+        idAuthority.setIDBlockSizer(blockSizer);
+
+        prefetchBlocks = config.getInt(GraphDatabaseConfiguration.IDS_PREFETCH_BLOCKS_KEY,GraphDatabaseConfiguration.IDS_PREFETCH_BLOCKS_DEFAULT);
+        Preconditions.checkArgument(prefetchBlocks>0,"Need to prefetch at least one id block");
+        renewTimeout = config.getLong(GraphDatabaseConfiguration.IDS_RENEW_TIMEOUT_KEY,GraphDatabaseConfiguration.IDS_RENEW_TIMEOUT_DEFAULT);
+        Preconditions.checkArgument(renewTimeout>0,"Id renewal timeout must be positive");
+        int renewThreads = config.getInt(GraphDatabaseConfiguration.IDS_RENEW_THREADS_KEY,GraphDatabaseConfiguration.IDS_RENEW_THREADS_DEFAULT);
+        Preconditions.checkArgument(renewThreads>0,"Need at least one id renewal thread");
+        renewalExecutor = Executors.newFixedThreadPool(renewThreads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("titan-id-renewal-%d").build());
 
         idPools = new OpenIntObjectHashMap();
         idPoolsLock = new ReentrantReadWriteLock();
@@ -136,6 +177,7 @@ public class VertexIDAssigner {
         } finally {
             idPoolsLock.writeLock().unlock();
         }
+        renewalExecutor.shutdown();
 	}
 
     public void assignID(InternalTitanVertex vertex) {
@@ -186,7 +228,14 @@ public class VertexIDAssigner {
             }
             log.trace("Bulk id assignment for {} vertices",assignments.size());
             for (int attempt=0;attempt<MAX_PARTITION_RENEW_ATTEMPTS && (assignments!=null && !assignments.isEmpty());attempt++) {
-                placementStrategy.getPartitions(assignments);
+                if (placementStrategy instanceof NeighbourAwarePlacementStrategy) {
+                    ((NeighbourAwarePlacementStrategy)placementStrategy).getPartitions(assignments,addedRelations);
+                } else {
+                    placementStrategy.getPartitions(assignments);
+                }
+                Set<Integer> partitions = new HashSet<Integer>();
+                for (PartitionAssignment assignment : assignments.values()) partitions.add(assignment.getPartitionID());
+                if (partitions.size()>1) initializePools(partitions);
                 Map<InternalTitanVertex,PartitionAssignment> leftOvers = null;
                 Iterator<Map.Entry<InternalTitanVertex,PartitionAssignment>> iter = assignments.entrySet().iterator();
                 while (iter.hasNext()) {
@@ -222,6 +271,50 @@ public class VertexIDAssigner {
         }
     }
 
+    /**
+     * Creates the pools of those given partitions which do not yet have one and acquires the initial vertex
+     * and relation id blocks of all created pools at once. Pools acquire their blocks individually if this fails.
+     *
+     * @param partitions
+     */
+    private void initializePools(Set<Integer> partitions) {
+        Map<Integer,PartitionPool> newPools = new HashMap<Integer,PartitionPool>();
+        idPoolsLock.writeLock().lock();
+        try {
+            for (Integer partitionID : partitions) {
+                if (!idPools.containsKey(partitionID)) {
+                    PartitionPool pool = new PartitionPool(partitionID,idAuthority,idManager,partitionRelationTypes || partitionID==DEFAULT_PARTITION);
+                    idPools.put(partitionID,pool);
+                    newPools.put(partitionID,pool);
+                }
+            }
+        } finally {
+            idPoolsLock.writeLock().unlock();
+        }
+        if (newPools.isEmpty()) return;
+
+        Map<Integer,Integer> numBlocks = new HashMap<Integer,Integer>(newPools.size()*2);
+        for (Integer partitionID : newPools.keySet()) {
+            numBlocks.put(PoolType.VERTEX.getFullPartitionID(partitionID),prefetchBlocks);
+            numBlocks.put(PoolType.RELATION.getFullPartitionID(partitionID),prefetchBlocks);
+        }
+        Map<Integer,long[][]> blocks;
+        try {
+            blocks = idAuthority.getIDBlocks(numBlocks);
+        } catch (StorageException e) {
+            log.warn("Could not acquire initial id blocks for {} partitions: {}",newPools.size(),e);
+            return;
+        } catch (IDPoolExhaustedException e) {
+            log.debug("Exhausted id pool while acquiring initial id blocks: {}",e);
+            return;
+        }
+        log.debug("Acquired initial id blocks for {} partitions",newPools.size());
+        for (Map.Entry<Integer,PartitionPool> entry : newPools.entrySet()) {
+            entry.getValue().vertex.addBlocks(blocks.get(PoolType.VERTEX.getFullPartitionID(entry.getKey())));
+            entry.getValue().relation.addBlocks(blocks.get(PoolType.RELATION.getFullPartitionID(entry.getKey())));
+        }
+    }
+
     private void assignID(final InternalTitanVertex vertex, final long partitionIDl) {
         Preconditions.checkNotNull(vertex);
         Preconditions.checkArgument(!vertex.hasID());
@@ -242,7 +335,7 @@ public class VertexIDAssigner {
                 if (idPools.containsKey(partitionID)) {
                     poolObj = idPools.get(partitionID);
                 } else {
-                    poolObj = new PartitionPool(partitionID,idAuthority, idManager,partitionRelationTypes || partitionID==DEFAULT_PARTITION);
+                    poolObj = new PartitionPool(partitionID,idAuthority,idManager,partitionRelationTypes || partitionID==DEFAULT_PARTITION);
                     idPools.put(partitionID,poolObj);
                 }
             } finally {
@@ -307,19 +400,23 @@ public class VertexIDAssigner {
         }
     }
 
-    private static class PartitionPool {
+    private StandardIDPool newPool(IDAuthority idAuthority, int fullPartitionID, long maximumID) {
+        return new StandardIDPool(idAuthority,fullPartitionID,maximumID,adaptiveBlockSizer,renewalExecutor,prefetchBlocks,renewTimeout);
+    }
+
+    private class PartitionPool {
 
-        final IDPool vertex;
-        final IDPool relation;
-        final IDPool relationType;
+        final StandardIDPool vertex;
+        final StandardIDPool relation;
+        final StandardIDPool relationType;
 
         long lastAccess;
 
         PartitionPool(int partitionID, IDAuthority idAuthority, IDManager idManager, boolean includeRelationType) {
-            vertex = new StandardIDPool(idAuthority,PoolType.VERTEX.getFullPartitionID(partitionID),idManager.getMaxNodeID());
-            relation = new StandardIDPool(idAuthority,PoolType.RELATION.getFullPartitionID(partitionID),idManager.getMaxEdgeID());
+            vertex = newPool(idAuthority,PoolType.VERTEX.getFullPartitionID(partitionID),idManager.getMaxNodeID());
+            relation = newPool(idAuthority,PoolType.RELATION.getFullPartitionID(partitionID),idManager.getMaxEdgeID());
             if (includeRelationType)
-                relationType = new StandardIDPool(idAuthority,PoolType.RELATIONTYPE.getFullPartitionID(partitionID),idManager.getMaxEdgeTypeID());
+                relationType = newPool(idAuthority,PoolType.RELATIONTYPE.getFullPartitionID(partitionID),idManager.getMaxEdgeTypeID());
             else relationType = null;
         }
 
@@ -0,0 +1,25 @@
+package com.thinkaurelius.titan.graphdb.database.idassigner.placement;
+
+import com.thinkaurelius.titan.graphdb.relations.InternalRelation;
+import com.thinkaurelius.titan.graphdb.vertices.InternalTitanVertex;
+
+import java.util.Map;
+
+/**
+ * An {@link IDPlacementStrategy} which takes the relations that connect the vertices into account
+ * when placing vertices in bulk.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public interface NeighbourAwarePlacementStrategy extends IDPlacementStrategy {
+
+    /**
+     * Bulk assignment of idAuthorities to vertices, as for {@link #getPartitions(java.util.Map)}.
+     *
+     * @param vertices Map containing all vertices and their partition placement.
+     * @param addedRelations Relations added in the same transaction as the vertices, in the order they were added
+     */
+    public void getPartitions(Map<InternalTitanVertex,PartitionAssignment> vertices, Iterable<InternalRelation> addedRelations);
+
+}
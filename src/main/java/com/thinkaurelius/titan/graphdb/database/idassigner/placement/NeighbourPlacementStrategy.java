@@ -0,0 +1,193 @@
+package com.thinkaurelius.titan.graphdb.database.idassigner.placement;
+
+import com.google.common.base.Preconditions;
+import com.thinkaurelius.titan.core.TitanType;
+import com.thinkaurelius.titan.graphdb.idmanagement.IDManager;
+import com.thinkaurelius.titan.graphdb.relations.InternalRelation;
+import com.thinkaurelius.titan.graphdb.vertices.InternalTitanVertex;
+import org.apache.commons.configuration.Configuration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Places a new vertex into the partition of the vertex it is first connected to in the same transaction, such
+ * that neighbourhoods end up in the same partition. If that neighbour is new as well, the vertex follows the
+ * placement of the neighbour. Vertices without placed neighbours are placed by a fallback strategy.
+ *
+ * To bound the skew between partitions, a neighbour's partition is not used once it holds more than
+ * {@link #MAX_SKEW_KEY} times the average number of vertices placed per partition. The average is taken over
+ * at least as many partitions as the fallback strategy places vertices into concurrently. Neither is a neighbour's
+ * partition used if it lies outside of the local partition bounds.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class NeighbourPlacementStrategy implements NeighbourAwarePlacementStrategy {
+
+    public static final String MAX_SKEW_KEY = "max-skew";
+    public static final double MAX_SKEW_DEFAULT = 2.0;
+
+    /**
+     * Number of placements before the skew between partitions is enforced
+     */
+    private static final long MIN_SKEW_PLACEMENTS = 1000;
+
+    private final IDPlacementStrategy fallback;
+    private final IDManager idManager;
+    private final double maxSkew;
+    private final int numPartitions;
+
+    private final ConcurrentMap<Integer,AtomicLong> placements;
+    private final AtomicLong totalPlacements;
+    private final Set<Integer> exhaustedPartitions;
+
+    private volatile int lowerPartitionID = 0; //inclusive
+    private volatile int upperPartitionID = -1; //exclusive, no bounds while negative
+
+    /**
+     * @param fallback Strategy to place vertices without placed neighbours
+     * @param idManager
+     * @param maxSkew Maximum ratio between the number of vertices placed into a partition and the average
+     * @param numPartitions Minimum number of partitions to average over
+     */
+    public NeighbourPlacementStrategy(IDPlacementStrategy fallback, IDManager idManager, double maxSkew, int numPartitions) {
+        Preconditions.checkNotNull(fallback);
+        Preconditions.checkNotNull(idManager);
+        Preconditions.checkArgument(fallback.supportsBulkPlacement(),"Fallback strategy must support bulk placement");
+        Preconditions.checkArgument(maxSkew>=1.0,"Maximum skew must be at least 1: %s",maxSkew);
+        Preconditions.checkArgument(numPartitions>0);
+        this.fallback = fallback;
+        this.idManager = idManager;
+        this.maxSkew = maxSkew;
+        this.numPartitions = numPartitions;
+        this.placements = new ConcurrentHashMap<Integer,AtomicLong>();
+        this.totalPlacements = new AtomicLong(0);
+        this.exhaustedPartitions = Collections.newSetFromMap(new ConcurrentHashMap<Integer,Boolean>());
+    }
+
+    public NeighbourPlacementStrategy(Configuration config, IDManager idManager) {
+        this(new SimpleBulkPlacementStrategy(config),idManager,config.getDouble(MAX_SKEW_KEY,MAX_SKEW_DEFAULT),
+                config.getInt(SimpleBulkPlacementStrategy.CONCURRENT_PARTITIONS_KEY,SimpleBulkPlacementStrategy.CONCURRENT_PARTITIONS_DEFAULT));
+    }
+
+    @Override
+    public long getPartition(InternalTitanVertex vertex) {
+        return fallback.getPartition(vertex);
+    }
+
+    @Override
+    public void getPartitions(Map<InternalTitanVertex, PartitionAssignment> vertices) {
+        fallback.getPartitions(vertices);
+        for (PartitionAssignment assignment : vertices.values()) placed(assignment.getPartitionID());
+    }
+
+    @Override
+    public void getPartitions(Map<InternalTitanVertex, PartitionAssignment> vertices, Iterable<InternalRelation> addedRelations) {
+        if (vertices.isEmpty()) return;
+        //Determine the vertex each vertex is first connected to
+        Map<InternalTitanVertex,InternalTitanVertex> neighbours = new HashMap<InternalTitanVertex,InternalTitanVertex>(vertices.size());
+        for (InternalRelation relation : addedRelations) {
+            for (int i=0;i<relation.getArity();i++) {
+                InternalTitanVertex vertex = relation.getVertex(i);
+                if (!vertices.containsKey(vertex) || neighbours.containsKey(vertex)) continue;
+                for (int j=0;j<relation.getArity();j++) {
+                    InternalTitanVertex neighbour = relation.getVertex(j);
+                    if (neighbour!=vertex && !(neighbour instanceof TitanType)) {
+                        neighbours.put(vertex,neighbour);
+                        break;
+                    }
+                }
+            }
+        }
+
+        //Vertices without placed neighbours share one partition, as under the fallback strategy
+        Map<InternalTitanVertex,PartitionAssignment> unplaced = new HashMap<InternalTitanVertex,PartitionAssignment>(1);
+        unplaced.put(vertices.keySet().iterator().next(),PartitionAssignment.EMPTY);
+        fallback.getPartitions(unplaced);
+        int fallbackPartition = unplaced.values().iterator().next().getPartitionID();
+
+        Map<InternalTitanVertex,Integer> resolved = new HashMap<InternalTitanVertex,Integer>(vertices.size());
+        List<InternalTitanVertex> path = new ArrayList<InternalTitanVertex>();
+        Set<InternalTitanVertex> onPath = new HashSet<InternalTitanVertex>();
+        for (Map.Entry<InternalTitanVertex,PartitionAssignment> entry : vertices.entrySet()) {
+            //Follow the chain of first neighbours until reaching a placed vertex
+            int partition = -1;
+            InternalTitanVertex current = entry.getKey();
+            while (current!=null) {
+                Integer p = resolved.get(current);
+                if (p!=null) {
+                    partition = p;
+                    break;
+                } else if (current.hasID()) {
+                    partition = (int)idManager.getPartitionID(current.getID());
+                    if (!isAvailable(partition)) partition = -1;
+                    break;
+                } else if (!vertices.containsKey(current) || onPath.contains(current)) {
+                    break;
+                }
+                path.add(current);
+                onPath.add(current);
+                current = neighbours.get(current);
+            }
+            if (partition<0) partition = fallbackPartition;
+            for (InternalTitanVertex vertex : path) resolved.put(vertex,partition);
+            path.clear();
+            onPath.clear();
+            entry.setValue(new SimplePartitionAssignment(partition));
+            placed(partition);
+        }
+    }
+
+    private boolean isAvailable(int partition) {
+        if (!isLocal(partition) || exhaustedPartitions.contains(partition)) return false;
+        long total = totalPlacements.get();
+        if (total<MIN_SKEW_PLACEMENTS) return true;
+        AtomicLong count = placements.get(partition);
+        return count==null || count.get() <= maxSkew*total/Math.max(numPartitions,placements.size());
+    }
+
+    private boolean isLocal(int partition) {
+        int lower = lowerPartitionID, upper = upperPartitionID;
+        if (upper<0) return true;
+        //The local partition range may wrap around
+        if (lower<upper) return partition>=lower && partition<upper;
+        else return partition>=lower || partition<upper;
+    }
+
+    private void placed(int partition) {
+        AtomicLong count = placements.get(partition);
+        if (count==null) {
+            placements.putIfAbsent(partition,new AtomicLong(0));
+            count = placements.get(partition);
+        }
+        count.incrementAndGet();
+        totalPlacements.incrementAndGet();
+    }
+
+    @Override
+    public boolean supportsBulkPlacement() {
+        return true;
+    }
+
+    @Override
+    public void setLocalPartitionBounds(int lowerID, int upperID, int idLimit) {
+        fallback.setLocalPartitionBounds(lowerID,upperID,idLimit);
+        lowerPartitionID = lowerID;
+        upperPartitionID = upperID;
+    }
+
+    @Override
+    public void exhaustedPartition(int partitionID) {
+        exhaustedPartitions.add(partitionID);
+        fallback.exhaustedPartition(partitionID);
+    }
+}
@@ -0,0 +1,165 @@
+package com.thinkaurelius.titan.graphdb.database.util;
+
+import com.google.common.base.Preconditions;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.RecordIterator;
+import com.thinkaurelius.titan.util.datastructures.BloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Bloom filters over the keys of the edge store (i.e. vertex ids) and the vertex index (i.e. indexed attribute values)
+ * which have been written by this graph instance. A negative answer guarantees that the key does not exist,
+ * provided that this instance is the only one writing to the storage backend. Hence, the filter is only used
+ * with storage backends which are not distributed.
+ *
+ * The filters are written to a file on {@link #close()} and loaded from it on {@link #open}. The file is deleted
+ * once it has been loaded, so that the filters are rebuilt from a key scan if the instance does not shut down
+ * cleanly. Until the filters are complete, all keys are reported as possibly existing.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class StoreKeyFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(StoreKeyFilter.class);
+
+    private final File file;
+    private final long expectedKeys;
+    private final double falsePositiveProbability;
+
+    private BloomFilter vertexKeys;
+    private BloomFilter indexKeys;
+    private volatile boolean complete;
+
+    private StoreKeyFilter(File file, long expectedKeys, double falsePositiveProbability) {
+        this.file = file;
+        this.expectedKeys = expectedKeys;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.vertexKeys = new BloomFilter(expectedKeys,falsePositiveProbability);
+        this.indexKeys = new BloomFilter(expectedKeys,falsePositiveProbability);
+        this.complete = false;
+    }
+
+    /**
+     * Opens the key filter and loads it from the given file if that file has been written by a previous instance
+     * with the same configuration. Otherwise, the returned filter needs to be rebuilt.
+     *
+     * @param file File to persist the filter to, or null if it should not be persisted
+     * @param expectedKeys number of keys expected in each of the stores
+     * @param falsePositiveProbability desired false positive probability
+     * @return
+     */
+    public static StoreKeyFilter open(File file, long expectedKeys, double falsePositiveProbability) {
+        StoreKeyFilter filter = new StoreKeyFilter(file,expectedKeys,falsePositiveProbability);
+        if (file!=null && file.isFile()) {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                try {
+                    if (in.readLong()==expectedKeys && in.readDouble()==falsePositiveProbability) {
+                        filter.vertexKeys = BloomFilter.readFrom(in);
+                        filter.indexKeys = BloomFilter.readFrom(in);
+                        filter.complete = true;
+                        log.debug("Loaded key filter from {}",file);
+                    } else {
+                        log.info("Key filter configuration changed - rebuilding key filter");
+                    }
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                log.warn("Could not load key filter from " + file + " - rebuilding key filter",e);
+                filter.vertexKeys = new BloomFilter(expectedKeys,falsePositiveProbability);
+                filter.indexKeys = new BloomFilter(expectedKeys,falsePositiveProbability);
+            }
+            //Delete the file so that a crash before the next close triggers a rebuild
+            if (!file.delete()) throw new IllegalStateException("Could not delete key filter file: " + file);
+        }
+        return filter;
+    }
+
+    /**
+     * @return Whether the filter contains all keys of the storage backend and is therefore used to answer lookups
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Rebuilds the filter from the given iterators over all keys of the edge store and the vertex index.
+     * Keys added concurrently are retained. Both iterators are closed. The filter remains incomplete if the scan fails.
+     *
+     * @param vertexKeyIterator
+     * @param indexKeyIterator
+     * @throws StorageException
+     */
+    public void rebuild(RecordIterator<ByteBuffer> vertexKeyIterator, RecordIterator<ByteBuffer> indexKeyIterator) throws StorageException {
+        Preconditions.checkState(!complete,"Key filter is already complete");
+        long vertices;
+        try {
+            vertices = addAll(vertexKeys,vertexKeyIterator);
+        } catch (StorageException e) {
+            indexKeyIterator.close();
+            throw e;
+        }
+        long indexed = addAll(indexKeys,indexKeyIterator);
+        complete = true;
+        log.info("Rebuilt key filter from {} vertex keys and {} index keys",vertices,indexed);
+        if (vertices>expectedKeys || indexed>expectedKeys)
+            log.warn("Number of keys exceeds the expected number of keys [{}] - increase it to reduce false positives",expectedKeys);
+    }
+
+    private static long addAll(BloomFilter filter, RecordIterator<ByteBuffer> keys) throws StorageException {
+        long count = 0;
+        try {
+            while (keys.hasNext()) {
+                filter.put(keys.next());
+                count++;
+            }
+        } finally {
+            keys.close();
+        }
+        return count;
+    }
+
+    public void addVertexKey(ByteBuffer key) {
+        vertexKeys.put(key);
+    }
+
+    public void addIndexKey(ByteBuffer key) {
+        indexKeys.put(key);
+    }
+
+    public boolean mightContainVertexKey(ByteBuffer key) {
+        return !complete || vertexKeys.mightContain(key);
+    }
+
+    public boolean mightContainIndexKey(ByteBuffer key) {
+        return !complete || indexKeys.mightContain(key);
+    }
+
+    /**
+     * Persists the filter if it is complete. Must only be invoked after all writes to the storage backend have completed.
+     */
+    public void close() {
+        if (file==null || !complete) return;
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                out.writeLong(expectedKeys);
+                out.writeDouble(falsePositiveProbability);
+                vertexKeys.writeTo(out);
+                indexKeys.writeTo(out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            log.warn("Could not persist key filter to " + file,e);
+            file.delete();
+        }
+    }
+
+}
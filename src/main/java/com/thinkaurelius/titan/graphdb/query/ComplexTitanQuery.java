@@ -50,7 +50,7 @@ public class ComplexTitanQuery implements TitanQuery {
         return queries;
     }
 
-    private void flattenQuery(List<AtomicQuery> container) {
+    void flattenQuery(List<AtomicQuery> container) {
         for (TitanQuery q : disjunction) {
             if (q instanceof SimpleAtomicQuery) {
                 container.add((SimpleAtomicQuery)q);
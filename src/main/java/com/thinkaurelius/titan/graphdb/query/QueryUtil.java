@@ -3,10 +3,13 @@ package com.thinkaurelius.titan.graphdb.query;
 import com.google.common.collect.Iterators;
 import com.thinkaurelius.titan.core.TitanKey;
 import com.thinkaurelius.titan.core.TitanProperty;
+import com.thinkaurelius.titan.core.TitanQuery;
 import com.thinkaurelius.titan.graphdb.types.InternalTitanType;
 import com.thinkaurelius.titan.graphdb.vertices.InternalTitanVertex;
 import com.thinkaurelius.titan.util.interval.AtomicInterval;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 public class QueryUtil {
@@ -21,6 +24,24 @@ public class QueryUtil {
                         propertyIterator(),null);
 	}
 
+    /**
+     * Decomposes the given query into the atomic queries that need to be executed against the backend.
+     *
+     * @param query Query to decompose
+     * @return List of atomic queries, which is empty if the query cannot have any results
+     */
+    public static List<AtomicQuery> getAtomicQueries(TitanQuery query) {
+        List<AtomicQuery> queries = new ArrayList<AtomicQuery>(1);
+        if (query instanceof SimpleAtomicQuery) {
+            queries.add((SimpleAtomicQuery)query);
+        } else if (query instanceof EmptyAtomicQuery) {
+            //do nothing
+        } else if (query instanceof ComplexTitanQuery) {
+            ((ComplexTitanQuery)query).flattenQuery(queries);
+        } else throw new IllegalArgumentException("Unexpected query type: " + query.getClass());
+        return queries;
+    }
+
     /**
      * Checks whether the query can be answered by disk indexes alone or whether further processing in memory is necessary
      * to determine the exact result set.
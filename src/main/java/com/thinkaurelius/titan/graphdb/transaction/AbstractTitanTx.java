@@ -11,6 +11,8 @@ import com.thinkaurelius.titan.core.*;
 import com.thinkaurelius.titan.graphdb.blueprints.TitanBlueprintsTransaction;
 import com.thinkaurelius.titan.graphdb.database.InternalTitanGraph;
 import com.thinkaurelius.titan.graphdb.idmanagement.IDInspector;
+import com.thinkaurelius.titan.graphdb.query.AtomicQuery;
+import com.thinkaurelius.titan.graphdb.query.QueryUtil;
 import com.thinkaurelius.titan.graphdb.query.SimpleTitanQuery;
 import com.thinkaurelius.titan.graphdb.relations.AttributeUtil;
 import com.thinkaurelius.titan.graphdb.relations.InternalRelation;
@@ -32,8 +34,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -314,6 +318,24 @@ public abstract class AbstractTitanTx extends TitanBlueprintsTransaction impleme
         return new SimpleTitanQuery((InternalTitanVertex) getVertex(nodeid));
     }
 
+    @Override
+    public void prefetch(Iterable<TitanVertex> vertices, TitanQuery query) {
+        verifyOpen();
+        Preconditions.checkNotNull(vertices);
+        Preconditions.checkNotNull(query);
+        for (AtomicQuery atomicQuery : QueryUtil.getAtomicQueries(query)) {
+            List<InternalTitanVertex> toLoad = new ArrayList<InternalTitanVertex>();
+            for (TitanVertex vertex : vertices) {
+                InternalTitanVertex v = (InternalTitanVertex)vertex;
+                Preconditions.checkArgument(v.getTransaction()==this,"Vertex does not belong to this transaction: %s",v);
+                //New vertices have nothing to load from disk
+                if (v.isNew() || v.isRemoved() || v.hasLoadedEdges(atomicQuery)) continue;
+                toLoad.add(v);
+            }
+            if (!toLoad.isEmpty()) loadRelations(atomicQuery,toLoad);
+        }
+    }
+
     @Override
     public Iterable<Vertex> getVertices() {
         if (newVertices.isPresent())
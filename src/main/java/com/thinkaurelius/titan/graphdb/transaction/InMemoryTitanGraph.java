@@ -6,6 +6,7 @@ import com.thinkaurelius.titan.core.*;
 import com.thinkaurelius.titan.diskstorage.StorageException;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreTransaction;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.RecordIterator;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.ScanSplit;
 import com.thinkaurelius.titan.graphdb.blueprints.TitanFeatures;
 import com.thinkaurelius.titan.graphdb.database.InternalTitanGraph;
 import com.thinkaurelius.titan.graphdb.query.AtomicQuery;
@@ -19,6 +20,7 @@ import com.thinkaurelius.titan.graphdb.vertices.factory.StandardVertexFactories;
 import com.tinkerpop.blueprints.Features;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class InMemoryTitanGraph extends AbstractTitanTx implements InternalTitanGraph {
@@ -85,6 +87,11 @@ public class InMemoryTitanGraph extends AbstractTitanTx implements InternalTitan
 	public void loadRelations(AtomicQuery query) {
 		throw new UnsupportedOperationException("InMemory Transactions do not support edge loading");
 	}
+
+	@Override
+	public void loadRelations(AtomicQuery query, List<InternalTitanVertex> vertices) {
+		throw new UnsupportedOperationException("InMemory Transactions do not support edge loading");
+	}
 	
 	@Override
 	public AbstractLongList getRawNeighborhood(AtomicQuery query) {
@@ -178,12 +185,27 @@ public class InMemoryTitanGraph extends AbstractTitanTx implements InternalTitan
         throw new UnsupportedOperationException("Not supported for in-memory graph databases");
     }
 
+    @Override
+    public RecordIterator<Long> getVertexIDs(ScanSplit split, InternalTitanTransaction tx) {
+        throw new UnsupportedOperationException("Not supported for in-memory graph databases");
+    }
+
+    @Override
+    public List<VertexSplit> getVertexSplits(int numSplits) {
+        throw new UnsupportedOperationException("Not supported for in-memory graph databases");
+    }
+
 
     @Override
 	public void loadRelations(AtomicQuery query, InternalTitanTransaction tx) {
 		throw new UnsupportedOperationException("Not supported for in-memory graph databases");
 	}
 
+    @Override
+	public void loadRelations(AtomicQuery query, List<InternalTitanVertex> vertices, InternalTitanTransaction tx) {
+		throw new UnsupportedOperationException("Not supported for in-memory graph databases");
+	}
+
 	@Override
 	public void save(Collection<InternalRelation> addedRelations,
 			Collection<InternalRelation> deletedRelations, InternalTitanTransaction tx)
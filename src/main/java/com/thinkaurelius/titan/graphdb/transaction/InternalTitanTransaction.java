@@ -11,6 +11,8 @@ import com.thinkaurelius.titan.graphdb.query.AtomicQuery;
 import com.thinkaurelius.titan.graphdb.relations.InternalRelation;
 import com.thinkaurelius.titan.graphdb.vertices.InternalTitanVertex;
 
+import java.util.List;
+
 public interface InternalTitanTransaction extends TitanTransaction {
 
     /**
@@ -51,6 +53,15 @@ public interface InternalTitanTransaction extends TitanTransaction {
 	 * @param query TitanRelation query for which to load all edges
 	 */
 	void loadRelations(AtomicQuery query);
+
+	/**
+	 * Called to load all edges into the transaction that are needed to answer the provided edge query
+	 * for each of the given vertices
+	 * 
+	 * @param query TitanRelation query for which to load all edges. The vertex of the query is ignored.
+	 * @param vertices Vertices for which to load the edges
+	 */
+	void loadRelations(AtomicQuery query, List<InternalTitanVertex> vertices);
 	
 	/**
 	 * Retrieves the node idAuthorities for the neighboring vertices addresed in the given neighborhood query
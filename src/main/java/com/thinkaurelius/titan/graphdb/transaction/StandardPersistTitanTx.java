@@ -154,6 +154,11 @@ public class StandardPersistTitanTx extends AbstractTitanTx {
 	public void loadRelations(AtomicQuery query) {
 		graphdb.loadRelations(query, this);
 	}
+
+	@Override
+	public void loadRelations(AtomicQuery query, List<InternalTitanVertex> vertices) {
+		graphdb.loadRelations(query, vertices, this);
+	}
 	
 	@Override
 	public AbstractLongList getRawNeighborhood(AtomicQuery query) {
@@ -28,6 +28,10 @@ public class TransactionConfig {
     private boolean acquireLocks = true;
 
     private boolean maintainNewVertices = true;
+
+    private String readConsistency = null;
+
+    private String writeConsistency = null;
 	
 	/**
 	 * Constructs a new TitanTransaction configuration with default configuration parameters.
@@ -62,6 +66,57 @@ public class TransactionConfig {
 		return isReadOnly;
 	}
 
+    /**
+     * Configures the graph transaction as read-only. Storage backends may read with relaxed isolation
+     * in read-only transactions.
+     *
+     * @param readOnly
+     */
+    public void setReadOnly(boolean readOnly) {
+        this.isReadOnly = readOnly;
+    }
+
+    /**
+     * Returns the consistency level of reads in this transaction, or null if the configured default of the
+     * storage backend applies.
+     *
+     * @return Name of the read consistency level
+     */
+    public String getReadConsistency() {
+        return readConsistency;
+    }
+
+    /**
+     * Configures the consistency level of reads in this transaction, e.g. ONE, QUORUM or LOCAL_QUORUM for Cassandra.
+     * Set to null to use the configured default. Storage backends without tunable consistency ignore this setting.
+     *
+     * @param readConsistency Name of a consistency level supported by the storage backend
+     */
+    public void setReadConsistency(String readConsistency) {
+        this.readConsistency = readConsistency;
+    }
+
+    /**
+     * Returns the consistency level of writes in this transaction, or null if the configured default of the
+     * storage backend applies.
+     *
+     * @return Name of the write consistency level
+     */
+    public String getWriteConsistency() {
+        return writeConsistency;
+    }
+
+    /**
+     * Configures the consistency level of writes in this transaction, e.g. ONE, QUORUM or LOCAL_QUORUM for Cassandra.
+     * Set to null to use the configured default. Storage backends without tunable consistency ignore this setting.
+     * Locks are always acquired with the consistency required for locking.
+     *
+     * @param writeConsistency Name of a consistency level supported by the storage backend
+     */
+    public void setWriteConsistency(String writeConsistency) {
+        this.writeConsistency = writeConsistency;
+    }
+
     /**
      *
      * @return Whether this transaction is configured to assign idAuthorities immediately.
@@ -4,6 +4,7 @@ import com.thinkaurelius.titan.core.TitanException;
 import com.thinkaurelius.titan.core.TitanType;
 import com.thinkaurelius.titan.diskstorage.StorageException;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.RecordIterator;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.ScanSplit;
 import com.thinkaurelius.titan.graphdb.database.InternalTitanGraph;
 import com.thinkaurelius.titan.graphdb.vertices.InternalTitanVertex;
 
@@ -18,17 +19,28 @@ public class VertexIterable implements Iterable<InternalTitanVertex> {
     
     private final InternalTitanTransaction tx;
     private final InternalTitanGraph graph;
+    private final ScanSplit split;
     
     public VertexIterable(final InternalTitanGraph graph, final InternalTitanTransaction tx) {
+        this(graph,tx,null);
+    }
+
+    /**
+     * @param graph
+     * @param tx
+     * @param split Split of the vertices to iterate over or null to iterate over all vertices
+     */
+    public VertexIterable(final InternalTitanGraph graph, final InternalTitanTransaction tx, final ScanSplit split) {
         this.graph=graph;
         this.tx=tx;
+        this.split=split;
     }
     
     @Override
     public Iterator<InternalTitanVertex> iterator() {
         return new Iterator<InternalTitanVertex>() {
             
-            RecordIterator<Long> iterator = graph.getVertexIDs(tx);
+            RecordIterator<Long> iterator = split==null?graph.getVertexIDs(tx):graph.getVertexIDs(split,tx);
             InternalTitanVertex nextVertex = nextVertex();
             
             private InternalTitanVertex nextVertex() {
@@ -39,6 +51,8 @@ public class VertexIterable implements Iterable<InternalTitanVertex> {
                         //Filter out types
                         if (v instanceof TitanType) v = null;
                     }
+                    //Release the resources of split scans as soon as they are exhausted
+                    if (v==null && split!=null) iterator.close();
                 } catch (StorageException e) {
                     throw new TitanException("Read exception on open iterator",e);
                 }
@@ -0,0 +1,109 @@
+package com.thinkaurelius.titan.util.datastructures;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe Bloom filter over byte keys. Keys can be added concurrently but never removed.
+ * {@link #mightContain(java.nio.ByteBuffer)} returning false guarantees that the key has not been added.
+ *
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class BloomFilter {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final AtomicLongArray bits;
+    private final long numBits;
+    private final int numHashes;
+
+    /**
+     * @param expectedKeys number of keys expected to be added to the filter
+     * @param falsePositiveProbability desired false positive probability once the expected number of keys have been added
+     */
+    public BloomFilter(long expectedKeys, double falsePositiveProbability) {
+        Preconditions.checkArgument(expectedKeys>0,"Expected number of keys must be positive");
+        Preconditions.checkArgument(falsePositiveProbability>0 && falsePositiveProbability<1,
+                "Invalid false positive probability: %s",falsePositiveProbability);
+        long optimalBits = (long)Math.ceil(-expectedKeys*Math.log(falsePositiveProbability)/(Math.log(2)*Math.log(2)));
+        int numLongs = (int)Math.min(Integer.MAX_VALUE,Math.max(1,(optimalBits+63)/64));
+        this.bits = new AtomicLongArray(numLongs);
+        this.numBits = numLongs*64L;
+        this.numHashes = Math.max(1,(int)Math.round(((double)numBits)/expectedKeys*Math.log(2)));
+    }
+
+    private BloomFilter(AtomicLongArray bits, int numHashes) {
+        this.bits = bits;
+        this.numBits = bits.length()*64L;
+        this.numHashes = numHashes;
+    }
+
+    public void put(ByteBuffer key) {
+        long[] hash = hash(key);
+        for (int i=0;i<numHashes;i++) {
+            long index = index(hash,i);
+            int pos = (int)(index>>>6);
+            long mask = 1L<<(index&63);
+            while (true) {
+                long current = bits.get(pos);
+                if ((current&mask)!=0 || bits.compareAndSet(pos,current,current|mask)) break;
+            }
+        }
+    }
+
+    public boolean mightContain(ByteBuffer key) {
+        long[] hash = hash(key);
+        for (int i=0;i<numHashes;i++) {
+            long index = index(hash,i);
+            if ((bits.get((int)(index>>>6)) & (1L<<(index&63)))==0) return false;
+        }
+        return true;
+    }
+
+    private long index(long[] hash, int i) {
+        return ((hash[0]+i*hash[1]) & Long.MAX_VALUE) % numBits;
+    }
+
+    private static long[] hash(ByteBuffer key) {
+        byte[] bytes = new byte[key.remaining()];
+        key.duplicate().get(bytes);
+        ByteBuffer hash = ByteBuffer.wrap(HASH.hashBytes(bytes).asBytes());
+        return new long[]{hash.getLong(),hash.getLong()};
+    }
+
+    public long getNumBits() {
+        return numBits;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(numHashes);
+        out.writeInt(bits.length());
+        for (int i=0;i<bits.length();i++) out.writeLong(bits.get(i));
+    }
+
+    public static BloomFilter readFrom(DataInput in) throws IOException {
+        int version = in.readInt();
+        if (version!=FORMAT_VERSION) throw new IOException("Unsupported bloom filter format: " + version);
+        int numHashes = in.readInt();
+        int numLongs = in.readInt();
+        if (numHashes<=0 || numLongs<=0) throw new IOException("Corrupted bloom filter");
+        AtomicLongArray bits = new AtomicLongArray(numLongs);
+        for (int i=0;i<numLongs;i++) bits.set(i,in.readLong());
+        return new BloomFilter(bits,numHashes);
+    }
+
+}
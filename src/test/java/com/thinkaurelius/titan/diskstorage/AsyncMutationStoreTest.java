@@ -0,0 +1,190 @@
+package com.thinkaurelius.titan.diskstorage;
+
+import com.thinkaurelius.titan.StorageSetup;
+import com.thinkaurelius.titan.diskstorage.inmemory.InMemoryStoreManager;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.*;
+import com.thinkaurelius.titan.diskstorage.util.FixedRetryPolicy;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class AsyncMutationStoreTest {
+
+    private static final String STORE = "store";
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        StorageSetup.deleteHomeDir();
+        dir = new File(StorageSetup.getHomeDirFile(),"wal");
+    }
+
+    private static Map<String,Map<ByteBuffer,Mutation>> mutations(long key, long value) {
+        Map<ByteBuffer,Mutation> storeMutations = new HashMap<ByteBuffer,Mutation>();
+        storeMutations.put(KeyColumnValueStoreUtil.longToByteBuffer(key),
+                new Mutation(Arrays.asList(new Entry(KeyColumnValueStoreUtil.longToByteBuffer(0),KeyColumnValueStoreUtil.longToByteBuffer(value))),
+                        Arrays.asList(KeyColumnValueStoreUtil.longToByteBuffer(1))));
+        Map<String,Map<ByteBuffer,Mutation>> mutations = new HashMap<String,Map<ByteBuffer,Mutation>>();
+        mutations.put(STORE,storeMutations);
+        return mutations;
+    }
+
+    @Test
+    public void testReplay() throws StorageException {
+        MutationLog wal = new MutationLog(dir,200);
+        final List<Long> replayed = new ArrayList<Long>();
+        wal.replay(new MutationLog.RecordHandler() {
+            @Override
+            public void handle(long seq, Map<String, Map<ByteBuffer, Mutation>> mutations) {
+                replayed.add(seq);
+            }
+        });
+        assertTrue(replayed.isEmpty());
+        for (int i=1;i<=20;i++) {
+            assertEquals(i,wal.append(mutations(i,i)));
+        }
+        wal.sync(20);
+        wal.applied(5);
+        wal.close();
+        assertTrue(dir.list().length>1);
+
+        wal = new MutationLog(dir,200);
+        final List<Long> keys = new ArrayList<Long>();
+        wal.replay(new MutationLog.RecordHandler() {
+            @Override
+            public void handle(long seq, Map<String, Map<ByteBuffer, Mutation>> mutations) {
+                Map.Entry<ByteBuffer,Mutation> m = mutations.get(STORE).entrySet().iterator().next();
+                assertEquals(1,m.getValue().getAdditions().size());
+                assertEquals(1,m.getValue().getDeletions().size());
+                keys.add(m.getKey().getLong(m.getKey().position()));
+            }
+        });
+        //Segments which only contain applied records have been deleted
+        assertFalse(keys.isEmpty());
+        assertTrue(keys.get(0)>1 && keys.get(0)<=6);
+        assertEquals(20,(long)keys.get(keys.size()-1));
+        wal.applied(wal.getLastSequenceNumber());
+        wal.close();
+        assertEquals(0,dir.list().length);
+    }
+
+    @Test
+    public void testAsyncApply() throws Exception {
+        InMemoryStoreManager manager = new InMemoryStoreManager();
+        KeyColumnValueStore store = manager.openDatabase(STORE);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final BufferMutationKeyColumnValueStore blocking = new BufferMutationKeyColumnValueStore() {
+            @Override
+            public void mutateMany(Map<String, Map<ByteBuffer, Mutation>> mutations, StoreTransaction txh) throws StorageException {
+                blocked.countDown();
+                throw new TemporaryStorageException("Backend unavailable");
+            }
+        };
+        AsyncMutationStore async = new AsyncMutationStore(blocking,manager,
+                new MutationLog(dir,1024*1024),new FixedRetryPolicy(10),10);
+        async.start();
+        StoreTransaction tx = manager.beginTransaction(ConsistencyLevel.DEFAULT);
+        for (int i=1;i<=5;i++) async.mutateMany(mutations(i,i),tx);
+        blocked.await();
+        async.close();
+        assertFalse(store.containsKey(KeyColumnValueStoreUtil.longToByteBuffer(1),tx));
+
+        //Logged mutations are applied on restart
+        async = new AsyncMutationStore(manager,manager,new MutationLog(dir,1024*1024),new FixedRetryPolicy(10),10);
+        async.start();
+        async.mutateMany(mutations(6,6),tx);
+        async.close();
+        for (int i=1;i<=6;i++) {
+            assertEquals(i,store.get(KeyColumnValueStoreUtil.longToByteBuffer(i),KeyColumnValueStoreUtil.longToByteBuffer(0),tx).getLong());
+        }
+        assertEquals(0,dir.list().length);
+        tx.commit();
+        manager.close();
+    }
+
+
+    @Test
+    public void testPermanentFailure() throws Exception {
+        InMemoryStoreManager manager = new InMemoryStoreManager();
+        KeyColumnValueStore store = manager.openDatabase(STORE);
+        final CountDownLatch failed = new CountDownLatch(1);
+        final BufferMutationKeyColumnValueStore failing = new BufferMutationKeyColumnValueStore() {
+            @Override
+            public void mutateMany(Map<String, Map<ByteBuffer, Mutation>> mutations, StoreTransaction txh) throws StorageException {
+                failed.countDown();
+                throw new PermanentStorageException("Invalid mutation");
+            }
+        };
+        AsyncMutationStore async = new AsyncMutationStore(failing,manager,
+                new MutationLog(dir,1024*1024),new FixedRetryPolicy(10),10);
+        async.start();
+        StoreTransaction tx = manager.beginTransaction(ConsistencyLevel.DEFAULT);
+        async.mutateMany(mutations(1,1),tx);
+        failed.await();
+        //The applier stops instead of retrying, which fails further mutations
+        try {
+            for (int i=2;i<100;i++) {
+                async.mutateMany(mutations(i,i),tx);
+                Thread.sleep(10);
+            }
+            fail();
+        } catch (PermanentStorageException e) {
+        }
+        async.close();
+
+        //Failed mutations are retained in the log
+        async = new AsyncMutationStore(manager,manager,new MutationLog(dir,1024*1024),new FixedRetryPolicy(10),10);
+        async.start();
+        async.close();
+        assertEquals(1,store.get(KeyColumnValueStoreUtil.longToByteBuffer(1),KeyColumnValueStoreUtil.longToByteBuffer(0),tx).getLong());
+        tx.commit();
+        manager.close();
+    }
+
+    @Test
+    public void testCacheInvalidatedAfterApply() throws Exception {
+        final InMemoryStoreManager manager = new InMemoryStoreManager();
+        CachedKeyColumnValueStore cache = new CachedKeyColumnValueStore(manager.openDatabase(STORE),1024*1024,0);
+        final CountDownLatch applying = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final BufferMutationKeyColumnValueStore delayed = new BufferMutationKeyColumnValueStore() {
+            @Override
+            public void mutateMany(Map<String, Map<ByteBuffer, Mutation>> mutations, StoreTransaction txh) throws StorageException {
+                applying.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new PermanentStorageException(e);
+                }
+                manager.mutateMany(mutations,txh);
+            }
+        };
+        AsyncMutationStore async = new AsyncMutationStore(delayed,manager,
+                new MutationLog(dir,1024*1024),new FixedRetryPolicy(10),10);
+        async.addCache(cache);
+        async.start();
+        StoreTransaction tx = manager.beginTransaction(ConsistencyLevel.DEFAULT);
+        ByteBuffer key = KeyColumnValueStoreUtil.longToByteBuffer(1);
+        async.mutateMany(mutations(1,1),tx);
+        applying.await();
+        //Caches the state before the mutations have been applied
+        assertTrue(cache.getSlice(key,ByteBuffer.allocate(0),KeyColumnValueStoreUtil.longToByteBuffer(Long.MAX_VALUE),tx).isEmpty());
+        release.countDown();
+        async.close();
+        assertEquals(1,cache.getSlice(key,ByteBuffer.allocate(0),KeyColumnValueStoreUtil.longToByteBuffer(Long.MAX_VALUE),tx).size());
+        tx.commit();
+        manager.close();
+    }
+
+}
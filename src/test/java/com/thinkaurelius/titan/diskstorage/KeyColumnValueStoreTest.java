@@ -227,6 +227,28 @@ public abstract class KeyColumnValueStoreTest {
             assertEquals(numKeys,KeyValueStoreUtil.count(iterator2));
         }
     }
+
+    @Test
+    public void splitScanTest() throws StorageException {
+        if (manager.getFeatures().supportsScan() && store instanceof SplitScanStore) {
+            String[][] values = generateValues();
+            loadValues(values);
+            clopen();
+            SplitScanStore scanStore = (SplitScanStore)store;
+            for (int numSplits : new int[]{1,4,16}) {
+                List<ScanSplit> splits = scanStore.getScanSplits(numSplits,tx);
+                assertFalse(splits.isEmpty());
+                assertTrue(splits.size()<=numSplits);
+                Set<ByteBuffer> keys = new HashSet<ByteBuffer>();
+                for (ScanSplit split : splits) {
+                    RecordIterator<ByteBuffer> iterator = scanStore.getKeys(split,tx);
+                    while (iterator.hasNext()) assertTrue(keys.add(iterator.next()));
+                    iterator.close();
+                }
+                assertEquals(numKeys,keys.size());
+            }
+        }
+    }
 	
 	public void checkSlice(String[][] values, Set<KeyColumn> removed, int key, int start, int end, int limit) throws StorageException {
 		List<Entry> entries;
@@ -273,6 +295,55 @@ public abstract class KeyColumnValueStoreTest {
 	}
 
 
+    @Test
+    public void getSliceMultipleKeys() throws StorageException {
+        String[][] values = generateValues();
+        loadValues(values);
+        Set<KeyColumn> deleted = deleteValues(7);
+        clopen();
+        int trails = 50;
+        for (int t=0;t<trails;t++) {
+            int start = RandomGenerator.randomInt(0, numColumns);
+            int end = RandomGenerator.randomInt(start, numColumns);
+            int limit = RandomGenerator.randomInt(1, 30);
+            List<ByteBuffer> keys = new ArrayList<ByteBuffer>();
+            for (int k=0;k<10;k++) keys.add(KeyValueStoreUtil.getBuffer(RandomGenerator.randomInt(0, numKeys)));
+            keys.add(KeyValueStoreUtil.getBuffer(numKeys+t)); //non-existent key
+            Map<ByteBuffer,List<Entry>> result = store.getSlice(keys, KeyValueStoreUtil.getBuffer(start), KeyValueStoreUtil.getBuffer(end), limit, tx);
+            for (ByteBuffer key : keys) {
+                List<Entry> entries = result.get(key);
+                assertNotNull(entries);
+                int k = KeyValueStoreUtil.getID(key);
+                if (k>=numKeys) {
+                    assertEquals(0,entries.size());
+                    continue;
+                }
+                assertEquals(store.getSlice(key, KeyValueStoreUtil.getBuffer(start), KeyValueStoreUtil.getBuffer(end), limit, tx),entries);
+            }
+        }
+    }
+
+    @Test
+    public void getSlicePaged() throws StorageException {
+        String[][] values = generateValues();
+        loadValues(values);
+        Set<KeyColumn> deleted = deleteValues(7);
+        clopen();
+        int trails = 200;
+        for (int t=0;t<trails;t++) {
+            ByteBuffer key = KeyValueStoreUtil.getBuffer(RandomGenerator.randomInt(0, numKeys));
+            ByteBuffer start = KeyValueStoreUtil.getBuffer(RandomGenerator.randomInt(0, numColumns));
+            ByteBuffer end = KeyValueStoreUtil.getBuffer(RandomGenerator.randomInt(KeyValueStoreUtil.getID(start.duplicate()), numColumns));
+            int pageSize = RandomGenerator.randomInt(1, 20);
+            List<Entry> expected = store.getSlice(key, start, end, tx);
+            RecordIterator<Entry> iter = new PagedSliceIterator(store, key, start, end, pageSize, tx);
+            List<Entry> paged = new ArrayList<Entry>();
+            while (iter.hasNext()) paged.add(iter.next());
+            iter.close();
+            assertEquals(expected, paged);
+        }
+    }
+
 	@Test
 	public void getNonExistentKeyReturnsNull() throws Exception {
 		StoreTransaction txn = manager.beginTransaction(ConsistencyLevel.DEFAULT);
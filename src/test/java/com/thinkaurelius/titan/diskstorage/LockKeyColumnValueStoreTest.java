@@ -15,7 +15,12 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.thinkaurelius.titan.diskstorage.locking.LockingException;
 import com.thinkaurelius.titan.diskstorage.locking.PermanentLockingException;
@@ -115,6 +120,15 @@ public abstract class LockKeyColumnValueStoreTest {
         return transaction;
     }
 
+    public StoreTransaction newBatchTransaction(KeyColumnValueStoreManager manager, ExecutorService executor) throws StorageException {
+        StoreTransaction transaction = manager.beginTransaction(ConsistencyLevel.DEFAULT);
+        if (!manager.getFeatures().supportsLocking() && manager.getFeatures().supportsConsistentKeyOperations()) {
+            transaction=new ConsistentKeyLockTransaction(transaction,manager.beginTransaction(ConsistencyLevel.KEY_CONSISTENT),
+                    manager.getFeatures().supportsBatchMutation()?manager:null,executor);
+        }
+        return transaction;
+    }
+
 	@After
 	public void tearDown() throws Exception {
 		close();
@@ -144,6 +158,27 @@ public abstract class LockKeyColumnValueStoreTest {
 		assertEquals(v1, store[0].get(k, c1, tx[0][0]));
 	}
 	
+	@Test
+	public void readOnlyTransactionReads() throws StorageException {
+		store[0].mutate(k, Arrays.asList(new Entry(c1, v1)), null, tx[0][0]);
+		tx[0][0].commit();
+		tx[0][0] = newTransaction(manager[0]);
+
+		// Read-only transactions are not wrapped for locking
+		StoreTransaction readTx = manager[0].beginReadOnlyTransaction(ConsistencyLevel.DEFAULT);
+		assertEquals(v1, store[0].get(k, c1, readTx));
+		assertTrue(store[0].containsKey(k, readTx));
+		if (store[0] instanceof ConsistentKeyLockStore) {
+			try {
+				store[0].acquireLock(k, c2, null, readTx);
+				fail("Acquired lock in read-only transaction");
+			} catch (StorageException e) {
+				assertTrue(e instanceof LockingException);
+			}
+		}
+		readTx.commit();
+	}
+
 	@Test
 	public void transactionMayReenterLock() throws StorageException {
 		store[0].acquireLock(k, c1, null, tx[0][0]);
@@ -225,6 +260,50 @@ public abstract class LockKeyColumnValueStoreTest {
 		assertEquals(v1, store[0].get(k, c1, tx[0][0]));
 	}
 	
+	@Test
+	public void testBatchedLockClaims() throws InterruptedException, StorageException {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			// acquire lock on "host2" before "host1" writes its batch of lock claims
+			store[1].acquireLock(k, c2, null, tx[1][0]);
+
+			Thread.sleep(50L);
+
+			StoreTransaction batchTx = newBatchTransaction(manager[0], executor);
+			store[0].acquireLock(k, c1, null, batchTx);
+			store[0].acquireLock(k, c2, null, batchTx);
+			try {
+				// This must fail since "host2" took the lock on c2 first
+				store[0].mutate(k, Arrays.asList(new Entry(c1, v1)), null, batchTx);
+				fail("Expected lock contention between remote transactions did not occur");
+			} catch (StorageException e) {
+				assertTrue(e instanceof LockingException);
+			}
+			batchTx.abort();
+
+			store[1].mutate(k, Arrays.asList(new Entry(c2, v2)), null, tx[1][0]);
+			tx[1][0].commit();
+			tx[1][0] = newTransaction(manager[1]);
+
+			// Locks on several keys and columns are claimed and verified together
+			batchTx = newBatchTransaction(manager[0], executor);
+			store[0].acquireLock(k, c1, null, batchTx);
+			store[0].acquireLock(k, c2, v2, batchTx);
+			store[0].acquireLock(c1, c1, null, batchTx);
+			store[0].mutate(k, Arrays.asList(new Entry(c1, v1)), null, batchTx);
+			store[0].mutate(c1, Arrays.asList(new Entry(c1, v1)), null, batchTx);
+			batchTx.commit();
+
+			StoreTransaction checktx = newTransaction(manager[0]);
+			assertEquals(v1, store[0].get(k, c1, checktx));
+			assertEquals(v2, store[0].get(k, c2, checktx));
+			assertEquals(v1, store[0].get(c1, c1, checktx));
+			checktx.commit();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 	@Test
 	public void singleTransactionWithMultipleLocks() throws StorageException {
 		
@@ -415,6 +494,160 @@ public abstract class LockKeyColumnValueStoreTest {
         }
     }
 
+    @Test
+    public void testBatchIDAcquisition() throws StorageException, InterruptedException {
+        final int numPartitions = 3;
+        final int numBlocks = 2;
+        final int numAcquisitionsPerThread = 5;
+        final int blockSize = 250;
+        final IDBlockSizer blockSizer = new IDBlockSizer() {
+            @Override
+            public long getBlockSize(int partitionID) {
+                return blockSize;
+            }
+        };
+        for (int i=0;i<concurrency;i++) idAuthorities[i].setIDBlockSizer(blockSizer);
+        final Map<Integer,Integer> request = new HashMap<Integer,Integer>();
+        final List<List<Long>> ids = new ArrayList<List<Long>>(numPartitions);
+        for (int p=0;p<numPartitions;p++) {
+            request.put(p,numBlocks);
+            ids.add(Collections.synchronizedList(new ArrayList<Long>(numAcquisitionsPerThread*numBlocks*concurrency)));
+        }
+
+        Thread[] threads = new Thread[concurrency];
+        for (int i=0;i<concurrency;i++) {
+            final IDAuthority idAuthority = idAuthorities[i];
+            threads[i] = new Thread(new Runnable(){
+
+                @Override
+                public void run() {
+                    try {
+                        for (int j=0;j<numAcquisitionsPerThread;j++) {
+                            Map<Integer,long[][]> blocks = idAuthority.getIDBlocks(request);
+                            assertEquals(numPartitions,blocks.size());
+                            for (int p=0;p<numPartitions;p++) {
+                                assertEquals(numBlocks,blocks.get(p).length);
+                                for (long[] block : blocks.get(p)) {
+                                    assertEquals(block[0] + blockSize, block[1]);
+                                    ids.get(p).add(block[0]);
+                                }
+                            }
+                        }
+                    } catch (StorageException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        for (int i=0;i<concurrency;i++) {
+            threads[i].join();
+        }
+
+        for (int p=0;p<numPartitions;p++) {
+            List<Long> list = ids.get(p);
+            assertEquals(numAcquisitionsPerThread*numBlocks*concurrency,list.size());
+            Collections.sort(list);
+            long id = 1;
+            for (Long start : list) {
+                assertEquals(id,start.longValue());
+                id+=blockSize;
+            }
+        }
+    }
+
+    @Test
+    public void testMixedCountIDAcquisition() throws StorageException, InterruptedException {
+        //Contending instances claim ranges of different numbers of blocks
+        long[] blockSizes = new long[concurrency];
+        int[] counts = new int[concurrency];
+        for (int i=0;i<concurrency;i++) {
+            blockSizes[i] = 250;
+            counts[i] = i+1;
+        }
+        acquireDisjointIDBlocks(blockSizes,counts);
+    }
+
+    @Test
+    public void testMixedBlockSizeIDAcquisition() throws StorageException, InterruptedException {
+        //Contending instances use different block sizes, e.g. when block sizes are adaptive
+        long[] blockSizes = new long[concurrency];
+        int[] counts = new int[concurrency];
+        for (int i=0;i<concurrency;i++) {
+            blockSizes[i] = 100*(i+1);
+            counts[i] = 1;
+        }
+        acquireDisjointIDBlocks(blockSizes,counts);
+    }
+
+    private void acquireDisjointIDBlocks(final long[] blockSizes, final int[] counts) throws StorageException, InterruptedException {
+        final int numPartitions = 2;
+        final int numAcquisitionsPerThread = 5;
+        final List<long[]> blocks = Collections.synchronizedList(new ArrayList<long[]>());
+
+        Thread[] threads = new Thread[concurrency];
+        for (int i=0;i<concurrency;i++) {
+            final IDAuthority idAuthority = idAuthorities[i];
+            final long blockSize = blockSizes[i];
+            final int count = counts[i];
+            idAuthority.setIDBlockSizer(new IDBlockSizer() {
+                @Override
+                public long getBlockSize(int partitionID) {
+                    return blockSize;
+                }
+            });
+            threads[i] = new Thread(new Runnable(){
+
+                @Override
+                public void run() {
+                    try {
+                        Map<Integer,Integer> request = new HashMap<Integer,Integer>();
+                        for (int p=0;p<numPartitions;p++) request.put(p,count);
+                        for (int j=0;j<numAcquisitionsPerThread;j++) {
+                            Map<Integer,long[][]> acquired = idAuthority.getIDBlocks(request);
+                            for (int p=0;p<numPartitions;p++) {
+                                assertEquals(count,acquired.get(p).length);
+                                for (long[] block : acquired.get(p)) {
+                                    assertEquals(block[0] + blockSize, block[1]);
+                                    blocks.add(new long[]{p,block[0],block[1]});
+                                }
+                            }
+                        }
+                    } catch (StorageException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        for (int i=0;i<concurrency;i++) {
+            threads[i].join();
+        }
+
+        int expected = 0;
+        for (int i=0;i<concurrency;i++) expected+=numAcquisitionsPerThread*counts[i]*numPartitions;
+        assertEquals(expected,blocks.size());
+        for (int p=0;p<numPartitions;p++) {
+            List<long[]> partitionBlocks = new ArrayList<long[]>();
+            for (long[] block : blocks) {
+                if (block[0]==p) partitionBlocks.add(block);
+            }
+            Collections.sort(partitionBlocks,new Comparator<long[]>() {
+                @Override
+                public int compare(long[] b1, long[] b2) {
+                    return Long.valueOf(b1[1]).compareTo(b2[1]);
+                }
+            });
+            //Blocks must not overlap, but ranges lost to a contending claim of different length may be skipped
+            long nextID = 1;
+            for (long[] block : partitionBlocks) {
+                assertTrue(block[1]>=nextID);
+                nextID = block[2];
+            }
+        }
+    }
 
     @Test
     public void testLocalPartitionAcquisition() throws StorageException {
@@ -0,0 +1,118 @@
+package com.thinkaurelius.titan.diskstorage;
+
+import com.thinkaurelius.titan.diskstorage.inmemory.InMemoryStoreManager;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.ConsistencyLevel;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.Entry;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.MetricInstrumentedStore;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreTransaction;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MetricInstrumentedStoreTest {
+
+    private static final String BACKEND = "metrics-test";
+
+    private static ObjectName getName(int instance, String operation) throws Exception {
+        return new ObjectName(MetricInstrumentedStore.JMX_DOMAIN + ":type=StoreMetrics" +
+                ",backend=" + ObjectName.quote(BACKEND) + ",instance=" + instance +
+                ",store=" + ObjectName.quote("store") + ",operation=" + operation);
+    }
+
+    @Test
+    public void testRecordedMetrics() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        InMemoryStoreManager manager = new InMemoryStoreManager();
+        int instance = MetricInstrumentedStore.nextInstanceID();
+        MetricInstrumentedStore store = new MetricInstrumentedStore(manager.openDatabase("store"), BACKEND, instance);
+        for (String operation : new String[]{MetricInstrumentedStore.M_CONTAINS_KEY, MetricInstrumentedStore.M_GET_SLICE,
+                MetricInstrumentedStore.M_GET, MetricInstrumentedStore.M_CONTAINS_KEY_COLUMN,
+                MetricInstrumentedStore.M_MUTATE, MetricInstrumentedStore.M_ACQUIRE_LOCK}) {
+            assertTrue(server.isRegistered(getName(instance, operation)));
+        }
+
+        StoreTransaction tx = manager.beginTransaction(ConsistencyLevel.DEFAULT);
+        ByteBuffer key = KeyColumnValueStoreUtil.longToByteBuffer(1);
+        ByteBuffer column = KeyColumnValueStoreUtil.longToByteBuffer(2);
+        ByteBuffer value = KeyColumnValueStoreUtil.longToByteBuffer(3);
+        store.mutate(key, Arrays.asList(new Entry(column, value)), null, tx);
+        assertTrue(store.containsKey(key, tx));
+        assertEquals(value, store.get(key, column, tx));
+        List<Entry> slice = store.getSlice(key, KeyColumnValueStoreUtil.longToByteBuffer(0),
+                KeyColumnValueStoreUtil.longToByteBuffer(100), tx);
+        assertEquals(1, slice.size());
+        try {
+            store.acquireLock(key, column, null, null);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+
+        ObjectName mutate = getName(instance, MetricInstrumentedStore.M_MUTATE);
+        assertEquals(1L, server.getAttribute(mutate, "Calls"));
+        assertEquals(0L, server.getAttribute(mutate, "Failures"));
+        assertEquals(24L, server.getAttribute(mutate, "BytesSent"));
+        assertEquals(0L, server.getAttribute(mutate, "BytesReceived"));
+
+        ObjectName containsKey = getName(instance, MetricInstrumentedStore.M_CONTAINS_KEY);
+        assertEquals(1L, server.getAttribute(containsKey, "Calls"));
+        assertEquals(8L, server.getAttribute(containsKey, "BytesSent"));
+
+        ObjectName get = getName(instance, MetricInstrumentedStore.M_GET);
+        assertEquals(1L, server.getAttribute(get, "Calls"));
+        assertEquals(16L, server.getAttribute(get, "BytesSent"));
+        assertEquals(8L, server.getAttribute(get, "BytesReceived"));
+        assertEquals(1L, server.getAttribute(get, "EntriesReturned"));
+
+        ObjectName getSlice = getName(instance, MetricInstrumentedStore.M_GET_SLICE);
+        assertEquals(1L, server.getAttribute(getSlice, "Calls"));
+        assertEquals(24L, server.getAttribute(getSlice, "BytesSent"));
+        assertEquals(16L, server.getAttribute(getSlice, "BytesReceived"));
+        assertEquals(1L, server.getAttribute(getSlice, "EntriesReturned"));
+
+        ObjectName acquireLock = getName(instance, MetricInstrumentedStore.M_ACQUIRE_LOCK);
+        assertEquals(1L, server.getAttribute(acquireLock, "Calls"));
+        assertEquals(1L, server.getAttribute(acquireLock, "Failures"));
+
+        ObjectName containsKeyColumn = getName(instance, MetricInstrumentedStore.M_CONTAINS_KEY_COLUMN);
+        assertEquals(0L, server.getAttribute(containsKeyColumn, "Calls"));
+
+        store.close();
+        assertFalse(server.isRegistered(mutate));
+        assertFalse(server.isRegistered(acquireLock));
+        tx.commit();
+        manager.close();
+    }
+
+    @Test
+    public void testInstancesOnSameBackend() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        InMemoryStoreManager manager = new InMemoryStoreManager();
+        int instance1 = MetricInstrumentedStore.nextInstanceID(), instance2 = MetricInstrumentedStore.nextInstanceID();
+        MetricInstrumentedStore store1 = new MetricInstrumentedStore(manager.openDatabase("store"), BACKEND, instance1);
+        MetricInstrumentedStore store2 = new MetricInstrumentedStore(manager.openDatabase("store"), BACKEND, instance2);
+        StoreTransaction tx = manager.beginTransaction(ConsistencyLevel.DEFAULT);
+        ByteBuffer key = KeyColumnValueStoreUtil.longToByteBuffer(1);
+        store1.containsKey(key, tx);
+        store1.containsKey(key, tx);
+        store2.containsKey(key, tx);
+        assertEquals(2L, server.getAttribute(getName(instance1, MetricInstrumentedStore.M_CONTAINS_KEY), "Calls"));
+        assertEquals(1L, server.getAttribute(getName(instance2, MetricInstrumentedStore.M_CONTAINS_KEY), "Calls"));
+
+        //Closing one instance leaves the metrics of the other registered
+        store1.close();
+        assertFalse(server.isRegistered(getName(instance1, MetricInstrumentedStore.M_CONTAINS_KEY)));
+        assertTrue(server.isRegistered(getName(instance2, MetricInstrumentedStore.M_CONTAINS_KEY)));
+        store2.close();
+        assertFalse(server.isRegistered(getName(instance2, MetricInstrumentedStore.M_CONTAINS_KEY)));
+        tx.commit();
+        manager.close();
+    }
+
+}
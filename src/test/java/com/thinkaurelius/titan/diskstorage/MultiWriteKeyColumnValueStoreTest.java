@@ -10,6 +10,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.google.common.base.Preconditions;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.*;
@@ -74,6 +76,20 @@ public abstract class MultiWriteKeyColumnValueStoreTest {
         if (null != manager) manager.close();
     }
     
+    @Test
+    public void readOnlyTransactionReads() throws StorageException {
+        ByteBuffer b1 = KeyColumnValueStoreUtil.longToByteBuffer(1);
+        store1.mutate(b1, Arrays.asList(new Entry(b1, b1)), null, tx);
+        tx.commit();
+        tx = new BufferTransaction(manager.beginTransaction(ConsistencyLevel.DEFAULT),manager,bufferSize,1,0);
+
+        // Read-only transactions are not wrapped for buffering
+        StoreTransaction readTx = manager.beginReadOnlyTransaction(ConsistencyLevel.DEFAULT);
+        assertEquals(b1, store1.get(b1, b1, readTx));
+        assertEquals(1, store1.getSlice(Arrays.asList(b1), b1, KeyColumnValueStoreUtil.longToByteBuffer(2), 10, readTx).get(b1).size());
+        readTx.commit();
+    }
+
     @Test
     public void deletionsAppliedBeforeAdditions() throws StorageException {
     	
@@ -154,6 +170,35 @@ public abstract class MultiWriteKeyColumnValueStoreTest {
     	}
     }
     
+    @Test
+    public void mutateManyAsynchronousFlushTest() throws StorageException {
+        if (manager.getFeatures().supportsTransactions()) return;
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            tx.commit();
+            tx = new BufferTransaction(manager.beginTransaction(ConsistencyLevel.DEFAULT),manager,bufferSize,1,0,executor,2);
+
+            Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>> state =
+                    new HashMap<ByteBuffer, Map<ByteBuffer, ByteBuffer>>();
+            int dels = 512;
+            int adds = 2048;
+
+            for (int round = 0; round < 3; round++) {
+                Map<ByteBuffer, Mutation> changes = mutateState(state, dels, adds);
+
+                applyChanges(changes,store1,tx);
+                applyChanges(changes,store2,tx);
+                tx.flush();
+
+                int stateSizeExpected = adds + (adds - dels) * round;
+                assertEquals(stateSizeExpected, checkThatStateExistsInStore(state, store1, round));
+                assertEquals(stateSizeExpected, checkThatStateExistsInStore(state, store2, round));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     public void applyChanges(Map<ByteBuffer, Mutation> changes, KeyColumnValueStore store, StoreTransaction tx) throws StorageException {
         for (Map.Entry<ByteBuffer,Mutation> change : changes.entrySet()) {
             store.mutate(change.getKey(),change.getValue().getAdditions(),change.getValue().getDeletions(),tx);
@@ -0,0 +1,61 @@
+package com.thinkaurelius.titan.diskstorage.berkeleyje;
+
+import com.thinkaurelius.titan.StorageSetup;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.CachedKeyColumnValueStore;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.ConsistencyLevel;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.Entry;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.KeyColumnValueStoreManager;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreTransaction;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.KeyValueStoreManagerAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static com.thinkaurelius.titan.diskstorage.KeyValueStoreUtil.getBuffer;
+import static org.junit.Assert.assertEquals;
+
+public class BerkeleyDBjeCachedKeyColumnValueTest {
+
+    private KeyColumnValueStoreManager manager;
+    private CachedKeyColumnValueStore store;
+    private StoreTransaction tx;
+
+    private static KeyColumnValueStoreManager openStorageManager() throws StorageException {
+        return new KeyValueStoreManagerAdapter(new BerkeleyJEStoreManager(StorageSetup.getBerkeleyJEStorageConfiguration()));
+    }
+
+    @Before
+    public void setUp() throws StorageException {
+        openStorageManager().clearStorage();
+        manager = openStorageManager();
+        store = new CachedKeyColumnValueStore(manager.openDatabase("testStore1"), 1024 * 1024, 0);
+        tx = manager.beginTransaction(ConsistencyLevel.DEFAULT);
+    }
+
+    @After
+    public void tearDown() throws StorageException {
+        tx.commit();
+        store.close();
+        manager.close();
+    }
+
+    @Test
+    public void uncommittedReadsAreNotCached() throws StorageException {
+        ByteBuffer key = getBuffer(1), start = getBuffer(0), end = getBuffer(10);
+        store.mutate(key, Arrays.asList(new Entry(getBuffer(2), getBuffer("uncommitted"))), null, tx);
+        assertEquals(1, store.getSlice(key, start, end, tx).size());
+        assertEquals(1, store.getSlice(Arrays.asList(key), start, end, 10, tx).get(key).size());
+        tx.abort();
+
+        tx = manager.beginTransaction(ConsistencyLevel.DEFAULT);
+        assertEquals(0, store.getSlice(key, start, end, tx).size());
+        assertEquals(0, store.getCacheStats().hitCount());
+        assertEquals(0, store.getSlice(key, start, end, tx).size());
+        assertEquals(1, store.getCacheStats().hitCount());
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.thinkaurelius.titan.diskstorage.berkeleyje;
+
+import com.thinkaurelius.titan.StorageSetup;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.inmemory.InMemoryStoreManager;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.CompressedKeyColumnValueStore;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.ConsistencyLevel;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.Entry;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.KeyColumnValueStore;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.KeyColumnValueStoreManager;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreTransaction;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.KeyValueStoreManagerAdapter;
+import com.thinkaurelius.titan.diskstorage.locking.PermanentLockingException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.thinkaurelius.titan.diskstorage.KeyValueStoreUtil.getBuffer;
+import static org.junit.Assert.*;
+
+public class BerkeleyDBjeCompressedKeyColumnValueTest {
+
+    private KeyColumnValueStoreManager manager;
+    private StoreTransaction tx;
+
+    private static KeyColumnValueStoreManager openStorageManager() throws StorageException {
+        return new KeyValueStoreManagerAdapter(new BerkeleyJEStoreManager(StorageSetup.getBerkeleyJEStorageConfiguration()));
+    }
+
+    @Before
+    public void setUp() throws StorageException {
+        openStorageManager().clearStorage();
+        manager = openStorageManager();
+        tx = manager.beginTransaction(ConsistencyLevel.DEFAULT);
+    }
+
+    @After
+    public void tearDown() throws StorageException {
+        tx.commit();
+        manager.close();
+    }
+
+    private static List<Entry> headerLikeEntries() {
+        //Values starting with the codec headers, which must not be decoded if they were written without compression
+        return Arrays.asList(
+                new Entry(getBuffer(1), ByteBuffer.wrap(new byte[]{CompressedKeyColumnValueStore.CODEC_NONE, 5, 6})),
+                new Entry(getBuffer(2), ByteBuffer.wrap(new byte[]{CompressedKeyColumnValueStore.CODEC_DEFLATE, 0, 0, 0, 9, 1})));
+    }
+
+    @Test
+    public void uncompressedStoreRemainsReadable() throws StorageException {
+        KeyColumnValueStore legacy = manager.openDatabase("legacyStore");
+        KeyColumnValueStore properties = manager.openDatabase("storeProperties");
+        ByteBuffer key = getBuffer(1);
+        List<Entry> entries = headerLikeEntries();
+        legacy.mutate(key, entries, null, tx);
+        tx.commit();
+
+        KeyColumnValueStore wrapped = CompressedKeyColumnValueStore.wrap(legacy, properties, manager, 0, 1);
+        assertFalse(wrapped instanceof CompressedKeyColumnValueStore);
+        tx = manager.beginTransaction(ConsistencyLevel.DEFAULT);
+        for (Entry entry : entries) assertEquals(entry.getValue(), wrapped.get(key, entry.getColumn(), tx));
+
+        //The format is recorded, hence the store remains uncompressed even once it has been emptied
+        legacy.mutate(key, null, Arrays.asList(getBuffer(1), getBuffer(2)), tx);
+        tx.commit();
+        assertFalse(CompressedKeyColumnValueStore.wrap(legacy, properties, manager, 0, 1) instanceof CompressedKeyColumnValueStore);
+        tx = manager.beginTransaction(ConsistencyLevel.DEFAULT);
+        legacy.close();
+        properties.close();
+    }
+
+    @Test
+    public void emptyStoreIsCompressed() throws StorageException {
+        KeyColumnValueStore fresh = manager.openDatabase("freshStore");
+        KeyColumnValueStore properties = manager.openDatabase("storeProperties");
+        ByteBuffer key = getBuffer(1);
+        List<Entry> entries = headerLikeEntries();
+        KeyColumnValueStore wrapped = CompressedKeyColumnValueStore.wrap(fresh, properties, manager, 0, 1);
+        assertTrue(wrapped instanceof CompressedKeyColumnValueStore);
+        wrapped.mutate(key, entries, null, tx);
+        tx.commit();
+
+        //The store is no longer empty but its values are encoded
+        wrapped = CompressedKeyColumnValueStore.wrap(fresh, properties, manager, 0, 1);
+        assertTrue(wrapped instanceof CompressedKeyColumnValueStore);
+        tx = manager.beginTransaction(ConsistencyLevel.DEFAULT);
+        for (Entry entry : entries) assertEquals(entry.getValue(), wrapped.get(key, entry.getColumn(), tx));
+        fresh.close();
+        properties.close();
+    }
+
+    @Test
+    public void lockComparesDecodedValues() throws StorageException {
+        InMemoryStoreManager memory = new InMemoryStoreManager();
+        ByteBuffer key = getBuffer(1), column = getBuffer(2);
+        ByteBuffer value = ByteBuffer.wrap(new byte[1000]);
+        StoreTransaction txh = memory.beginTransaction(ConsistencyLevel.DEFAULT);
+        new CompressedKeyColumnValueStore(memory.openDatabase("lockStore"), 0, 9).mutate(key, Arrays.asList(new Entry(column, value)), null, txh);
+        txh.commit();
+
+        //Lock through a decorator which would encode the value differently
+        KeyColumnValueStore locking = new CompressedKeyColumnValueStore(memory.openDatabase("lockStore"), 0, 1);
+        txh = memory.beginTransaction(ConsistencyLevel.DEFAULT);
+        locking.acquireLock(key, column, value, txh);
+        txh.commit();
+        txh = memory.beginTransaction(ConsistencyLevel.DEFAULT);
+        try {
+            locking.acquireLock(key, column, ByteBuffer.wrap(new byte[999]), txh);
+            fail();
+        } catch (PermanentLockingException e) {
+        } finally {
+            txh.abort();
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.thinkaurelius.titan.diskstorage.berkeleyje;
+
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.CachedKeyColumnValueStore;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.CompressedKeyColumnValueStore;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.KeyColumnValueStore;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.MetricInstrumentedStore;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+@RunWith(Parameterized.class)
+public class BerkeleyDBjeDecoratedKeyColumnValueTest extends BerkeleyDBjeKeyColumnValueTest {
+
+    public enum Decorator {
+        CACHED {
+            @Override
+            KeyColumnValueStore wrap(KeyColumnValueStore store) {
+                return new CachedKeyColumnValueStore(store, 1024 * 1024, 0);
+            }
+        },
+        METRIC {
+            @Override
+            KeyColumnValueStore wrap(KeyColumnValueStore store) {
+                return new MetricInstrumentedStore(store, "berkeleyje-test");
+            }
+        },
+        //A threshold of zero considers every value for compression
+        COMPRESSED {
+            @Override
+            KeyColumnValueStore wrap(KeyColumnValueStore store) {
+                return new CompressedKeyColumnValueStore(store, 0, 1);
+            }
+        };
+
+        abstract KeyColumnValueStore wrap(KeyColumnValueStore store);
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> decorators() {
+        List<Object[]> decorators = new ArrayList<Object[]>();
+        for (Decorator decorator : Decorator.values()) decorators.add(new Object[]{decorator});
+        return decorators;
+    }
+
+    private final Decorator decorator;
+
+    public BerkeleyDBjeDecoratedKeyColumnValueTest(Decorator decorator) {
+        this.decorator = decorator;
+    }
+
+    @Override
+    public void open() throws StorageException {
+        super.open();
+        store = decorator.wrap(store);
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.thinkaurelius.titan.diskstorage.berkeleyje;
+
+import com.thinkaurelius.titan.StorageSetup;
+import com.thinkaurelius.titan.diskstorage.MultiWriteKeyColumnValueStoreTest;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.KeyColumnValueStoreManager;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.KeyValueStoreManagerAdapter;
+
+public class BerkeleyDBjeMultiWriteKeyColumnValueTest extends MultiWriteKeyColumnValueStoreTest {
+
+    @Override
+    public KeyColumnValueStoreManager openStorageManager() throws StorageException {
+        BerkeleyJEStoreManager sm = new BerkeleyJEStoreManager(StorageSetup.getBerkeleyJEStorageConfiguration());
+        return new KeyValueStoreManagerAdapter(sm);
+    }
+
+}
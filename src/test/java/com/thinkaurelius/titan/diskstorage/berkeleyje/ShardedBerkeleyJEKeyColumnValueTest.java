@@ -0,0 +1,19 @@
+package com.thinkaurelius.titan.diskstorage.berkeleyje;
+
+import com.google.common.collect.ImmutableMap;
+import com.thinkaurelius.titan.StorageSetup;
+import com.thinkaurelius.titan.diskstorage.KeyColumnValueStoreTest;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.KeyColumnValueStoreManager;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.KeyValueStoreManagerAdapter;
+
+
+public class ShardedBerkeleyJEKeyColumnValueTest extends KeyColumnValueStoreTest {
+
+    @Override
+    public KeyColumnValueStoreManager openStorageManager() throws StorageException {
+        ShardedBerkeleyJEStoreManager sm = new ShardedBerkeleyJEStoreManager(StorageSetup.getBerkeleyJEStorageConfiguration(), ImmutableMap.of(storeName,8));
+        return new KeyValueStoreManagerAdapter(sm, ImmutableMap.of(storeName,8));
+    }
+
+}
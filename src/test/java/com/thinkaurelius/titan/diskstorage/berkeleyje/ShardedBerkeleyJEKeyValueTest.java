@@ -0,0 +1,25 @@
+package com.thinkaurelius.titan.diskstorage.berkeleyje;
+
+import com.google.common.collect.ImmutableMap;
+import com.thinkaurelius.titan.StorageSetup;
+import com.thinkaurelius.titan.diskstorage.KeyValueStoreTest;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.KeyValueStoreManager;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+
+
+public class ShardedBerkeleyJEKeyValueTest extends KeyValueStoreTest {
+
+    @Override
+    public KeyValueStoreManager openStorageManager() throws StorageException {
+        return new ShardedBerkeleyJEStoreManager(StorageSetup.getBerkeleyJEStorageConfiguration(), ImmutableMap.of("testStore1",8));
+    }
+
+    @Test
+    public void shardCommitsAreNotAtomic() {
+        assertFalse(manager.getFeatures().supportsTransactions());
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.thinkaurelius.titan.diskstorage.cassandra;
+
+import com.thinkaurelius.titan.diskstorage.PermanentStorageException;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.TemporaryStorageException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HedgedReadExecutorTest {
+
+    private HedgedReadExecutor executor;
+
+    @After
+    public void tearDown() {
+        if (executor!=null) executor.close();
+    }
+
+    @Test
+    public void testNoHedge() throws StorageException {
+        final AtomicInteger calls = new AtomicInteger(0);
+        executor = new HedgedReadExecutor(50,10000,4);
+        String result = executor.execute(new HedgedReadExecutor.Read<String>() {
+            @Override
+            public String call() {
+                calls.incrementAndGet();
+                return "value";
+            }
+        });
+        assertEquals("value",result);
+        assertEquals(1,calls.get());
+        assertEquals(0,executor.getNumHedgedReads());
+    }
+
+    @Test
+    public void testHedge() throws Exception {
+        executor = new HedgedReadExecutor(50,10,4);
+        final AtomicInteger calls = new AtomicInteger(0);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        String result = executor.execute(new HedgedReadExecutor.Read<String>() {
+            @Override
+            public String call() throws StorageException {
+                if (calls.incrementAndGet()>1) return "hedge";
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return "slow";
+            }
+        });
+        assertEquals("hedge",result);
+        assertEquals(2,calls.get());
+        assertEquals(1,executor.getNumHedgedReads());
+        //The losing read is cancelled
+        assertTrue(interrupted.await(1,TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailedHedge() throws Exception {
+        executor = new HedgedReadExecutor(50,10,4);
+        final AtomicInteger calls = new AtomicInteger(0);
+        String result = executor.execute(new HedgedReadExecutor.Read<String>() {
+            @Override
+            public String call() throws StorageException {
+                if (calls.incrementAndGet()>1) throw new TemporaryStorageException("Hedge failed");
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    throw new PermanentStorageException(e);
+                }
+                return "slow";
+            }
+        });
+        assertEquals("slow",result);
+        assertEquals(1,executor.getNumHedgedReads());
+    }
+
+    @Test
+    public void testFailure() {
+        executor = new HedgedReadExecutor(50,10,4);
+        try {
+            executor.execute(new HedgedReadExecutor.Read<String>() {
+                @Override
+                public String call() throws StorageException {
+                    throw new TemporaryStorageException("Read failed");
+                }
+            });
+            fail();
+        } catch (StorageException e) {
+            assertTrue(e instanceof TemporaryStorageException);
+        }
+        assertEquals(0,executor.getNumHedgedReads());
+    }
+
+    @Test
+    public void testFailureLatency() throws StorageException {
+        executor = new HedgedReadExecutor(50,0,4);
+        //Failed reads are recorded and determine the delay once enough reads have been observed
+        for (int i=0;i<=128;i++) {
+            try {
+                executor.execute(new HedgedReadExecutor.Read<String>() {
+                    @Override
+                    public String call() throws StorageException {
+                        try {
+                            Thread.sleep(2);
+                        } catch (InterruptedException e) {
+                            throw new PermanentStorageException(e);
+                        }
+                        throw new TemporaryStorageException("Read timed out");
+                    }
+                });
+            } catch (TemporaryStorageException e) {
+            }
+        }
+        assertTrue(executor.getDelayNS()>=TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testBusyPool() throws Exception {
+        executor = new HedgedReadExecutor(50,10,1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread blocking = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    executor.execute(new HedgedReadExecutor.Read<String>() {
+                        @Override
+                        public String call() throws StorageException {
+                            started.countDown();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                throw new PermanentStorageException(e);
+                            }
+                            return "blocked";
+                        }
+                    });
+                } catch (StorageException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        blocking.start();
+        started.await();
+        //All threads are busy, hence the read is executed on the calling thread without hedging
+        final Thread caller = Thread.currentThread();
+        boolean onCaller = executor.execute(new HedgedReadExecutor.Read<Boolean>() {
+            @Override
+            public Boolean call() {
+                return Thread.currentThread()==caller;
+            }
+        });
+        assertTrue(onCaller);
+        release.countDown();
+        blocking.join();
+    }
+
+}
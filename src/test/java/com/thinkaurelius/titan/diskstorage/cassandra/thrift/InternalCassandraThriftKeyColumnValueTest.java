@@ -1,10 +1,17 @@
 package com.thinkaurelius.titan.diskstorage.cassandra.thrift;
 
+import com.thinkaurelius.titan.diskstorage.KeyValueStoreUtil;
 import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.cassandra.CassandraTransaction;
+import com.thinkaurelius.titan.diskstorage.cassandra.CassandraTransaction.Consistency;
 import com.thinkaurelius.titan.diskstorage.cassandra.embedded.CassandraDaemonWrapper;
 import com.thinkaurelius.titan.diskstorage.cassandra.thrift.CassandraThriftStoreManager;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.ConsistencyLevel;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.Entry;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.KeyColumnValueStoreManager;
 import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreFeatures;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreTransaction;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.TunableConsistencyStoreManager;
 import org.apache.commons.configuration.Configuration;
 import org.junit.BeforeClass;
 
@@ -12,6 +19,10 @@ import com.thinkaurelius.titan.StorageSetup;
 import com.thinkaurelius.titan.diskstorage.KeyColumnValueStoreTest;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -39,4 +50,30 @@ public class InternalCassandraThriftKeyColumnValueTest extends KeyColumnValueSto
         assertFalse(features.isKeyOrdered());
         assertFalse(features.hasLocalKeyPartition());
     }
+
+    @Test
+    public void testTransactionConsistency() throws StorageException {
+        TunableConsistencyStoreManager tunable = (TunableConsistencyStoreManager)manager;
+        StoreTransaction txh = tunable.beginTransaction(ConsistencyLevel.DEFAULT,"ONE","ALL");
+        assertEquals(Consistency.ONE,CassandraTransaction.getTx(txh).getReadConsistencyLevel());
+        assertEquals(Consistency.ALL,CassandraTransaction.getTx(txh).getWriteConsistencyLevel());
+        ByteBuffer key = KeyValueStoreUtil.getBuffer(1), column = KeyValueStoreUtil.getBuffer(2), value = KeyValueStoreUtil.getBuffer(3);
+        store.mutate(key,Arrays.asList(new Entry(column,value)),null,txh);
+        assertEquals(value,store.get(key,column,txh));
+        txh.commit();
+
+        //Unspecified levels fall back to the configured defaults
+        CassandraTransaction defaults = CassandraTransaction.getTx(manager.beginTransaction(ConsistencyLevel.DEFAULT));
+        txh = tunable.beginReadOnlyTransaction(ConsistencyLevel.DEFAULT,null);
+        assertEquals(defaults.getReadConsistencyLevel(),CassandraTransaction.getTx(txh).getReadConsistencyLevel());
+        assertEquals(value,store.get(key,column,txh));
+        txh.commit();
+        defaults.commit();
+
+        //Locks are always read and written at quorum
+        txh = tunable.beginTransaction(ConsistencyLevel.KEY_CONSISTENT,"ONE","ONE");
+        assertEquals(Consistency.QUORUM,CassandraTransaction.getTx(txh).getReadConsistencyLevel());
+        assertEquals(Consistency.QUORUM,CassandraTransaction.getTx(txh).getWriteConsistencyLevel());
+        txh.commit();
+    }
 }
@@ -0,0 +1,17 @@
+package com.thinkaurelius.titan.diskstorage.inmemory;
+
+import com.thinkaurelius.titan.diskstorage.MultiWriteKeyColumnValueStoreTest;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.KeyColumnValueStoreManager;
+
+public class InMemoryMultiWriteKeyColumnValueStoreTest extends MultiWriteKeyColumnValueStoreTest {
+
+    //Data only lives as long as the manager, hence it is shared across reopens
+    private static final InMemoryStoreManager sharedManager = new InMemoryStoreManager();
+
+    @Override
+    public KeyColumnValueStoreManager openStorageManager() throws StorageException {
+        return sharedManager;
+    }
+
+}
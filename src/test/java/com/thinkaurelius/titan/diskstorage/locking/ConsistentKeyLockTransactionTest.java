@@ -0,0 +1,81 @@
+package com.thinkaurelius.titan.diskstorage.locking;
+
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.inmemory.InMemoryKeyColumnValueStore;
+import com.thinkaurelius.titan.diskstorage.inmemory.InMemoryStoreManager;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.ConsistencyLevel;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.Entry;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.KeyColumnValueStore;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreTransaction;
+import com.thinkaurelius.titan.diskstorage.locking.consistentkey.ConsistentKeyLockConfiguration;
+import com.thinkaurelius.titan.diskstorage.locking.consistentkey.ConsistentKeyLockStore;
+import com.thinkaurelius.titan.diskstorage.locking.consistentkey.ConsistentKeyLockTransaction;
+import com.thinkaurelius.titan.graphdb.configuration.GraphDatabaseConfiguration;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ConsistentKeyLockTransactionTest {
+
+    private static final ByteBuffer KEY = ByteBuffer.wrap(new byte[] { 1 });
+    private static final ByteBuffer COLUMN = ByteBuffer.wrap(new byte[] { 2 });
+    private static final ByteBuffer VALUE = ByteBuffer.wrap(new byte[] { 3 });
+
+    /**
+     * Records the consistency level of all transactions the store is read with
+     */
+    private static class ReadRecordingStore extends InMemoryKeyColumnValueStore {
+
+        private final List<ConsistencyLevel> reads = new ArrayList<ConsistencyLevel>();
+
+        ReadRecordingStore(String name) {
+            super(name);
+        }
+
+        @Override
+        public ByteBuffer get(ByteBuffer key, ByteBuffer column, StoreTransaction txh) throws StorageException {
+            reads.add(txh.getConsistencyLevel());
+            return super.get(key, column, txh);
+        }
+
+        @Override
+        public Map<ByteBuffer, List<Entry>> getSlice(List<ByteBuffer> keys, ByteBuffer columnStart, ByteBuffer columnEnd, int limit, StoreTransaction txh) throws StorageException {
+            reads.add(txh.getConsistencyLevel());
+            return super.getSlice(keys, columnStart, columnEnd, limit, txh);
+        }
+
+    }
+
+    @Test
+    public void testExpectedValuesReadConsistently() throws StorageException {
+        InMemoryStoreManager manager = new InMemoryStoreManager();
+        ReadRecordingStore data = new ReadRecordingStore("data");
+        Configuration config = new BaseConfiguration();
+        config.addProperty(GraphDatabaseConfiguration.INSTANCE_RID_SHORT_KEY, (short)1);
+        KeyColumnValueStore store = new ConsistentKeyLockStore(data, manager.openDatabase("data_lock_"),
+                new ConsistentKeyLockConfiguration(config, "consistency"));
+
+        StoreTransaction txh = manager.beginTransaction(ConsistencyLevel.DEFAULT);
+        data.mutate(KEY, Arrays.asList(new Entry(COLUMN, VALUE)), null, txh);
+        txh.commit();
+
+        //The base transaction may read with a weaker consistency than the lock verification requires
+        ConsistentKeyLockTransaction ltx = new ConsistentKeyLockTransaction(manager.beginTransaction(ConsistencyLevel.DEFAULT),
+                manager.beginTransaction(ConsistencyLevel.KEY_CONSISTENT));
+        store.acquireLock(KEY, COLUMN, VALUE, ltx);
+        data.reads.clear();
+        ltx.verifyAllLockClaims();
+        assertFalse(data.reads.isEmpty());
+        for (ConsistencyLevel level : data.reads) assertEquals(ConsistencyLevel.KEY_CONSISTENT, level);
+        ltx.commit();
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.thinkaurelius.titan.diskstorage.lsm;
+
+import com.thinkaurelius.titan.StorageSetup;
+import com.thinkaurelius.titan.diskstorage.KeyColumnValueStoreTest;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.KeyColumnValueStoreManager;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.KeyValueStoreManagerAdapter;
+
+
+public class LSMKeyColumnValueTest extends KeyColumnValueStoreTest {
+
+    @Override
+    public KeyColumnValueStoreManager openStorageManager() throws StorageException {
+        LSMStoreManager sm = new LSMStoreManager(StorageSetup.getLocalStorageConfiguration());
+        return new KeyValueStoreManagerAdapter(sm);
+    }
+
+}
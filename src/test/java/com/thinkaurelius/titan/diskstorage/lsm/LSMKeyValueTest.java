@@ -0,0 +1,16 @@
+package com.thinkaurelius.titan.diskstorage.lsm;
+
+import com.thinkaurelius.titan.StorageSetup;
+import com.thinkaurelius.titan.diskstorage.KeyValueStoreTest;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.KeyValueStoreManager;
+
+
+public class LSMKeyValueTest extends KeyValueStoreTest {
+
+    @Override
+    public KeyValueStoreManager openStorageManager() throws StorageException {
+        return new LSMStoreManager(StorageSetup.getLocalStorageConfiguration());
+    }
+
+}
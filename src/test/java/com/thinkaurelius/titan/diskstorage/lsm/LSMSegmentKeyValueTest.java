@@ -0,0 +1,24 @@
+package com.thinkaurelius.titan.diskstorage.lsm;
+
+import com.thinkaurelius.titan.StorageSetup;
+import com.thinkaurelius.titan.diskstorage.KeyValueStoreTest;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.keyvalue.KeyValueStoreManager;
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Uses a tiny memtable so that the data is written to many segments which are compacted during the tests
+ */
+public class LSMSegmentKeyValueTest extends KeyValueStoreTest {
+
+    @Override
+    public KeyValueStoreManager openStorageManager() throws StorageException {
+        Configuration config = StorageSetup.getLocalStorageConfiguration();
+        config.addProperty(LSMStoreManager.MEMTABLE_SIZE_KEY, 4096);
+        config.addProperty(LSMStoreManager.COMPACTION_THRESHOLD_KEY, 3);
+        config.addProperty(LSMStoreManager.INDEX_INTERVAL_KEY, 256);
+        config.addProperty(LSMStoreManager.SYNC_ON_COMMIT_KEY, false);
+        return new LSMStoreManager(config);
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.thinkaurelius.titan.diskstorage.util;
+
+import com.thinkaurelius.titan.StorageSetup;
+import com.thinkaurelius.titan.diskstorage.StorageException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RecordLogTest {
+
+    private static final String PREFIX = "test-";
+    private static final String SUFFIX = ".log";
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        StorageSetup.deleteHomeDir();
+        dir = new File(StorageSetup.getHomeDirFile(),"log");
+    }
+
+    private static ByteBuffer record(long value) {
+        ByteBuffer b = ByteBuffer.allocate(8);
+        b.putLong(value);
+        b.flip();
+        return b;
+    }
+
+    private RecordLog open(final List<Long> replayed) throws StorageException {
+        RecordLog log = new RecordLog(dir,PREFIX,SUFFIX,1024*1024);
+        log.replay(new RecordLog.RecordHandler() {
+            @Override
+            public void handle(long seq, ByteBuffer record) throws StorageException {
+                assertEquals(replayed.size()+1,seq);
+                replayed.add(record.getLong());
+            }
+        });
+        return log;
+    }
+
+    private int numSegments() {
+        int segments = 0;
+        for (String name : dir.list()) {
+            if (name.startsWith(PREFIX)) segments++;
+        }
+        return segments;
+    }
+
+    @Test
+    public void testRollAndApply() throws StorageException {
+        RecordLog log = open(new ArrayList<Long>());
+        for (int i=1;i<=10;i++) assertEquals(i,log.append(record(i)));
+        assertEquals(10,log.roll());
+        for (int i=11;i<=15;i++) assertEquals(i,log.append(record(i)));
+        log.sync(15);
+        assertEquals(2,numSegments());
+        log.applied(10);
+        assertEquals(1,numSegments());
+        log.close();
+
+        List<Long> replayed = new ArrayList<Long>();
+        log = open(replayed);
+        assertEquals(5,replayed.size());
+        assertEquals(11,replayed.get(0).longValue());
+        log.applied(log.getLastSequenceNumber());
+        log.close();
+        assertEquals(0,numSegments());
+    }
+
+    @Test
+    public void testIncompleteRecordDiscarded() throws Exception {
+        RecordLog log = open(new ArrayList<Long>());
+        for (int i=1;i<=3;i++) log.append(record(i));
+        log.close();
+
+        File segment = dir.listFiles()[0];
+        RandomAccessFile raf = new RandomAccessFile(segment,"rw");
+        raf.setLength(raf.length()-1);
+        raf.close();
+
+        List<Long> replayed = new ArrayList<Long>();
+        log = open(replayed);
+        assertEquals(2,replayed.size());
+        assertEquals(3,log.append(record(4)));
+        log.close();
+    }
+
+}
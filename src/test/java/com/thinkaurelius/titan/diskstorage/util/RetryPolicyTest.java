@@ -0,0 +1,94 @@
+package com.thinkaurelius.titan.diskstorage.util;
+
+import com.thinkaurelius.titan.diskstorage.PermanentStorageException;
+import com.thinkaurelius.titan.diskstorage.inmemory.InMemoryKeyColumnValueStore;
+import com.thinkaurelius.titan.diskstorage.inmemory.InMemoryStoreManager;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.CircuitBreakerKeyColumnValueStore;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.ConsistencyLevel;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.KeyColumnValueStore;
+import com.thinkaurelius.titan.diskstorage.keycolumnvalue.StoreTransaction;
+import com.thinkaurelius.titan.diskstorage.locking.TemporaryLockingException;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * (c) Matthias Broecheler (me@matthiasb.com)
+ */
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testExponentialBackoff() {
+        ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy(100,1000);
+        for (int i=0;i<100;i++) {
+            long wait = policy.getWaitTime(1);
+            assertTrue(wait>=50 && wait<=100);
+            wait = policy.getWaitTime(3);
+            assertTrue(wait>=200 && wait<=400);
+            wait = policy.getWaitTime(20);
+            assertTrue(wait>=500 && wait<=1000);
+        }
+        assertEquals(250,new FixedRetryPolicy(250).getWaitTime(5));
+    }
+
+    @Test
+    public void testRetryBudget() {
+        RetryBudget budget = new RetryBudget(2);
+        assertTrue(budget.acquire());
+        assertTrue(budget.acquire());
+        assertFalse(budget.acquire());
+        for (int i=0;i<10;i++) assertTrue(RetryBudget.UNLIMITED.acquire());
+    }
+
+    @Test
+    public void testCircuitBreaker() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test",3,100);
+        for (int i=0;i<3;i++) {
+            breaker.before();
+            breaker.failure();
+        }
+        assertTrue(breaker.isOpen());
+        try {
+            breaker.before();
+            fail();
+        } catch (PermanentStorageException e) {}
+
+        Thread.sleep(150);
+        //Exactly one trial operation is let through
+        breaker.before();
+        try {
+            breaker.before();
+            fail();
+        } catch (PermanentStorageException e) {}
+        breaker.success();
+        assertFalse(breaker.isOpen());
+        breaker.before();
+    }
+
+    @Test
+    public void testCircuitBreakerLockContention() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test",2,10000);
+        KeyColumnValueStore store = new CircuitBreakerKeyColumnValueStore(new InMemoryKeyColumnValueStore("test"),breaker);
+        InMemoryStoreManager manager = new InMemoryStoreManager();
+        ByteBuffer key = ByteBuffer.wrap(new byte[]{1}), column = ByteBuffer.wrap(new byte[]{2});
+        StoreTransaction holder = manager.beginTransaction(ConsistencyLevel.DEFAULT);
+        store.acquireLock(key,column,null,holder);
+        for (int i=0;i<5;i++) {
+            StoreTransaction tx = manager.beginTransaction(ConsistencyLevel.DEFAULT);
+            try {
+                store.acquireLock(key,column,null,tx);
+                fail();
+            } catch (TemporaryLockingException e) {
+            } finally {
+                tx.abort();
+            }
+            assertFalse(breaker.isOpen());
+        }
+        assertNull(store.get(key,column,holder));
+        holder.commit();
+    }
+
+}
@@ -28,7 +28,7 @@ public class StorageFeaturesTest {
             fail();
         } catch (IllegalArgumentException e) {}
         features = new StoreFeatures();
-        features.supportsScan=false; features.supportsBatchMutation=true; features.supportsTransactions=false;
+        features.supportsScan=false; features.supportsBatchMutation=true; features.supportsMultiQuery=true; features.supportsTransactions=false;
         features.supportsConsistentKeyOperations=true; features.supportsLocking=false; features.isKeyOrdered=false;
         features.isDistributed=true; features.hasLocalKeyPartition=false;
         assertNotNull(features);
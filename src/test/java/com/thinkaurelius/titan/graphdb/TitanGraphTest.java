@@ -682,6 +682,32 @@ public abstract class TitanGraphTest extends TitanGraphTestCommon {
 
     }
 
+    @Test
+    public void testPrefetch() {
+        TitanLabel connect = makeSimpleEdgeLabel("connect");
+        TitanKey weight = makeWeightPropertyKey("weight");
+        int noVertices = 120, noEdges = 4;
+        TitanVertex[] vs = new TitanVertex[noVertices];
+        for (int i=0;i<noVertices;i++) {
+            vs[i] = tx.addVertex();
+            vs[i].addProperty(weight, i*0.5);
+        }
+        for (int i=0;i<noVertices;i++) {
+            for (int j=1;j<=noEdges;j++) vs[i].addEdge(connect, vs[(i+j)%noVertices]);
+        }
+        clopen();
+        List<TitanVertex> vertices = new ArrayList<TitanVertex>(noVertices);
+        for (int i=0;i<noVertices;i++) vertices.add(tx.getVertex(vs[i].getID()));
+        tx.prefetch(vertices, vertices.get(0).query().direction(OUT).labels("connect"));
+        tx.prefetch(vertices, vertices.get(0).query().keys("weight"));
+        for (int i=0;i<noVertices;i++) {
+            TitanVertex v = vertices.get(i);
+            assertEquals(noEdges, v.query().direction(OUT).labels("connect").count());
+            assertEquals(noEdges, v.query().direction(IN).labels("connect").count());
+            assertEquals(i*0.5, v.getProperty("weight"));
+        }
+    }
+
     //Merge above
 	public void neighborhoodTest() {
 		testCreateAndRetrieveComprehensive();
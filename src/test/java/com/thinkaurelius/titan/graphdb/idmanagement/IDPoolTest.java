@@ -3,9 +3,12 @@ package com.thinkaurelius.titan.graphdb.idmanagement;
 import com.google.common.base.Preconditions;
 import com.thinkaurelius.titan.diskstorage.IDAuthority;
 import com.thinkaurelius.titan.diskstorage.StorageException;
+import com.thinkaurelius.titan.diskstorage.TemporaryStorageException;
+import com.thinkaurelius.titan.graphdb.database.idassigner.AdaptiveIDBlockSizer;
 import com.thinkaurelius.titan.graphdb.database.idassigner.IDBlockSizer;
 import com.thinkaurelius.titan.graphdb.database.idassigner.IDPoolExhaustedException;
 import com.thinkaurelius.titan.graphdb.database.idassigner.StandardIDPool;
+import com.thinkaurelius.titan.graphdb.database.idassigner.StaticIDBlockSizer;
 import com.thinkaurelius.titan.util.datastructures.IntHashSet;
 import com.thinkaurelius.titan.util.datastructures.IntSet;
 import org.junit.Test;
@@ -14,6 +17,9 @@ import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
@@ -64,8 +70,101 @@ public class IDPoolTest {
             threads[i].run();
         }
         for (int i=0;i<numThreads;i++) threads[i].join();
+        for (int i=0;i<numPartitions;i++) idPools[i].close();
+    }
+
+    @Test
+    public void testConcurrentIDPool() throws InterruptedException {
+        final int numThreads = 16;
+        final int attemptsPerThread = 20000;
+        //Slow id authority such that threads run out of ids before the next block has been acquired
+        MockIDAuthority idauth = new MockIDAuthority(500) {
+            @Override
+            public synchronized long[] getIDBlock(int partition) throws StorageException {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                return super.getIDBlock(partition);
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        final StandardIDPool pool = new StandardIDPool(idauth,0,Integer.MAX_VALUE,null,executor,2,StandardIDPool.DEFAULT_RENEW_TIMEOUT);
+        final IntSet ids = new IntHashSet(numThreads*attemptsPerThread);
+        final AtomicInteger failures = new AtomicInteger(0);
+        Thread[] threads = new Thread[numThreads];
+        for (int i=0;i<numThreads;i++) {
+            threads[i]=new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int attempt=0;attempt<attemptsPerThread;attempt++) {
+                            int id = (int)pool.nextID();
+                            synchronized (ids) {
+                                if (!ids.add(id)) failures.incrementAndGet();
+                            }
+                        }
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (int i=0;i<numThreads;i++) threads[i].join();
+        pool.close();
+        executor.shutdown();
+        assertEquals(0,failures.get());
+        assertEquals(numThreads*attemptsPerThread,ids.size());
     }
     
+    @Test
+    public void testRenewalFailure() {
+        //Fails the first renewal, which is retried while waiting for the next block
+        MockIDAuthority idauth = new MockIDAuthority(200) {
+            private boolean failed = false;
+
+            @Override
+            public synchronized long[] getIDBlock(int partition) throws StorageException {
+                if (!failed) {
+                    failed = true;
+                    throw new TemporaryStorageException("Could not acquire block");
+                }
+                return super.getIDBlock(partition);
+            }
+        };
+        StandardIDPool pool = new StandardIDPool(idauth,0,Integer.MAX_VALUE);
+        assertEquals(1,pool.nextID());
+        pool.close();
+    }
+
+    @Test
+    public void testCloseWithQueuedRenewal() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        //Occupies the shared executor so that the renewal of the pool remains queued
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        StandardIDPool pool = new StandardIDPool(new MockIDAuthority(200),0,Integer.MAX_VALUE,null,executor,
+                StandardIDPool.DEFAULT_PREFETCH_BLOCKS,StandardIDPool.DEFAULT_RENEW_TIMEOUT);
+        pool.addBlocks(new long[][]{{1,201}});
+        assertEquals(1,pool.nextID());
+        long start = System.currentTimeMillis();
+        pool.close();
+        assertTrue(System.currentTimeMillis()-start<1000);
+        release.countDown();
+        executor.shutdown();
+    }
+
     @Test
     public void testPoolExhaustion1() {
         MockIDAuthority idauth = new MockIDAuthority(200);
@@ -98,4 +197,40 @@ public class IDPoolTest {
         }
     }
 
+
+    @Test
+    public void testAdaptiveBlockSizer() {
+        AdaptiveIDBlockSizer sizer = new AdaptiveIDBlockSizer(new StaticIDBlockSizer(1000),1000);
+        assertEquals(1000,sizer.getBlockSize(0));
+        //Consuming 1000 ids per 100ms grows the block by at most the maximum growth factor
+        sizer.consumed(0,1000,100);
+        assertEquals(1000*AdaptiveIDBlockSizer.MAX_GROWTH,sizer.getBlockSize(0));
+        sizer.consumed(0,8000,800);
+        assertEquals(10000,sizer.getBlockSize(0));
+        assertEquals(1000,sizer.getBlockSize(1));
+        //Slow consumption shrinks the block by at most the maximum shrink factor
+        sizer.consumed(0,10,100000);
+        assertEquals(10000/AdaptiveIDBlockSizer.MAX_SHRINK,sizer.getBlockSize(0));
+        for (int i=0;i<20;i++) sizer.consumed(0,1,100000);
+        assertEquals(AdaptiveIDBlockSizer.MIN_BLOCK_SIZE,sizer.getBlockSize(0));
+        for (int i=0;i<20;i++) sizer.consumed(0,1000000,1);
+        assertEquals(1000*AdaptiveIDBlockSizer.MAX_SCALE,sizer.getBlockSize(0));
+    }
+
+    @Test
+    public void testAdaptiveIDPool() {
+        MockIDAuthority idauth = new MockIDAuthority(200);
+        AdaptiveIDBlockSizer sizer = new AdaptiveIDBlockSizer(new StaticIDBlockSizer(200),60000);
+        idauth.setIDBlockSizer(sizer);
+        StandardIDPool pool = new StandardIDPool(idauth,0,Integer.MAX_VALUE,sizer,null,
+                StandardIDPool.DEFAULT_PREFETCH_BLOCKS,StandardIDPool.DEFAULT_RENEW_TIMEOUT);
+        long last = 0;
+        for (int i=0;i<20000;i++) {
+            long id = pool.nextID();
+            assertTrue(id>last);
+            last = id;
+        }
+        assertTrue(sizer.getBlockSize(0)>200);
+    }
+
 }
@@ -10,6 +10,8 @@ import com.thinkaurelius.titan.graphdb.database.idassigner.StaticIDBlockSizer;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -55,6 +57,17 @@ public class MockIDAuthority implements IDAuthority {
         return new long[]{lowerBound,Math.min(lowerBound+size,blockSizeLimit)};
     }
 
+    @Override
+    public Map<Integer,long[][]> getIDBlocks(Map<Integer,Integer> numBlocks) throws StorageException {
+        Map<Integer,long[][]> result = new HashMap<Integer,long[][]>(numBlocks.size());
+        for (Map.Entry<Integer,Integer> entry : numBlocks.entrySet()) {
+            long[][] blocks = new long[entry.getValue()][];
+            for (int i=0;i<blocks.length;i++) blocks[i]=getIDBlock(entry.getKey());
+            result.put(entry.getKey(),blocks);
+        }
+        return result;
+    }
+
     @Override
     public long peekNextID(int partition) throws StorageException {
         AtomicLong id = ids.get(Integer.valueOf(partition));
@@ -25,6 +25,9 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 /**
  * (c) Matthias Broecheler (me@matthiasb.com)
  */
@@ -33,17 +36,22 @@ import java.util.List;
 public class VertexIDAssignerTest {
 
     final VertexIDAssigner idAssigner;
+    final int partitionMax;
+    final int[] localPartition;
+    final String placement;
 
     
 
     @Parameterized.Parameters
     public static Collection<Object[]> configs() {
         List<Object[]> configurations = new ArrayList<Object[]>();
-        configurations.add(new Object[]{false,Integer.MAX_VALUE,null});
+        configurations.add(new Object[]{false,Integer.MAX_VALUE,null,GraphDatabaseConfiguration.IDS_PLACEMENT_DEFAULT});
 
-        for (int max : new int[]{Integer.MAX_VALUE,100}) {
-            for (int[] local : new int[][]{null, {0, 2000}, {-100000,-1}, {-10000, 10000}}) {
-                configurations.add(new Object[]{true,max,local});
+        for (String placement : new String[]{"simple","neighbour"}) {
+            for (int max : new int[]{Integer.MAX_VALUE,100}) {
+                for (int[] local : new int[][]{null, {0, 2000}, {-100000,-1}, {-10000, 10000}}) {
+                    configurations.add(new Object[]{true,max,local,placement});
+                }
             }
         }
 
@@ -51,11 +59,14 @@ public class VertexIDAssignerTest {
 
     }
 
-    public VertexIDAssignerTest(boolean partition, int partitionMax, int[] localPartition) {
+    public VertexIDAssignerTest(boolean partition, int partitionMax, int[] localPartition, String placement) {
+        this.partitionMax = partitionMax;
+        this.localPartition = localPartition;
+        this.placement = placement;
         MockIDAuthority idAuthority = new MockIDAuthority(500,partitionMax);
 
         StoreFeatures features = new StoreFeatures();
-        features.supportsScan=false; features.supportsBatchMutation=false; features.supportsTransactions=false;
+        features.supportsScan=false; features.supportsBatchMutation=false; features.supportsMultiQuery=false; features.supportsTransactions=false;
         features.supportsConsistentKeyOperations=false; features.supportsLocking=false; features.isKeyOrdered=false;
         features.isDistributed=false; features.hasLocalKeyPartition=false;
         if (localPartition!=null) {
@@ -64,6 +75,7 @@ public class VertexIDAssignerTest {
         }
         Configuration config = new BaseConfiguration();
         config.setProperty(GraphDatabaseConfiguration.IDS_PARTITION_KEY,partition);
+        config.setProperty(GraphDatabaseConfiguration.IDS_PLACEMENT_KEY,placement);
         idAssigner = new VertexIDAssigner(config,idAuthority,features);
         System.out.println("Partition: " + partition);
         System.out.println("partitionMax: " + partitionMax);
@@ -108,5 +120,55 @@ public class VertexIDAssignerTest {
         }
     }
 
+    @Test
+    public void testNeighbourPlacement() {
+        if (!placement.equals("neighbour") || partitionMax!=Integer.MAX_VALUE) return;
+        InternalTitanGraph graph = new InMemoryTitanGraph(new TransactionConfig(BlueprintsDefaultTypeMaker.INSTANCE,false));
+        TitanVertex root = (TitanVertex)graph.addVertex(null);
+        idAssigner.assignID((InternalTitanVertex)root);
+        long partition = idAssigner.getIDManager().getPartitionID(root.getID());
+
+        //New vertices follow the partition of the vertex they are first connected to
+        List<TitanVertex> vertices = new ArrayList<TitanVertex>();
+        List<InternalRelation> relations = new ArrayList<InternalRelation>();
+        TitanVertex old = root;
+        for (int i=0;i<50;i++) {
+            TitanVertex next = (TitanVertex)graph.addVertex(null);
+            relations.add((InternalRelation)graph.addEdge(null,old,next,"knows"));
+            vertices.add(next);
+            old = next;
+        }
+        idAssigner.assignIDs(relations);
+        for (TitanVertex v : vertices) {
+            assertEquals(partition,idAssigner.getIDManager().getPartitionID(v.getID()));
+        }
+    }
+
+    @Test
+    public void testNeighbourPlacementLocalBounds() {
+        if (!placement.equals("neighbour") || partitionMax!=Integer.MAX_VALUE ||
+                !Arrays.equals(localPartition,new int[]{0,2000})) return;
+        //The local key range [0,2000) covers the partitions [0,499)
+        int foreignPartition = 1000;
+        InternalTitanGraph graph = new InMemoryTitanGraph(new TransactionConfig(BlueprintsDefaultTypeMaker.INSTANCE,false));
+        TitanVertex root = (TitanVertex)graph.addVertex(null);
+        ((InternalTitanVertex)root).setID(idAssigner.getIDManager().getNodeID(1,foreignPartition));
+
+        //New vertices are not placed into the partition of a neighbour which is not hosted locally
+        List<TitanVertex> vertices = new ArrayList<TitanVertex>();
+        List<InternalRelation> relations = new ArrayList<InternalRelation>();
+        TitanVertex old = root;
+        for (int i=0;i<10;i++) {
+            TitanVertex next = (TitanVertex)graph.addVertex(null);
+            relations.add((InternalRelation)graph.addEdge(null,old,next,"knows"));
+            vertices.add(next);
+            old = next;
+        }
+        idAssigner.assignIDs(relations);
+        for (TitanVertex v : vertices) {
+            long partition = idAssigner.getIDManager().getPartitionID(v.getID());
+            assertTrue(partition>=0 && partition<499);
+        }
+    }
 
 }
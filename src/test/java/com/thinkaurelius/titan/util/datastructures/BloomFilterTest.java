@@ -0,0 +1,43 @@
+package com.thinkaurelius.titan.util.datastructures;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+
+public class BloomFilterTest {
+
+    private static ByteBuffer key(long id) {
+        ByteBuffer b = ByteBuffer.allocate(8);
+        b.putLong(id);
+        b.flip();
+        return b;
+    }
+
+    @Test
+    public void testMembership() {
+        int num = 10000;
+        BloomFilter filter = new BloomFilter(num,0.01);
+        for (int i=0;i<num;i++) filter.put(key(i));
+        for (int i=0;i<num;i++) assertTrue(filter.mightContain(key(i)));
+        int falsePositives = 0;
+        for (int i=num;i<2*num;i++) if (filter.mightContain(key(i))) falsePositives++;
+        assertTrue(falsePositives<num*0.03);
+    }
+
+    @Test
+    public void testSerialization() throws IOException {
+        BloomFilter filter = new BloomFilter(1000,0.01);
+        for (int i=0;i<1000;i+=2) filter.put(key(i));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        filter.writeTo(new DataOutputStream(bytes));
+        BloomFilter copy = BloomFilter.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(filter.getNumBits(),copy.getNumBits());
+        assertEquals(filter.getNumHashes(),copy.getNumHashes());
+        for (int i=0;i<1000;i++) assertEquals(filter.mightContain(key(i)),copy.mightContain(key(i)));
+    }
+
+}